@@ -1,30 +1,31 @@
 package ca.ubc.cs.cs317.dnslookup;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * This class handles a cache of DNS results. It is based on a map that links nodes (queries) to a set of resource
  * records (results). Cached results are only maintained for the duration of the TTL (time-to-live) returned by the
- * server, and are deleted before being returned to the user.
+ * server, and are deleted before being returned to the user. The cache may be used by several threads at the same
+ * time (e.g., by the threads of a DNS server).
  */
 public class DNSCache {
 
     public static final DNSQuestion rootQuestion = new DNSQuestion("", RecordType.NS, RecordClass.IN);
-    private static final Set<ResourceRecord> rootNameServersMap = Stream.of("198.41.0.4",
-                    "199.9.14.201", "192.33.4.12", "199.7.91.13", "192.203.230.10", "192.5.5.241", "192.112.36.4",
-                    "198.97.190.53", "192.36.148.17", "192.58.128.30", "193.0.14.129", "199.7.83.42", "202.12.27.33")
-            .map(s -> new ResourceRecord(rootQuestion, Integer.MAX_VALUE, s))
-            .collect(Collectors.toSet());
+    public static final List<String> DEFAULT_ROOT_HINTS = Collections.unmodifiableList(Arrays.asList("198.41.0.4",
+            "199.9.14.201", "192.33.4.12", "199.7.91.13", "192.203.230.10", "192.5.5.241", "192.112.36.4",
+            "198.97.190.53", "192.36.148.17", "192.58.128.30", "193.0.14.129", "199.7.83.42", "202.12.27.33"));
 
     private static final DNSCache instance = new DNSCache();
 
-    private final Map<DNSQuestion, Set<ResourceRecord>> cachedResults = new TreeMap<>();
+    private final Map<DNSQuestion, Set<ResourceRecord>> cachedResults = new ConcurrentSkipListMap<>();
+    private volatile Set<ResourceRecord> rootNameServersMap;
 
     public DNSCache() {
-        reset();
+        setRootHints(DEFAULT_ROOT_HINTS);
     }
 
     /**
@@ -37,12 +38,27 @@ public class DNSCache {
         return instance;
     }
 
+    /**
+     * Replaces the root nameservers (root hints) kept in the cache, and resets the cache. The root nameservers are
+     * kept after every reset, until they are replaced again.
+     *
+     * @param addresses The IP addresses of the root nameservers (DEFAULT_ROOT_HINTS for the real root nameservers).
+     */
+    public void setRootHints(Collection<String> addresses) {
+        rootNameServersMap = addresses.stream()
+                .map(s -> new ResourceRecord(rootQuestion, Integer.MAX_VALUE, s))
+                .collect(Collectors.toSet());
+        reset();
+    }
+
     /**
      * Resets the cache to its initial value, containing only root nameservers.
      */
     public void reset() {
         this.cachedResults.clear();
-        this.cachedResults.put(rootQuestion, rootNameServersMap);
+        Set<ResourceRecord> rootNameServers = ConcurrentHashMap.newKeySet();
+        rootNameServers.addAll(rootNameServersMap);
+        this.cachedResults.put(rootQuestion, rootNameServers);
     }
 
     /**
@@ -61,22 +77,30 @@ public class DNSCache {
         List<ResourceRecord> returningList = new ArrayList<>();
         Set<ResourceRecord> results = cachedResults.get(question);
         if (results != null) {
-            results.removeIf(ResourceRecord::isExpired);
+            removeExpired(question, results);
             returningList.addAll(results);
         }
 
         if (includeCname && question.getRecordType() != RecordType.CNAME) {
-            results = cachedResults.get(new DNSQuestion(question.getHostName(), RecordType.CNAME, question.getRecordClass()));
+            DNSQuestion cnameQuestion = new DNSQuestion(question.getHostName(), RecordType.CNAME, question.getRecordClass());
+            results = cachedResults.get(cnameQuestion);
             if (results != null) {
-                results.removeIf(ResourceRecord::isExpired);
+                removeExpired(cnameQuestion, results);
                 returningList.addAll(results);
             }
         }
 
+        DNSEvents.cacheLookup(question, returningList.size());
         Collections.shuffle(returningList);
         return returningList;
     }
 
+    private static void removeExpired(DNSQuestion question, Set<ResourceRecord> records) {
+        int size = records.size();
+        if (records.removeIf(ResourceRecord::isExpired))
+            DNSEvents.cacheEviction(question, size - records.size());
+    }
+
     /**
      * Adds a specific resource record to the DNS cache. If the cache already has an equivalent resource record, the
      * existing record is updated if the new one expires after the existing record.
@@ -88,7 +112,8 @@ public class DNSCache {
 //    	System.out.println("cache: " + cachedResults);
         if (record.isExpired()) return;
 
-        Set<ResourceRecord> results = cachedResults.computeIfAbsent(record.getQuestion(), q -> new HashSet<>());
+        Set<ResourceRecord> results = cachedResults.computeIfAbsent(record.getQuestion(),
+                q -> ConcurrentHashMap.newKeySet());
 
         // Find a record for the same question containing the same result
         ResourceRecord oldRecord = results.stream().filter(record::equals).findFirst().orElse(null);
@@ -106,7 +131,7 @@ public class DNSCache {
      */
     public void forEachQuestion(BiConsumer<DNSQuestion, Collection<ResourceRecord>> consumer) {
         cachedResults.forEach((question, records) -> {
-            records.removeIf(ResourceRecord::isExpired);
+            removeExpired(question, records);
             if (!records.isEmpty())
                 consumer.accept(question, records);
         });
@@ -0,0 +1,334 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import jdk.jfr.*;
+
+import java.net.InetAddress;
+
+/**
+ * Java Flight Recorder events emitted by the resolver (DNSLookupService) and the cache (DNSCache), so that a recording
+ * shows which lookups were slow, and why, next to the GC, CPU and I/O activity of the JVM at the same time. Events are
+ * in the "DNS" category and are named ca.ubc.cs317.dnslookup.*, e.g., they can be enabled with
+ * <code>-XX:StartFlightRecording:settings=profile</code> and viewed in JDK Mission Control.
+ * <p>
+ * Lookups and queries are duration events with a threshold, so that only slow ones are recorded by default (the
+ * threshold can be changed in the recording settings). Cache hits and misses happen many times per lookup, so they
+ * are disabled by default. When an event is not enabled, emitting it costs a single check of its event type, and no
+ * event is allocated.
+ * <p>
+ * Requires a JVM with the jdk.jfr API (JDK 11 or later, or JDK 8u262 or later), which is not part of the Java SE 8
+ * API.
+ */
+public final class DNSEvents {
+
+    private DNSEvents() {
+    }
+
+    @Name("ca.ubc.cs317.dnslookup.Lookup")
+    @Label("DNS Lookup")
+    @Description("A lookup of a question, answered from a local zone, from the cache or by querying nameservers")
+    @Category("DNS")
+    @Threshold("20 ms")
+    public static class LookupEvent extends Event {
+        @Label("Host Name")
+        String hostName;
+        @Label("Record Type")
+        String recordType;
+        @Label("Source")
+        String source;
+        @Label("Results")
+        int results;
+    }
+
+    @Name("ca.ubc.cs317.dnslookup.Query")
+    @Label("DNS Query")
+    @Description("A query sent to a nameserver, from the time it is sent to the time its response is received")
+    @Category("DNS")
+    @Threshold("20 ms")
+    @StackTrace(false)
+    public static class QueryEvent extends Event {
+        @Label("Host Name")
+        String hostName;
+        @Label("Record Type")
+        String recordType;
+        @Label("Server")
+        String server;
+        @Label("Transport")
+        String transport;
+        @Label("Attempt")
+        int attempt;
+        @Label("Response Code")
+        int rcode;
+        @Label("Answers")
+        int answers;
+    }
+
+    @Name("ca.ubc.cs317.dnslookup.Timeout")
+    @Label("DNS Query Timeout")
+    @Description("A query to a nameserver that received no response")
+    @Category("DNS")
+    @StackTrace(false)
+    public static class TimeoutEvent extends Event {
+        @Label("Host Name")
+        String hostName;
+        @Label("Record Type")
+        String recordType;
+        @Label("Server")
+        String server;
+        @Label("Attempt")
+        int attempt;
+        @Label("Timeout")
+        @Timespan(Timespan.MILLISECONDS)
+        long timeout;
+    }
+
+    @Name("ca.ubc.cs317.dnslookup.Retry")
+    @Label("DNS Query Retry")
+    @Description("A query sent again to the same nameserver, after a timeout or over TCP after a truncated response")
+    @Category("DNS")
+    @StackTrace(false)
+    public static class RetryEvent extends Event {
+        @Label("Host Name")
+        String hostName;
+        @Label("Record Type")
+        String recordType;
+        @Label("Server")
+        String server;
+        @Label("Attempt")
+        int attempt;
+        @Label("Reason")
+        String reason;
+    }
+
+    @Name("ca.ubc.cs317.dnslookup.Referral")
+    @Label("DNS Referral")
+    @Description("A referral followed to a nameserver of a subzone")
+    @Category("DNS")
+    @StackTrace(false)
+    public static class ReferralEvent extends Event {
+        @Label("Host Name")
+        String hostName;
+        @Label("Record Type")
+        String recordType;
+        @Label("From Server")
+        String fromServer;
+        @Label("To Server")
+        String toServer;
+        @Label("Nameservers")
+        int nameServers;
+        @Label("Depth")
+        int depth;
+    }
+
+    @Name("ca.ubc.cs317.dnslookup.CNameChase")
+    @Label("DNS CNAME Chase")
+    @Description("A CNAME record followed to its target")
+    @Category("DNS")
+    @StackTrace(false)
+    public static class CNameEvent extends Event {
+        @Label("Alias")
+        String alias;
+        @Label("Target")
+        String target;
+        @Label("Record Type")
+        String recordType;
+        @Label("Remaining Levels")
+        int remainingLevels;
+    }
+
+    @Name("ca.ubc.cs317.dnslookup.CacheHit")
+    @Label("DNS Cache Hit")
+    @Category({"DNS", "Cache"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class CacheHitEvent extends Event {
+        @Label("Host Name")
+        String hostName;
+        @Label("Record Type")
+        String recordType;
+        @Label("Records")
+        int records;
+    }
+
+    @Name("ca.ubc.cs317.dnslookup.CacheMiss")
+    @Label("DNS Cache Miss")
+    @Category({"DNS", "Cache"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class CacheMissEvent extends Event {
+        @Label("Host Name")
+        String hostName;
+        @Label("Record Type")
+        String recordType;
+    }
+
+    @Name("ca.ubc.cs317.dnslookup.CacheEviction")
+    @Label("DNS Cache Eviction")
+    @Description("Expired records removed from the cache")
+    @Category({"DNS", "Cache"})
+    @StackTrace(false)
+    public static class CacheEvictionEvent extends Event {
+        @Label("Host Name")
+        String hostName;
+        @Label("Record Type")
+        String recordType;
+        @Label("Records")
+        int records;
+    }
+
+    private static final EventType LOOKUP = EventType.getEventType(LookupEvent.class);
+    private static final EventType QUERY = EventType.getEventType(QueryEvent.class);
+    private static final EventType TIMEOUT = EventType.getEventType(TimeoutEvent.class);
+    private static final EventType RETRY = EventType.getEventType(RetryEvent.class);
+    private static final EventType REFERRAL = EventType.getEventType(ReferralEvent.class);
+    private static final EventType CNAME = EventType.getEventType(CNameEvent.class);
+    private static final EventType CACHE_HIT = EventType.getEventType(CacheHitEvent.class);
+    private static final EventType CACHE_MISS = EventType.getEventType(CacheMissEvent.class);
+    private static final EventType CACHE_EVICTION = EventType.getEventType(CacheEvictionEvent.class);
+
+    /**
+     * Begins a lookup event.
+     *
+     * @return The event, or null if lookup events are not enabled.
+     */
+    static LookupEvent beginLookup() {
+        if (!LOOKUP.isEnabled())
+            return null;
+        LookupEvent event = new LookupEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins a query event.
+     *
+     * @return The event, or null if query events are not enabled.
+     */
+    static QueryEvent beginQuery() {
+        if (!QUERY.isEnabled())
+            return null;
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a lookup event and commits it if it is over its threshold.
+     *
+     * @param event The event returned by beginLookup(), or null if lookup events were not enabled.
+     */
+    static void lookup(LookupEvent event, DNSQuestion question, DNSLookupTrace.Source source, int results) {
+        if (event == null)
+            return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.hostName = question.getHostName();
+            event.recordType = question.getRecordType().name();
+            event.source = source.name();
+            event.results = results;
+            event.commit();
+        }
+    }
+
+    /**
+     * Ends a query event when a response is received, and commits it if it is over its threshold.
+     *
+     * @param event The event returned by beginQuery(), or null if query events were not enabled.
+     */
+    static void query(QueryEvent event, DNSQuestion question, InetAddress server, DNSLookupTrace.Transport transport,
+                      int attempt, DNSMessage response) {
+        if (event == null)
+            return;
+        event.end();
+        if (event.shouldCommit()) {
+            event.hostName = question.getHostName();
+            event.recordType = question.getRecordType().name();
+            event.server = server.getHostAddress();
+            event.transport = transport.name();
+            event.attempt = attempt;
+            event.rcode = response.getRcode();
+            event.answers = response.getANCount();
+            event.commit();
+        }
+    }
+
+    static void timeout(DNSQuestion question, InetAddress server, int attempt, int timeout) {
+        if (TIMEOUT.isEnabled()) {
+            TimeoutEvent event = new TimeoutEvent();
+            event.hostName = question.getHostName();
+            event.recordType = question.getRecordType().name();
+            event.server = server.getHostAddress();
+            event.attempt = attempt;
+            event.timeout = timeout;
+            event.commit();
+        }
+    }
+
+    static void retry(DNSQuestion question, InetAddress server, int attempt, String reason) {
+        if (RETRY.isEnabled()) {
+            RetryEvent event = new RetryEvent();
+            event.hostName = question.getHostName();
+            event.recordType = question.getRecordType().name();
+            event.server = server.getHostAddress();
+            event.attempt = attempt;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+
+    static void referral(DNSQuestion question, InetAddress fromServer, InetAddress toServer, int nameServers,
+                         int depth) {
+        if (REFERRAL.isEnabled()) {
+            ReferralEvent event = new ReferralEvent();
+            event.hostName = question.getHostName();
+            event.recordType = question.getRecordType().name();
+            event.fromServer = fromServer.getHostAddress();
+            event.toServer = toServer.getHostAddress();
+            event.nameServers = nameServers;
+            event.depth = depth;
+            event.commit();
+        }
+    }
+
+    static void cname(DNSQuestion question, String target, int remainingLevels) {
+        if (CNAME.isEnabled()) {
+            CNameEvent event = new CNameEvent();
+            event.alias = question.getHostName();
+            event.target = target;
+            event.recordType = question.getRecordType().name();
+            event.remainingLevels = remainingLevels;
+            event.commit();
+        }
+    }
+
+    /**
+     * Emits a cache hit event if records were found, or a cache miss event otherwise.
+     */
+    static void cacheLookup(DNSQuestion question, int records) {
+        if (records > 0) {
+            if (CACHE_HIT.isEnabled()) {
+                CacheHitEvent event = new CacheHitEvent();
+                event.hostName = question.getHostName();
+                event.recordType = question.getRecordType().name();
+                event.records = records;
+                event.commit();
+            }
+        } else {
+            if (CACHE_MISS.isEnabled()) {
+                CacheMissEvent event = new CacheMissEvent();
+                event.hostName = question.getHostName();
+                event.recordType = question.getRecordType().name();
+                event.commit();
+            }
+        }
+    }
+
+    static void cacheEviction(DNSQuestion question, int records) {
+        if (CACHE_EVICTION.isEnabled()) {
+            CacheEvictionEvent event = new CacheEvictionEvent();
+            event.hostName = question.getHostName();
+            event.recordType = question.getRecordType().name();
+            event.records = records;
+            event.commit();
+        }
+    }
+}
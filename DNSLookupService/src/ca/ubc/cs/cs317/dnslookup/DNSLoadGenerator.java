@@ -0,0 +1,432 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A load generator in the style of dnsperf/resperf. It replays a list of queries (one "name [type]" per line, as in
+ * dnsperf data files) in a loop, either against DNSLookupService instances in this process (one per client thread,
+ * sharing the cache), or against a DNS server listening on a UDP port (e.g., the server started by "serve" in
+ * DNSLookupCUI).
+ * <p>
+ * With a target rate (-q), queries are issued open-loop on a fixed schedule, whatever the response times, and the
+ * latency of each query is measured from the time it was scheduled, so that a slow resolver can't hide its queueing
+ * delay (coordinated omission). Without a target rate, each client sends its next query as soon as the previous one is
+ * answered (closed loop), which measures the maximum throughput for that number of clients.
+ * <p>
+ * Every interval, and at the end, the achieved rate, latency percentiles, lost queries (timeouts when using a server,
+ * empty results when using the lookup service) and the cache hit ratio (lookup service only) are reported.
+ */
+public class DNSLoadGenerator {
+
+    private static final int DEFAULT_CLIENTS = 16;
+    private static final int DEFAULT_DURATION = 10;
+    private static final int DEFAULT_TIMEOUT = 2000;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final List<DNSQuestion> questions;
+    private final List<Target> targets = new ArrayList<>();
+    private final int clients;
+    private final double rate;
+    private final int timeout;
+    private final PrintStream out;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private volatile Interval interval = new Interval();
+
+    /**
+     * Sends queries and waits for their results. Each client thread uses its own target.
+     */
+    public interface Target {
+        /**
+         * Sends a query and waits for its result.
+         *
+         * @param question The question to be sent.
+         * @return The outcome of the query.
+         */
+        Outcome query(DNSQuestion question);
+
+        /**
+         * Returns true if the target can tell which queries were answered from the cache.
+         */
+        default boolean knowsCacheHits() {
+            return true;
+        }
+    }
+
+    public enum Outcome {ANSWERED, CACHE_HIT, LOST}
+
+    /**
+     * Creates a new load generator.
+     *
+     * @param questions The questions to be sent, in order (repeated as many times as needed).
+     * @param targets   Creates the target used by each client thread.
+     * @param clients   The number of client threads, i.e., the maximum number of outstanding queries.
+     * @param rate      The target rate in queries per second, or 0 to send queries as fast as possible.
+     * @param timeout   The timeout of each query used by the targets, in milliseconds.
+     * @param out       Stream where the report is printed.
+     * @throws Exception If a target can't be created.
+     */
+    public DNSLoadGenerator(List<DNSQuestion> questions, Callable<Target> targets, int clients, double rate,
+                            int timeout, PrintStream out) throws Exception {
+        if (questions.isEmpty())
+            throw new IllegalArgumentException("No queries to send");
+        this.questions = questions;
+        this.clients = clients;
+        this.rate = rate;
+        this.timeout = timeout;
+        this.out = out;
+        for (int i = 0; i < clients; i++)
+            this.targets.add(targets.call());
+    }
+
+    /**
+     * Sends queries for a specific duration, reporting results periodically, then prints a summary.
+     *
+     * @param seconds         The duration of the run.
+     * @param intervalSeconds The time between periodic reports.
+     * @return The statistics of the whole run.
+     */
+    public Interval run(int seconds, int intervalSeconds) throws InterruptedException {
+        BlockingQueue<Long> schedule = new LinkedBlockingQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        int[] next = {0};
+        for (int i = 0; i < clients; i++) {
+            Target clientTarget = targets.get(i);
+            Thread thread = new Thread(() -> {
+                while (running.get()) {
+                    long scheduled;
+                    if (rate > 0) {
+                        Long time;
+                        try {
+                            time = schedule.poll(100, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        if (time == null)
+                            continue;
+                        scheduled = time;
+                    } else {
+                        scheduled = System.nanoTime();
+                    }
+                    DNSQuestion question;
+                    synchronized (next) {
+                        question = questions.get(next[0]);
+                        next[0] = (next[0] + 1) % questions.size();
+                    }
+                    Outcome outcome = clientTarget.query(question);
+                    record(outcome, System.nanoTime() - scheduled);
+                }
+            }, "load-client-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        boolean knowsCacheHits = targets.get(0).knowsCacheHits();
+        Interval total = new Interval();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(intervalSeconds);
+        long sent = 0;
+        long now;
+        out.println(Interval.header("time"));
+        while (true) {
+            now = System.nanoTime();
+            if (rate > 0) {
+                // Schedule every query that is due, even if the clients are behind
+                long due = (long) ((now - start) * rate / 1e9);
+                for (; sent < due; sent++)
+                    schedule.add(start + (long) (sent * 1e9 / rate));
+            }
+            if (now >= nextReport || now >= end) {
+                // Clients stop sending before the last interval is reported, so only the queries they are waiting for
+                // at the end of the run are not counted
+                if (now >= end)
+                    running.set(false);
+                Interval finished = interval;
+                interval = new Interval();
+                finished.awaitWriters();
+                double elapsed = (now - (nextReport - TimeUnit.SECONDS.toNanos(intervalSeconds))) / 1e9;
+                out.println(finished.report(String.format("%.0fs", (now - start) / 1e9), elapsed, knowsCacheHits));
+                total.merge(finished);
+                nextReport += TimeUnit.SECONDS.toNanos(intervalSeconds);
+                if (now >= end)
+                    break;
+            }
+            Thread.sleep(rate > 0 ? 1 : 10);
+        }
+        // A client may be waiting for a query, which can take a few timeouts (e.g., retries by the lookup service)
+        for (Thread thread : threads)
+            thread.join(timeout * 3L);
+        // Queries completing after the end of the run are not counted
+        out.println();
+        out.println(Interval.header("total"));
+        out.println(total.report("", (now - start) / 1e9, knowsCacheHits));
+        if (rate > 0 && !schedule.isEmpty())
+            out.println(schedule.size() + " scheduled queries were never sent (too few clients for the target rate)");
+        return total;
+    }
+
+    /**
+     * Records the outcome of a query in the current interval. The reporter may replace the interval at any time; a
+     * client registers as a writer of the interval before recording into it, and records into the new interval instead
+     * if it was replaced in the meantime, so that the reporter can wait for the writers of the interval it replaced
+     * before reporting it (see Interval.awaitWriters()). No query is lost between two intervals.
+     */
+    private void record(Outcome outcome, long latencyNanos) {
+        while (true) {
+            Interval current = interval;
+            current.writers.incrementAndGet();
+            try {
+                if (current == interval) {
+                    current.record(outcome, latencyNanos);
+                    return;
+                }
+            } finally {
+                current.writers.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Statistics for the queries completed during an interval. Latencies are recorded in a LatencyHistogram, so
+     * recording takes no lock and the memory used does not grow with the query rate.
+     */
+    public static class Interval {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder lost = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final AtomicInteger writers = new AtomicInteger();
+
+        public void record(Outcome outcome, long latencyNanos) {
+            if (outcome == Outcome.LOST) {
+                lost.increment();
+                return;
+            }
+            if (outcome == Outcome.CACHE_HIT)
+                hits.increment();
+            latencies.record(latencyNanos);
+        }
+
+        /**
+         * Waits until no client is recording into this interval, once it has been replaced as the current interval.
+         * Recording takes a few nanoseconds, so this spins.
+         */
+        private void awaitWriters() {
+            while (writers.get() > 0)
+                Thread.yield();
+        }
+
+        public void merge(Interval other) {
+            latencies.add(other.latencies);
+            lost.add(other.lost.sum());
+            hits.add(other.hits.sum());
+        }
+
+        public long getCompleted() {
+            return latencies.getCount() + lost.sum();
+        }
+
+        public long getLost() {
+            return lost.sum();
+        }
+
+        /**
+         * Returns a latency percentile, in milliseconds, of the answered queries.
+         *
+         * @param percentile The percentile (e.g., 99.9).
+         * @return The latency, or NaN if no query was answered.
+         */
+        public double getPercentile(double percentile) {
+            if (latencies.getCount() == 0)
+                return Double.NaN;
+            return latencies.getPercentile(percentile) / 1e6;
+        }
+
+        private static String header(String label) {
+            StringBuilder sb = new StringBuilder(String.format("%-6s %9s %9s", label, "completed", "qps"));
+            for (double percentile : PERCENTILES)
+                sb.append(String.format(" %9s", "p" + (percentile == (int) percentile ?
+                        String.valueOf((int) percentile) : String.valueOf(percentile)) + "ms"));
+            return sb.append(String.format(" %7s %6s", "lost", "hit%")).toString();
+        }
+
+        private String report(String label, double seconds, boolean knowsCacheHits) {
+            StringBuilder sb = new StringBuilder(String.format("%-6s %9d %9.1f", label, getCompleted(),
+                    seconds > 0 ? getCompleted() / seconds : 0));
+            for (double percentile : PERCENTILES)
+                sb.append(String.format(" %9.2f", getPercentile(percentile)));
+            sb.append(String.format(" %7d", getLost()));
+            long count = latencies.getCount();
+            if (knowsCacheHits)
+                return sb.append(String.format(" %6.1f", count == 0 ? 0 : 100.0 * hits.sum() / count)).toString();
+            return sb.append(String.format(" %6s", "-")).toString();
+        }
+    }
+
+    /**
+     * A target that resolves questions with a lookup service in this process. A query is a cache hit if its answer
+     * (or a CNAME) is already in the cache or in a local zone when it is sent.
+     */
+    public static class LookupServiceTarget implements Target {
+        private final DNSLookupService service;
+        private final DNSCache cache = DNSCache.getInstance();
+        private final DNSZones zones = DNSZones.getInstance();
+
+        public LookupServiceTarget(DNSLookupService service) {
+            this.service = service;
+        }
+
+        @Override
+        public Outcome query(DNSQuestion question) {
+            DNSZone.Answer answer = zones.lookup(question);
+            boolean hit = (answer != null && answer.isAuthoritative()) || !cache.getCachedResults(question, true).isEmpty();
+            try {
+                if (service.getResultsFollowingCNames(question, DNSLookupCUI.MAX_INDIRECTION_LEVEL).isEmpty())
+                    return Outcome.LOST;
+            } catch (DNSLookupService.CNameIndirectionLimitException e) {
+                return Outcome.LOST;
+            }
+            return hit ? Outcome.CACHE_HIT : Outcome.ANSWERED;
+        }
+    }
+
+    /**
+     * A target that sends questions to a DNS server over UDP, with recursion desired, and waits for a response with the
+     * same ID. A query is lost if no response is received before the timeout. Cache hits are not known.
+     */
+    public static class ServerTarget implements Target {
+        private final DatagramSocket socket;
+        private final InetSocketAddress server;
+        private final Random random = new Random();
+        private final byte[] receiveBuffer = new byte[DNSMessage.MAX_EDNS_MESSAGE_LENGTH];
+
+        public ServerTarget(InetSocketAddress server, int timeout) throws SocketException {
+            this.server = server;
+            this.socket = new DatagramSocket();
+            this.socket.setSoTimeout(timeout);
+        }
+
+        @Override
+        public Outcome query(DNSQuestion question) {
+            short id = (short) random.nextInt(65536);
+            DNSMessage query = new DNSMessage(id);
+            query.setRD(true);
+            query.addQuestion(question);
+            byte[] data = query.getUsed();
+            try {
+                socket.send(new DatagramPacket(data, data.length, server));
+                while (true) {
+                    DatagramPacket packet = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+                    socket.receive(packet);
+                    // Late responses to earlier (lost) queries are ignored
+                    if (packet.getLength() >= 12 && new DNSMessage(receiveBuffer, packet.getLength()).getID() == (id & 0xffff))
+                        return Outcome.ANSWERED;
+                }
+            } catch (IOException e) {
+                return Outcome.LOST;
+            }
+        }
+
+        @Override
+        public boolean knowsCacheHits() {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a query list: one query per line, with a name and an optional type (A by default). Empty lines and lines
+     * starting with # or ; are ignored.
+     *
+     * @param file The name of the file.
+     * @return The questions in the file.
+     * @throws IOException If the file can't be read or has an invalid type.
+     */
+    public static List<DNSQuestion> readQueries(String file) throws IOException {
+        List<DNSQuestion> questions = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith(";"))
+                continue;
+            String[] fields = line.split("\\s+");
+            String name = fields[0].endsWith(".") ? fields[0].substring(0, fields[0].length() - 1) : fields[0];
+            RecordType type;
+            try {
+                type = fields.length > 1 ? RecordType.valueOf(fields[1].toUpperCase()) : RecordType.A;
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid query type in line: " + line);
+            }
+            questions.add(new DNSQuestion(name, type, RecordClass.IN));
+        }
+        return questions;
+    }
+
+    private static void usage() {
+        System.err.println("Usage:");
+        System.err.println("\tjava -cp DNSLookup.jar ca.ubc.cs.cs317.dnslookup.DNSLoadGenerator -d queryFile [options]");
+        System.err.println("Options:");
+        System.err.println("\t-s host[:port]  send queries to a DNS server (default: resolve in this process)");
+        System.err.println("\t-n nameServer   first nameserver when resolving in this process (default: a root server)");
+        System.err.println("\t-q qps          target rate, open loop (default: as fast as possible, closed loop)");
+        System.err.println("\t-c clients      number of clients/outstanding queries (default " + DEFAULT_CLIENTS + ")");
+        System.err.println("\t-l seconds      duration of the run (default " + DEFAULT_DURATION + ")");
+        System.err.println("\t-i seconds      time between reports (default 1)");
+        System.err.println("\t-t ms           timeout for each query (default " + DEFAULT_TIMEOUT + ")");
+        System.exit(1);
+    }
+
+    /**
+     * Main function, called when program is first invoked.
+     *
+     * @param args list of arguments specified in the command line.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("-") || i + 1 == args.length)
+                usage();
+            options.put(args[i], args[i + 1]);
+        }
+        if (!options.containsKey("-d"))
+            usage();
+
+        List<DNSQuestion> questions = readQueries(options.get("-d"));
+        int clients = Integer.parseInt(options.getOrDefault("-c", String.valueOf(DEFAULT_CLIENTS)));
+        double rate = Double.parseDouble(options.getOrDefault("-q", "0"));
+        int duration = Integer.parseInt(options.getOrDefault("-l", String.valueOf(DEFAULT_DURATION)));
+        int reportInterval = Integer.parseInt(options.getOrDefault("-i", "1"));
+        int timeout = Integer.parseInt(options.getOrDefault("-t", String.valueOf(DEFAULT_TIMEOUT)));
+
+        Callable<Target> targets;
+        String server = options.get("-s");
+        if (server != null) {
+            int colon = server.lastIndexOf(':');
+            InetSocketAddress address = colon < 0 || server.indexOf(':') != colon ?
+                    new InetSocketAddress(server, DNSLookupService.DEFAULT_DNS_PORT) :
+                    new InetSocketAddress(server.substring(0, colon), Integer.parseInt(server.substring(colon + 1)));
+            targets = () -> new ServerTarget(address, timeout);
+            System.out.println("Sending " + questions.size() + " queries in a loop to " + address);
+        } else {
+            String nameServer = options.get("-n");
+            targets = () -> {
+                DNSLookupService service = new DNSLookupService(nameServer, DNSVerbosePrinter.NONE);
+                service.setTimeout(timeout);
+                return new LookupServiceTarget(service);
+            };
+            System.out.println("Resolving " + questions.size() + " queries in a loop");
+        }
+
+        DNSLoadGenerator generator = new DNSLoadGenerator(questions, targets, clients, rate, timeout, System.out);
+        generator.run(duration, reportInterval);
+        System.exit(0);
+    }
+}
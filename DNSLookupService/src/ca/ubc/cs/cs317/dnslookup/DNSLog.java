@@ -0,0 +1,246 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.IllegalFormatException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Diagnostic log of the resolver and the message codec. Logging a message never blocks on I/O: messages at or above
+ * the current level are stored, unformatted, in a fixed-size ring buffer, and a background thread formats them and
+ * prints them on the console (if echo is on; it is off by default). The most recent messages can be read back at any
+ * time, whether they were printed or not. Messages with the same format are limited to MAX_PER_SECOND per second; the
+ * number of messages suppressed is reported with the next one that is logged.
+ * <p>
+ * Arguments are formatted after the call returns, in another thread, so they must not be modified afterwards
+ * (strings, numbers and addresses are safe).
+ */
+public final class DNSLog {
+
+    public enum Level {DEBUG, INFO, WARN, ERROR, OFF}
+
+    public static final int CAPACITY = 1024;
+    public static final int MAX_PER_SECOND = 10;
+    private static final long WRITER_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final AtomicReferenceArray<Entry> ring = new AtomicReferenceArray<>(CAPACITY);
+    private static final AtomicLong next = new AtomicLong();
+    private static final Map<String, Limit> limits = new ConcurrentHashMap<>();
+    private static volatile Level level = Level.INFO;
+    private static volatile boolean echo;
+    private static volatile PrintStream out = System.err;
+    private static volatile long printed;
+    private static Thread writer;
+
+    private DNSLog() {
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Sets the lowest level of the messages that are logged. Messages below it are discarded without being stored.
+     *
+     * @param level The level, or OFF to discard all messages.
+     */
+    public static void setLevel(Level level) {
+        DNSLog.level = level;
+    }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel != Level.OFF && messageLevel.ordinal() >= level.ordinal();
+    }
+
+    public static boolean isEcho() {
+        return echo;
+    }
+
+    /**
+     * Sets whether logged messages are printed on the console. When echo is off (the default, and what server and bulk
+     * modes need), messages are only kept in the ring buffer. The interactive programs turn it on.
+     *
+     * @param echo True to print messages.
+     */
+    public static void setEcho(boolean echo) {
+        DNSLog.echo = echo;
+    }
+
+    /**
+     * Sets the stream where messages are printed when echo is on (System.err by default).
+     *
+     * @param out The stream.
+     */
+    public static void setOutput(PrintStream out) {
+        DNSLog.out = out;
+    }
+
+    public static void debug(String format, Object... args) {
+        log(Level.DEBUG, format, args);
+    }
+
+    public static void info(String format, Object... args) {
+        log(Level.INFO, format, args);
+    }
+
+    public static void warn(String format, Object... args) {
+        log(Level.WARN, format, args);
+    }
+
+    public static void error(String format, Object... args) {
+        log(Level.ERROR, format, args);
+    }
+
+    /**
+     * Logs a message, unless its level is disabled or too many messages with the same format have been logged in the
+     * last second.
+     *
+     * @param messageLevel The level of the message.
+     * @param format       The message, as a format string (see String.format).
+     * @param args         The arguments of the format string.
+     */
+    public static void log(Level messageLevel, String format, Object... args) {
+        if (!isEnabled(messageLevel))
+            return;
+        int suppressed = limits.computeIfAbsent(format, f -> new Limit()).acquire(System.nanoTime());
+        if (suppressed < 0)
+            return;
+        long sequence = next.getAndIncrement();
+        ring.set((int) (sequence % CAPACITY), new Entry(sequence, messageLevel, format, args, suppressed));
+        if (echo && writer == null)
+            startWriter();
+    }
+
+    /**
+     * Returns the most recent messages in the ring buffer, formatted.
+     *
+     * @param count The maximum number of messages.
+     * @return The messages, oldest first.
+     */
+    public static List<String> recent(int count) {
+        long end = next.get();
+        List<String> messages = new ArrayList<>();
+        for (long sequence = Math.max(0, end - Math.min(count, CAPACITY)); sequence < end; sequence++) {
+            Entry entry = ring.get((int) (sequence % CAPACITY));
+            if (entry != null && entry.sequence == sequence)
+                messages.add(entry.toString());
+        }
+        return messages;
+    }
+
+    /**
+     * Waits until all messages logged so far have been printed (if echo is on), or until a timeout.
+     *
+     * @param timeoutMillis The maximum time to wait.
+     */
+    public static void flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long end = next.get();
+        while (echo && writer != null && printed < end && System.nanoTime() < deadline)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static synchronized void startWriter() {
+        if (writer != null)
+            return;
+        writer = new Thread(DNSLog::write, "dns-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Prints the messages in the ring buffer, in order, as they are logged. Messages overwritten before they could be
+     * printed are counted and reported.
+     */
+    private static void write() {
+        long sequence = 0;
+        while (true) {
+            long end = next.get();
+            if (end - sequence > CAPACITY) {
+                if (echo)
+                    out.println("[" + (end - CAPACITY - sequence) + " log messages dropped]");
+                sequence = end - CAPACITY;
+            }
+            while (sequence < end) {
+                Entry entry = ring.get((int) (sequence % CAPACITY));
+                // The entry may not be stored yet, or may already have been overwritten by a newer one
+                if (entry == null || entry.sequence < sequence)
+                    break;
+                if (entry.sequence == sequence && echo)
+                    out.println(entry);
+                sequence++;
+            }
+            printed = sequence;
+            if (sequence == next.get())
+                LockSupport.parkNanos(WRITER_PERIOD_NANOS);
+            else
+                Thread.yield();
+        }
+    }
+
+    private static final class Entry {
+        private final long sequence;
+        private final long time = System.currentTimeMillis();
+        private final String thread = Thread.currentThread().getName();
+        private final Level level;
+        private final String format;
+        private final Object[] args;
+        private final int suppressed;
+
+        private Entry(long sequence, Level level, String format, Object[] args, int suppressed) {
+            this.sequence = sequence;
+            this.level = level;
+            this.format = format;
+            this.args = args;
+            this.suppressed = suppressed;
+        }
+
+        @Override
+        public String toString() {
+            String message;
+            try {
+                message = args.length == 0 ? format : String.format(format, args);
+            } catch (IllegalFormatException e) {
+                message = format;
+            }
+            return new SimpleDateFormat("HH:mm:ss.SSS").format(new Date(time)) + " " + level + " [" + thread + "] "
+                    + message + (suppressed > 0 ? " (" + suppressed + " similar messages suppressed)" : "");
+        }
+    }
+
+    /**
+     * The number of messages with the same format logged in the current second.
+     */
+    private static final class Limit {
+        private long second = -1;
+        private int count;
+        private int suppressed;
+
+        /**
+         * Returns -1 if the message must be suppressed, or else the number of messages suppressed since the last one
+         * that was logged.
+         */
+        private synchronized int acquire(long nanos) {
+            long now = TimeUnit.NANOSECONDS.toSeconds(nanos);
+            if (now != second) {
+                second = now;
+                count = 0;
+            }
+            if (++count > MAX_PER_SECOND) {
+                suppressed++;
+                return -1;
+            }
+            int result = suppressed;
+            suppressed = 0;
+            return result;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package ca.ubc.cs.cs317.dnslookup;
 
 import java.io.Console;
+import java.io.IOException;
 import java.net.*;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.*;
 
 public class DNSLookupCUI implements DNSVerbosePrinter {
@@ -10,7 +13,12 @@ public class DNSLookupCUI implements DNSVerbosePrinter {
 
     private static boolean verboseTracing = false;
     private static DNSLookupService lookupService;
+    private static DNSServer server;
+    private static final DNSSlowLookupCollector slowLookups = new DNSSlowLookupCollector();
+    private static final DNSLookupMetrics metrics = new DNSLookupMetrics();
+    private static boolean tracing = false;
     private static final DNSCache cache = DNSCache.getInstance();
+    private static final DNSZones zones = DNSZones.getInstance();
 
     /**
      * Main function, called when program is first invoked.
@@ -36,7 +44,10 @@ public class DNSLookupCUI implements DNSVerbosePrinter {
             e.printStackTrace();
             System.exit(1);
         }
+        lookupService.setListener(metrics);
         System.out.println("Nameserver is: " + lookupService.getNameServer());
+        // Warnings are shown as they happen while the commands are typed in
+        DNSLog.setEcho(true);
 
         Scanner in = new Scanner(System.in);
         Console console = System.console();
@@ -82,6 +93,21 @@ public class DNSLookupCUI implements DNSVerbosePrinter {
                             "\tserver <IP> (for an explicit nameserver)\n" +
                             "\tserver root (for a random root nameserver)");
                 }
+            } else if (commandArgs[0].equalsIgnoreCase("edns")) {
+                // EDNS: Change the advertised UDP payload size, or disable EDNS0
+                if (commandArgs.length == 2) {
+                    try {
+                        lookupService.setEdnsPayloadSize(commandArgs[1].equalsIgnoreCase("off") ? 0 :
+                                Integer.parseInt(commandArgs[1]));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Invalid payload size (" + e.getMessage() + ").");
+                    }
+                } else if (commandArgs.length != 1) {
+                    System.err.println("Invalid call. Format:\n\tedns [size|off]");
+                    continue;
+                }
+                int payloadSize = lookupService.getEdnsPayloadSize();
+                System.out.println("EDNS0 is now: " + (payloadSize > 0 ? payloadSize + " bytes" : "OFF"));
             } else if (commandArgs[0].equalsIgnoreCase("verbose")) {
                 // VERBOSE: Turn verbose setting on or off
                 if (commandArgs.length == 2) {
@@ -97,6 +123,65 @@ public class DNSLookupCUI implements DNSVerbosePrinter {
                     verboseTracing = !verboseTracing;
                 }
                 System.out.println("Verbose tracing is now: " + (verboseTracing ? "ON" : "OFF"));
+            } else if (commandArgs[0].equalsIgnoreCase("trace")) {
+                // TRACE: Record lookups with the time taken by each query, and show the slowest ones
+                if (commandArgs.length == 2 && commandArgs[1].equalsIgnoreCase("on")) {
+                    tracing = true;
+                    lookupService.setListener(DNSLookupListener.of(metrics, slowLookups));
+                } else if (commandArgs.length == 2 && commandArgs[1].equalsIgnoreCase("off")) {
+                    tracing = false;
+                    lookupService.setListener(metrics);
+                } else if (commandArgs.length == 2 && commandArgs[1].equalsIgnoreCase("clear")) {
+                    slowLookups.clear();
+                } else if ((commandArgs.length == 2 || commandArgs.length == 3)
+                        && commandArgs[1].equalsIgnoreCase("slow")) {
+                    try {
+                        slowLookups.dump(System.out, commandArgs.length == 3 ? Integer.parseInt(commandArgs[2]) : 10);
+                    } catch (NumberFormatException e) {
+                        System.err.println("Invalid number (" + e.getMessage() + ").");
+                    }
+                    continue;
+                } else {
+                    System.err.println("Invalid call. Format:\n\ttrace on|off|clear\n\ttrace slow [count]");
+                    continue;
+                }
+                System.out.println("Tracing is now: " + (tracing ? "ON" : "OFF")
+                        + " (" + slowLookups.getCount() + " lookups recorded)");
+            } else if (commandArgs[0].equalsIgnoreCase("stats")) {
+                // STATS: Show the distributions of resolution time, nameserver RTT and queries per lookup
+                if (commandArgs.length == 1)
+                    System.out.println(metrics);
+                else if (commandArgs.length == 2 && commandArgs[1].equalsIgnoreCase("json"))
+                    System.out.println(metrics.toJson());
+                else if (commandArgs.length == 2 && commandArgs[1].equalsIgnoreCase("reset"))
+                    metrics.reset();
+                else
+                    System.err.println("Invalid call. Format:\n\tstats [json|reset]");
+            } else if (commandArgs[0].equalsIgnoreCase("log")) {
+                // LOG: Show recent log messages, or change the log level or whether messages are printed
+                if (commandArgs.length == 1 || (commandArgs.length <= 3 && commandArgs[1].equalsIgnoreCase("show"))) {
+                    try {
+                        DNSLog.recent(commandArgs.length == 3 ? Integer.parseInt(commandArgs[2]) : 20)
+                                .forEach(System.out::println);
+                    } catch (NumberFormatException e) {
+                        System.err.println("Invalid number (" + e.getMessage() + ").");
+                    }
+                    continue;
+                } else if (commandArgs.length == 3 && commandArgs[1].equalsIgnoreCase("level")) {
+                    try {
+                        DNSLog.setLevel(DNSLog.Level.valueOf(commandArgs[2].toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Invalid level. Must be one of:\n\t" + Arrays.toString(DNSLog.Level.values()));
+                        continue;
+                    }
+                } else if (commandArgs.length == 3 && commandArgs[1].equalsIgnoreCase("echo")
+                        && (commandArgs[2].equalsIgnoreCase("on") || commandArgs[2].equalsIgnoreCase("off"))) {
+                    DNSLog.setEcho(commandArgs[2].equalsIgnoreCase("on"));
+                } else {
+                    System.err.println("Invalid call. Format:\n\tlog [show [count]]\n\tlog level level\n\tlog echo on|off");
+                    continue;
+                }
+                System.out.println("Log level is now: " + DNSLog.getLevel() + ", echo " + (DNSLog.isEcho() ? "ON" : "OFF"));
             } else if (commandArgs[0].equalsIgnoreCase("lookup") ||
                     commandArgs[0].equalsIgnoreCase("l")) {
                 // LOOKUP: Find and print all results associated to a name.
@@ -107,7 +192,7 @@ public class DNSLookupCUI implements DNSVerbosePrinter {
                     try {
                         type = RecordType.valueOf(commandArgs[2].toUpperCase());
                     } catch (IllegalArgumentException ex) {
-                        System.err.println("Invalid query type. Must be one of:\n\tA, AAAA, NS, MX, CNAME");
+                        System.err.println("Invalid query type. Must be one of:\n\tA, AAAA, NS, MX, CNAME, PTR");
                         continue;
                     }
                 else {
@@ -115,6 +200,46 @@ public class DNSLookupCUI implements DNSVerbosePrinter {
                     continue;
                 }
                 findAndPrintResults(commandArgs[1], type);
+            } else if (commandArgs[0].equalsIgnoreCase("serve")) {
+                // SERVE: Answer queries from stub resolvers on a UDP port
+                if (commandArgs.length == 2) {
+                    startServer(commandArgs[1], String.valueOf(Runtime.getRuntime().availableProcessors()));
+                } else if (commandArgs.length == 3) {
+                    startServer(commandArgs[1], commandArgs[2]);
+                } else {
+                    System.err.println("Invalid call. Format:\n\tserve port [workers]");
+                }
+            } else if (commandArgs[0].equalsIgnoreCase("zone")) {
+                // ZONE: Load, list or remove local authoritative zones
+                if ((commandArgs.length == 3 || commandArgs.length == 4) && commandArgs[1].equalsIgnoreCase("load")) {
+                    loadZone(commandArgs[2], commandArgs.length == 4 ? commandArgs[3] : null);
+                } else if (commandArgs.length == 3 && commandArgs[1].equalsIgnoreCase("remove")) {
+                    if (zones.remove(commandArgs[2]) == null)
+                        System.err.println("No zone " + commandArgs[2]);
+                } else if (commandArgs.length == 2 && commandArgs[1].equalsIgnoreCase("list")) {
+                    zones.getZones().forEach(System.out::println);
+                } else {
+                    System.err.println("Invalid call. Format:\n\tzone load file [origin]\n\tzone list\n\tzone remove origin");
+                }
+            } else if (commandArgs[0].equalsIgnoreCase("reverse")) {
+                // REVERSE: Find the names of an IP address
+                if (commandArgs.length == 2) {
+                    InetAddress address = DNSReverseLookup.parseAddress(commandArgs[1]);
+                    if (address == null)
+                        System.err.println("Invalid IP address " + commandArgs[1]);
+                    else
+                        findAndPrintResults(DNSReverseLookup.reverseName(address), RecordType.PTR);
+                } else {
+                    System.err.println("Invalid call. Format:\n\treverse IP");
+                }
+            } else if (commandArgs[0].equalsIgnoreCase("reverse-bulk")) {
+                // REVERSE-BULK: Replace the addresses at the start of each line of a log file with their names
+                if (commandArgs.length == 3 || commandArgs.length == 4) {
+                    enrichLog(commandArgs[1], commandArgs[2],
+                            commandArgs.length == 4 ? commandArgs[3] : String.valueOf(DNSReverseLookup.DEFAULT_THREADS));
+                } else {
+                    System.err.println("Invalid call. Format:\n\treverse-bulk inputFile outputFile [threads]");
+                }
             } else if (commandArgs[0].equalsIgnoreCase("dump")) {
                 // DUMP: Print all results still cached
                 cache.forEachQuestion(DNSLookupCUI::printResults);
@@ -125,7 +250,15 @@ public class DNSLookupCUI implements DNSVerbosePrinter {
                 System.err.println("Invalid command. Valid commands are:");
                 System.err.println("\tlookup fqdn [type]");
                 System.err.println("\tverbose on|off");
+                System.err.println("\ttrace on|off|clear | trace slow [count]");
+                System.err.println("\tstats [json|reset]");
+                System.err.println("\tlog [show [count]] | log level level | log echo on|off");
                 System.err.println("\tserver IP");
+                System.err.println("\tedns [size|off]");
+                System.err.println("\tserve port [workers]");
+                System.err.println("\tzone load file [origin] | zone list | zone remove origin");
+                System.err.println("\treverse IP");
+                System.err.println("\treverse-bulk inputFile outputFile [threads]");
                 System.err.println("\tdump");
                 System.err.println("\treset");
                 System.err.println("\tquit");
@@ -133,10 +266,92 @@ public class DNSLookupCUI implements DNSVerbosePrinter {
 
         } while (true);
 
+        if (server != null) server.close();
         lookupService.close();
         System.out.println("Goodbye!");
     }
 
+    /**
+     * Loads a zone from a master file and adds it to the local zones, replacing any zone with the same origin.
+     *
+     * @param file   Name of the master file.
+     * @param origin Initial origin for relative names, or null if the file sets its own origin.
+     */
+    private static void loadZone(String file, String origin) {
+        try {
+            DNSZone zone = DNSZoneFileReader.read(Paths.get(file), origin);
+            zones.add(zone);
+            System.out.println("Loaded zone " + zone);
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("Can't load zone (" + e.getMessage() + ").");
+        }
+    }
+
+    /**
+     * Starts a DNS server in separate threads, answering queries from the shared cache or by resolving them starting
+     * at the current nameserver. Only one server can run at a time.
+     *
+     * @param port    UDP port number to listen on.
+     * @param workers Number of threads receiving queries and answering them from the cache.
+     */
+    private static void startServer(String port, String workers) {
+        if (server != null) {
+            System.err.println("Server is already listening on port " + server.getPort());
+            return;
+        }
+        try {
+            server = new DNSServer(Integer.parseInt(port), Integer.parseInt(workers), DNSServer.DEFAULT_RESOLVERS,
+                    DNSLookupCUI::newLookupService);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number (" + e.getMessage() + ").");
+            return;
+        } catch (IOException e) {
+            System.err.println("Can't start server (" + e.getMessage() + ").");
+            return;
+        }
+        server.start();
+        // Log messages of the server's lookups would interleave with the prompt; they can be seen with "log show"
+        DNSLog.setEcho(false);
+        System.out.println("Server is listening on port " + server.getPort() + " with " + workers + " workers and "
+                + server.getSocketCount() + " sockets (log echo is now OFF)");
+    }
+
+    /**
+     * Replaces the IP addresses at the start of the lines of a log file with their names, looking up many addresses at
+     * the same time.
+     *
+     * @param input   Name of the log file.
+     * @param output  Name of the file where the enriched log is written.
+     * @param threads Number of lookups done at the same time.
+     */
+    private static void enrichLog(String input, String output, String threads) {
+        boolean echo = DNSLog.isEcho();
+        DNSLog.setEcho(false);
+        try (DNSReverseLookup reverseLookup =
+                     new DNSReverseLookup(Integer.parseInt(threads), DNSLookupCUI::newLookupService)) {
+            System.out.println(reverseLookup.enrichLog(Paths.get(input), Paths.get(output)));
+        } catch (IOException | InvalidPathException e) {
+            System.err.println("Can't enrich log (" + e.getMessage() + ").");
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid number of threads (" + e.getMessage() + ").");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            DNSLog.setEcho(echo);
+        }
+    }
+
+    /**
+     * Creates a lookup service with the same nameserver, EDNS0 payload size and listener as the interactive one, for
+     * use in other threads. Its responses are not printed, even when verbose tracing is on.
+     */
+    private static DNSLookupService newLookupService() throws SocketException, UnknownHostException {
+        DNSLookupService service = new DNSLookupService(lookupService.getNameServer(), DNSVerbosePrinter.NONE);
+        service.setEdnsPayloadSize(lookupService.getEdnsPayloadSize());
+        service.setListener(lookupService.getListener());
+        return service;
+    }
+
     public static void setVerboseTracing(boolean onoff) {
         verboseTracing = onoff;
     }
@@ -0,0 +1,77 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives structured events about the lookups done by a lookup service (see DNSLookupService.setListener). Unlike
+ * DNSVerbosePrinter, which prints the contents of every response, a listener receives the timing of every query sent
+ * and the way each lookup was answered, so that slow lookups can be found and explained.
+ * <p>
+ * Events are delivered on the thread doing the lookup, so listeners must be fast and, if shared by several lookup
+ * services, thread-safe. When no listener is set, no events are created.
+ */
+public interface DNSLookupListener {
+
+    /**
+     * Called after each query sent to a nameserver is answered or times out.
+     *
+     * @param trace The lookup the query is part of, with the hops completed so far.
+     * @param hop   The query.
+     */
+    default void hopCompleted(DNSLookupTrace trace, DNSLookupTrace.Hop hop) {
+    }
+
+    /**
+     * Called when a lookup is complete, whether it was answered from a local zone, from the cache or by querying
+     * nameservers.
+     *
+     * @param trace The complete lookup.
+     */
+    void lookupCompleted(DNSLookupTrace trace);
+
+    /**
+     * Called when a call to DNSLookupService.getResultsFollowingCNames is complete, after all the lookups (one per
+     * CNAME followed) it needed.
+     *
+     * @param question     The question.
+     * @param results      The number of records found.
+     * @param elapsedNanos The time taken to find them.
+     */
+    default void resolutionCompleted(DNSQuestion question, int results, long elapsedNanos) {
+    }
+
+    /**
+     * Returns a listener that sends every event to several listeners, in order.
+     *
+     * @param listeners The listeners; null elements are ignored.
+     * @return The combined listener, or null if there are no listeners.
+     */
+    static DNSLookupListener of(DNSLookupListener... listeners) {
+        List<DNSLookupListener> all = new ArrayList<>();
+        for (DNSLookupListener listener : listeners)
+            if (listener != null)
+                all.add(listener);
+        if (all.size() <= 1)
+            return all.isEmpty() ? null : all.get(0);
+        return new DNSLookupListener() {
+            @Override
+            public void hopCompleted(DNSLookupTrace trace, DNSLookupTrace.Hop hop) {
+                for (DNSLookupListener listener : all)
+                    listener.hopCompleted(trace, hop);
+            }
+
+            @Override
+            public void lookupCompleted(DNSLookupTrace trace) {
+                for (DNSLookupListener listener : all)
+                    listener.lookupCompleted(trace);
+            }
+
+            @Override
+            public void resolutionCompleted(DNSQuestion question, int results, long elapsedNanos) {
+                for (DNSLookupListener listener : all)
+                    listener.resolutionCompleted(question, results, elapsedNanos);
+            }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.net.InetAddress;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lookup listener that records latency distributions: the end-to-end time of every resolution (a call to
+ * getResultsFollowingCNames), the round-trip time of every query answered by a nameserver, overall and for each
+ * nameserver, and the number of queries needed by every lookup that missed the cache. A single instance can be shared
+ * by many lookup services.
+ */
+public class DNSLookupMetrics implements DNSLookupListener {
+
+    /**
+     * The maximum number of nameservers with their own RTT histogram. Queries to other nameservers are only recorded
+     * in the overall RTT histogram.
+     */
+    public static final int MAX_UPSTREAMS = 256;
+
+    private final LatencyHistogram resolution = new LatencyHistogram();
+    private final LatencyHistogram rtt = new LatencyHistogram();
+    private final LatencyHistogram hopsPerLookup = new LatencyHistogram();
+    private final Map<InetAddress, LatencyHistogram> upstreamRtt = new ConcurrentHashMap<>();
+    private final Map<DNSLookupTrace.Source, LongAdder> lookups = new EnumMap<>(DNSLookupTrace.Source.class);
+    private final LongAdder timeouts = new LongAdder();
+
+    public DNSLookupMetrics() {
+        for (DNSLookupTrace.Source source : DNSLookupTrace.Source.values())
+            lookups.put(source, new LongAdder());
+    }
+
+    @Override
+    public void hopCompleted(DNSLookupTrace trace, DNSLookupTrace.Hop hop) {
+        if (hop.isTimeout()) {
+            timeouts.increment();
+            return;
+        }
+        rtt.record(hop.getRttNanos());
+        LatencyHistogram histogram = upstreamRtt.get(hop.getServer());
+        if (histogram == null && upstreamRtt.size() < MAX_UPSTREAMS)
+            histogram = upstreamRtt.computeIfAbsent(hop.getServer(), server -> new LatencyHistogram());
+        if (histogram != null)
+            histogram.record(hop.getRttNanos());
+    }
+
+    @Override
+    public void lookupCompleted(DNSLookupTrace trace) {
+        lookups.get(trace.getSource()).increment();
+        if (trace.getSource() == DNSLookupTrace.Source.NETWORK)
+            hopsPerLookup.record(trace.getHops().size());
+    }
+
+    @Override
+    public void resolutionCompleted(DNSQuestion question, int results, long elapsedNanos) {
+        resolution.record(elapsedNanos);
+    }
+
+    /**
+     * Returns the distribution of the end-to-end time of resolutions, in nanoseconds.
+     */
+    public LatencyHistogram getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Returns the distribution of the round-trip time of answered queries, in nanoseconds.
+     */
+    public LatencyHistogram getRtt() {
+        return rtt;
+    }
+
+    /**
+     * Returns the distribution of the number of queries sent by lookups that missed the cache.
+     */
+    public LatencyHistogram getHopsPerLookup() {
+        return hopsPerLookup;
+    }
+
+    /**
+     * Returns the distribution of the round-trip time of answered queries to a nameserver, in nanoseconds.
+     *
+     * @param server The nameserver's address.
+     * @return The distribution, or null if no query to the server was recorded.
+     */
+    public LatencyHistogram getRtt(InetAddress server) {
+        return upstreamRtt.get(server);
+    }
+
+    public long getLookups(DNSLookupTrace.Source source) {
+        return lookups.get(source).sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset() {
+        resolution.reset();
+        rtt.reset();
+        hopsPerLookup.reset();
+        upstreamRtt.clear();
+        lookups.values().forEach(LongAdder::reset);
+        timeouts.reset();
+    }
+
+    /**
+     * Returns a human-readable summary, with times in milliseconds.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("%-24s %8s %9s %9s %9s %9s %9s\n",
+                "", "count", "mean", "p50", "p90", "p99", "max"));
+        sb.append(row("resolution (ms)", resolution, 1e6));
+        sb.append(row("rtt (ms)", rtt, 1e6));
+        sb.append(row("hops per lookup", hopsPerLookup, 1));
+        for (Map.Entry<String, LatencyHistogram> upstream : sortedUpstreams().entrySet())
+            sb.append(row("  " + upstream.getKey(), upstream.getValue(), 1e6));
+        sb.append(String.format("lookups: %d zone, %d cache hits, %d cache misses; %d timeouts",
+                getLookups(DNSLookupTrace.Source.ZONE), getLookups(DNSLookupTrace.Source.CACHE),
+                getLookups(DNSLookupTrace.Source.NETWORK), getTimeouts()));
+        return sb.toString();
+    }
+
+    private static String row(String label, LatencyHistogram histogram, double unit) {
+        return String.format("%-24s %8d %9.2f %9.2f %9.2f %9.2f %9.2f\n", label, histogram.getCount(),
+                histogram.getCount() == 0 ? 0 : histogram.getMean() / unit, histogram.getPercentile(50) / unit,
+                histogram.getPercentile(90) / unit, histogram.getPercentile(99) / unit, histogram.getMax() / unit);
+    }
+
+    /**
+     * Returns all the metrics as a JSON object, with times in milliseconds.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        sb.append("\"resolution_ms\": ").append(resolution.toJson(1e6));
+        sb.append(", \"rtt_ms\": ").append(rtt.toJson(1e6));
+        sb.append(", \"hops_per_lookup\": ").append(hopsPerLookup.toJson(1));
+        sb.append(", \"upstream_rtt_ms\": {");
+        String separator = "";
+        for (Map.Entry<String, LatencyHistogram> upstream : sortedUpstreams().entrySet()) {
+            sb.append(separator).append('"').append(upstream.getKey()).append("\": ")
+                    .append(upstream.getValue().toJson(1e6));
+            separator = ", ";
+        }
+        sb.append("}, \"lookups\": {");
+        separator = "";
+        for (DNSLookupTrace.Source source : DNSLookupTrace.Source.values()) {
+            sb.append(separator).append('"').append(source.name().toLowerCase()).append("\": ")
+                    .append(getLookups(source));
+            separator = ", ";
+        }
+        return sb.append("}, \"timeouts\": ").append(getTimeouts()).append('}').toString();
+    }
+
+    private Map<String, LatencyHistogram> sortedUpstreams() {
+        Map<String, LatencyHistogram> sorted = new TreeMap<>();
+        upstreamRtt.forEach((server, histogram) -> sorted.put(server.getHostAddress(), histogram));
+        return sorted;
+    }
+}
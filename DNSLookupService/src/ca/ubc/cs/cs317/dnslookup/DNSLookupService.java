@@ -12,12 +12,21 @@ public class DNSLookupService {
 	private static final int MAX_INDIRECTION_LEVEL_NS = 10;
 	private static final int MAX_QUERY_ATTEMPTS = 3;
 	protected static final int SO_TIMEOUT = 5000;
+	public static final int DEFAULT_EDNS_PAYLOAD_SIZE = 1232;
 
 	private final DNSCache cache = DNSCache.getInstance();
+	private final DNSZones zones = DNSZones.getInstance();
+	private final DNSTCPConnectionPool tcpPool = DNSTCPConnectionPool.getInstance();
 	private final Random random = new SecureRandom();
 	private final DNSVerbosePrinter verbose;
 	private final DatagramSocket socket;
 	private InetAddress nameServer;
+	private int ednsPayloadSize = DEFAULT_EDNS_PAYLOAD_SIZE;
+	private int port = DEFAULT_DNS_PORT;
+	private int timeout = SO_TIMEOUT;
+	private boolean startAtClosestDelegation;
+	private volatile DNSLookupListener listener;
+	private DNSLookupTrace trace;
 
 	/**
 	 * Creates a new lookup service. Also initializes the datagram socket object
@@ -65,6 +74,125 @@ public class DNSLookupService {
 		this.nameServer = InetAddress.getByName(nameServer);
 	}
 
+	/**
+	 * Returns the UDP payload size advertised in queries using EDNS0, or 0 if EDNS0
+	 * is disabled.
+	 *
+	 * @return The advertised UDP payload size in bytes, or 0 if EDNS0 is disabled.
+	 */
+	public int getEdnsPayloadSize() {
+		return ednsPayloadSize;
+	}
+
+	/**
+	 * Updates the UDP payload size advertised in all future queries using an EDNS0
+	 * OPT record. Responses up to this size can be received without truncation.
+	 * Common values are 1232 (safe from IP fragmentation) and 4096.
+	 *
+	 * @param ednsPayloadSize The payload size in bytes, between 512 and 65535, or 0
+	 *                        to disable EDNS0 and send plain 512-byte queries.
+	 * @throws IllegalArgumentException If the payload size is out of range.
+	 */
+	public void setEdnsPayloadSize(int ednsPayloadSize) {
+		if (ednsPayloadSize != 0 && (ednsPayloadSize < DNSMessage.MAX_DNS_MESSAGE_LENGTH
+				|| ednsPayloadSize > DNSMessage.MAX_EDNS_MESSAGE_LENGTH))
+			throw new IllegalArgumentException("EDNS0 payload size must be 0 or between "
+					+ DNSMessage.MAX_DNS_MESSAGE_LENGTH + " and " + DNSMessage.MAX_EDNS_MESSAGE_LENGTH);
+		this.ednsPayloadSize = ednsPayloadSize;
+	}
+
+	/**
+	 * Returns the port used to contact nameservers.
+	 *
+	 * @return The UDP and TCP port number.
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Updates the port used to contact all nameservers in future queries. Every
+	 * nameserver is expected to listen on this port, which is only useful when
+	 * all nameservers are simulated (e.g., on loopback addresses in tests).
+	 *
+	 * @param port The UDP and TCP port number (DEFAULT_DNS_PORT for real
+	 *             nameservers).
+	 * @throws IllegalArgumentException If the port is out of range.
+	 */
+	public void setPort(int port) {
+		if (port <= 0 || port > 65535)
+			throw new IllegalArgumentException("Port must be between 1 and 65535");
+		this.port = port;
+	}
+
+	/**
+	 * Returns the time to wait for each response before a query is sent again.
+	 *
+	 * @return The timeout in milliseconds.
+	 */
+	public int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Updates the time to wait for each response before a query is sent again
+	 * (at most MAX_QUERY_ATTEMPTS times), or before a query over TCP fails.
+	 *
+	 * @param timeout The timeout in milliseconds (SO_TIMEOUT by default).
+	 * @throws IllegalArgumentException If the timeout is not positive.
+	 */
+	public void setTimeout(int timeout) {
+		if (timeout <= 0)
+			throw new IllegalArgumentException("Timeout must be positive");
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns whether iterative queries start at the closest cached delegation
+	 * instead of the nameserver.
+	 *
+	 * @return True if queries start at the closest cached delegation.
+	 */
+	public boolean isStartAtClosestDelegation() {
+		return startAtClosestDelegation;
+	}
+
+	/**
+	 * Updates where future iterative queries start. By default, every query not
+	 * answered from a local zone or the cache starts at the nameserver (see
+	 * setNameServer). When enabled, queries start instead at a nameserver of the
+	 * closest enclosing zone whose delegation is in the cache (see
+	 * findClosestNameServer), which saves most queries when resolving many names
+	 * in the same zones, e.g., in bulk reverse lookups.
+	 *
+	 * @param startAtClosestDelegation True to start at the closest cached
+	 *                                 delegation, false to start at the
+	 *                                 nameserver.
+	 */
+	public void setStartAtClosestDelegation(boolean startAtClosestDelegation) {
+		this.startAtClosestDelegation = startAtClosestDelegation;
+	}
+
+	/**
+	 * Returns the listener receiving events about lookups.
+	 *
+	 * @return The listener, or null if there is none.
+	 */
+	public DNSLookupListener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Sets the listener receiving events about every future lookup and every
+	 * query sent to a nameserver. When there is no listener, no events are
+	 * created.
+	 *
+	 * @param listener The listener, or null to stop sending events.
+	 */
+	public void setListener(DNSLookupListener listener) {
+		this.listener = listener;
+	}
+
 	/**
 	 * Closes the lookup service and related sockets and resources.
 	 */
@@ -73,11 +201,14 @@ public class DNSLookupService {
 	}
 
 	/**
-	 * Finds all the results for a specific question. If there are valid (not
-	 * expired) results in the cache, uses these results, otherwise queries the
-	 * nameserver for new records. If there are CNAME records associated to the
-	 * question, they are included in the results as CNAME records (i.e., not
-	 * queried further).
+	 * Finds all the results for a specific question. If the question's name is in
+	 * a local zone (see DNSZones), the zone's answer is used. Otherwise, if there
+	 * are valid (not expired) results in the cache, uses these results, otherwise
+	 * queries for new records, starting at the nameserver (or at the closest
+	 * cached delegation, see setStartAtClosestDelegation). If there are CNAME
+	 * records associated to the question, they are included in the results as
+	 * CNAME records (i.e., not queried further). If a listener is set, it
+	 * receives a trace of the lookup.
 	 *
 	 * @param question Host and record type to be used for search.
 	 * @return A (possibly empty) set of resource records corresponding to the
@@ -85,21 +216,104 @@ public class DNSLookupService {
 	 */
 	public Collection<ResourceRecord> getResults(DNSQuestion question) {
 
+		DNSLookupListener listener = this.listener;
+		DNSLookupTrace trace = listener == null ? null : new DNSLookupTrace(question);
+		DNSEvents.LookupEvent event = DNSEvents.beginLookup();
+
+		DNSZone.Answer answer = zones.lookup(question);
+		if (answer != null && answer.isAuthoritative())
+			return complete(question, listener, trace, event, DNSLookupTrace.Source.ZONE, answer.getRecords());
+
 		Collection<ResourceRecord> results = cache.getCachedResults(question, true);
-		if (results.isEmpty()) {
-			iterativeQuery(question, nameServer);
-			results = cache.getCachedResults(question, true);
+		if (!results.isEmpty())
+			return complete(question, listener, trace, event, DNSLookupTrace.Source.CACHE, results);
+
+		InetAddress server;
+		if (answer != null)
+			server = startReferral(answer);
+		else if (startAtClosestDelegation)
+			server = findClosestNameServer(question.getHostName());
+		else
+			server = nameServer;
+		this.trace = trace;
+		try {
+			iterativeQuery(question, server, 0);
+		} finally {
+			this.trace = null;
+		}
+		results = cache.getCachedResults(question, true);
+		return complete(question, listener, trace, event, DNSLookupTrace.Source.NETWORK, results);
+	}
+
+	private static Collection<ResourceRecord> complete(DNSQuestion question, DNSLookupListener listener,
+			DNSLookupTrace trace, DNSEvents.LookupEvent event, DNSLookupTrace.Source source,
+			Collection<ResourceRecord> results) {
+		DNSEvents.lookup(event, question, source, results.size());
+		if (trace != null) {
+			trace.complete(source, results.size());
+			listener.lookupCompleted(trace);
 		}
 		return results;
 	}
 
+	/**
+	 * Finds the address of a nameserver for the closest enclosing zone of a name
+	 * whose delegation is in the cache, so that an iterative query can skip the
+	 * referrals it would otherwise receive again from the root and upper zones.
+	 * Delegations are shared by every name below them (e.g., all names in
+	 * 2.0.192.in-addr.arpa), so this saves most queries when resolving many
+	 * names in the same zones. If no delegation with a cached nameserver address
+	 * is found, the current nameserver is used.
+	 *
+	 * @param hostName The name to be resolved.
+	 * @return The address of the nameserver where the query must start.
+	 */
+	protected InetAddress findClosestNameServer(String hostName) {
+		String zone = hostName;
+		while (!zone.isEmpty()) {
+			List<ResourceRecord> nameServers = cache.getCachedResults(
+					new DNSQuestion(zone, RecordType.NS, RecordClass.IN), false);
+			for (ResourceRecord ns : nameServers) {
+				for (RecordType type : new RecordType[] { RecordType.A, RecordType.AAAA }) {
+					List<ResourceRecord> addresses = cache.getCachedResults(
+							new DNSQuestion(ns.getTextResult(), type, RecordClass.IN), false);
+					if (!addresses.isEmpty())
+						return addresses.get(0).getInetResult();
+				}
+			}
+			int dot = zone.indexOf('.');
+			zone = dot < 0 ? "" : zone.substring(dot + 1);
+		}
+		return nameServer;
+	}
+
+	/**
+	 * Handles a referral from a local zone to a delegated subzone. The referral's
+	 * nameserver and glue records are added to the cache, and the address of one
+	 * of the glue records is returned, so that the iterative query starts at a
+	 * nameserver for the subzone. If the referral has no glue records, the query
+	 * starts at the current nameserver.
+	 *
+	 * @param referral The referral from the local zone.
+	 * @return The address of the nameserver where the query must start.
+	 */
+	private InetAddress startReferral(DNSZone.Answer referral) {
+		referral.getAuthority().forEach(cache::addResult);
+		referral.getAdditional().forEach(cache::addResult);
+		for (ResourceRecord glue : referral.getAdditional())
+			if (glue.getInetResult() != null)
+				return glue.getInetResult();
+		return nameServer;
+	}
+
 	/**
 	 * Finds all the results for a specific question. If there are valid (not
 	 * expired) results in the cache, uses these results, otherwise queries the
 	 * nameserver for new records. If there are CNAME records associated to the
 	 * question, they are retrieved recursively for new records of the same type,
 	 * and the returning set will contain both the CNAME record and the resulting
-	 * resource records of the indicated type.
+	 * resource records of the indicated type. If a listener is set, it receives
+	 * the total time taken.
 	 *
 	 * @param question             Host and record type to be used for search.
 	 * @param maxIndirectionLevels Number of CNAME indirection levels to support.
@@ -112,6 +326,18 @@ public class DNSLookupService {
 	public Collection<ResourceRecord> getResultsFollowingCNames(DNSQuestion question, int maxIndirectionLevels)
 			throws CNameIndirectionLimitException {
 
+		DNSLookupListener listener = this.listener;
+		if (listener == null)
+			return followCNames(question, maxIndirectionLevels);
+		long start = System.nanoTime();
+		Collection<ResourceRecord> results = followCNames(question, maxIndirectionLevels);
+		listener.resolutionCompleted(question, results.size(), System.nanoTime() - start);
+		return results;
+	}
+
+	private Collection<ResourceRecord> followCNames(DNSQuestion question, int maxIndirectionLevels)
+			throws CNameIndirectionLimitException {
+
 		if (maxIndirectionLevels < 0)
 			throw new CNameIndirectionLimitException();
 
@@ -123,7 +349,8 @@ public class DNSLookupService {
 		for (ResourceRecord record : directResults) {
 			newResults.add(record);
 			if (record.getRecordType() == RecordType.CNAME) {
-				newResults.addAll(getResultsFollowingCNames(
+				DNSEvents.cname(question, record.getTextResult(), maxIndirectionLevels - 1);
+				newResults.addAll(followCNames(
 						new DNSQuestion(record.getTextResult(), question.getRecordType(), question.getRecordClass()),
 						maxIndirectionLevels - 1));
 			}
@@ -154,40 +381,55 @@ public class DNSLookupService {
 	 * @param server   Address of the server to be used for the first query.
 	 */
 	public void iterativeQuery(DNSQuestion question, InetAddress server) {
-		Set<ResourceRecord> set = individualQueryProcess(question, server);
+		iterativeQuery(question, server, 0);
+	}
+
+	private void iterativeQuery(DNSQuestion question, InetAddress server, int depth) {
+		Set<ResourceRecord> set = individualQueryProcess(question, server, depth);
 		if (cache.getCachedResults(question, true).size() > 0) {
 			return;
 		}
 
-		if (set.size() > 0) {
+		// The set is null if no response was received (all attempts timed out)
+		if (set != null && set.size() > 0) {
 			Iterator<ResourceRecord> it = set.iterator();
 			while (it.hasNext()) {
 				ResourceRecord rr = it.next();
 				DNSQuestion q = new DNSQuestion(rr.getTextResult(), RecordType.A, RecordClass.IN);
 				List<ResourceRecord> list = cache.getCachedResults(q, true);
 				if (list.size() > 0) {
-					iterativeQuery(question, list.get(0).getInetResult());
+					followReferral(question, server, list.get(0).getInetResult(), set.size(), depth + 1);
 					return;
 				}
 				q = new DNSQuestion(rr.getTextResult(), RecordType.AAAA, RecordClass.IN);
 				list = cache.getCachedResults(q, true);
 				if (list.size() > 0) {
-					iterativeQuery(question, list.get(0).getInetResult());
+					followReferral(question, server, list.get(0).getInetResult(), set.size(), depth + 1);
 					return;
 				}
 			}
 		}
 	}
 
+	private void followReferral(DNSQuestion question, InetAddress fromServer, InetAddress toServer, int nameServers,
+			int depth) {
+		DNSEvents.referral(question, fromServer, toServer, nameServers, depth);
+		iterativeQuery(question, toServer, depth);
+	}
+
 	/**
 	 * Handles the process of sending an individual DNS query with a single
 	 * question. Builds and sends the query (request) message, then receives and
 	 * parses the response. Received responses that do not match the requested
-	 * transaction ID are ignored. If no response is received after SO_TIMEOUT
-	 * milliseconds, the request is sent again, with the same transaction ID. The
-	 * query should be sent at most MAX_QUERY_ATTEMPTS times, after which the
-	 * function should return without changing any values. If a response is
-	 * received, all of its records are added to the cache.
+	 * transaction ID are ignored. If no response is received after the timeout
+	 * (SO_TIMEOUT milliseconds by default), the request is sent again, with the
+	 * same transaction ID. The query should be sent at most MAX_QUERY_ATTEMPTS
+	 * times, after which the function should return without changing any values. If
+	 * a response is received with the TC (truncated) bit set, the query is repeated
+	 * over TCP, reusing a persistent connection to the server if one is open, and
+	 * the TCP response is used instead (if the TCP query fails, the truncated
+	 * response is used). If a response is received, all of its records are added to
+	 * the cache.
 	 * <p>
 	 * The method verbose.printQueryToSend() must be called every time a new query
 	 * message is about to be sent.
@@ -201,6 +443,10 @@ public class DNSLookupService {
 	 *         there are no nameservers, returns an empty set.
 	 */
 	protected Set<ResourceRecord> individualQueryProcess(DNSQuestion question, InetAddress server) {
+		return individualQueryProcess(question, server, 0);
+	}
+
+	private Set<ResourceRecord> individualQueryProcess(DNSQuestion question, InetAddress server, int depth) {
 		// Build query then print before sending
 		DNSMessage requestMsg = buildQuery(question);
 		int id = requestMsg.getID();
@@ -209,13 +455,15 @@ public class DNSLookupService {
 		int tries = 1;
 		try {
 			byte[] bytesSend = requestMsg.getUsed();
-			byte[] bytesReceive = new byte[512];
-			DatagramPacket packetSend = new DatagramPacket(bytesSend, bytesSend.length, server, DEFAULT_DNS_PORT);
+			byte[] bytesReceive = new byte[Math.max(ednsPayloadSize, DNSMessage.MAX_DNS_MESSAGE_LENGTH)];
+			DatagramPacket packetSend = new DatagramPacket(bytesSend, bytesSend.length, server, port);
 			DatagramPacket packetReceive = new DatagramPacket(bytesReceive, bytesReceive.length);
 			DNSMessage responseMsg;
-			socket.setSoTimeout(SO_TIMEOUT);
+			socket.setSoTimeout(timeout);
 
 			while (tries <= MAX_QUERY_ATTEMPTS) {
+				long sentNanos = System.nanoTime();
+				DNSEvents.QueryEvent event = DNSEvents.beginQuery();
 				try {
 					socket.send(packetSend);
 
@@ -224,27 +472,76 @@ public class DNSLookupService {
 						responseMsg = new DNSMessage(bytesReceive, packetReceive.getLength());
 
 						if (responseMsg.getID() == requestMsg.getID()) {
+							DNSEvents.query(event, question, server, DNSLookupTrace.Transport.UDP, tries, responseMsg);
+							recordHop(server, DNSLookupTrace.Transport.UDP, tries, depth, responseMsg, sentNanos);
+							if (responseMsg.getTC()) {
+								DNSEvents.retry(question, server, tries, "truncated");
+								verbose.printQueryToSend(question, server, id);
+								sentNanos = System.nanoTime();
+								event = DNSEvents.beginQuery();
+								DNSMessage tcpResponse = tcpPool.query(requestMsg, server, port, timeout);
+								if (tcpResponse != null && tcpResponse.getID() == requestMsg.getID()) {
+									DNSEvents.query(event, question, server, DNSLookupTrace.Transport.TCP, tries,
+											tcpResponse);
+									responseMsg = tcpResponse;
+								} else {
+									tcpResponse = null;
+								}
+								recordHop(server, DNSLookupTrace.Transport.TCP, tries, depth, tcpResponse, sentNanos);
+							}
 							return processResponse(responseMsg);
 						}
 					}
 				} catch (IOException e) {
-					System.out.println("Timeout. Retrying " + tries + " out of " + MAX_QUERY_ATTEMPTS + " times.");
+					DNSEvents.timeout(question, server, tries, timeout);
+					recordHop(server, DNSLookupTrace.Transport.UDP, tries, depth, null, sentNanos);
+					DNSLog.info("Timeout from %s for %s. Retrying %d out of %d times.", server.getHostAddress(),
+							question, tries, MAX_QUERY_ATTEMPTS);
 					tries++;
+					if (tries <= MAX_QUERY_ATTEMPTS)
+						DNSEvents.retry(question, server, tries, "timeout");
 				}
 			}
 		} catch (SocketException e) {
-			System.out.println("individualQueryProcess failed to set socket timeout " + e);
+			DNSLog.error("individualQueryProcess failed to set socket timeout %s", e);
 		}
 
 		return null;
 	}
 
+	/**
+	 * Adds a hop to the trace of the current lookup, if it is being traced, and
+	 * sends it to the listener.
+	 *
+	 * @param server    Address of the server the query was sent to.
+	 * @param transport Transport used for the query.
+	 * @param attempt   Attempt number of the query, starting at 1.
+	 * @param depth     Number of referrals followed before the query.
+	 * @param response  The response received, or null if none was received.
+	 * @param sentNanos The time the query was sent (System.nanoTime).
+	 */
+	private void recordHop(InetAddress server, DNSLookupTrace.Transport transport, int attempt, int depth,
+			DNSMessage response, long sentNanos) {
+		DNSLookupTrace trace = this.trace;
+		DNSLookupListener listener = this.listener;
+		if (trace == null || listener == null)
+			return;
+		DNSLookupTrace.Hop hop = response == null
+				? trace.addHop(server, transport, attempt, depth, DNSLookupTrace.TIMEOUT,
+						System.nanoTime() - sentNanos, 0, 0)
+				: trace.addHop(server, transport, attempt, depth, response.getRcode(),
+						System.nanoTime() - sentNanos, response.getANCount(), response.getNSCount());
+		listener.hopCompleted(trace, hop);
+	}
+
 	/**
 	 * Creates a DNSMessage containing a DNS query. A random transaction ID must be
 	 * generated and filled in the corresponding part of the query. The query must
 	 * be built as an iterative (non-recursive) request for a regular query with a
-	 * single question. When the function returns, the message's buffer's position
-	 * (`message.buffer.position`) must be equivalent to the size of the query data.
+	 * single question. If EDNS0 is enabled, an OPT record advertising the
+	 * configured UDP payload size is added to the additional section. When the
+	 * function returns, the message's buffer's position (`message.buffer.position`)
+	 * must be equivalent to the size of the query data.
 	 *
 	 * @param question Host name and record type/class to be used for the query.
 	 * @return The DNSMessage containing the query.
@@ -254,6 +551,8 @@ public class DNSLookupService {
 		short id = (short) (rand.nextInt(65536) - 32768);
 		DNSMessage message = new DNSMessage(id);
 		message.addQuestion(question);
+		if (ednsPayloadSize > 0)
+			message.addOPT(ednsPayloadSize);
 
 		return message;
 	}
@@ -304,7 +603,9 @@ public class DNSLookupService {
 	 */
 	private void processRR(DNSMessage response, Set<ResourceRecord> set, boolean isNS) {
 		ResourceRecord rr = response.getRR();
-		cache.addResult(rr);
+		// OPT pseudo-records describe the message itself and must not be cached
+		if (rr.getRecordType() != RecordType.OPT)
+			cache.addResult(rr);
 		verbose.printIndividualResourceRecord(rr, rr.getRecordType().getCode(), rr.getRecordClass().getCode());
 		if (rr.getRecordType() == RecordType.NS) {
 			set.add(rr);
@@ -0,0 +1,176 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.net.InetAddress;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The record of a single lookup (one call to DNSLookupService.getResults): where its results came from, how long it
+ * took, and every query sent to a nameserver (a hop) on the way. Traces are only created when a listener is set on the
+ * lookup service.
+ */
+public class DNSLookupTrace {
+
+    /**
+     * Where the results of a lookup came from. A lookup answered from the cache is a cache hit, and one that had to
+     * query nameservers is a cache miss.
+     */
+    public enum Source {ZONE, CACHE, NETWORK}
+
+    public enum Transport {UDP, TCP}
+
+    /**
+     * The response code of a hop that was not answered.
+     */
+    public static final int TIMEOUT = -1;
+
+    private final DNSQuestion question;
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final List<Hop> hops = new ArrayList<>();
+    private Source source;
+    private long elapsedNanos = -1;
+    private int results;
+
+    public DNSLookupTrace(DNSQuestion question) {
+        this.question = question;
+    }
+
+    public DNSQuestion getQuestion() {
+        return question;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the time taken by the lookup, or -1 if it is not complete.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public int getResults() {
+        return results;
+    }
+
+    public List<Hop> getHops() {
+        return Collections.unmodifiableList(hops);
+    }
+
+    Hop addHop(InetAddress server, Transport transport, int attempt, int depth, int rcode, long rttNanos,
+               int answers, int nameServers) {
+        Hop hop = new Hop(server, transport, attempt, depth, rcode, rttNanos, answers, nameServers);
+        hops.add(hop);
+        return hop;
+    }
+
+    void complete(Source source, int results) {
+        this.source = source;
+        this.results = results;
+        this.elapsedNanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Returns a multi-line description of the lookup and its hops.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format("%s %s %.3fms %s, %d results",
+                new SimpleDateFormat("HH:mm:ss.SSS").format(new Date(startMillis)), question,
+                elapsedNanos / 1e6, source, results));
+        for (Hop hop : hops)
+            sb.append("\n  ").append(hop);
+        return sb.toString();
+    }
+
+    /**
+     * A single query sent to a nameserver. A query sent again after a timeout, or over TCP after a truncated response,
+     * is a separate hop.
+     */
+    public static class Hop {
+        private final InetAddress server;
+        private final Transport transport;
+        private final int attempt;
+        private final int depth;
+        private final int rcode;
+        private final long rttNanos;
+        private final int answers;
+        private final int nameServers;
+
+        public Hop(InetAddress server, Transport transport, int attempt, int depth, int rcode, long rttNanos,
+                   int answers, int nameServers) {
+            this.server = server;
+            this.transport = transport;
+            this.attempt = attempt;
+            this.depth = depth;
+            this.rcode = rcode;
+            this.rttNanos = rttNanos;
+            this.answers = answers;
+            this.nameServers = nameServers;
+        }
+
+        public InetAddress getServer() {
+            return server;
+        }
+
+        public Transport getTransport() {
+            return transport;
+        }
+
+        /**
+         * Returns the attempt number of this query to this server, starting at 1.
+         */
+        public int getAttempt() {
+            return attempt;
+        }
+
+        /**
+         * Returns the number of referrals followed before this query was sent (0 for the first server queried).
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * Returns the response code, or TIMEOUT if no response was received.
+         */
+        public int getRcode() {
+            return rcode;
+        }
+
+        /**
+         * Returns the time between sending the query and receiving its response (or giving up).
+         */
+        public long getRttNanos() {
+            return rttNanos;
+        }
+
+        public int getAnswers() {
+            return answers;
+        }
+
+        public int getNameServers() {
+            return nameServers;
+        }
+
+        public boolean isTimeout() {
+            return rcode == TIMEOUT;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("depth %d %s %s attempt %d %.3fms %s, %d answers, %d nameservers",
+                    depth, server.getHostAddress(), transport, attempt, rttNanos / 1e6,
+                    isTimeout() ? "TIMEOUT" : DNSMessage.dnsErrorMessage(rcode), answers, nameServers);
+        }
+    }
+}
@@ -10,8 +10,10 @@ import java.util.stream.IntStream;
 
 public class DNSMessage {
 	public static final int MAX_DNS_MESSAGE_LENGTH = 512;
+	public static final int MAX_EDNS_MESSAGE_LENGTH = 65535;
 	public static final int QUERY = 0;
-	private final Map<String, Integer> nameToPosition = new HashMap<>();
+	private int udpPayloadSize = -1;
+	private final DNSCompressionTrie compression = new DNSCompressionTrie();
 	private final Map<Integer, String> positionToName = new HashMap<>();
 	private final ByteBuffer buffer;
 
@@ -21,7 +23,37 @@ public class DNSMessage {
 	 * @param id The id of the message.
 	 */
 	public DNSMessage(short id) {
-		this.buffer = ByteBuffer.allocate(MAX_DNS_MESSAGE_LENGTH);
+		this(id, MAX_DNS_MESSAGE_LENGTH);
+	}
+
+	/**
+	 * Initializes an empty DNSMessage with the given id, able to hold up to
+	 * capacity bytes. Used for messages larger than 512 bytes, e.g., when EDNS0 is
+	 * in use.
+	 *
+	 * @param id       The id of the message.
+	 * @param capacity The maximum size of the encoded message, in bytes.
+	 */
+	public DNSMessage(short id, int capacity) {
+		this.buffer = ByteBuffer.allocate(capacity);
+		setID(id);
+		buffer.position(12);
+	}
+
+	/**
+	 * Initializes an empty DNSMessage with the given id, encoded into an existing
+	 * buffer. The previous contents of the buffer are discarded. Used to avoid
+	 * allocating a new buffer for every message when many messages are built by the
+	 * same thread, one at a time.
+	 *
+	 * @param id     The id of the message.
+	 * @param buffer The buffer to hold the encoded message.
+	 */
+	public DNSMessage(short id, ByteBuffer buffer) {
+		this.buffer = buffer;
+		buffer.clear();
+		for (int i = 0; i < 12; i++)
+			buffer.put(i, (byte) 0);
 		setID(id);
 		buffer.position(12);
 	}
@@ -213,7 +245,7 @@ public class DNSMessage {
 			showRRs("Additional", getARCount(), sb);
 			return sb.toString();
 		} catch (Exception e) {
-			e.printStackTrace();
+			DNSLog.error("toString failed on DNSMessage: %s", e);
 			return "toString failed on DNSMessage";
 		} finally {
 			buffer.position(end);
@@ -271,8 +303,7 @@ public class DNSMessage {
 	 * @return The decoded record type
 	 */
 	public RecordType getRecordType() {
-		buffer.position(buffer.position() + 1);
-		return RecordType.getByCode(buffer.get());
+		return RecordType.getByCode(buffer.getShort() & 0xffff);
 	}
 
 	/**
@@ -281,8 +312,7 @@ public class DNSMessage {
 	 * @return The decoded record class
 	 */
 	public RecordClass getRecordClass() {
-		buffer.position(buffer.position() + 1);
-		return RecordClass.getByCode(buffer.get());
+		return RecordClass.getByCode(buffer.getShort() & 0xffff);
 	}
 
 	/**
@@ -323,6 +353,8 @@ public class DNSMessage {
 	public ResourceRecord getRR() {
 		String name = getName();
 		RecordType rType = getRecordType();
+		if (rType == RecordType.OPT)
+			return getOPT(name);
 		RecordClass rClass = getRecordClass();
 		DNSQuestion question = new DNSQuestion(name, rType, rClass);
 		int ttl = getTTL();
@@ -334,23 +366,56 @@ public class DNSMessage {
 				byte[] addressBytes = getAddress(rdLength);
 				return new ResourceRecord(question, ttl, InetAddress.getByAddress(addressBytes));
 			} catch (UnknownHostException e) {
-				System.out.println("getRR error");
-				e.printStackTrace();
+				DNSLog.warn("getRR error: %s", e);
 			}
 		case MX:
 			short preference = buffer.getShort();
 		case CNAME:
 		case NS:
+		case PTR:
 			String address = getName();
 			return new ResourceRecord(question, ttl, address);
 		default:
-			System.out.println("getRR RecordType not AAAA, A, MX, CNAME or NS");
+			DNSLog.debug("getRR RecordType %s not AAAA, A, MX, CNAME, NS or PTR, kept as hex", rType);
 			byte[] byteArray = new byte[rdLength];
 			buffer.get(byteArray, 0, rdLength);
 			return new ResourceRecord(question, ttl, byteArrayToHexString(byteArray));
 		}
 	}
 
+	/**
+	 * Decode the remainder of an EDNS0 OPT pseudo-record (RFC 6891), whose name and
+	 * type have already been read. The CLASS field of an OPT record holds the
+	 * sender's UDP payload size, which is remembered and can be retrieved with
+	 * getUDPPayloadSize(). The TTL field holds the extended RCODE and flags, and is
+	 * not used as a time to live. Options in the RDATA are kept as a hex string.
+	 *
+	 * @param name The owner name of the record (always the root).
+	 * @return The decoded pseudo-record
+	 */
+	private ResourceRecord getOPT(String name) {
+		udpPayloadSize = Math.max(buffer.getShort() & 0xffff, MAX_DNS_MESSAGE_LENGTH);
+		int extendedFlags = getTTL();
+		int rdLength = getRDLength();
+		byte[] options = new byte[rdLength];
+		buffer.get(options, 0, rdLength);
+		DNSQuestion question = new DNSQuestion(name, RecordType.OPT, RecordClass.OTHER);
+		return new ResourceRecord(question, 0,
+				"udp=" + udpPayloadSize + " flags=" + Integer.toHexString(extendedFlags) + " "
+						+ byteArrayToHexString(options));
+	}
+
+	/**
+	 * Returns the UDP payload size advertised by an OPT record decoded from this
+	 * message, or -1 if no OPT record has been decoded (i.e., the sender does not
+	 * support EDNS0, or the additional section has not been read yet).
+	 *
+	 * @return The advertised UDP payload size, or -1 if unknown
+	 */
+	public int getUDPPayloadSize() {
+		return udpPayloadSize;
+	}
+
 	/**
 	 * Helper function that returns a hex string representation of a byte array. May
 	 * be used to represent the result of records that are returned by a server but
@@ -363,34 +428,53 @@ public class DNSMessage {
 		return IntStream.range(0, data.length).mapToObj(i -> String.format("%02x", data[i])).reduce("", String::concat);
 	}
 
+	/**
+	 * Helper function that converts a hex string representation (as returned by
+	 * byteArrayToHexString) back to a byte array.
+	 *
+	 * @param hex a string containing the hex value of every byte in the data.
+	 * @return A byte array containing the data.
+	 * @throws IllegalArgumentException If the string is not a valid hex string.
+	 */
+	public static byte[] hexStringToByteArray(String hex) {
+		if (hex.length() % 2 != 0)
+			throw new IllegalArgumentException("Invalid hex string: " + hex);
+		byte[] data = new byte[hex.length() / 2];
+		for (int i = 0; i < data.length; i++) {
+			int high = Character.digit(hex.charAt(2 * i), 16);
+			int low = Character.digit(hex.charAt(2 * i + 1), 16);
+			if (high < 0 || low < 0)
+				throw new IllegalArgumentException("Invalid hex string: " + hex);
+			data[i] = (byte) (high << 4 | low);
+		}
+		return data;
+	}
+
 	/**
 	 * Add an encoded name to the message. It is added at the current position and
 	 * uses compression as much as possible. Compression is accomplished by
-	 * remembering the position of every added label.
+	 * remembering the position of every added label in a trie of reversed labels,
+	 * which finds the longest suffix already written in the message in a single
+	 * pass over the labels of the name.
 	 *
 	 * @param name The name to be added
 	 */
 	public void addName(String name) {
-		String label;
-		while (name.length() > 0) {
-			Integer offset = nameToPosition.get(name);
-			if (offset != null) {
-				int pointer = offset;
-				pointer |= 0xc000;
-				buffer.putShort((short) pointer);
-				return;
-			} else {
-				nameToPosition.put(name, buffer.position());
-				int dot = name.indexOf('.');
-				label = (dot > 0) ? name.substring(0, dot) : name;
-				buffer.put((byte) label.length());
-				for (int j = 0; j < label.length(); j++) {
-					buffer.put((byte) label.charAt(j));
-				}
-				name = (dot > 0) ? name.substring(dot + 1) : "";
+		int labels = compression.split(name);
+		int suffix = compression.findLongestSuffix();
+		compression.record(suffix, buffer.position());
+		for (int i = 0; i < suffix; i++) {
+			int start = compression.getLabelStart(i);
+			int length = compression.getLabelLength(i);
+			buffer.put((byte) length);
+			for (int j = start; j < start + length; j++) {
+				buffer.put((byte) name.charAt(j));
 			}
 		}
-		buffer.put((byte) 0);
+		if (suffix < labels)
+			buffer.putShort((short) (compression.getSuffixOffset() | 0xc000));
+		else
+			buffer.put((byte) 0);
 	}
 
 	/**
@@ -428,6 +512,8 @@ public class DNSMessage {
 
 	/**
 	 * Add an encoded resource record to the message at the current position.
+	 * Records of types other than A, AAAA, MX, CNAME, NS and PTR are encoded with the
+	 * RDATA in their hex string result, which must not contain compressed names.
 	 * 
 	 * @param rr      The resource record to be added
 	 * @param section A string describing the section that the rr should be added to
@@ -444,16 +530,23 @@ public class DNSMessage {
 			buffer.put(rr.getInetResult().getAddress());
 			break;
 		case MX:
-			buffer.putShort((short) 0);
 		case CNAME:
 		case NS:
-			int strLen = rr.getTextResult().length();
-			buffer.put((byte) (strLen >> 8 & 0xff));
-			buffer.put((byte) (strLen & 0xff));
+		case PTR:
+			// The length of a compressed name is only known after it is added, so
+			// RDLENGTH is filled in afterwards
+			int rdLengthPosition = buffer.position();
+			buffer.putShort((short) 0);
+			if (rr.getRecordType() == RecordType.MX)
+				buffer.putShort((short) 0); // preference
 			addName(rr.getTextResult());
+			buffer.putShort(rdLengthPosition, (short) (buffer.position() - rdLengthPosition - 2));
 			break;
 		default:
-			System.out.println("addResourceRecord Invalid RecordType");
+			// Other types are only known by the hex string of their RDATA (see getRR)
+			byte[] rdata = hexStringToByteArray(rr.getTextResult());
+			buffer.putShort((short) rdata.length);
+			buffer.put(rdata);
 		}
 		switch (section) {
 		case "answer":
@@ -466,10 +559,27 @@ public class DNSMessage {
 			setARCount(getARCount() + 1);
 			break;
 		default:
-			System.out.println("addResourceRecord Invalid Section String");
+			DNSLog.warn("addResourceRecord Invalid Section String %s", section);
 		}
 	}
 
+	/**
+	 * Add an EDNS0 OPT pseudo-record (RFC 6891) to the additional section of the
+	 * message at the current position, advertising that responses of up to
+	 * payloadSize bytes can be received over UDP. Must be added after all other
+	 * resource records.
+	 *
+	 * @param payloadSize The UDP payload size to advertise
+	 */
+	public void addOPT(int payloadSize) {
+		buffer.put((byte) 0); // root name
+		buffer.putShort((short) RecordType.OPT.getCode());
+		buffer.putShort((short) payloadSize);
+		buffer.putInt(0); // extended RCODE, version 0, no flags
+		buffer.putShort((short) 0); // no options
+		setARCount(getARCount() + 1);
+	}
+
 	/**
 	 * Add an encoded type to the message at the current position.
 	 * 
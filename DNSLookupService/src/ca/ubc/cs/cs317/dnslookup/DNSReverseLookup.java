@@ -0,0 +1,304 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Reverse DNS lookups (PTR records under in-addr.arpa and ip6.arpa), one at a time or in bulk. Bulk lookups are spread
+ * over a pool of threads, each with its own lookup service starting at the closest cached delegation. All the lookup
+ * services share the cache, so the delegations for the in-addr.arpa and ip6.arpa zones found by one thread are used by
+ * all the others (see DNSLookupService.setStartAtClosestDelegation), and an address requested again is answered from
+ * the cache, or by the lookup already in progress for it.
+ * <p>
+ * The work in flight is bounded: at most LINES_AHEAD_PER_THREAD lookups per thread are queued, and a lookup requested
+ * when the queue is full runs in the requesting thread instead. Only the lookups in progress are remembered.
+ */
+public class DNSReverseLookup implements Closeable {
+
+    public static final int DEFAULT_THREADS = 64;
+    /**
+     * Number of lookups queued, and of log lines read ahead of the line being written, per thread.
+     */
+    public static final int LINES_AHEAD_PER_THREAD = 16;
+    private static final String IPV4_SUFFIX = "in-addr.arpa";
+    private static final String IPV6_SUFFIX = "ip6.arpa";
+
+    private final ExecutorService executor;
+    private final int linesAhead;
+    private final ThreadLocal<DNSLookupService> lookupService;
+    private final List<DNSLookupService> lookupServices = Collections.synchronizedList(new ArrayList<>());
+    private final Map<InetAddress, CompletableFuture<List<String>>> inProgress = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new reverse lookup pool.
+     *
+     * @param threads The number of lookups done at the same time.
+     * @param factory Creates the lookup service used by each thread.
+     */
+    public DNSReverseLookup(int threads, DNSServer.LookupServiceFactory factory) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "dns-reverse-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.linesAhead = threads * LINES_AHEAD_PER_THREAD;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(linesAhead), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.lookupService = ThreadLocal.withInitial(() -> {
+            try {
+                DNSLookupService service = factory.create();
+                service.setStartAtClosestDelegation(true);
+                lookupServices.add(service);
+                return service;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the name used for the reverse lookup of an address, e.g., 4.3.2.1.in-addr.arpa for 1.2.3.4, or the 32
+     * hex digits of an IPv6 address in reverse order followed by ip6.arpa.
+     *
+     * @param address The address.
+     * @return The name of the PTR records for the address.
+     */
+    public static String reverseName(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        StringBuilder sb = new StringBuilder();
+        if (address instanceof Inet4Address) {
+            for (int i = bytes.length - 1; i >= 0; i--)
+                sb.append(bytes[i] & 0xff).append('.');
+            return sb.append(IPV4_SUFFIX).toString();
+        }
+        for (int i = bytes.length - 1; i >= 0; i--)
+            sb.append(Character.forDigit(bytes[i] & 0x0f, 16)).append('.')
+                    .append(Character.forDigit((bytes[i] >> 4) & 0x0f, 16)).append('.');
+        return sb.append(IPV6_SUFFIX).toString();
+    }
+
+    /**
+     * Returns the question for the PTR records of an address.
+     *
+     * @param address The address.
+     * @return The question.
+     */
+    public static DNSQuestion reverseQuestion(InetAddress address) {
+        return new DNSQuestion(reverseName(address), RecordType.PTR, RecordClass.IN);
+    }
+
+    /**
+     * Parses an IPv4 or IPv6 address literal. Unlike InetAddress.getByName, never queries a nameserver.
+     *
+     * @param text The text to be parsed.
+     * @return The address, or null if the text is not an address literal.
+     */
+    public static InetAddress parseAddress(String text) {
+        if (!text.matches("\\d{1,3}(\\.\\d{1,3}){3}") && !(text.contains(":") && text.matches("[0-9a-fA-F:.]+")))
+            return null;
+        try {
+            return InetAddress.getByName(text);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the names of an address with a lookup service, following CNAME records (as used for classless
+     * delegations, RFC 2317).
+     *
+     * @param service The lookup service.
+     * @param address The address.
+     * @return The names in the PTR records of the address, sorted, or an empty list if there are none.
+     */
+    public static List<String> lookup(DNSLookupService service, InetAddress address) {
+        try {
+            return service.getResultsFollowingCNames(reverseQuestion(address), DNSLookupCUI.MAX_INDIRECTION_LEVEL)
+                    .stream().filter(record -> record.getRecordType() == RecordType.PTR)
+                    .map(ResourceRecord::getTextResult).distinct().sorted().collect(Collectors.toList());
+        } catch (DNSLookupService.CNameIndirectionLimitException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Starts the reverse lookup of an address in the thread pool, unless it is already in progress. If the queue of the
+     * thread pool is full, the lookup is done in the calling thread before returning.
+     *
+     * @param address The address.
+     * @return The names of the address, when they are found.
+     */
+    public CompletableFuture<List<String>> lookup(InetAddress address) {
+        CompletableFuture<List<String>> names = new CompletableFuture<>();
+        CompletableFuture<List<String>> existing = inProgress.putIfAbsent(address, names);
+        if (existing != null)
+            return existing;
+        if (executor.isShutdown()) {
+            inProgress.remove(address, names);
+            names.completeExceptionally(new RejectedExecutionException("Reverse lookup pool is closed"));
+            return names;
+        }
+        executor.execute(() -> {
+            // Once found, the names are in the cache, so later requests don't need this lookup
+            try {
+                List<String> found = lookup(lookupService.get(), address);
+                inProgress.remove(address, names);
+                names.complete(found);
+            } catch (RuntimeException e) {
+                inProgress.remove(address, names);
+                names.completeExceptionally(e);
+            }
+        });
+        return names;
+    }
+
+    /**
+     * Replaces the address at the start of each line of a log file (as in common and combined log formats) with the
+     * first name found for it, as Apache's logresolve does. Lines whose first field is not an address, or whose address
+     * has no name, are copied unchanged. Lookups are started as lines are read, up to LINES_AHEAD_PER_THREAD lines per
+     * thread ahead of the line being written, and each line is written once its address is resolved, in the original
+     * order.
+     *
+     * @param input  The log file.
+     * @param output The file where the enriched log is written.
+     * @return A summary of the lookups.
+     * @throws IOException          If the files can't be read or written.
+     * @throws InterruptedException If interrupted while waiting for the lookups.
+     */
+    public Summary enrichLog(Path input, Path output) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long lines = 0;
+        long addresses = 0;
+        long resolved = 0;
+        Deque<PendingLine> pending = new ArrayDeque<>();
+        try (BufferedReader in = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines++;
+                String field = firstField(line);
+                InetAddress address = parseAddress(field);
+                if (address != null)
+                    addresses++;
+                pending.add(new PendingLine(line, field.length(), address == null ? null : lookup(address)));
+                if (pending.size() > linesAhead && pending.remove().write(out))
+                    resolved++;
+            }
+            while (!pending.isEmpty())
+                if (pending.remove().write(out))
+                    resolved++;
+        }
+        return new Summary(lines, addresses, resolved, (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * A line read from a log file, waiting for the names of its address to be written.
+     */
+    private static class PendingLine {
+        private final String line;
+        private final int fieldLength;
+        private final CompletableFuture<List<String>> names;
+
+        private PendingLine(String line, int fieldLength, CompletableFuture<List<String>> names) {
+            this.line = line;
+            this.fieldLength = fieldLength;
+            this.names = names;
+        }
+
+        /**
+         * Writes the line, with its address replaced if a name was found.
+         *
+         * @return True if the address was replaced.
+         */
+        private boolean write(BufferedWriter out) throws IOException, InterruptedException {
+            List<String> found = Collections.emptyList();
+            if (names != null) {
+                try {
+                    found = names.get();
+                } catch (ExecutionException e) {
+                    // Written unchanged
+                }
+            }
+            out.write(found.isEmpty() ? line : found.get(0) + line.substring(fieldLength));
+            out.newLine();
+            return !found.isEmpty();
+        }
+    }
+
+    private static String firstField(String line) {
+        int end = 0;
+        while (end < line.length() && !Character.isWhitespace(line.charAt(end)))
+            end++;
+        return line.substring(0, end);
+    }
+
+    /**
+     * Stops the thread pool and closes the lookup services.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        synchronized (lookupServices) {
+            lookupServices.forEach(DNSLookupService::close);
+        }
+    }
+
+    /**
+     * The outcome of a bulk reverse lookup.
+     */
+    public static class Summary {
+        private final long lines;
+        private final long addresses;
+        private final long resolved;
+        private final long elapsedMillis;
+
+        public Summary(long lines, long addresses, long resolved, long elapsedMillis) {
+            this.lines = lines;
+            this.addresses = addresses;
+            this.resolved = resolved;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * Returns the number of lines starting with an address.
+         */
+        public long getAddresses() {
+            return addresses;
+        }
+
+        /**
+         * Returns the number of lines whose address was replaced with a name.
+         */
+        public long getResolved() {
+            return resolved;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d lines, %d with an address, %d resolved, %d unresolved, %.1fs (%.0f addresses/s)",
+                    lines, addresses, resolved, addresses - resolved, elapsedMillis / 1000.0,
+                    elapsedMillis == 0 ? 0 : addresses * 1000.0 / elapsedMillis);
+        }
+    }
+}
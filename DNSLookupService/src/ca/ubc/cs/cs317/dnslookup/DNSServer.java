@@ -0,0 +1,414 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A caching DNS server for stub resolvers. Queries received on a UDP port are answered from the shared DNS cache when
+ * possible, and otherwise resolved iteratively with a lookup service (which adds the results to the same cache). Since
+ * all lookup services share a single cache, one server per host can keep the cache warm for every process on the host.
+ * <p>
+ * Queries are received by several worker threads (usually one per core), each with its own receive, parse and encode
+ * buffers. A worker answers cache hits itself, without handing the query to another thread. Where the platform supports
+ * SO_REUSEPORT, each worker has its own socket bound to the same port, and the kernel spreads queries among them;
+ * otherwise all workers receive from a single shared socket. Cache misses, which may take several seconds to resolve,
+ * are queued for a separate set of resolver threads, each with its own lookup service, so that they never block the
+ * workers.
+ */
+public class DNSServer implements Closeable {
+
+    public static final int MAX_INDIRECTION_LEVEL = 10;
+    public static final int MAX_PENDING_QUERIES = 10000;
+    public static final int DEFAULT_RESOLVERS = 16;
+
+    public static final int RCODE_NO_ERROR = 0;
+    public static final int RCODE_FORMAT_ERROR = 1;
+    public static final int RCODE_SERVER_FAILURE = 2;
+    public static final int RCODE_NAME_ERROR = 3;
+    public static final int RCODE_NOT_IMPLEMENTED = 4;
+
+    private static final Set<RecordType> ENCODABLE_TYPES = EnumSet.of(RecordType.A, RecordType.AAAA, RecordType.NS,
+            RecordType.CNAME, RecordType.MX, RecordType.PTR);
+
+    /**
+     * Creates the lookup services used by the resolver threads, one per thread.
+     */
+    public interface LookupServiceFactory {
+        DNSLookupService create() throws IOException;
+    }
+
+    private final DNSCache cache = DNSCache.getInstance();
+    private final DNSZones zones = DNSZones.getInstance();
+    private final List<DatagramChannel> channels = new ArrayList<>();
+    private final List<DNSLookupService> lookupServices = new ArrayList<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private final BlockingQueue<PendingQuery> pendingQueries = new ArrayBlockingQueue<>(MAX_PENDING_QUERIES);
+    private final int ednsPayloadSize;
+    private final int workers;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new server listening on the specified UDP port. The server only starts answering queries once start()
+     * is called.
+     *
+     * @param port      The UDP port to listen on, or 0 for any available port.
+     * @param workers   The number of threads receiving queries and answering them from the cache.
+     * @param resolvers The number of threads resolving queries that can't be answered from the cache.
+     * @param factory   Creates the lookup service used by each resolver thread.
+     * @throws IOException If the port can't be opened or a lookup service can't be created.
+     */
+    public DNSServer(int port, int workers, int resolvers, LookupServiceFactory factory) throws IOException {
+        this.workers = workers;
+        try {
+            for (int i = 0; i < resolvers; i++)
+                lookupServices.add(factory.create());
+            this.ednsPayloadSize = lookupServices.isEmpty() || lookupServices.get(0).getEdnsPayloadSize() == 0 ?
+                    DNSLookupService.DEFAULT_EDNS_PAYLOAD_SIZE : lookupServices.get(0).getEdnsPayloadSize();
+
+            SocketOption<Boolean> reusePort = getReusePortOption();
+            DatagramChannel first = DatagramChannel.open();
+            channels.add(first);
+            if (workers > 1 && reusePort != null && first.supportedOptions().contains(reusePort)) {
+                first.setOption(reusePort, true);
+                first.bind(new InetSocketAddress(port));
+                int boundPort = getPort();
+                for (int i = 1; i < workers; i++) {
+                    DatagramChannel channel = DatagramChannel.open();
+                    channels.add(channel);
+                    channel.setOption(reusePort, true);
+                    channel.bind(new InetSocketAddress(boundPort));
+                }
+            } else {
+                first.bind(new InetSocketAddress(port));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the SO_REUSEPORT socket option if the Java platform defines it (Java 9 or later), or null otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> getReusePortOption() {
+        try {
+            Field field = StandardSocketOptions.class.getField("SO_REUSEPORT");
+            return (SocketOption<Boolean>) field.get(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the UDP port the server is listening on.
+     *
+     * @return The port number.
+     */
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) channels.get(0).getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the number of sockets used to receive queries, which is 1 if SO_REUSEPORT is not supported.
+     *
+     * @return The number of sockets.
+     */
+    public int getSocketCount() {
+        return channels.size();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * Starts the worker and resolver threads. All threads are daemon threads.
+     */
+    public void start() {
+        for (int i = 0; i < workers; i++) {
+            DatagramChannel channel = channels.get(i % channels.size());
+            startThread(() -> receiveQueries(channel), "dns-server-worker-" + i);
+        }
+        for (int i = 0; i < lookupServices.size(); i++) {
+            DNSLookupService lookupService = lookupServices.get(i);
+            startThread(() -> resolveQueries(lookupService), "dns-server-resolver-" + i);
+        }
+    }
+
+    private void startThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    /**
+     * Stops all threads and closes all sockets and lookup services used by the server.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (DatagramChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Error is ignored
+            }
+        }
+        threads.forEach(Thread::interrupt);
+        lookupServices.forEach(DNSLookupService::close);
+    }
+
+    /**
+     * Worker loop: receives queries and answers those that can be answered from the cache (or that are invalid). The
+     * remaining queries are queued for the resolver threads.
+     */
+    private void receiveQueries(DatagramChannel channel) {
+        ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(DNSMessage.MAX_EDNS_MESSAGE_LENGTH);
+        ByteBuffer encodeBuffer = ByteBuffer.allocate(DNSMessage.MAX_EDNS_MESSAGE_LENGTH);
+        byte[] data = new byte[DNSMessage.MAX_EDNS_MESSAGE_LENGTH];
+        while (!closed) {
+            try {
+                receiveBuffer.clear();
+                SocketAddress client = channel.receive(receiveBuffer);
+                receiveBuffer.flip();
+                int length = receiveBuffer.remaining();
+                receiveBuffer.get(data, 0, length);
+
+                byte[] response = handleQuery(data, length, encodeBuffer, null);
+                if (response == null)
+                    continue;
+                if (response.length > 0) {
+                    channel.send(ByteBuffer.wrap(response), client);
+                } else if (!pendingQueries.offer(new PendingQuery(Arrays.copyOf(data, length), client, channel))) {
+                    // Too many queries waiting to be resolved
+                    DNSMessage query = new DNSMessage(data, length);
+                    response = buildResponse(query, query.getQuestion(), Collections.emptyList(),
+                            RCODE_SERVER_FAILURE, encodeBuffer);
+                    channel.send(ByteBuffer.wrap(response), client);
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                // A response could not be sent to a client; keep serving other clients
+            }
+        }
+    }
+
+    /**
+     * Resolver loop: resolves queued queries with this thread's lookup service and sends their responses.
+     */
+    private void resolveQueries(DNSLookupService lookupService) {
+        ByteBuffer encodeBuffer = ByteBuffer.allocate(DNSMessage.MAX_EDNS_MESSAGE_LENGTH);
+        while (!closed) {
+            PendingQuery pending;
+            try {
+                pending = pendingQueries.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                byte[] response = handleQuery(pending.data, pending.data.length, encodeBuffer, lookupService);
+                if (response != null)
+                    pending.channel.send(ByteBuffer.wrap(response), pending.client);
+            } catch (IOException | RuntimeException e) {
+                // A response could not be sent to a client; keep serving other clients
+            }
+        }
+    }
+
+    /**
+     * A query that could not be answered from the cache, waiting to be resolved.
+     */
+    private static class PendingQuery {
+        private final byte[] data;
+        private final SocketAddress client;
+        private final DatagramChannel channel;
+
+        private PendingQuery(byte[] data, SocketAddress client, DatagramChannel channel) {
+            this.data = data;
+            this.client = client;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Builds the response to a query received from a client. Only standard queries with a single question are
+     * supported. Responses larger than the UDP payload size supported by the client (512 bytes, or the size in the
+     * client's EDNS0 OPT record) are sent with no records and the TC bit set.
+     * <p>
+     * Questions for names in a local zone (see DNSZones) are answered authoritatively (AA bit set), including negative
+     * answers (with the zone's SOA record in the authority section). For other names, since the lookup service does
+     * not distinguish names that don't exist from names with no records of the requested type, a question with no
+     * results is answered with no error and an empty answer section.
+     *
+     * @param data          The received query.
+     * @param length        The length of the query.
+     * @param encodeBuffer  The buffer used to encode the response.
+     * @param lookupService The lookup service used to resolve the question if it can't be answered from the cache, or
+     *                      null to only answer from the cache.
+     * @return The encoded response, null if the query must be ignored (e.g., if it is not a query), or an empty array
+     * if the question can't be answered from the cache and no lookup service was provided.
+     */
+    private byte[] handleQuery(byte[] data, int length, ByteBuffer encodeBuffer,
+                               DNSLookupService lookupService) {
+        if (length < 12)
+            return null;
+        DNSMessage query = new DNSMessage(data, length);
+        if (query.getQR())
+            return null;
+
+        DNSQuestion question;
+        try {
+            if (query.getOpcode() != DNSMessage.QUERY)
+                return buildResponse(query, null, Collections.emptyList(), RCODE_NOT_IMPLEMENTED, encodeBuffer);
+            if (query.getQDCount() != 1)
+                return buildResponse(query, null, Collections.emptyList(), RCODE_FORMAT_ERROR, encodeBuffer);
+            question = query.getQuestion();
+            // Read the remaining records only to find the client's OPT record, if any
+            int records = query.getANCount() + query.getNSCount() + query.getARCount();
+            for (int i = 0; i < records; i++)
+                query.getRR();
+        } catch (RuntimeException e) {
+            return buildResponse(query, null, Collections.emptyList(), RCODE_FORMAT_ERROR, encodeBuffer);
+        }
+
+        DNSZone.Answer zoneAnswer = zones.lookup(question);
+        boolean authoritative = zoneAnswer != null && zoneAnswer.isAuthoritative();
+        if (authoritative && zoneAnswer.getStatus() != DNSZone.Status.ANSWER) {
+            cacheHits.increment();
+            return buildResponse(query, question, Collections.emptyList(), zoneAnswer.getAuthority(), true,
+                    zoneAnswer.getStatus() == DNSZone.Status.NAME_ERROR ? RCODE_NAME_ERROR : RCODE_NO_ERROR,
+                    encodeBuffer);
+        }
+
+        Collection<ResourceRecord> answers = getCachedAnswers(question);
+        if (answers != null) {
+            cacheHits.increment();
+        } else if (lookupService == null) {
+            return new byte[0];
+        } else {
+            cacheMisses.increment();
+            try {
+                answers = lookupService.getResultsFollowingCNames(question, MAX_INDIRECTION_LEVEL);
+            } catch (DNSLookupService.CNameIndirectionLimitException e) {
+                return buildResponse(query, question, Collections.emptyList(), RCODE_SERVER_FAILURE, encodeBuffer);
+            }
+        }
+        return buildResponse(query, question, answers, Collections.emptyList(), authoritative, RCODE_NO_ERROR,
+                encodeBuffer);
+    }
+
+    /**
+     * Returns the answers to a question if they can be found in the local zones or in the cache, following CNAME
+     * records. Returns null if the question can't be completely answered locally, in which case it must be resolved.
+     *
+     * @param question The question to be answered.
+     * @return The cached answers, including CNAME records, or null if there are no cached answers.
+     */
+    protected List<ResourceRecord> getCachedAnswers(DNSQuestion question) {
+        List<ResourceRecord> answers = new ArrayList<>();
+        DNSQuestion current = question;
+        for (int i = 0; i <= MAX_INDIRECTION_LEVEL; i++) {
+            DNSZone.Answer zoneAnswer = zones.lookup(current);
+            if (zoneAnswer != null && zoneAnswer.isAuthoritative()) {
+                // The zone has the complete answer for this name: either the records, a CNAME record or nothing
+                List<ResourceRecord> results = zoneAnswer.getRecords();
+                answers.addAll(results);
+                if (results.size() != 1 || results.get(0).getRecordType() != RecordType.CNAME
+                        || current.getRecordType() == RecordType.CNAME)
+                    return answers;
+                current = new DNSQuestion(results.get(0).getTextResult(), question.getRecordType(),
+                        question.getRecordClass());
+                continue;
+            }
+            List<ResourceRecord> results = cache.getCachedResults(current, false);
+            if (!results.isEmpty()) {
+                answers.addAll(results);
+                return answers;
+            }
+            if (current.getRecordType() == RecordType.CNAME)
+                return null;
+            List<ResourceRecord> cnames = cache.getCachedResults(
+                    new DNSQuestion(current.getHostName(), RecordType.CNAME, current.getRecordClass()), false);
+            if (cnames.isEmpty())
+                return null;
+            ResourceRecord cname = cnames.get(0);
+            answers.add(cname);
+            current = new DNSQuestion(cname.getTextResult(), question.getRecordType(), question.getRecordClass());
+        }
+        return null;
+    }
+
+    private byte[] buildResponse(DNSMessage query, DNSQuestion question, Collection<ResourceRecord> answers,
+                                 int rcode, ByteBuffer encodeBuffer) {
+        return buildResponse(query, question, answers, Collections.emptyList(), false, rcode, encodeBuffer);
+    }
+
+    /**
+     * Encodes a response to a query. Answers of types that can't be encoded are left out. Authority records come from
+     * local zones, so they can always be encoded.
+     */
+    private byte[] buildResponse(DNSMessage query, DNSQuestion question, Collection<ResourceRecord> answers,
+                                 Collection<ResourceRecord> authority, boolean authoritative, int rcode,
+                                 ByteBuffer encodeBuffer) {
+        int clientPayloadSize = query.getUDPPayloadSize();
+        int limit = clientPayloadSize > 0 ? clientPayloadSize : DNSMessage.MAX_DNS_MESSAGE_LENGTH;
+        DNSMessage response = newResponse(query, question, rcode, encodeBuffer);
+        response.setAA(authoritative);
+        try {
+            for (ResourceRecord record : answers)
+                if (ENCODABLE_TYPES.contains(record.getRecordType()))
+                    response.addResourceRecord(record, "answer");
+            for (ResourceRecord record : authority)
+                response.addResourceRecord(record, "nameserver");
+            if (clientPayloadSize > 0)
+                response.addOPT(ednsPayloadSize);
+        } catch (BufferOverflowException e) {
+            limit = 0;
+        }
+
+        byte[] encoded = response.getUsed();
+        if (encoded.length <= limit)
+            return encoded;
+
+        // Too large for the client: send the question only, with the TC bit set
+        response = newResponse(query, question, rcode, encodeBuffer);
+        response.setAA(authoritative);
+        response.setTC(true);
+        return response.getUsed();
+    }
+
+    private static DNSMessage newResponse(DNSMessage query, DNSQuestion question, int rcode, ByteBuffer encodeBuffer) {
+        DNSMessage response = new DNSMessage((short) query.getID(), encodeBuffer);
+        response.setQR(true);
+        response.setOpcode(query.getOpcode());
+        response.setRD(query.getRD());
+        response.setRA(true);
+        response.setRcode(rcode);
+        if (question != null)
+            response.addQuestion(question);
+        return response;
+    }
+}
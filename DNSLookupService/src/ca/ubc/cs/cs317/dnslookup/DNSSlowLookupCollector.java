@@ -0,0 +1,86 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lookup listener that keeps the most recent lookups in a fixed-size ring buffer, so that the slowest of them can be
+ * examined hop by hop. Recording a lookup takes no lock and allocates nothing, so a single collector can be shared by
+ * many lookup services (e.g., the resolver threads of a DNSServer). Older lookups are overwritten.
+ */
+public class DNSSlowLookupCollector implements DNSLookupListener {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final AtomicReferenceArray<DNSLookupTrace> traces;
+    private final AtomicLong next = new AtomicLong();
+
+    public DNSSlowLookupCollector() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a collector.
+     *
+     * @param capacity The number of recent lookups kept.
+     */
+    public DNSSlowLookupCollector(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+        this.traces = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public void lookupCompleted(DNSLookupTrace trace) {
+        traces.set((int) (next.getAndIncrement() % traces.length()), trace);
+    }
+
+    /**
+     * Returns the number of lookups recorded since the collector was created or cleared, including those that have
+     * been overwritten.
+     */
+    public long getCount() {
+        return next.get();
+    }
+
+    /**
+     * Returns the slowest of the recent lookups.
+     *
+     * @param count The maximum number of lookups returned.
+     * @return The lookups, slowest first.
+     */
+    public List<DNSLookupTrace> getSlowest(int count) {
+        List<DNSLookupTrace> recent = new ArrayList<>();
+        for (int i = 0; i < traces.length(); i++) {
+            DNSLookupTrace trace = traces.get(i);
+            if (trace != null)
+                recent.add(trace);
+        }
+        recent.sort(Comparator.comparingLong(DNSLookupTrace::getElapsedNanos).reversed());
+        return recent.size() > count ? new ArrayList<>(recent.subList(0, count)) : recent;
+    }
+
+    /**
+     * Prints the slowest of the recent lookups, with all their hops.
+     *
+     * @param out   The stream where the lookups are printed.
+     * @param count The maximum number of lookups printed.
+     */
+    public void dump(PrintStream out, int count) {
+        for (DNSLookupTrace trace : getSlowest(count))
+            out.println(trace);
+    }
+
+    /**
+     * Removes all recorded lookups.
+     */
+    public void clear() {
+        for (int i = 0; i < traces.length(); i++)
+            traces.set(i, null);
+        next.set(0);
+    }
+}
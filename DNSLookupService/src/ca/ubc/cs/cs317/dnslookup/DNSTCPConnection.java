@@ -0,0 +1,168 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent TCP connection to a single nameserver, as described in RFC 7766. Each query is sent prefixed by its
+ * two-byte length, and several queries may be outstanding on the same connection at the same time (pipelining).
+ * Responses may arrive in any order, and are matched to their queries by transaction ID by a background reader thread.
+ */
+public class DNSTCPConnection implements Closeable {
+
+    private final InetSocketAddress server;
+    private final Socket socket;
+    private final DataOutputStream output;
+    private final DataInputStream input;
+    private final Map<Integer, CompletableFuture<DNSMessage>> pending = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /**
+     * Opens a new connection to a nameserver and starts the thread that reads its responses.
+     *
+     * @param server         Address and port of the nameserver.
+     * @param connectTimeout Maximum time to wait for the connection to be established, in milliseconds.
+     * @throws IOException If the connection cannot be established.
+     */
+    public DNSTCPConnection(InetSocketAddress server, int connectTimeout) throws IOException {
+        this.server = server;
+        this.socket = new Socket();
+        socket.setTcpNoDelay(true);
+        socket.connect(server, connectTimeout);
+        this.output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        Thread reader = new Thread(this::readResponses, "dns-tcp-" + server);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public InetSocketAddress getServer() {
+        return server;
+    }
+
+    /**
+     * Returns true if this connection can still be used to send queries.
+     *
+     * @return false if the connection was closed by either side, true otherwise.
+     */
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Returns the time this connection was last used to send a query or receive a response.
+     *
+     * @return Time of last use, in milliseconds since the epoch.
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Returns the number of queries sent on this connection that have not been answered yet.
+     *
+     * @return The number of outstanding queries.
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Sends a query on this connection without waiting for its response. The returned future is completed when a
+     * response with the same transaction ID is received, or completed exceptionally if the connection is closed
+     * first.
+     *
+     * @param query The query to be sent.
+     * @return A future for the response to the query.
+     * @throws DuplicateIDException If a query with the same transaction ID is already outstanding on this
+     *                              connection. The connection can still be used.
+     * @throws IOException          If the connection is closed, or the query cannot be written.
+     */
+    public CompletableFuture<DNSMessage> send(DNSMessage query) throws IOException {
+        if (closed)
+            throw new IOException("Connection to " + server + " is closed");
+
+        CompletableFuture<DNSMessage> future = new CompletableFuture<>();
+        if (pending.putIfAbsent(query.getID(), future) != null)
+            throw new DuplicateIDException("Transaction ID " + query.getID() + " already outstanding on " + server);
+
+        byte[] data = query.getUsed();
+        try {
+            synchronized (output) {
+                output.writeShort(data.length);
+                output.write(data);
+                output.flush();
+            }
+        } catch (IOException e) {
+            pending.remove(query.getID());
+            close();
+            throw e;
+        }
+        lastUsed = System.currentTimeMillis();
+        return future;
+    }
+
+    /**
+     * Abandons an outstanding query, e.g., after it timed out. A response received later for it is ignored.
+     *
+     * @param id Transaction ID of the query.
+     */
+    public void cancel(int id) {
+        pending.remove(id);
+    }
+
+    /**
+     * Reads length-prefixed responses until the connection is closed, completing the future of the query with the
+     * matching transaction ID. Responses that don't match any outstanding query are ignored.
+     */
+    private void readResponses() {
+        try {
+            while (!closed) {
+                int length = input.readUnsignedShort();
+                byte[] data = new byte[length];
+                input.readFully(data);
+                lastUsed = System.currentTimeMillis();
+                DNSMessage response = new DNSMessage(data, length);
+                CompletableFuture<DNSMessage> future = pending.remove(response.getID());
+                if (future != null)
+                    future.complete(response);
+            }
+        } catch (IOException e) {
+            // Connection closed by the server (e.g., idle timeout) or by close()
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Closes the connection. All outstanding queries are completed exceptionally.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Error is ignored
+        }
+        IOException cause = new EOFException("Connection to " + server + " closed");
+        pending.values().forEach(future -> future.completeExceptionally(cause));
+        pending.clear();
+    }
+
+    /**
+     * Thrown when a query is sent with the transaction ID of a query that is still outstanding on the same
+     * connection. Unlike other errors, this does not mean that the connection is broken.
+     */
+    public static class DuplicateIDException extends IOException {
+        public DuplicateIDException(String message) {
+            super(message);
+        }
+    }
+}
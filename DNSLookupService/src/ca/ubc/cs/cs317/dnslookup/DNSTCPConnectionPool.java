@@ -0,0 +1,148 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * This class keeps persistent TCP connections to nameservers, so that queries sent over TCP (e.g., after a truncated
+ * UDP response) don't pay for a new TCP handshake every time. Connections are shared by all lookup services, and
+ * several queries may be outstanding on each connection at the same time. Connections that have not been used for
+ * IDLE_TIMEOUT milliseconds are closed.
+ */
+public class DNSTCPConnectionPool {
+
+    public static final int IDLE_TIMEOUT = 10000;
+
+    /**
+     * Maximum number of transaction IDs tried for a query whose ID is already outstanding on a connection.
+     */
+    private static final int MAX_ID_ATTEMPTS = 16;
+
+    private static final DNSTCPConnectionPool instance = new DNSTCPConnectionPool();
+
+    private final Map<InetSocketAddress, DNSTCPConnection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * Singleton retrieval method. This method returns the single connection pool instance shared by all lookup
+     * services.
+     *
+     * @return Instance of a connection pool.
+     */
+    public static DNSTCPConnectionPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sends a query to a nameserver over TCP and waits for its response. An existing connection to the nameserver is
+     * reused if one is open. If sending on an existing connection fails (e.g., because the server closed it in the
+     * meantime), the query is sent once more on a new connection.
+     * <p>
+     * Transaction IDs are random, so queries from different threads may have the same ID. If the ID of the query is
+     * already outstanding on the connection, the query is sent with a new ID instead; the query and its response still
+     * have the original ID when this method returns.
+     *
+     * @param query   The query to be sent.
+     * @param server  Address of the nameserver.
+     * @param port    Port number of the nameserver.
+     * @param timeout Maximum time to wait for the connection and for the response, in milliseconds.
+     * @return The response received, or null if no response was received within the timeout.
+     */
+    public DNSMessage query(DNSMessage query, InetAddress server, int port, int timeout) {
+        InetSocketAddress address = new InetSocketAddress(server, port);
+        int id = query.getID();
+        closeIdleConnections();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            DNSTCPConnection connection;
+            try {
+                connection = getConnection(address, timeout);
+            } catch (IOException e) {
+                return null;
+            }
+            CompletableFuture<DNSMessage> future = null;
+            int sentID = id;
+            try {
+                for (int idAttempt = 1; future == null; idAttempt++) {
+                    try {
+                        future = connection.send(query);
+                    } catch (DNSTCPConnection.DuplicateIDException e) {
+                        if (idAttempt == MAX_ID_ATTEMPTS)
+                            return null;
+                        sentID = ThreadLocalRandom.current().nextInt(0x10000);
+                        query.setID(sentID);
+                    }
+                }
+            } catch (IOException e) {
+                removeConnection(address, connection);
+                continue;
+            } finally {
+                query.setID(id);
+            }
+            try {
+                DNSMessage response = future.get(timeout, TimeUnit.MILLISECONDS);
+                response.setID(id);
+                return response;
+            } catch (TimeoutException e) {
+                connection.cancel(sentID);
+                return null;
+            } catch (InterruptedException e) {
+                connection.cancel(sentID);
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                // Connection was closed before a response arrived, try again on a new one
+                removeConnection(address, connection);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes a connection that can no longer be used from the pool, and closes it.
+     */
+    private void removeConnection(InetSocketAddress address, DNSTCPConnection connection) {
+        connections.remove(address, connection);
+        connection.close();
+    }
+
+    /**
+     * Returns an open connection to the specified address, creating a new one if needed.
+     */
+    private DNSTCPConnection getConnection(InetSocketAddress address, int timeout) throws IOException {
+        DNSTCPConnection connection = connections.get(address);
+        if (connection != null && connection.isOpen())
+            return connection;
+
+        DNSTCPConnection newConnection = new DNSTCPConnection(address, timeout);
+        connection = connections.merge(address, newConnection, (old, created) -> old.isOpen() ? old : created);
+        if (connection != newConnection)
+            newConnection.close();
+        return connection;
+    }
+
+    /**
+     * Closes and removes connections that are closed or have been idle for longer than IDLE_TIMEOUT.
+     */
+    public void closeIdleConnections() {
+        long cutoff = System.currentTimeMillis() - IDLE_TIMEOUT;
+        Iterator<DNSTCPConnection> it = connections.values().iterator();
+        while (it.hasNext()) {
+            DNSTCPConnection connection = it.next();
+            if (!connection.isOpen() || (connection.getPendingCount() == 0 && connection.getLastUsed() < cutoff)) {
+                it.remove();
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Closes all connections in the pool.
+     */
+    public void closeAll() {
+        connections.values().forEach(DNSTCPConnection::close);
+        connections.clear();
+    }
+}
@@ -4,6 +4,36 @@ import java.net.InetAddress;
 
 public interface DNSVerbosePrinter {
 
+    /**
+     * A printer that prints nothing, for lookup services whose responses are not shown (e.g., in the server and in
+     * bulk lookups).
+     */
+    DNSVerbosePrinter NONE = new DNSVerbosePrinter() {
+        @Override
+        public void printQueryToSend(DNSQuestion question, InetAddress server, int transactionID) {
+        }
+
+        @Override
+        public void printResponseHeaderInfo(int receivedTransactionId, boolean authoritative, int errorCode) {
+        }
+
+        @Override
+        public void printAnswersHeader(int num_answers) {
+        }
+
+        @Override
+        public void printNameserversHeader(int num_nameservers) {
+        }
+
+        @Override
+        public void printAdditionalInfoHeader(int num_additional) {
+        }
+
+        @Override
+        public void printIndividualResourceRecord(ResourceRecord record, int typeCode, int classCode) {
+        }
+    };
+
     void printQueryToSend(DNSQuestion question, InetAddress server, int transactionID);
 
     void printResponseHeaderInfo(int receivedTransactionId, boolean authoritative, int errorCode);
@@ -0,0 +1,304 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.net.InetAddress;
+import java.util.*;
+
+/**
+ * An in-memory authoritative zone. Names are kept in a tree of labels, starting at the zone's origin (apex), where the
+ * children of each node are sorted by label (case-insensitively). Each node holds the record sets (RRsets) for its name,
+ * one per record type. Looking up a question walks down the tree one label at a time, so answers are found without any
+ * network traffic and in time proportional to the number of labels in the name.
+ * <p>
+ * Records are kept with their original TTL, and a new resource record is created every time a record is returned, so
+ * that its TTL is always the one configured in the zone. Zones are usually loaded from master files with
+ * DNSZoneFileReader; records must not be added to a zone once it is being used to answer questions.
+ */
+public class DNSZone {
+
+    public static final String WILDCARD_LABEL = "*";
+
+    /**
+     * The result of looking up a question in a zone.
+     */
+    public enum Status {
+        /** The name exists and has records of the requested type, or a CNAME record. */
+        ANSWER,
+        /** The name exists, but has no records of the requested type. */
+        NO_DATA,
+        /** The name does not exist in the zone. */
+        NAME_ERROR,
+        /** The name is in a subzone delegated to other nameservers. */
+        REFERRAL
+    }
+
+    private final String origin;
+    private final Node apex = new Node();
+    private ResourceRecord soa;
+    private int soaTtl;
+    private int negativeTtl;
+    private int recordCount;
+
+    /**
+     * Creates a new empty zone.
+     *
+     * @param origin The name of the zone's apex, e.g., "example.com" (no trailing dot), or "" for the root zone.
+     */
+    public DNSZone(String origin) {
+        this.origin = origin;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the SOA record of the zone, with the TTL configured in the zone, or null if the zone has no SOA record.
+     *
+     * @return The SOA record, or null.
+     */
+    public ResourceRecord getSOA() {
+        return soa == null ? null : copy(soa, soaTtl, soa.getHostName());
+    }
+
+    /**
+     * Sets the SOA record of the zone. The SOA record is kept with the apex records, and is also returned in the
+     * authority section of negative answers, with the negative caching TTL (RFC 2308).
+     *
+     * @param soa         The SOA record, whose result is the hex string of its RDATA (as returned by DNSMessage.getRR).
+     * @param ttl         The TTL of the SOA record.
+     * @param negativeTtl The TTL of negative answers: the smaller of the SOA's TTL and its MINIMUM field.
+     */
+    public void setSOA(ResourceRecord soa, int ttl, int negativeTtl) {
+        addRecord(soa, ttl);
+        this.soa = soa;
+        this.soaTtl = ttl;
+        this.negativeTtl = negativeTtl;
+    }
+
+    /**
+     * Returns true if a name is the zone's origin or a name below it.
+     *
+     * @param name The name to be checked.
+     * @return true if the name belongs to the zone's namespace.
+     */
+    public boolean contains(String name) {
+        return relativeLabels(name) != null;
+    }
+
+    /**
+     * Adds a record to the zone. If an equal record was already added, the record is ignored.
+     *
+     * @param record The record to be added. Only its question and result are used.
+     * @param ttl    The TTL of the record, used for every answer containing it.
+     * @throws IllegalArgumentException If the record's name is not in the zone.
+     */
+    public void addRecord(ResourceRecord record, int ttl) {
+        String[] labels = relativeLabels(record.getHostName());
+        if (labels == null)
+            throw new IllegalArgumentException(record.getHostName() + " is not in zone " + describe(origin));
+        Node node = apex;
+        for (int i = labels.length - 1; i >= 0; i--)
+            node = node.children.computeIfAbsent(labels[i], l -> new Node());
+        List<ZoneRecord> rrset = node.rrsets.computeIfAbsent(record.getRecordType(), t -> new ArrayList<>());
+        for (ZoneRecord existing : rrset)
+            if (existing.record.equals(record))
+                return;
+        rrset.add(new ZoneRecord(record, ttl));
+        recordCount++;
+    }
+
+    /**
+     * Looks up a question in the zone. Records of the requested type are returned if the name has any; otherwise the
+     * name's CNAME record is returned, if it has one (CNAME records are not followed). Names that don't exist are
+     * answered from a wildcard name ("*" label) at the closest existing ancestor, if there is one. If a name is at or
+     * below a delegation point (a name other than the apex with NS records), a referral is returned instead, with the
+     * NS records in the authority section and the addresses of the nameservers that are in the zone (glue records) in
+     * the additional section.
+     *
+     * @param question The question to be answered.
+     * @return The answer, or null if the question's name is not in the zone.
+     */
+    public Answer lookup(DNSQuestion question) {
+        String[] labels = relativeLabels(question.getHostName());
+        if (labels == null)
+            return null;
+
+        Node node = apex;
+        for (int i = labels.length - 1; i >= 0; i--) {
+            Node child = node.children.get(labels[i]);
+            if (child == null) {
+                Node wildcard = node.children.get(WILDCARD_LABEL);
+                if (wildcard == null)
+                    return negativeAnswer(Status.NAME_ERROR);
+                return answerFromNode(wildcard, question);
+            }
+            node = child;
+            List<ZoneRecord> nameServers = node.rrsets.get(RecordType.NS);
+            if (nameServers != null)
+                return referral(nameServers);
+        }
+        return answerFromNode(node, question);
+    }
+
+    private Answer answerFromNode(Node node, DNSQuestion question) {
+        List<ZoneRecord> rrset = node.rrsets.get(question.getRecordType());
+        if (rrset == null && question.getRecordType() != RecordType.CNAME)
+            rrset = node.rrsets.get(RecordType.CNAME);
+        if (rrset == null)
+            return negativeAnswer(Status.NO_DATA);
+        List<ResourceRecord> records = new ArrayList<>(rrset.size());
+        for (ZoneRecord zoneRecord : rrset)
+            records.add(copy(zoneRecord.record, zoneRecord.ttl, question.getHostName()));
+        return new Answer(Status.ANSWER, records, Collections.emptyList(), Collections.emptyList());
+    }
+
+    private Answer negativeAnswer(Status status) {
+        List<ResourceRecord> authority = soa == null ? Collections.emptyList() :
+                Collections.singletonList(copy(soa, negativeTtl, soa.getHostName()));
+        return new Answer(status, Collections.emptyList(), authority, Collections.emptyList());
+    }
+
+    private Answer referral(List<ZoneRecord> nameServers) {
+        List<ResourceRecord> authority = new ArrayList<>(nameServers.size());
+        List<ResourceRecord> additional = new ArrayList<>();
+        for (ZoneRecord nameServer : nameServers) {
+            authority.add(copy(nameServer.record, nameServer.ttl, nameServer.record.getHostName()));
+            for (RecordType type : new RecordType[]{RecordType.A, RecordType.AAAA}) {
+                List<ZoneRecord> glue = findRRset(nameServer.record.getTextResult(), type);
+                if (glue != null)
+                    for (ZoneRecord address : glue)
+                        additional.add(copy(address.record, address.ttl, address.record.getHostName()));
+            }
+        }
+        return new Answer(Status.REFERRAL, Collections.emptyList(), authority, additional);
+    }
+
+    /**
+     * Finds the records of a type at a name, ignoring delegation points and wildcards (used to find glue records).
+     */
+    private List<ZoneRecord> findRRset(String name, RecordType type) {
+        String[] labels = relativeLabels(name);
+        if (labels == null)
+            return null;
+        Node node = apex;
+        for (int i = labels.length - 1; i >= 0 && node != null; i--)
+            node = node.children.get(labels[i]);
+        return node == null ? null : node.rrsets.get(type);
+    }
+
+    /**
+     * Returns the labels of a name that come before the zone's origin, in their original order and in lower case, or
+     * null if the name is not in the zone.
+     */
+    private String[] relativeLabels(String name) {
+        String lowerName = name.toLowerCase();
+        String lowerOrigin = origin.toLowerCase();
+        String relative;
+        if (lowerOrigin.isEmpty())
+            relative = lowerName;
+        else if (lowerName.equals(lowerOrigin))
+            relative = "";
+        else if (lowerName.endsWith("." + lowerOrigin))
+            relative = lowerName.substring(0, lowerName.length() - lowerOrigin.length() - 1);
+        else
+            return null;
+        return relative.isEmpty() ? new String[0] : relative.split("\\.");
+    }
+
+    /**
+     * Creates a new record with the same result as a zone record, for the specified name, with a fresh TTL.
+     */
+    private static ResourceRecord copy(ResourceRecord record, int ttl, String hostName) {
+        DNSQuestion question = hostName.equals(record.getHostName()) ? record.getQuestion() :
+                new DNSQuestion(hostName, record.getRecordType(), record.getRecordClass());
+        if (record.getInetResult() != null)
+            return new ResourceRecord(question, ttl, record.getInetResult());
+        return new ResourceRecord(question, ttl, record.getTextResult());
+    }
+
+    private static String describe(String name) {
+        return name.isEmpty() ? "<root>" : name;
+    }
+
+    @Override
+    public String toString() {
+        return describe(origin) + " (" + recordCount + " records)";
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new TreeMap<>();
+        private final Map<RecordType, List<ZoneRecord>> rrsets = new EnumMap<>(RecordType.class);
+    }
+
+    private static class ZoneRecord {
+        private final ResourceRecord record;
+        private final int ttl;
+
+        private ZoneRecord(ResourceRecord record, int ttl) {
+            this.record = record;
+            this.ttl = ttl;
+        }
+    }
+
+    /**
+     * The answer to a question from an authoritative zone.
+     */
+    public static class Answer {
+        private final Status status;
+        private final List<ResourceRecord> records;
+        private final List<ResourceRecord> authority;
+        private final List<ResourceRecord> additional;
+
+        private Answer(Status status, List<ResourceRecord> records, List<ResourceRecord> authority,
+                       List<ResourceRecord> additional) {
+            this.status = status;
+            this.records = records;
+            this.authority = authority;
+            this.additional = additional;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns true if the zone is authoritative for the answer, i.e., if the answer is not a referral.
+         *
+         * @return true if the answer is authoritative.
+         */
+        public boolean isAuthoritative() {
+            return status != Status.REFERRAL;
+        }
+
+        /**
+         * Returns the records answering the question, possibly including a CNAME record. Empty if there is no answer.
+         *
+         * @return The records in the answer section.
+         */
+        public List<ResourceRecord> getRecords() {
+            return records;
+        }
+
+        /**
+         * Returns the NS records of a referral, or the zone's SOA record for a negative answer.
+         *
+         * @return The records in the authority section.
+         */
+        public List<ResourceRecord> getAuthority() {
+            return authority;
+        }
+
+        /**
+         * Returns the glue records of a referral.
+         *
+         * @return The records in the additional section.
+         */
+        public List<ResourceRecord> getAdditional() {
+            return additional;
+        }
+    }
+}
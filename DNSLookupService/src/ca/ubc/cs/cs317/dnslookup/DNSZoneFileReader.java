@@ -0,0 +1,387 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a zone from a master file in the format described in RFC 1035 (section 5). The following are supported:
+ * <ul>
+ * <li>the $ORIGIN, $TTL (RFC 2308) and $INCLUDE directives;</li>
+ * <li>"@" for the current origin, names relative to the current origin, and blank owners (same owner as the previous
+ * record);</li>
+ * <li>TTLs and classes in any order (only class IN), with TTL units (e.g., 1h30m);</li>
+ * <li>comments (;), quoted strings and parentheses spanning several lines;</li>
+ * <li>A, AAAA, NS, CNAME, PTR, MX and SOA records. Records of other types are skipped.</li>
+ * </ul>
+ * The zone's origin is the owner of its SOA record, which must be the first record in the file. If no origin has been
+ * set before the SOA record, relative names are relative to the zone's origin.
+ */
+public class DNSZoneFileReader {
+
+    private static final int MAX_INCLUDE_DEPTH = 8;
+
+    private DNSZone zone;
+    private String origin;
+    private String previousOwner;
+    private int defaultTtl = -1;
+    private int previousTtl = -1;
+
+    private DNSZoneFileReader(String origin) {
+        this.origin = origin;
+    }
+
+    /**
+     * Reads a zone from a master file.
+     *
+     * @param file   The master file.
+     * @param origin The initial origin (used for relative names until a $ORIGIN directive is found), or null if the
+     *               file sets its own origin.
+     * @return The zone.
+     * @throws IOException If the file can't be read or has an error.
+     */
+    public static DNSZone read(Path file, String origin) throws IOException {
+        DNSZoneFileReader reader = new DNSZoneFileReader(origin == null ? null : normalize(origin));
+        reader.readFile(file, 0);
+        return reader.getZone(file.toString());
+    }
+
+    /**
+     * Reads a zone in master file format from a character stream (e.g., a string with the zone's records). Files in
+     * $INCLUDE directives are relative to the current directory.
+     *
+     * @param in     The stream with the zone's records. It is not closed.
+     * @param origin The initial origin (used for relative names until a $ORIGIN directive is found), or null if the
+     *               stream sets its own origin.
+     * @return The zone.
+     * @throws IOException If the stream can't be read or has an error.
+     */
+    public static DNSZone read(Reader in, String origin) throws IOException {
+        DNSZoneFileReader reader = new DNSZoneFileReader(origin == null ? null : normalize(origin));
+        reader.readEntries(new BufferedReader(in), "<input>", Paths.get(""), 0);
+        return reader.getZone("<input>");
+    }
+
+    private DNSZone getZone(String source) throws ZoneFileException {
+        if (zone == null)
+            throw new ZoneFileException(source + ": no SOA record found");
+        return zone;
+    }
+
+    private void readFile(Path file, int depth) throws IOException {
+        if (depth > MAX_INCLUDE_DEPTH)
+            throw new ZoneFileException(file + ": too many nested $INCLUDE directives");
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Path parent = file.toAbsolutePath().getParent();
+            readEntries(in, file.toString(), parent == null ? Paths.get("") : parent, depth);
+        }
+    }
+
+    /**
+     * Reads all the entries in a master file.
+     *
+     * @param in     The contents of the file.
+     * @param source The name of the file, used in error messages.
+     * @param base   The directory for relative file names in $INCLUDE directives.
+     * @param depth  The number of $INCLUDE directives being processed.
+     */
+    private void readEntries(BufferedReader in, String source, Path base, int depth) throws IOException {
+        List<String> tokens = new ArrayList<>();
+        boolean blankOwner = false;
+        int parentheses = 0;
+        int entryLine = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (parentheses == 0) {
+                tokens.clear();
+                entryLine = lineNumber;
+                blankOwner = !line.isEmpty() && Character.isWhitespace(line.charAt(0));
+            }
+            try {
+                parentheses = tokenize(line, tokens, parentheses);
+                if (parentheses == 0 && !tokens.isEmpty())
+                    processEntry(base, tokens, blankOwner, depth);
+            } catch (ZoneFileException e) {
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                throw new ZoneFileException(source + ":" + entryLine + ": " + e.getMessage());
+            }
+        }
+        if (parentheses != 0)
+            throw new ZoneFileException(source + ":" + entryLine + ": unbalanced parentheses");
+    }
+
+    /**
+     * Splits a line into tokens, removing comments and parentheses. Quoted strings are returned as a single token,
+     * without the quotes.
+     *
+     * @return The number of parentheses still open at the end of the line.
+     */
+    private static int tokenize(String line, List<String> tokens, int parentheses) {
+        int i = 0;
+        while (i < line.length()) {
+            char c = line.charAt(i);
+            if (c == ';') {
+                break;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(') {
+                parentheses++;
+                i++;
+            } else if (c == ')') {
+                if (--parentheses < 0)
+                    throw new IllegalArgumentException("unbalanced parentheses");
+                i++;
+            } else if (c == '"') {
+                int end = line.indexOf('"', i + 1);
+                if (end < 0)
+                    throw new IllegalArgumentException("unterminated quoted string");
+                tokens.add(line.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                int start = i;
+                while (i < line.length() && !Character.isWhitespace(line.charAt(i)) && "();\"".indexOf(line.charAt(i)) < 0)
+                    i++;
+                tokens.add(line.substring(start, i));
+            }
+        }
+        return parentheses;
+    }
+
+    private void processEntry(Path base, List<String> tokens, boolean blankOwner, int depth) throws IOException {
+        String first = tokens.get(0);
+        if (!blankOwner && first.startsWith("$")) {
+            processDirective(base, tokens, depth);
+            return;
+        }
+
+        int index = 0;
+        String owner;
+        if (blankOwner) {
+            if (previousOwner == null)
+                throw new IllegalArgumentException("no previous owner name");
+            owner = previousOwner;
+        } else {
+            owner = absoluteName(first);
+            index++;
+        }
+
+        // TTL and class may appear in either order, and are both optional
+        int ttl = -1;
+        for (int i = 0; i < 2 && index < tokens.size(); i++) {
+            String token = tokens.get(index);
+            if (ttl < 0 && Character.isDigit(token.charAt(0))) {
+                ttl = parseTtl(token);
+                index++;
+            } else if (token.equalsIgnoreCase("IN")) {
+                index++;
+            } else if (token.equalsIgnoreCase("CH") || token.equalsIgnoreCase("HS") || token.equalsIgnoreCase("CS")) {
+                throw new IllegalArgumentException("unsupported class " + token);
+            } else {
+                break;
+            }
+        }
+        if (index >= tokens.size())
+            throw new IllegalArgumentException("missing record type");
+        String typeName = tokens.get(index++).toUpperCase();
+        List<String> rdata = tokens.subList(index, tokens.size());
+        previousOwner = owner;
+
+        RecordType type;
+        try {
+            type = RecordType.valueOf(typeName);
+        } catch (IllegalArgumentException e) {
+            type = RecordType.OTHER;
+        }
+        if (type == RecordType.OTHER || type == RecordType.OPT)
+            return;
+
+        if (ttl < 0)
+            ttl = defaultTtl >= 0 ? defaultTtl : previousTtl;
+        if (ttl < 0 && type != RecordType.SOA)
+            throw new IllegalArgumentException("no TTL specified and no $TTL directive");
+        DNSQuestion question = new DNSQuestion(owner, type, RecordClass.IN);
+
+        if (type == RecordType.SOA) {
+            addSOA(question, ttl, rdata);
+            return;
+        }
+        if (zone == null)
+            throw new IllegalArgumentException("the first record must be an SOA record");
+        previousTtl = ttl;
+        switch (type) {
+            case A:
+            case AAAA:
+                expectFields(rdata, 1, typeName);
+                zone.addRecord(new ResourceRecord(question, ttl, parseAddress(rdata.get(0), type)), ttl);
+                break;
+            case MX:
+                // The preference is not kept, as in records decoded from messages
+                expectFields(rdata, 2, typeName);
+                Integer.parseInt(rdata.get(0));
+                zone.addRecord(new ResourceRecord(question, ttl, absoluteName(rdata.get(1))), ttl);
+                break;
+            default:
+                expectFields(rdata, 1, typeName);
+                zone.addRecord(new ResourceRecord(question, ttl, absoluteName(rdata.get(0))), ttl);
+        }
+    }
+
+    private void processDirective(Path base, List<String> tokens, int depth) throws IOException {
+        String directive = tokens.get(0).toUpperCase();
+        switch (directive) {
+            case "$ORIGIN":
+                expectFields(tokens.subList(1, tokens.size()), 1, directive);
+                origin = absoluteName(tokens.get(1));
+                break;
+            case "$TTL":
+                expectFields(tokens.subList(1, tokens.size()), 1, directive);
+                defaultTtl = parseTtl(tokens.get(1));
+                break;
+            case "$INCLUDE":
+                if (tokens.size() < 2 || tokens.size() > 3)
+                    throw new IllegalArgumentException("$INCLUDE expects a file name and an optional origin");
+                String savedOrigin = origin;
+                String savedOwner = previousOwner;
+                if (tokens.size() == 3)
+                    origin = absoluteName(tokens.get(2));
+                readFile(base.resolve(tokens.get(1)), depth + 1);
+                // The origin and owner are restored after an included file (RFC 1035, section 5.1)
+                origin = savedOrigin;
+                previousOwner = savedOwner;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown directive " + tokens.get(0));
+        }
+    }
+
+    private void addSOA(DNSQuestion question, int ttl, List<String> rdata) {
+        if (zone != null)
+            throw new IllegalArgumentException("more than one SOA record");
+        expectFields(rdata, 7, "SOA");
+        if (origin == null)
+            origin = question.getHostName();
+        String primary = absoluteName(rdata.get(0));
+        String mailbox = absoluteName(rdata.get(1));
+        long serial = Long.parseLong(rdata.get(2));
+        int minimum = parseTtl(rdata.get(6));
+        if (ttl < 0)
+            ttl = minimum;
+        previousTtl = ttl;
+
+        // The RDATA is kept as a hex string, as for SOA records decoded from messages
+        ByteBuffer buffer = ByteBuffer.allocate(2 * 256 + 20);
+        putName(buffer, primary);
+        putName(buffer, mailbox);
+        buffer.putInt((int) serial);
+        for (int i = 3; i < 7; i++)
+            buffer.putInt(parseTtl(rdata.get(i)));
+        byte[] encoded = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(encoded);
+
+        zone = new DNSZone(question.getHostName());
+        zone.setSOA(new ResourceRecord(question, ttl, DNSMessage.byteArrayToHexString(encoded)), ttl,
+                Math.min(ttl, minimum));
+    }
+
+    /**
+     * Adds a name to a buffer in wire format, without compression.
+     */
+    private static void putName(ByteBuffer buffer, String name) {
+        if (!name.isEmpty()) {
+            for (String label : name.split("\\.")) {
+                byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length == 0 || bytes.length > 63)
+                    throw new IllegalArgumentException("invalid label in " + name);
+                buffer.put((byte) bytes.length);
+                buffer.put(bytes);
+            }
+        }
+        buffer.put((byte) 0);
+    }
+
+    private static InetAddress parseAddress(String text, RecordType type) throws UnknownHostException {
+        // Only literal addresses are accepted, so that InetAddress never queries a nameserver
+        boolean ipv4 = text.matches("\\d{1,3}(\\.\\d{1,3}){3}");
+        if (type == RecordType.A ? !ipv4 : !text.contains(":"))
+            throw new IllegalArgumentException("invalid " + type + " address " + text);
+        InetAddress address = InetAddress.getByName(text);
+        if (type == RecordType.A ? !(address instanceof Inet4Address) : !(address instanceof Inet6Address))
+            throw new IllegalArgumentException("invalid " + type + " address " + text);
+        return address;
+    }
+
+    /**
+     * Parses a TTL in seconds, or with units (e.g., 1w2d3h4m5s).
+     */
+    private static int parseTtl(String text) {
+        long total = 0;
+        long value = -1;
+        for (char c : text.toLowerCase().toCharArray()) {
+            if (Character.isDigit(c)) {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+            } else {
+                int unit = "smhdw".indexOf(c);
+                if (unit < 0 || value < 0)
+                    throw new IllegalArgumentException("invalid TTL " + text);
+                total += value * new long[]{1, 60, 3600, 86400, 604800}[unit];
+                value = -1;
+            }
+            if (total > Integer.MAX_VALUE || value > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("TTL out of range " + text);
+        }
+        if (value >= 0)
+            total += value;
+        if (total > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("TTL out of range " + text);
+        return (int) total;
+    }
+
+    private static void expectFields(List<String> fields, int count, String type) {
+        if (fields.size() != count)
+            throw new IllegalArgumentException(type + " expects " + count + " fields, found " + fields.size());
+    }
+
+    /**
+     * Converts a name in a master file to an absolute name, without the trailing dot.
+     */
+    private String absoluteName(String name) {
+        if (name.equals("@")) {
+            if (origin == null)
+                throw new IllegalArgumentException("@ used with no origin");
+            return origin;
+        }
+        if (name.endsWith("."))
+            return normalize(name);
+        if (origin == null)
+            throw new IllegalArgumentException("relative name " + name + " with no origin");
+        return origin.isEmpty() ? name : name + "." + origin;
+    }
+
+    private static String normalize(String name) {
+        return name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    /**
+     * Exception thrown when a master file has an error. The message includes the file name and line number.
+     */
+    public static class ZoneFileException extends IOException {
+        public ZoneFileException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The authoritative zones configured locally. Questions for names in these zones are answered from the zones, before
+ * the cache is checked and without querying any nameserver. The zones may be used by several threads at the same time.
+ */
+public class DNSZones {
+
+    private static final DNSZones instance = new DNSZones();
+
+    private final Map<String, DNSZone> zones = new ConcurrentHashMap<>();
+
+    /**
+     * Singleton retrieval method. Only one set of zones is used by the application. This method returns the single
+     * instance.
+     *
+     * @return Instance of the set of zones.
+     */
+    public static DNSZones getInstance() {
+        return instance;
+    }
+
+    /**
+     * Adds a zone, replacing any zone previously added with the same origin.
+     *
+     * @param zone The zone to be added. Records must not be added to the zone afterwards.
+     */
+    public void add(DNSZone zone) {
+        zones.put(zone.getOrigin().toLowerCase(), zone);
+    }
+
+    /**
+     * Removes the zone with a specific origin.
+     *
+     * @param origin The origin of the zone to be removed.
+     * @return The removed zone, or null if there was no zone with that origin.
+     */
+    public DNSZone remove(String origin) {
+        return zones.remove(origin.toLowerCase());
+    }
+
+    /**
+     * Removes all zones.
+     */
+    public void clear() {
+        zones.clear();
+    }
+
+    public boolean isEmpty() {
+        return zones.isEmpty();
+    }
+
+    public List<DNSZone> getZones() {
+        return new ArrayList<>(zones.values());
+    }
+
+    /**
+     * Returns the closest zone containing a name, i.e., the zone with the longest origin that is a suffix of the name.
+     *
+     * @param name The name to be searched.
+     * @return The closest zone, or null if the name is not in any zone.
+     */
+    public DNSZone find(String name) {
+        if (zones.isEmpty())
+            return null;
+        String suffix = name.toLowerCase();
+        while (true) {
+            DNSZone zone = zones.get(suffix);
+            if (zone != null || suffix.isEmpty())
+                return zone;
+            int dot = suffix.indexOf('.');
+            suffix = dot < 0 ? "" : suffix.substring(dot + 1);
+        }
+    }
+
+    /**
+     * Looks up a question in the closest zone containing its name.
+     *
+     * @param question The question to be answered.
+     * @return The zone's answer, or null if the name is not in any zone.
+     */
+    public DNSZone.Answer lookup(DNSQuestion question) {
+        DNSZone zone = find(question.getHostName());
+        return zone == null ? null : zone.lookup(question);
+    }
+}
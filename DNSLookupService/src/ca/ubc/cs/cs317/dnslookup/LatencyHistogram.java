@@ -0,0 +1,158 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values (typically latencies in nanoseconds), in the style of HdrHistogram.
+ * Values below 128 are counted exactly; larger values are counted in buckets whose width is 1/64 of their power of
+ * two, so every percentile is accurate to within 1.6% of the value. The memory used is fixed (about 30KB), whatever
+ * the number and range of values recorded, and recording a value only updates a few atomic counters, so a histogram
+ * can be shared by many threads.
+ * <p>
+ * A histogram read while values are being recorded may be slightly inconsistent (e.g., the count may include a value
+ * that is not yet in any bucket), which is acceptable for monitoring.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = SUB_BUCKETS + HALF_SUB_BUCKETS * (Long.SIZE - SUB_BUCKET_BITS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value The value.
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long current;
+        while (value < (current = min.get()) && !min.compareAndSet(current, value)) ;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) ;
+    }
+
+    /**
+     * Adds all the values recorded in another histogram to this one.
+     *
+     * @param other The other histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = other.counts.get(i);
+            if (bucketCount > 0)
+                counts.addAndGet(i, bucketCount);
+        }
+        count.addAndGet(other.count.get());
+        sum.addAndGet(other.sum.get());
+        long otherMin = other.min.get(), otherMax = other.max.get(), current;
+        while (otherMin < (current = min.get()) && !min.compareAndSet(current, otherMin)) ;
+        while (otherMax > (current = max.get()) && !max.compareAndSet(current, otherMax)) ;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the smallest value recorded, or 0 if there is none.
+     */
+    public long getMin() {
+        return count.get() == 0 ? 0 : min.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded, or NaN if there is none.
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? Double.NaN : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns a percentile of the values recorded: the largest value that is equivalent (in the same bucket) to the
+     * value at that percentile.
+     *
+     * @param percentile The percentile (e.g., 99.9).
+     * @return The value, or 0 if no value was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            total += snapshot[i] = counts.get(i);
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(highestEquivalentValue(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    /**
+     * Returns a JSON object with the count, mean, min, max and common percentiles of the values, divided by a unit
+     * (e.g., 1e6 for nanoseconds shown in milliseconds). Numbers always use a decimal point, whatever the default
+     * locale.
+     *
+     * @param unit The value of one unit.
+     * @return The JSON text.
+     */
+    public String toJson(double unit) {
+        StringBuilder sb = new StringBuilder("{\"count\": ").append(getCount());
+        double mean = getMean();
+        sb.append(", \"mean\": ")
+                .append(Double.isNaN(mean) ? "null" : String.format(Locale.ROOT, "%.3f", mean / unit));
+        sb.append(String.format(Locale.ROOT, ", \"min\": %.3f", getMin() / unit));
+        for (double percentile : new double[]{50, 90, 99, 99.9})
+            sb.append(String.format(Locale.ROOT, ", \"p%s\": %.3f",
+                    String.valueOf(percentile).replace(".0", "").replace(".", ""), getPercentile(percentile) / unit));
+        return sb.append(String.format(Locale.ROOT, ", \"max\": %.3f}", getMax() / unit)).toString();
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        // value >> shift is between HALF_SUB_BUCKETS and SUB_BUCKETS - 1
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >> shift) - HALF_SUB_BUCKETS;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
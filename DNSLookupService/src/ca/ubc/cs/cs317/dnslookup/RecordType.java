@@ -7,7 +7,7 @@ import java.util.Arrays;
  * fully supported by this application, but that are sometimes returned by nameservers for regular DNS queries.
  */
 public enum RecordType {
-    A(1), NS(2), CNAME(5), SOA(6), MX(15), AAAA(28), OTHER(0);
+    A(1), NS(2), CNAME(5), SOA(6), PTR(12), MX(15), AAAA(28), OPT(41), OTHER(0);
 
     private final int code;
 
@@ -0,0 +1,37 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DNSLoadGeneratorTest {
+
+    @Test
+    public void testNoQueryLostBetweenIntervals() throws Exception {
+        int clients = 4;
+        AtomicLong answered = new AtomicLong();
+        DNSLoadGenerator generator = new DNSLoadGenerator(
+                Collections.singletonList(new DNSQuestion("www.example.com", RecordType.A, RecordClass.IN)),
+                () -> question -> {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return DNSLoadGenerator.Outcome.LOST;
+                    }
+                    answered.incrementAndGet();
+                    return DNSLoadGenerator.Outcome.ANSWERED;
+                }, clients, 0, 100, new PrintStream(new ByteArrayOutputStream()));
+        DNSLoadGenerator.Interval total = generator.run(2, 1);
+
+        // Only the queries the clients were waiting for at the end of the run, at most one per client, are not counted
+        long completed = total.getCompleted();
+        Assertions.assertTrue(completed > 0);
+        Assertions.assertTrue(completed <= answered.get());
+        Assertions.assertTrue(completed >= answered.get() - clients,
+                "Completed " + completed + " of " + answered.get() + " queries");
+    }
+}
@@ -0,0 +1,50 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+
+public class DNSLogTest {
+
+    @BeforeEach
+    public void silence() {
+        DNSLog.setEcho(false);
+        DNSLog.setLevel(DNSLog.Level.INFO);
+    }
+
+    @AfterEach
+    public void restore() {
+        DNSLog.setEcho(false);
+        DNSLog.setLevel(DNSLog.Level.INFO);
+    }
+
+    @Test
+    public void testLevels() {
+        DNSLog.debug("debug %d", 1);
+        DNSLog.info("info %d", 2);
+        List<String> recent = DNSLog.recent(1);
+        Assertions.assertEquals(1, recent.size());
+        Assertions.assertTrue(recent.get(0).endsWith("INFO [" + Thread.currentThread().getName() + "] info 2"),
+                recent.get(0));
+
+        DNSLog.setLevel(DNSLog.Level.OFF);
+        DNSLog.error("error %d", 3);
+        Assertions.assertEquals(recent, DNSLog.recent(1));
+        Assertions.assertFalse(DNSLog.isEnabled(DNSLog.Level.ERROR));
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        for (int i = 0; i < DNSLog.MAX_PER_SECOND * 5; i++)
+            DNSLog.warn("rate limited %d", i);
+        List<String> recent = DNSLog.recent(DNSLog.MAX_PER_SECOND * 5);
+        long logged = recent.stream().filter(message -> message.contains("rate limited")).count();
+        // The messages may span two seconds
+        Assertions.assertTrue(logged >= DNSLog.MAX_PER_SECOND && logged <= 2 * DNSLog.MAX_PER_SECOND,
+                "Logged " + logged);
+
+        Thread.sleep(1000);
+        DNSLog.warn("rate limited %d", -1);
+        Assertions.assertTrue(DNSLog.recent(1).get(0).contains("similar messages suppressed"));
+    }
+}
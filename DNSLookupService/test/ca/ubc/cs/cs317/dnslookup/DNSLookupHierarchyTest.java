@@ -0,0 +1,221 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Tests of the iterative resolver against a simulated DNS hierarchy on loopback addresses (see FakeDNSHierarchy). No
+ * network access is needed, and the number of queries received by each server is deterministic.
+ */
+public class DNSLookupHierarchyTest {
+
+    private static final int TIMEOUT = 200;
+
+    private FakeDNSHierarchy hierarchy;
+    private DNSLookupService service;
+
+    @BeforeEach
+    public void startHierarchy() throws IOException {
+        hierarchy = FakeDNSHierarchy.standard();
+        service = new DNSLookupService(null, new DNSLookupCUI());
+        service.setTimeout(TIMEOUT);
+        hierarchy.configure(service);
+    }
+
+    @AfterEach
+    public void stopHierarchy() {
+        service.close();
+        hierarchy.close();
+        DNSTCPConnectionPool.getInstance().closeAll();
+        DNSCache.getInstance().setRootHints(DNSCache.DEFAULT_ROOT_HINTS);
+    }
+
+    private List<String> lookup(String name, RecordType type) throws DNSLookupService.CNameIndirectionLimitException {
+        Collection<ResourceRecord> results = service.getResultsFollowingCNames(
+                new DNSQuestion(name, type, RecordClass.IN), 10);
+        return results.stream().map(ResourceRecord::getTextResult).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testIterativeResolution() throws Exception {
+        Assertions.assertEquals(1, lookup("www.example.com", RecordType.A).size());
+        Assertions.assertEquals("192.0.2.10", lookup("www.example.com", RecordType.A).get(0));
+        // Root, com and one of the example.com servers
+        Assertions.assertEquals(1, hierarchy.server("a.root-servers.net").getUDPQueries());
+        Assertions.assertEquals(1, hierarchy.server("a.gtld-servers.net").getUDPQueries());
+        Assertions.assertEquals(3, hierarchy.getTotalQueries());
+    }
+
+    @Test
+    public void testCachedDelegations() throws Exception {
+        lookup("www.example.com", RecordType.A);
+        hierarchy.resetCounters();
+
+        // Cached answers need no queries at all
+        lookup("www.example.com", RecordType.A);
+        Assertions.assertEquals(0, hierarchy.getTotalQueries());
+
+        // A new name in the same zone starts again at the nameserver; its CNAME target is already cached
+        Assertions.assertEquals(2, lookup("alias.example.com", RecordType.A).size());
+        Assertions.assertEquals(3, hierarchy.getTotalQueries());
+    }
+
+    @Test
+    public void testStartAtClosestDelegation() throws Exception {
+        service.setStartAtClosestDelegation(true);
+        lookup("www.example.com", RecordType.A);
+        hierarchy.resetCounters();
+
+        // A new name in the same zone starts at the cached example.com delegation
+        Assertions.assertEquals(2, lookup("alias.example.com", RecordType.A).size());
+        Assertions.assertEquals(1, hierarchy.getTotalQueries());
+        Assertions.assertEquals(0, hierarchy.server("a.root-servers.net").getUDPQueries());
+    }
+
+    @Test
+    public void testNameServerRespected() throws Exception {
+        lookup("www.example.com", RecordType.A);
+        hierarchy.resetCounters();
+
+        // The nameserver set by the user is queried first, even though the example.com delegation is cached
+        FakeNameServer com = hierarchy.server("a.gtld-servers.net");
+        service.setNameServer(com.getAddress().getHostAddress());
+        Assertions.assertEquals(2, lookup("alias.example.com", RecordType.A).size());
+        Assertions.assertEquals(1, com.getUDPQueries());
+        Assertions.assertEquals(0, hierarchy.server("a.root-servers.net").getUDPQueries());
+        Assertions.assertEquals(2, hierarchy.getTotalQueries());
+    }
+
+    @Test
+    public void testPacketLoss() throws Exception {
+        // The first query to the root is dropped, the second one is answered
+        hierarchy.server("a.root-servers.net").setLossProbability(0.75, 2);
+        long start = System.nanoTime();
+        Assertions.assertEquals("192.0.2.25", lookup("mail.example.com", RecordType.A).get(0));
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        Assertions.assertEquals(2, hierarchy.server("a.root-servers.net").getUDPQueries());
+        Assertions.assertEquals(1, hierarchy.server("a.root-servers.net").getDroppedQueries());
+        Assertions.assertTrue(elapsed >= TIMEOUT, "A dropped query must wait for the timeout");
+    }
+
+    @Test
+    public void testTruncation() throws Exception {
+        hierarchy.server("a.gtld-servers.net").setTruncate(true);
+        Assertions.assertEquals("192.0.2.10", lookup("www.example.com", RecordType.A).get(0));
+        Assertions.assertEquals(1, hierarchy.server("a.gtld-servers.net").getUDPQueries());
+        Assertions.assertEquals(1, hierarchy.server("a.gtld-servers.net").getTCPQueries());
+    }
+
+    @Test
+    public void testTCPDuplicateID() throws Exception {
+        // Two queries with the same ID are outstanding at the same time on the same connection
+        FakeNameServer server = hierarchy.server("a.root-servers.net");
+        DNSTCPConnectionPool pool = DNSTCPConnectionPool.getInstance();
+        // Open the connection first, so that both queries find it in the pool
+        DNSMessage first = new DNSMessage((short) 1);
+        first.addQuestion(new DNSQuestion("example.com", RecordType.NS, RecordClass.IN));
+        Assertions.assertNotNull(pool.query(first, server.getAddress(), server.getPort(), 2000));
+        server.resetCounters();
+        server.setLatency(100);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<DNSMessage>> responses = new ArrayList<>();
+            for (String name : new String[]{"www.example.com", "mail.example.com"}) {
+                DNSMessage query = new DNSMessage((short) 1234);
+                query.addQuestion(new DNSQuestion(name, RecordType.A, RecordClass.IN));
+                responses.add(executor.submit(() -> pool.query(query, server.getAddress(), server.getPort(), 2000)));
+            }
+            for (Future<DNSMessage> response : responses) {
+                Assertions.assertNotNull(response.get());
+                Assertions.assertEquals(1234, response.get().getID());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(2, server.getTCPQueries());
+        // The second query was sent with a new ID on the same connection, no new connection was opened
+        Assertions.assertEquals(0, server.getTCPConnections());
+    }
+
+    @Test
+    public void testLameServers() throws Exception {
+        hierarchy.server("ns1.example.com").setLame(true);
+        hierarchy.server("ns2.example.com").setLame(true);
+        Assertions.assertTrue(lookup("www.example.com", RecordType.A).isEmpty());
+        // The resolver gives up after the first REFUSED response
+        Assertions.assertEquals(1, hierarchy.server("ns1.example.com").getUDPQueries()
+                + hierarchy.server("ns2.example.com").getUDPQueries());
+    }
+
+    @Test
+    public void testTracing() throws Exception {
+        DNSSlowLookupCollector collector = new DNSSlowLookupCollector(8);
+        service.setListener(collector);
+        hierarchy.server("a.gtld-servers.net").setLossProbability(0.75, 2);
+        lookup("www.example.com", RecordType.A);
+        lookup("www.example.com", RecordType.A);
+        Assertions.assertEquals(2, collector.getCount());
+
+        List<DNSLookupTrace> slowest = collector.getSlowest(2);
+        DNSLookupTrace miss = slowest.get(0);
+        Assertions.assertEquals(DNSLookupTrace.Source.NETWORK, miss.getSource());
+        Assertions.assertEquals(1, miss.getResults());
+        // Root, com (dropped once, then answered) and example.com
+        List<DNSLookupTrace.Hop> hops = miss.getHops();
+        Assertions.assertEquals(4, hops.size());
+        Assertions.assertEquals(0, hops.get(0).getDepth());
+        Assertions.assertTrue(hops.get(1).isTimeout());
+        Assertions.assertEquals(1, hops.get(1).getDepth());
+        Assertions.assertEquals(2, hops.get(2).getAttempt());
+        Assertions.assertTrue(hops.get(1).getRttNanos() >= TIMEOUT * 1000000L);
+        Assertions.assertEquals(2, hops.get(3).getDepth());
+        Assertions.assertEquals(1, hops.get(3).getAnswers());
+
+        DNSLookupTrace hit = slowest.get(1);
+        Assertions.assertEquals(DNSLookupTrace.Source.CACHE, hit.getSource());
+        Assertions.assertTrue(hit.getHops().isEmpty());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        DNSLookupMetrics metrics = new DNSLookupMetrics();
+        service.setListener(metrics);
+        hierarchy.server("ns1.example.com").setLatency(20);
+        hierarchy.server("ns2.example.com").setLatency(20);
+        lookup("alias.example.com", RecordType.A);
+        lookup("www.example.com", RecordType.A);
+
+        Assertions.assertEquals(2, metrics.getResolution().getCount());
+        Assertions.assertTrue(metrics.getResolution().getMax() >= 20000000L);
+        // alias.example.com needs root, com and example.com; its CNAME target then needs all three again
+        Assertions.assertEquals(6, metrics.getRtt().getCount());
+        Assertions.assertEquals(2, metrics.getLookups(DNSLookupTrace.Source.NETWORK));
+        Assertions.assertEquals(1, metrics.getLookups(DNSLookupTrace.Source.CACHE));
+        Assertions.assertEquals(3, metrics.getHopsPerLookup().getMax());
+        Assertions.assertEquals(2, metrics.getRtt(hierarchy.server("a.root-servers.net").getAddress()).getCount());
+        Assertions.assertTrue(metrics.toJson().contains("\"network\": 2"));
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        for (FakeNameServer server : hierarchy.getServers())
+            server.setLatency(20);
+        long start = System.nanoTime();
+        lookup("www.example.com", RecordType.AAAA);
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        Assertions.assertTrue(elapsed >= 3 * 20, "Three round trips of at least 20ms, took " + elapsed + "ms");
+
+        start = System.nanoTime();
+        lookup("www.example.com", RecordType.AAAA);
+        elapsed = (System.nanoTime() - start) / 1000000;
+        Assertions.assertTrue(elapsed < 20, "Cached answers don't wait for any server, took " + elapsed + "ms");
+    }
+}
@@ -61,4 +61,89 @@ public class DNSMessageTest {
         ResourceRecord replyRR = reply.getRR();
         assertEquals(rr, replyRR);
     }
+    @Test
+    public void testAddOPT() {
+        DNSMessage request = new DNSMessage((short)23);
+        DNSQuestion question = new DNSQuestion("norm.cs.ubc.ca", RecordType.A, RecordClass.IN);
+        request.addQuestion(question);
+        request.addOPT(4096);
+        byte[] content = request.getUsed();
+
+        DNSMessage reply = new DNSMessage(content, content.length);
+        assertEquals(1, reply.getARCount());
+        assertEquals(-1, reply.getUDPPayloadSize());
+        assertEquals(question, reply.getQuestion());
+        ResourceRecord opt = reply.getRR();
+        assertEquals(RecordType.OPT, opt.getRecordType());
+        assertEquals("", opt.getHostName());
+        assertEquals(4096, reply.getUDPPayloadSize());
+        assertEquals(content.length, reply.getBufferPosition());
+    }
+    @Test
+    public void testLargeMessage() {
+        DNSMessage request = new DNSMessage((short)23, DNSMessage.MAX_EDNS_MESSAGE_LENGTH);
+        for (int i = 0; i < 100; i++) {
+            DNSQuestion question = new DNSQuestion("host" + i + ".cs.ubc.ca", RecordType.NS, RecordClass.IN);
+            request.addResourceRecord(new ResourceRecord(question, 3600, "ns" + i + ".cs.ubc.ca"), "answer");
+        }
+        byte[] content = request.getUsed();
+        assertTrue(content.length > DNSMessage.MAX_DNS_MESSAGE_LENGTH);
+
+        DNSMessage reply = new DNSMessage(content, content.length);
+        assertEquals(100, reply.getANCount());
+        for (int i = 0; i < 100; i++)
+            assertEquals("ns" + i + ".cs.ubc.ca", reply.getRR().getTextResult());
+    }
+    @Test
+    public void testNameCompression() {
+        DNSMessage request = new DNSMessage((short)23);
+        DNSQuestion question = new DNSQuestion("cs.ubc.ca", RecordType.NS, RecordClass.IN);
+        request.addQuestion(question);
+        int uncompressed = request.getUsed().length;
+        ResourceRecord[] rrs = new ResourceRecord[] {
+                new ResourceRecord(question, 3600, "ns1.cs.ubc.ca"),
+                new ResourceRecord(question, 3600, "ns2.cs.ubc.ca"),
+                new ResourceRecord(question, 3600, "ns1.cs.ubc.ca"),
+                new ResourceRecord(question, 3600, "ns.ubc.ca"),
+                new ResourceRecord(question, 3600, "dns.cs.ubc.com"),
+        };
+        for (ResourceRecord rr : rrs)
+            request.addResourceRecord(rr, "nameserver");
+        byte[] content = request.getUsed();
+        // Owner names of the records are always a single pointer to the question
+        assertEquals(uncompressed + 5 * (2 + 10) + (6 + 6 + 2 + 5 + 16), content.length);
+
+        DNSMessage reply = new DNSMessage(content, content.length);
+        assertEquals(5, reply.getNSCount());
+        assertEquals(question, reply.getQuestion());
+        for (ResourceRecord rr : rrs)
+            assertEquals(rr, reply.getRR());
+        assertEquals(content.length, reply.getBufferPosition());
+    }
+
+    @Test
+    public void testNameCompressionManySiblings() {
+        DNSMessage request = new DNSMessage((short)23, DNSMessage.MAX_EDNS_MESSAGE_LENGTH);
+        DNSQuestion question = new DNSQuestion("example.com", RecordType.NS, RecordClass.IN);
+        request.addQuestion(question);
+        int start = request.getUsed().length;
+        // Many names under the same parent, then the same names again
+        int count = 300;
+        int expected = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < count; i++) {
+                String host = "ns" + i;
+                request.addResourceRecord(new ResourceRecord(question, 3600, host + ".example.com"), "answer");
+                expected += 2 + 10 + (pass == 0 ? 1 + host.length() + 2 : 2);
+            }
+        }
+        byte[] content = request.getUsed();
+        assertEquals(start + expected, content.length);
+
+        DNSMessage reply = new DNSMessage(content, content.length);
+        reply.getQuestion();
+        for (int pass = 0; pass < 2; pass++)
+            for (int i = 0; i < count; i++)
+                assertEquals(new ResourceRecord(question, 3600, "ns" + i + ".example.com"), reply.getRR());
+    }
 }
@@ -0,0 +1,125 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class DNSReverseLookupTest {
+
+    private FakeDNSHierarchy hierarchy;
+    private DNSLookupService service;
+
+    @BeforeEach
+    public void startHierarchy() throws IOException {
+        hierarchy = FakeDNSHierarchy.standard();
+        service = new DNSLookupService(null, new DNSLookupCUI());
+        hierarchy.configure(service);
+    }
+
+    @AfterEach
+    public void stopHierarchy() {
+        service.close();
+        hierarchy.close();
+        DNSTCPConnectionPool.getInstance().closeAll();
+        DNSCache.getInstance().setRootHints(DNSCache.DEFAULT_ROOT_HINTS);
+    }
+
+    /**
+     * Creates a lookup service with the same settings as the one configured for the hierarchy. Configuring the
+     * hierarchy again would reset the cache while other threads are using it.
+     */
+    private DNSLookupService newLookupService() throws IOException {
+        DNSLookupService threadService = new DNSLookupService(service.getNameServer(), new DNSLookupCUI());
+        threadService.setPort(service.getPort());
+        return threadService;
+    }
+
+    @Test
+    public void testReverseName() throws Exception {
+        Assertions.assertEquals("4.3.2.1.in-addr.arpa", DNSReverseLookup.reverseName(InetAddress.getByName("1.2.3.4")));
+        Assertions.assertEquals("1.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.0.8.b.d.0.1.0.0.2.ip6.arpa",
+                DNSReverseLookup.reverseName(InetAddress.getByName("2001:db8::1")));
+    }
+
+    @Test
+    public void testParseAddress() throws Exception {
+        Assertions.assertEquals(InetAddress.getByName("192.0.2.10"), DNSReverseLookup.parseAddress("192.0.2.10"));
+        Assertions.assertEquals(InetAddress.getByName("2001:db8::10"), DNSReverseLookup.parseAddress("2001:db8::10"));
+        Assertions.assertNull(DNSReverseLookup.parseAddress("www.example.com"));
+        Assertions.assertNull(DNSReverseLookup.parseAddress("-"));
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        Assertions.assertEquals(Collections.singletonList("www.example.com"),
+                DNSReverseLookup.lookup(service, InetAddress.getByName("192.0.2.10")));
+        Assertions.assertTrue(DNSReverseLookup.lookup(service, InetAddress.getByName("192.0.2.99")).isEmpty());
+    }
+
+    @Test
+    public void testEnrichLog() throws Exception {
+        Path input = Files.createTempFile("access", ".log");
+        Path output = Files.createTempFile("access", ".resolved.log");
+        try (DNSReverseLookup reverseLookup = new DNSReverseLookup(4, this::newLookupService)) {
+            Files.write(input, Arrays.asList(
+                    "192.0.2.10 - - [18/Oct/2026:10:00:00 +0000] \"GET / HTTP/1.1\" 200 512",
+                    "192.0.2.25 - - [18/Oct/2026:10:00:01 +0000] \"GET /a HTTP/1.1\" 200 128",
+                    "192.0.2.10 - - [18/Oct/2026:10:00:02 +0000] \"GET /b HTTP/1.1\" 404 0",
+                    "192.0.2.99 - - [18/Oct/2026:10:00:03 +0000] \"GET / HTTP/1.1\" 200 512",
+                    "host.example.org - - [18/Oct/2026:10:00:04 +0000] \"GET / HTTP/1.1\" 200 512"),
+                    StandardCharsets.UTF_8);
+            DNSReverseLookup.Summary summary = reverseLookup.enrichLog(input, output);
+            Assertions.assertEquals(5, summary.getLines());
+            Assertions.assertEquals(4, summary.getAddresses());
+            Assertions.assertEquals(3, summary.getResolved());
+
+            List<String> lines = Files.readAllLines(output, StandardCharsets.UTF_8);
+            Assertions.assertEquals(5, lines.size());
+            Assertions.assertEquals("www.example.com - - [18/Oct/2026:10:00:00 +0000] \"GET / HTTP/1.1\" 200 512",
+                    lines.get(0));
+            Assertions.assertTrue(lines.get(1).startsWith("mail.example.com - "));
+            Assertions.assertTrue(lines.get(2).startsWith("www.example.com - "));
+            Assertions.assertTrue(lines.get(3).startsWith("192.0.2.99 - "));
+            Assertions.assertTrue(lines.get(4).startsWith("host.example.org - "));
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    @Test
+    public void testEnrichLogAheadOfWindow() throws Exception {
+        // Many more lines than are read ahead, so lookups also run in the reading thread when the queue is full
+        Path input = Files.createTempFile("access", ".log");
+        Path output = Files.createTempFile("access", ".resolved.log");
+        int lines = 10 * DNSReverseLookup.LINES_AHEAD_PER_THREAD;
+        try (DNSReverseLookup reverseLookup = new DNSReverseLookup(1, this::newLookupService)) {
+            List<String> log = new ArrayList<>();
+            for (int i = 0; i < lines; i++)
+                log.add("192.0.2." + (i % 50) + " line " + i);
+            Files.write(input, log, StandardCharsets.UTF_8);
+            DNSReverseLookup.Summary summary = reverseLookup.enrichLog(input, output);
+            Assertions.assertEquals(lines, summary.getAddresses());
+            Assertions.assertEquals(lines / 50 * 2, summary.getResolved());
+
+            List<String> written = Files.readAllLines(output, StandardCharsets.UTF_8);
+            Assertions.assertEquals(lines, written.size());
+            for (int i = 0; i < lines; i++) {
+                String address = i % 50 == 10 ? "www.example.com" : i % 50 == 25 ? "mail.example.com" : log.get(i)
+                        .split(" ")[0];
+                Assertions.assertEquals(address + " line " + i, written.get(i));
+            }
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests of the caching DNS server, listening on an ephemeral port and resolving names in a simulated DNS hierarchy
+ * (see FakeDNSHierarchy). Queries are sent from DatagramChannel clients on the loopback address.
+ */
+public class DNSServerTest {
+
+    private static final int TIMEOUT = 5000;
+    private static final int MANY_RECORDS = 40;
+
+    private FakeDNSHierarchy hierarchy;
+    private DNSLookupService service;
+    private DNSServer server;
+    private final List<DatagramChannel> clients = new ArrayList<>();
+    private short nextID = 1;
+
+    @BeforeEach
+    public void startHierarchy() throws IOException {
+        hierarchy = new FakeDNSHierarchy("a.root-servers.net", "ns1.example.org");
+        List<String> zone = new ArrayList<>();
+        zone.add("$ORIGIN example.org.");
+        zone.add("$TTL 3600");
+        zone.add("@ SOA ns1 hostmaster 1 7200 3600 1209600 300");
+        zone.add("  NS ns1");
+        zone.add("ns1 A " + hierarchy.address("ns1.example.org"));
+        zone.add("www A 192.0.2.10");
+        zone.add("mail A 192.0.2.25");
+        // 40 A records do not fit in a 512-byte response
+        for (int i = 0; i < MANY_RECORDS; i++)
+            zone.add("many A 192.0.2." + (100 + i));
+        try {
+            hierarchy.zone(String.join("\n",
+                    "$TTL 86400",
+                    ". SOA a.root-servers.net. nstld.verisign-grs.com. 1 1800 900 604800 86400",
+                    ". NS a.root-servers.net.",
+                    "a.root-servers.net. A " + hierarchy.address("a.root-servers.net"),
+                    "example.org. 172800 NS ns1.example.org.",
+                    "ns1.example.org. 172800 A " + hierarchy.address("ns1.example.org")),
+                    "a.root-servers.net");
+            hierarchy.zone(String.join("\n", zone), "ns1.example.org");
+        } catch (IOException | RuntimeException e) {
+            hierarchy.close();
+            throw e;
+        }
+        service = new DNSLookupService(null, DNSVerbosePrinter.NONE);
+        hierarchy.configure(service);
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        for (DatagramChannel client : clients)
+            client.close();
+        if (server != null)
+            server.close();
+        service.close();
+        hierarchy.close();
+        DNSTCPConnectionPool.getInstance().closeAll();
+        DNSCache.getInstance().setRootHints(DNSCache.DEFAULT_ROOT_HINTS);
+    }
+
+    /**
+     * Creates a lookup service for a resolver thread, with the same settings as the one configured for the hierarchy.
+     */
+    private DNSLookupService newLookupService() throws IOException {
+        DNSLookupService threadService = new DNSLookupService(service.getNameServer(), DNSVerbosePrinter.NONE);
+        threadService.setPort(service.getPort());
+        return threadService;
+    }
+
+    private void startServer(int workers, int resolvers) throws IOException {
+        server = new DNSServer(0, workers, resolvers, this::newLookupService);
+        server.start();
+    }
+
+    private DatagramChannel newClient() throws IOException {
+        DatagramChannel client = DatagramChannel.open();
+        clients.add(client);
+        client.configureBlocking(false);
+        client.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        return client;
+    }
+
+    private DNSMessage query(String name, boolean edns) {
+        DNSMessage query = new DNSMessage(nextID++);
+        query.setRD(true);
+        query.addQuestion(new DNSQuestion(name, RecordType.A, RecordClass.IN));
+        if (edns)
+            query.addOPT(DNSLookupService.DEFAULT_EDNS_PAYLOAD_SIZE);
+        return query;
+    }
+
+    private static void send(DatagramChannel client, DNSMessage query) throws IOException {
+        client.write(ByteBuffer.wrap(query.getUsed()));
+    }
+
+    /**
+     * Waits for a response on a client channel.
+     *
+     * @return The response, or null if none is received before the timeout.
+     */
+    private static DNSMessage receive(DatagramChannel client, long timeoutMillis) throws IOException {
+        try (Selector selector = Selector.open()) {
+            client.register(selector, SelectionKey.OP_READ);
+            if (timeoutMillis > 0 ? selector.select(timeoutMillis) == 0 : selector.selectNow() == 0)
+                return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(DNSMessage.MAX_EDNS_MESSAGE_LENGTH);
+        client.read(buffer);
+        return new DNSMessage(buffer.array(), buffer.position());
+    }
+
+    private static DNSMessage exchange(DatagramChannel client, DNSMessage query) throws IOException {
+        send(client, query);
+        DNSMessage response = receive(client, TIMEOUT);
+        Assertions.assertNotNull(response, "No response to query " + query.getID());
+        Assertions.assertEquals(query.getID(), response.getID());
+        Assertions.assertTrue(response.getQR());
+        return response;
+    }
+
+    private static List<String> answers(DNSMessage response) {
+        response.getQuestion();
+        List<String> answers = new ArrayList<>();
+        for (int i = 0; i < response.getANCount(); i++)
+            answers.add(response.getRR().getTextResult());
+        return answers;
+    }
+
+    @Test
+    public void testCacheMissThenHit() throws Exception {
+        startServer(1, 1);
+        DatagramChannel client = newClient();
+        DNSMessage response = exchange(client, query("www.example.org", false));
+        Assertions.assertEquals(DNSServer.RCODE_NO_ERROR, response.getRcode());
+        Assertions.assertEquals("[192.0.2.10]", answers(response).toString());
+        Assertions.assertEquals(1, server.getCacheMisses());
+        Assertions.assertEquals(0, server.getCacheHits());
+
+        hierarchy.resetCounters();
+        response = exchange(client, query("www.example.org", false));
+        Assertions.assertEquals("[192.0.2.10]", answers(response).toString());
+        Assertions.assertEquals(1, server.getCacheMisses());
+        Assertions.assertEquals(1, server.getCacheHits());
+        Assertions.assertEquals(0, hierarchy.getTotalQueries());
+    }
+
+    @Test
+    public void testTruncatedWithoutEdns() throws Exception {
+        startServer(1, 1);
+        DatagramChannel client = newClient();
+        // Without an OPT record the client accepts 512 bytes, so the response only has the question and the TC bit
+        DNSMessage response = exchange(client, query("many.example.org", false));
+        Assertions.assertTrue(response.getTC());
+        Assertions.assertEquals(1, response.getQDCount());
+        Assertions.assertEquals(0, response.getANCount());
+        Assertions.assertEquals(0, response.getARCount());
+
+        response = exchange(client, query("many.example.org", true));
+        Assertions.assertFalse(response.getTC());
+        Assertions.assertEquals(MANY_RECORDS, answers(response).size());
+        Assertions.assertEquals(1, response.getARCount());
+        // The server's OPT record, read after the answers
+        response.getRR();
+        Assertions.assertEquals(DNSLookupService.DEFAULT_EDNS_PAYLOAD_SIZE, response.getUDPPayloadSize());
+    }
+
+    @Test
+    public void testNotImplementedOpcode() throws Exception {
+        startServer(1, 1);
+        DatagramChannel client = newClient();
+        DNSMessage query = query("www.example.org", false);
+        query.setOpcode(2);
+        DNSMessage response = exchange(client, query);
+        Assertions.assertEquals(DNSServer.RCODE_NOT_IMPLEMENTED, response.getRcode());
+        Assertions.assertEquals(2, response.getOpcode());
+        Assertions.assertEquals(0, response.getANCount());
+        Assertions.assertEquals(0, hierarchy.getTotalQueries());
+    }
+
+    @Test
+    public void testCacheHitsNotBlockedByResolvers() throws Exception {
+        startServer(1, 1);
+        DatagramChannel client = newClient();
+        exchange(client, query("www.example.org", false));
+
+        // The only resolver thread waits for the slow nameserver, while the worker answers the cached name
+        hierarchy.server("ns1.example.org").setLatency(1000);
+        DNSMessage slow = query("mail.example.org", false);
+        DNSMessage cached = query("www.example.org", false);
+        long start = System.nanoTime();
+        send(client, slow);
+        send(client, cached);
+        DNSMessage response = receive(client, TIMEOUT);
+        Assertions.assertNotNull(response);
+        Assertions.assertEquals(cached.getID(), response.getID());
+        Assertions.assertTrue(System.nanoTime() - start < 1000000000L, "The cache hit waited for the resolver");
+
+        response = receive(client, TIMEOUT);
+        Assertions.assertNotNull(response);
+        Assertions.assertEquals(slow.getID(), response.getID());
+        Assertions.assertEquals("[192.0.2.25]", answers(response).toString());
+        Assertions.assertEquals(2, server.getCacheMisses());
+        Assertions.assertEquals(1, server.getCacheHits());
+    }
+
+    @Test
+    public void testWorkerSockets() throws Exception {
+        boolean reusePort;
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            reusePort = channel.supportedOptions().stream().anyMatch(option -> option.name().equals("SO_REUSEPORT"));
+        }
+        startServer(4, 1);
+        // One socket per worker where SO_REUSEPORT is supported, all bound to the same port
+        Assertions.assertEquals(reusePort ? 4 : 1, server.getSocketCount());
+        exchange(newClient(), query("www.example.org", false));
+
+        // The kernel spreads clients among the sockets; every one of them is answered
+        for (int i = 0; i < 32; i++) {
+            DNSMessage response = exchange(newClient(), query("www.example.org", false));
+            Assertions.assertEquals("[192.0.2.10]", answers(response).toString());
+        }
+        Assertions.assertEquals(32, server.getCacheHits());
+        Assertions.assertEquals(1, server.getCacheMisses());
+    }
+
+    @Test
+    public void testPendingQueriesOverflow() throws Exception {
+        // Without resolver threads, every cache miss stays queued
+        startServer(1, 0);
+        DatagramChannel client = newClient();
+        DNSMessage failure = null;
+        int sent = 0;
+        while (failure == null && sent < 4 * DNSServer.MAX_PENDING_QUERIES) {
+            send(client, query("www.example.org", false));
+            sent++;
+            // Let the worker keep up, so that few queries are dropped by the socket's receive buffer
+            if (sent % 100 == 0)
+                failure = receive(client, sent < DNSServer.MAX_PENDING_QUERIES ? 0 : 1);
+        }
+        if (failure == null)
+            failure = receive(client, TIMEOUT);
+        Assertions.assertNotNull(failure, "No response after " + sent + " queries");
+        Assertions.assertTrue(sent > DNSServer.MAX_PENDING_QUERIES);
+        Assertions.assertEquals(DNSServer.RCODE_SERVER_FAILURE, failure.getRcode());
+        Assertions.assertEquals("www.example.org", failure.getQuestion().getHostName());
+        Assertions.assertEquals(0, failure.getANCount());
+        Assertions.assertEquals(0, hierarchy.getTotalQueries());
+    }
+}
@@ -0,0 +1,142 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class DNSZoneTest {
+
+    private static final String ZONE_FILE = String.join("\n",
+            "$ORIGIN example.com.",
+            "$TTL 1h",
+            "@       IN SOA ns1 hostmaster (",
+            "            2024010101 ; serial",
+            "            7200 3600 1209600",
+            "            300 )      ; minimum",
+            "        IN NS  ns1",
+            "        IN MX  10 mail.example.com.",
+            "ns1     IN A   192.0.2.1",
+            "www 600 IN A   192.0.2.10",
+            "        IN AAAA 2001:db8::10",
+            "alias   IN CNAME www",
+            "*.apps  IN A   192.0.2.20",
+            "a.b.c   IN A   192.0.2.30",
+            "txt     IN TXT \"ignored; not a comment\"",
+            "sub     IN NS  ns.sub",
+            "ns.sub  IN A   192.0.2.53",
+            "");
+
+    private Path file;
+    private DNSZone zone;
+
+    @BeforeEach
+    public void loadZone() throws IOException {
+        file = Files.createTempFile("zone", ".db");
+        Files.write(file, ZONE_FILE.getBytes(StandardCharsets.UTF_8));
+        zone = DNSZoneFileReader.read(file, null);
+    }
+
+    @AfterEach
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+        DNSZones.getInstance().clear();
+    }
+
+    private DNSZone.Answer lookup(String name, RecordType type) {
+        return zone.lookup(new DNSQuestion(name, type, RecordClass.IN));
+    }
+
+    @Test
+    public void testLoadZone() throws IOException {
+        Assertions.assertEquals("example.com", zone.getOrigin());
+        Assertions.assertEquals(11, zone.getRecordCount());
+
+        DNSZone.Answer answer = lookup("www.example.com", RecordType.A);
+        Assertions.assertEquals(DNSZone.Status.ANSWER, answer.getStatus());
+        Assertions.assertEquals(1, answer.getRecords().size());
+        ResourceRecord record = answer.getRecords().get(0);
+        Assertions.assertEquals("192.0.2.10", record.getTextResult());
+        Assertions.assertEquals(600, record.getRemainingTTL());
+
+        record = lookup("WWW.Example.COM", RecordType.AAAA).getRecords().get(0);
+        Assertions.assertEquals(InetAddress.getByName("2001:db8::10"), record.getInetResult());
+        Assertions.assertEquals(3600, record.getRemainingTTL());
+
+        record = lookup("example.com", RecordType.MX).getRecords().get(0);
+        Assertions.assertEquals("mail.example.com", record.getTextResult());
+        record = lookup("example.com", RecordType.NS).getRecords().get(0);
+        Assertions.assertEquals("ns1.example.com", record.getTextResult());
+    }
+
+    @Test
+    public void testCNameAndWildcard() {
+        DNSZone.Answer answer = lookup("alias.example.com", RecordType.A);
+        Assertions.assertEquals(DNSZone.Status.ANSWER, answer.getStatus());
+        Assertions.assertEquals(RecordType.CNAME, answer.getRecords().get(0).getRecordType());
+        Assertions.assertEquals("www.example.com", answer.getRecords().get(0).getTextResult());
+
+        answer = lookup("anything.apps.example.com", RecordType.A);
+        Assertions.assertEquals(DNSZone.Status.ANSWER, answer.getStatus());
+        Assertions.assertEquals("anything.apps.example.com", answer.getRecords().get(0).getHostName());
+        Assertions.assertEquals("192.0.2.20", answer.getRecords().get(0).getTextResult());
+    }
+
+    @Test
+    public void testNegativeAnswers() {
+        DNSZone.Answer answer = lookup("missing.example.com", RecordType.A);
+        Assertions.assertEquals(DNSZone.Status.NAME_ERROR, answer.getStatus());
+        Assertions.assertTrue(answer.getRecords().isEmpty());
+        Assertions.assertEquals(RecordType.SOA, answer.getAuthority().get(0).getRecordType());
+        Assertions.assertEquals(300, answer.getAuthority().get(0).getRemainingTTL());
+
+        // Empty non-terminal, and an existing name with no records of the requested type
+        Assertions.assertEquals(DNSZone.Status.NO_DATA, lookup("b.c.example.com", RecordType.A).getStatus());
+        Assertions.assertEquals(DNSZone.Status.NO_DATA, lookup("www.example.com", RecordType.MX).getStatus());
+        Assertions.assertNull(lookup("www.example.org", RecordType.A));
+    }
+
+    @Test
+    public void testReferral() {
+        DNSZone.Answer answer = lookup("host.sub.example.com", RecordType.A);
+        Assertions.assertEquals(DNSZone.Status.REFERRAL, answer.getStatus());
+        Assertions.assertFalse(answer.isAuthoritative());
+        Assertions.assertEquals("ns.sub.example.com", answer.getAuthority().get(0).getTextResult());
+        Assertions.assertEquals("192.0.2.53", answer.getAdditional().get(0).getTextResult());
+    }
+
+    @Test
+    public void testSOAEncoding() {
+        // The SOA record is kept in wire format, so that it can be added to messages
+        ResourceRecord soa = zone.getSOA();
+        DNSMessage message = new DNSMessage((short) 1);
+        message.addResourceRecord(soa, "nameserver");
+        DNSMessage decoded = new DNSMessage(message.getUsed(), message.getUsed().length);
+        ResourceRecord decodedSOA = decoded.getRR();
+        Assertions.assertEquals(soa.getTextResult(), decodedSOA.getTextResult());
+    }
+
+    @Test
+    public void testLookupServiceUsesZones() throws Exception {
+        DNSZones.getInstance().add(zone);
+        // The nameserver is never contacted for names in a local zone
+        DNSLookupService service = new DNSLookupService("192.0.2.255", new DNSLookupCUI());
+        try {
+            Collection<ResourceRecord> results = service.getResultsFollowingCNames(
+                    new DNSQuestion("alias.example.com", RecordType.A, RecordClass.IN), 10);
+            List<String> values = results.stream().map(ResourceRecord::getTextResult).collect(Collectors.toList());
+            Assertions.assertEquals(Arrays.asList("www.example.com", "192.0.2.10"), values);
+            Assertions.assertTrue(service.getResults(
+                    new DNSQuestion("missing.example.com", RecordType.A, RecordClass.IN)).isEmpty());
+        } finally {
+            service.close();
+        }
+    }
+}
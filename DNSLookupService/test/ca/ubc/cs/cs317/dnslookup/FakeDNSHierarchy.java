@@ -0,0 +1,197 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.BindException;
+import java.util.*;
+
+/**
+ * A simulated DNS hierarchy (root, TLD and authoritative servers) running on loopback addresses, so that the iterative
+ * resolver can be tested and measured without network access. Every server listens on its own loopback address
+ * (127.0.0.2, 127.0.0.3, ...), in the order they are declared, and all of them use the same port, since the resolver
+ * contacts every nameserver on a single port (see DNSLookupService.setPort).
+ * <p>
+ * Zones are described with master files (see DNSZoneFileReader), and each zone is served by one or more servers. The
+ * servers serving the root zone are used as root hints.
+ */
+public class FakeDNSHierarchy implements Closeable {
+
+    public static final int FIRST_HOST = 2;
+    private static final int BIND_ATTEMPTS = 10;
+
+    private final Map<String, FakeNameServer> servers = new LinkedHashMap<>();
+    private final List<String> rootHints = new ArrayList<>();
+
+    /**
+     * Starts one server for each name. The servers answer REFUSED until zones are added to them.
+     *
+     * @param serverNames The host names of the servers.
+     * @throws IOException If the servers can't listen on their addresses.
+     */
+    public FakeDNSHierarchy(String... serverNames) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                bind(serverNames);
+                return;
+            } catch (BindException e) {
+                // The port chosen by the first server is in use on another address; try again with a new port
+                close();
+                if (attempt == BIND_ATTEMPTS)
+                    throw e;
+            }
+        }
+    }
+
+    private void bind(String[] serverNames) throws IOException {
+        servers.clear();
+        int port = 0;
+        for (int i = 0; i < serverNames.length; i++) {
+            FakeNameServer server = new FakeNameServer(serverNames[i], FakeNameServer.loopback(FIRST_HOST + i), port);
+            servers.put(serverNames[i].toLowerCase(), server);
+            port = server.getPort();
+        }
+    }
+
+    /**
+     * Returns the address a server listens on, for use in glue records.
+     *
+     * @param serverName The host name of the server.
+     * @return The server's IP address, in dotted form.
+     */
+    public String address(String serverName) {
+        return server(serverName).getAddress().getHostAddress();
+    }
+
+    public FakeNameServer server(String serverName) {
+        FakeNameServer server = servers.get(serverName.toLowerCase());
+        if (server == null)
+            throw new IllegalArgumentException("No server " + serverName);
+        return server;
+    }
+
+    public Collection<FakeNameServer> getServers() {
+        return servers.values();
+    }
+
+    public int getPort() {
+        return servers.values().iterator().next().getPort();
+    }
+
+    /**
+     * Loads a zone from master file text and adds it to some servers.
+     *
+     * @param masterFile  The zone's records, in master file format, starting with its SOA record.
+     * @param serverNames The servers that are authoritative for the zone.
+     * @return This hierarchy.
+     * @throws IOException If the zone has an error.
+     */
+    public FakeDNSHierarchy zone(String masterFile, String... serverNames) throws IOException {
+        DNSZone zone = DNSZoneFileReader.read(new StringReader(masterFile), null);
+        for (String serverName : serverNames) {
+            server(serverName).addZone(zone);
+            if (zone.getOrigin().isEmpty())
+                rootHints.add(address(serverName));
+        }
+        return this;
+    }
+
+    /**
+     * Points a lookup service and the cache at this hierarchy: the service uses the hierarchy's port, and starts its
+     * queries at the first root server, and the cache is reset with the root servers as root hints.
+     *
+     * @param service The lookup service to be configured.
+     * @throws IOException If no zone has been added for the root.
+     */
+    public void configure(DNSLookupService service) throws IOException {
+        if (rootHints.isEmpty())
+            throw new IOException("No server is authoritative for the root zone");
+        DNSCache.getInstance().setRootHints(rootHints);
+        service.setPort(getPort());
+        service.setNameServer(rootHints.get(0));
+    }
+
+    /**
+     * Returns the total number of queries received by all servers, over UDP (including dropped queries) and TCP.
+     *
+     * @return The number of queries.
+     */
+    public int getTotalQueries() {
+        int total = 0;
+        for (FakeNameServer server : servers.values())
+            total += server.getUDPQueries() + server.getTCPQueries();
+        return total;
+    }
+
+    public void resetCounters() {
+        servers.values().forEach(FakeNameServer::resetCounters);
+    }
+
+    @Override
+    public void close() {
+        servers.values().forEach(FakeNameServer::close);
+    }
+
+    /**
+     * Creates a small hierarchy: two root servers, a server for com, and two servers for example.com, which has the
+     * following names: www (A and AAAA), alias (CNAME to www), mail (A) and the apex (MX to mail, and NS). The
+     * example.com servers also serve the reverse zone 2.0.192.in-addr.arpa, with PTR records for www and mail.
+     *
+     * @return The hierarchy.
+     * @throws IOException If the servers can't be started.
+     */
+    public static FakeDNSHierarchy standard() throws IOException {
+        FakeDNSHierarchy hierarchy = new FakeDNSHierarchy("a.root-servers.net", "b.root-servers.net",
+                "a.gtld-servers.net", "ns1.example.com", "ns2.example.com");
+        try {
+            hierarchy.zone(String.join("\n",
+                    "$TTL 86400",
+                    ". SOA a.root-servers.net. nstld.verisign-grs.com. 1 1800 900 604800 86400",
+                    ". NS a.root-servers.net.",
+                    ". NS b.root-servers.net.",
+                    "a.root-servers.net. A " + hierarchy.address("a.root-servers.net"),
+                    "b.root-servers.net. A " + hierarchy.address("b.root-servers.net"),
+                    "com. 172800 NS a.gtld-servers.net.",
+                    "a.gtld-servers.net. 172800 A " + hierarchy.address("a.gtld-servers.net"),
+                    "2.0.192.in-addr.arpa. 172800 NS ns1.example.com.",
+                    "ns1.example.com. 172800 A " + hierarchy.address("ns1.example.com")),
+                    "a.root-servers.net", "b.root-servers.net");
+            hierarchy.zone(String.join("\n",
+                    "$ORIGIN com.",
+                    "$TTL 172800",
+                    "@ SOA a.gtld-servers.net. nstld.verisign-grs.com. 1 1800 900 604800 86400",
+                    "@ NS a.gtld-servers.net.",
+                    "example NS ns1.example",
+                    "        NS ns2.example",
+                    "ns1.example A " + hierarchy.address("ns1.example.com"),
+                    "ns2.example A " + hierarchy.address("ns2.example.com")),
+                    "a.gtld-servers.net");
+            hierarchy.zone(String.join("\n",
+                    "$ORIGIN example.com.",
+                    "$TTL 3600",
+                    "@ SOA ns1 hostmaster 1 7200 3600 1209600 300",
+                    "  NS ns1",
+                    "  NS ns2",
+                    "  MX 10 mail",
+                    "ns1 A " + hierarchy.address("ns1.example.com"),
+                    "ns2 A " + hierarchy.address("ns2.example.com"),
+                    "www A 192.0.2.10",
+                    "    AAAA 2001:db8::10",
+                    "alias CNAME www",
+                    "mail A 192.0.2.25"),
+                    "ns1.example.com", "ns2.example.com");
+            hierarchy.zone(String.join("\n",
+                    "$ORIGIN 2.0.192.in-addr.arpa.",
+                    "$TTL 3600",
+                    "@ SOA ns1.example.com. hostmaster.example.com. 1 7200 3600 1209600 300",
+                    "  NS ns1.example.com.",
+                    "10 PTR www.example.com.",
+                    "25 PTR mail.example.com."),
+                    "ns1.example.com", "ns2.example.com");
+        } catch (IOException | RuntimeException e) {
+            hierarchy.close();
+            throw e;
+        }
+        return hierarchy;
+    }
+}
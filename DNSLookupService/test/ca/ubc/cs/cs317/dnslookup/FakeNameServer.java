@@ -0,0 +1,296 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.*;
+import java.net.*;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A simulated authoritative nameserver listening on a loopback address, over UDP and TCP. It answers from its own
+ * zones (which are not added to DNSZones, so the resolver under test can't see them), returning answers, negative
+ * answers and referrals as a real authoritative server would. Its behaviour can be degraded with a response latency,
+ * a probability of dropping UDP queries, truncation of all UDP responses (the full response is only available over
+ * TCP), and lameness (the server answers every query with REFUSED, as a server listed as authoritative for a zone it
+ * doesn't serve often does).
+ * <p>
+ * Dropped queries are chosen by a random generator with a fixed seed, so a sequence of queries is always dropped in
+ * the same way.
+ */
+public class FakeNameServer implements Closeable {
+
+    public static final int RCODE_NAME_ERROR = 3;
+    public static final int RCODE_REFUSED = 5;
+
+    private final String name;
+    private final InetAddress address;
+    private final DNSZones zones = new DNSZones();
+    private final DatagramSocket udpSocket;
+    private final ServerSocket tcpSocket;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger udpQueries = new AtomicInteger();
+    private final AtomicInteger tcpQueries = new AtomicInteger();
+    private final AtomicInteger tcpConnections = new AtomicInteger();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private Random random = new Random(0);
+    private double lossProbability;
+    private volatile long latency;
+    private volatile boolean truncate;
+    private volatile boolean lame;
+    private volatile boolean closed;
+
+    /**
+     * Creates a server listening on a specific address and port. The server starts answering queries immediately.
+     *
+     * @param name    The server's host name, used in error messages.
+     * @param address The loopback address to listen on.
+     * @param port    The UDP and TCP port to listen on.
+     * @throws IOException If the address and port can't be used.
+     */
+    public FakeNameServer(String name, InetAddress address, int port) throws IOException {
+        this.name = name;
+        this.address = address;
+        this.udpSocket = new DatagramSocket(new InetSocketAddress(address, port));
+        try {
+            // With port 0, TCP listens on the port chosen for UDP
+            this.tcpSocket = new ServerSocket(udpSocket.getLocalPort(), 50, address);
+        } catch (IOException e) {
+            udpSocket.close();
+            throw e;
+        }
+        this.scheduler = Executors.newScheduledThreadPool(1, runnable -> {
+            Thread thread = new Thread(runnable, "fake-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        startThread(this::receiveUDP, "fake-udp-" + name);
+        startThread(this::acceptTCP, "fake-tcp-" + name);
+    }
+
+    private static void startThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return udpSocket.getLocalPort();
+    }
+
+    public void addZone(DNSZone zone) {
+        zones.add(zone);
+    }
+
+    /**
+     * Sets the time to wait before each response is sent, over UDP and TCP.
+     */
+    public FakeNameServer setLatency(long milliseconds) {
+        this.latency = milliseconds;
+        return this;
+    }
+
+    /**
+     * Sets the probability that a UDP query is dropped (not answered), and restarts the sequence of dropped queries.
+     */
+    public synchronized FakeNameServer setLossProbability(double probability, long seed) {
+        this.lossProbability = probability;
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * If set, every UDP response only contains the question and has the TC bit set.
+     */
+    public FakeNameServer setTruncate(boolean truncate) {
+        this.truncate = truncate;
+        return this;
+    }
+
+    /**
+     * If set, every query is answered with REFUSED.
+     */
+    public FakeNameServer setLame(boolean lame) {
+        this.lame = lame;
+        return this;
+    }
+
+    /**
+     * Returns the number of queries received over UDP, including dropped queries.
+     */
+    public int getUDPQueries() {
+        return udpQueries.get();
+    }
+
+    public int getTCPQueries() {
+        return tcpQueries.get();
+    }
+
+    public int getTCPConnections() {
+        return tcpConnections.get();
+    }
+
+    public int getDroppedQueries() {
+        return dropped.get();
+    }
+
+    public void resetCounters() {
+        udpQueries.set(0);
+        tcpQueries.set(0);
+        tcpConnections.set(0);
+        dropped.set(0);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        udpSocket.close();
+        try {
+            tcpSocket.close();
+        } catch (IOException e) {
+            // Error is ignored
+        }
+        scheduler.shutdownNow();
+    }
+
+    private void receiveUDP() {
+        byte[] data = new byte[DNSMessage.MAX_EDNS_MESSAGE_LENGTH];
+        while (!closed) {
+            try {
+                DatagramPacket packet = new DatagramPacket(data, data.length);
+                udpSocket.receive(packet);
+                udpQueries.incrementAndGet();
+                boolean drop;
+                synchronized (this) {
+                    drop = lossProbability > 0 && random.nextDouble() < lossProbability;
+                }
+                if (drop) {
+                    dropped.incrementAndGet();
+                    continue;
+                }
+                byte[] response = respond(data, packet.getLength(), truncate);
+                if (response == null)
+                    continue;
+                SocketAddress client = packet.getSocketAddress();
+                delay(() -> udpSocket.send(new DatagramPacket(response, response.length, client)));
+            } catch (IOException | RuntimeException e) {
+                if (closed) return;
+            }
+        }
+    }
+
+    private void acceptTCP() {
+        while (!closed) {
+            try {
+                Socket socket = tcpSocket.accept();
+                tcpConnections.incrementAndGet();
+                startThread(() -> serveTCP(socket), "fake-tcp-client-" + name);
+            } catch (IOException e) {
+                if (closed) return;
+            }
+        }
+    }
+
+    private void serveTCP(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            while (!closed) {
+                int length = in.readUnsignedShort();
+                byte[] data = new byte[length];
+                in.readFully(data);
+                tcpQueries.incrementAndGet();
+                byte[] response = respond(data, length, false);
+                if (response == null)
+                    continue;
+                delay(() -> {
+                    synchronized (out) {
+                        out.writeShort(response.length);
+                        out.write(response);
+                        out.flush();
+                    }
+                });
+            }
+        } catch (IOException e) {
+            // Connection closed by the client
+        }
+    }
+
+    private interface Send {
+        void send() throws IOException;
+    }
+
+    private void delay(Send send) {
+        Runnable task = () -> {
+            try {
+                send.send();
+            } catch (IOException e) {
+                // The client is gone
+            }
+        };
+        if (latency > 0)
+            scheduler.schedule(task, latency, TimeUnit.MILLISECONDS);
+        else
+            task.run();
+    }
+
+    /**
+     * Builds the response to a query, or returns null if the message is not a valid query.
+     */
+    private byte[] respond(byte[] data, int length, boolean truncated) {
+        DNSMessage query = new DNSMessage(data, length);
+        if (query.getQR() || query.getQDCount() != 1)
+            return null;
+        DNSQuestion question = query.getQuestion();
+
+        DNSMessage response = new DNSMessage((short) query.getID(), DNSMessage.MAX_EDNS_MESSAGE_LENGTH);
+        response.setQR(true);
+        response.setRD(query.getRD());
+        response.addQuestion(question);
+        DNSZone.Answer answer = zones.lookup(question);
+        if (lame || answer == null) {
+            response.setRcode(RCODE_REFUSED);
+            return response.getUsed();
+        }
+        response.setAA(answer.isAuthoritative());
+        if (answer.getStatus() == DNSZone.Status.NAME_ERROR)
+            response.setRcode(RCODE_NAME_ERROR);
+        if (truncated) {
+            response.setTC(true);
+            return response.getUsed();
+        }
+        addRecords(response, answer.getRecords(), "answer");
+        addRecords(response, answer.getAuthority(), "nameserver");
+        addRecords(response, answer.getAdditional(), "additional");
+        return response.getUsed();
+    }
+
+    private static void addRecords(DNSMessage message, List<ResourceRecord> records, String section) {
+        for (ResourceRecord record : records)
+            message.addResourceRecord(record, section);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + address.getHostAddress() + ":" + getPort() + ")";
+    }
+
+    /**
+     * Returns a loopback address ending in a specific number, e.g., 127.0.0.5.
+     */
+    static InetAddress loopback(int host) {
+        try {
+            return InetAddress.getByAddress(new byte[]{127, 0, (byte) (host >> 8), (byte) host});
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
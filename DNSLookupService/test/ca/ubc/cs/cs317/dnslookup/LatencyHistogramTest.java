@@ -0,0 +1,91 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i);
+        Assertions.assertEquals(100, histogram.getCount());
+        Assertions.assertEquals(1, histogram.getMin());
+        Assertions.assertEquals(100, histogram.getMax());
+        Assertions.assertEquals(50.5, histogram.getMean(), 1e-9);
+        Assertions.assertEquals(50, histogram.getPercentile(50));
+        Assertions.assertEquals(99, histogram.getPercentile(99));
+        Assertions.assertEquals(100, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testPercentileAccuracy() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(1);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) (TimeUnit.MILLISECONDS.toNanos(1) * Math.exp(random.nextGaussian()));
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.getPercentile(percentile);
+            Assertions.assertTrue(estimate >= exact && estimate <= exact * 1.016,
+                    "p" + percentile + ": " + estimate + " vs " + exact);
+        }
+    }
+
+    @Test
+    public void testAddAndReset() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(Long.MAX_VALUE);
+        b.record(-5);
+        a.add(b);
+        Assertions.assertEquals(3, a.getCount());
+        Assertions.assertEquals(0, a.getMin());
+        Assertions.assertEquals(Long.MAX_VALUE, a.getMax());
+        Assertions.assertEquals(Long.MAX_VALUE, a.getPercentile(100));
+        a.reset();
+        Assertions.assertEquals(0, a.getCount());
+        Assertions.assertEquals(0, a.getPercentile(50));
+        Assertions.assertTrue(Double.isNaN(a.getMean()));
+    }
+
+    @Test
+    public void testJsonIgnoresDefaultLocale() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1500);
+        histogram.record(2500);
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        String json;
+        try {
+            json = histogram.toJson(1000);
+        } finally {
+            Locale.setDefault(locale);
+        }
+        Map<String, Double> fields = new LinkedHashMap<>();
+        Matcher matcher = Pattern.compile("\"(\\w+)\": ([^,}]+)").matcher(json);
+        while (matcher.find())
+            fields.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+        Assertions.assertEquals(Arrays.asList("count", "mean", "min", "p50", "p90", "p99", "p999", "max"),
+                Arrays.asList(fields.keySet().toArray()), json);
+        Assertions.assertEquals(2, fields.get("count"), 0);
+        Assertions.assertEquals(2.0, fields.get("mean"), 1e-9);
+        Assertions.assertEquals(1.5, fields.get("min"), 1e-9);
+        Assertions.assertEquals(2.5, fields.get("max"), 1e-9);
+    }
+}
@@ -0,0 +1,165 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for encoding and decoding DNS messages. Each benchmark runs over the captured messages shipped with
+ * this module (the .bin files), and over a synthetic referral much larger than a regular 512-byte message. Run with
+ * "make bench", which enables the GC profiler so that the bytes allocated per operation (gc.alloc.rate.norm) are
+ * reported next to the throughput.
+ * <p>
+ * The directory containing the .bin files can be set with the dns.fixtures system property (defaults to the current
+ * directory).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Ddns.fixtures=.")
+@State(Scope.Thread)
+public class DNSMessageBenchmark {
+
+    public static final String SYNTHETIC = "synthetic";
+    private static final int SYNTHETIC_NAMESERVERS = 100;
+
+    @Param({"qnorm.bin", "qmit.bin", "rmit.bin", "rdropbox.bin", "kc.bin", SYNTHETIC})
+    public String fixture;
+
+    private byte[] data;
+    private DNSMessage decoded;
+    private final List<DNSQuestion> questions = new ArrayList<>();
+    private final List<ResourceRecord> records = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private int namesCapacity;
+    private int recordsCapacity;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        if (fixture.equals(SYNTHETIC))
+            data = syntheticReferral();
+        else
+            data = Files.readAllBytes(Paths.get(System.getProperty("dns.fixtures", "."), fixture));
+
+        // Decode the fixture once to collect the questions, records and names used by the encoding benchmarks
+        DNSMessage message = new DNSMessage(data, data.length);
+        for (int i = 0; i < message.getQDCount(); i++) {
+            DNSQuestion question = message.getQuestion();
+            questions.add(question);
+            names.add(question.getHostName());
+        }
+        int rrCount = message.getANCount() + message.getNSCount() + message.getARCount();
+        for (int i = 0; i < rrCount; i++) {
+            ResourceRecord record = message.getRR();
+            // An undecoded record would leave the reader in the middle of its RDATA, and the rest would be garbage
+            if (record == null)
+                throw new IllegalStateException("Record " + i + " of " + fixture + " can't be decoded");
+            records.add(record);
+            names.add(record.getHostName());
+            if (record.getInetResult() == null)
+                names.add(record.getTextResult());
+        }
+        decoded = new DNSMessage(data, data.length);
+
+        // Encoding buffers are sized to the encoded fixture, so that zeroing a 64 KB buffer doesn't dominate the time
+        // and the bytes allocated per operation
+        namesCapacity = encodeNames(65535).length;
+        recordsCapacity = encodeRecords(65535).length;
+    }
+
+    /**
+     * Builds a referral for a zone with many nameservers, each with IPv4 and IPv6 glue records.
+     */
+    private static byte[] syntheticReferral() throws UnknownHostException {
+        DNSMessage message = new DNSMessage((short) 1234, 65535);
+        message.setQR(true);
+        message.addQuestion(new DNSQuestion("www.example.com", RecordType.A, RecordClass.IN));
+        DNSQuestion zone = new DNSQuestion("example.com", RecordType.NS, RecordClass.IN);
+        for (int i = 0; i < SYNTHETIC_NAMESERVERS; i++)
+            message.addResourceRecord(new ResourceRecord(zone, 172800, "ns" + i + ".dns-provider" + i % 4 + ".net"));
+        for (int i = 0; i < SYNTHETIC_NAMESERVERS; i++) {
+            String host = "ns" + i + ".dns-provider" + i % 4 + ".net";
+            message.addResourceRecord(new ResourceRecord(new DNSQuestion(host, RecordType.A, RecordClass.IN), 172800,
+                    InetAddress.getByAddress(new byte[]{10, 0, (byte) (i >> 8), (byte) i})));
+            message.addResourceRecord(new ResourceRecord(new DNSQuestion(host, RecordType.AAAA, RecordClass.IN), 172800,
+                    InetAddress.getByAddress(new byte[]{0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0,
+                            0, 0, 0, 0, 0, 0, (byte) (i >> 8), (byte) i})));
+        }
+        return message.getUsed();
+    }
+
+    @Benchmark
+    public void getQuestion(Blackhole bh) {
+        DNSMessage message = new DNSMessage(data, data.length);
+        for (int i = 0; i < message.getQDCount(); i++)
+            bh.consume(message.getQuestion());
+    }
+
+    @Benchmark
+    public void getRR(Blackhole bh) {
+        DNSMessage message = new DNSMessage(data, data.length);
+        for (int i = 0; i < message.getQDCount(); i++)
+            message.getQuestion();
+        int rrCount = message.getANCount() + message.getNSCount() + message.getARCount();
+        for (int i = 0; i < rrCount; i++)
+            bh.consume(message.getRR());
+    }
+
+    @Benchmark
+    public String getName() {
+        return new DNSMessage(data, data.length).getName();
+    }
+
+    private byte[] encodeNames(int capacity) {
+        DNSMessage message = new DNSMessage((short) 1234, capacity);
+        for (String name : names)
+            message.addName(name);
+        return message.getUsed();
+    }
+
+    private byte[] encodeRecords(int capacity) {
+        DNSMessage message = new DNSMessage((short) 1234, capacity);
+        for (DNSQuestion question : questions)
+            message.addQuestion(question);
+        for (ResourceRecord record : records)
+            message.addResourceRecord(record);
+        return message.getUsed();
+    }
+
+    @Benchmark
+    public byte[] addName() {
+        return encodeNames(namesCapacity);
+    }
+
+    @Benchmark
+    public byte[] addResourceRecord() {
+        return encodeRecords(recordsCapacity);
+    }
+
+    @Benchmark
+    public String toStringBenchmark() {
+        return decoded.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DNSMessageBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
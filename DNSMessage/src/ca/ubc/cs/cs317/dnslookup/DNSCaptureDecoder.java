@@ -0,0 +1,386 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Decodes all the DNS messages in a capture file. Two formats are supported: pcap files (as produced by tcpdump or
+ * Wireshark, with DNS messages in UDP packets to or from port 53), and streams of messages each prefixed by its
+ * two-byte length (as in DNS over TCP).
+ * <p>
+ * The file is memory-mapped one window at a time. The record boundaries in each window are found with a quick
+ * sequential scan, after which the records are decoded in parallel using fork/join. Each window is completely processed
+ * before the next one is mapped, and the statistics are kept in a fixed amount of memory (see DNSCaptureStatistics), so
+ * memory use does not depend on the size of the file.
+ */
+public class DNSCaptureDecoder {
+
+    public enum Output {STATS, JSON}
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    private static final int TASK_THRESHOLD = 4096;
+    private static final int DNS_PORT = 53;
+
+    private static final int PCAP_MAGIC = 0xa1b2c3d4;
+    private static final int PCAP_MAGIC_NANOSECONDS = 0xa1b23c4d;
+    private static final int PCAP_HEADER_LENGTH = 24;
+    private static final int PCAP_RECORD_HEADER_LENGTH = 16;
+
+    private static final int LINKTYPE_NULL = 0;
+    private static final int LINKTYPE_ETHERNET = 1;
+    private static final int LINKTYPE_RAW = 101;
+    private static final int LINKTYPE_RAW_OPENBSD = 12;
+    private static final int LINKTYPE_LINUX_SLL = 113;
+    private static final int LINKTYPE_LINUX_SLL2 = 276;
+
+    private final Output output;
+    private final PrintStream out;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param output The kind of output to be produced: aggregate statistics, or one JSON object per message.
+     * @param out    Stream where JSON lines are printed as they are decoded.
+     */
+    public DNSCaptureDecoder(Output output, PrintStream out) {
+        this.output = output;
+        this.out = out;
+    }
+
+    /**
+     * Decodes every DNS message in a capture file.
+     *
+     * @param filename Name of the capture file.
+     * @return Statistics about the messages in the file.
+     * @throws IOException If the file can't be read or is in an unsupported format.
+     */
+    public DNSCaptureStatistics decode(String filename) throws IOException {
+        DNSCaptureStatistics statistics = new DNSCaptureStatistics();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, PCAP_HEADER_LENGTH));
+
+            long position = 0;
+            int linkType = -1;
+            ByteOrder order = ByteOrder.BIG_ENDIAN;
+            if (header.remaining() >= 4) {
+                int magic = header.getInt(0);
+                if (Integer.reverseBytes(magic) == PCAP_MAGIC || Integer.reverseBytes(magic) == PCAP_MAGIC_NANOSECONDS)
+                    order = ByteOrder.LITTLE_ENDIAN;
+                header.order(order);
+                magic = header.getInt(0);
+                if (magic == PCAP_MAGIC || magic == PCAP_MAGIC_NANOSECONDS) {
+                    if (size < PCAP_HEADER_LENGTH)
+                        throw new IOException("Truncated pcap header");
+                    linkType = header.getInt(20) & 0x0fffffff;
+                    if (!isSupportedLinkType(linkType))
+                        throw new IOException("Unsupported pcap link type " + linkType);
+                    position = PCAP_HEADER_LENGTH;
+                } else if (magic == 0x0a0d0d0a) {
+                    throw new IOException("pcapng files are not supported, convert to pcap first");
+                }
+            }
+
+            while (position < size) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(WINDOW_SIZE, size - position));
+                window.order(order);
+                Chunk chunk = linkType < 0 ? indexLengthPrefixed(window) : indexPcap(window, linkType);
+                if (chunk.count == 0) {
+                    if (window.capacity() == WINDOW_SIZE)
+                        throw new IOException("Record larger than " + WINDOW_SIZE + " bytes at offset " + position);
+                    break; // Truncated record at the end of the file
+                }
+                Result result = pool.invoke(new DecodeTask(window, chunk, 0, chunk.count));
+                statistics.merge(result.statistics);
+                if (result.json != null)
+                    out.print(result.json);
+                position += chunk.end;
+            }
+        }
+        return statistics;
+    }
+
+    private static boolean isSupportedLinkType(int linkType) {
+        return linkType == LINKTYPE_NULL || linkType == LINKTYPE_ETHERNET || linkType == LINKTYPE_RAW ||
+                linkType == LINKTYPE_RAW_OPENBSD || linkType == LINKTYPE_LINUX_SLL || linkType == LINKTYPE_LINUX_SLL2;
+    }
+
+    /**
+     * The records found in a window: offsets and lengths of each captured packet or message, relative to the start of
+     * the window, and the link type used to find the DNS message inside pcap packets (-1 for length-prefixed files).
+     */
+    private static class Chunk {
+        private int[] offsets = new int[1024];
+        private int[] lengths = new int[1024];
+        private int count;
+        private int end;
+        private int linkType = -1;
+
+        private void add(int offset, int length) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            offsets[count] = offset;
+            lengths[count] = length;
+            count++;
+        }
+    }
+
+    /**
+     * Finds all complete length-prefixed messages in a window.
+     */
+    private static Chunk indexLengthPrefixed(ByteBuffer window) {
+        Chunk chunk = new Chunk();
+        int limit = window.limit();
+        int position = 0;
+        while (position + 2 <= limit) {
+            int length = window.getShort(position) & 0xffff;
+            if (position + 2 + length > limit) break;
+            chunk.add(position + 2, length);
+            position += 2 + length;
+        }
+        chunk.end = position;
+        return chunk;
+    }
+
+    /**
+     * Finds all complete pcap records in a window.
+     */
+    private static Chunk indexPcap(ByteBuffer window, int linkType) {
+        Chunk chunk = new Chunk();
+        chunk.linkType = linkType;
+        int limit = window.limit();
+        int position = 0;
+        while (position + PCAP_RECORD_HEADER_LENGTH <= limit) {
+            long captured = window.getInt(position + 8) & 0xffffffffL;
+            if (position + PCAP_RECORD_HEADER_LENGTH + captured > limit) break;
+            chunk.add(position + PCAP_RECORD_HEADER_LENGTH, (int) captured);
+            position += PCAP_RECORD_HEADER_LENGTH + (int) captured;
+        }
+        chunk.end = position;
+        return chunk;
+    }
+
+    /**
+     * Statistics and (if requested) JSON lines produced by decoding a range of records.
+     */
+    private static class Result {
+        private final DNSCaptureStatistics statistics;
+        private final StringBuilder json;
+
+        private Result(DNSCaptureStatistics statistics, StringBuilder json) {
+            this.statistics = statistics;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Decodes a range of records of a chunk, splitting the range in two until it is small enough to be decoded
+     * directly. JSON lines are combined in the original order of the records.
+     */
+    private class DecodeTask extends RecursiveTask<Result> {
+        private final ByteBuffer window;
+        private final Chunk chunk;
+        private final int from;
+        private final int to;
+
+        private DecodeTask(ByteBuffer window, Chunk chunk, int from, int to) {
+            this.window = window;
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from > TASK_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                DecodeTask right = new DecodeTask(window, chunk, middle, to);
+                right.fork();
+                Result left = new DecodeTask(window, chunk, from, middle).compute();
+                Result rightResult = right.join();
+                left.statistics.merge(rightResult.statistics);
+                if (left.json != null)
+                    left.json.append(rightResult.json);
+                return left;
+            }
+
+            // Buffers are not thread-safe, so each task reads through its own view of the window. Packet headers are in
+            // network byte order, which is the default order of the view, regardless of the order of the pcap file.
+            ByteBuffer view = window.duplicate();
+            byte[] data = new byte[65536];
+            DNSCaptureStatistics statistics = new DNSCaptureStatistics();
+            StringBuilder json = output == Output.JSON ? new StringBuilder() : null;
+            for (int i = from; i < to; i++) {
+                int offset = chunk.offsets[i];
+                int length = chunk.lengths[i];
+                if (chunk.linkType >= 0) {
+                    long payload = findDNSPayload(view, offset, length, chunk.linkType);
+                    if (payload < 0) {
+                        statistics.addSkipped();
+                        continue;
+                    }
+                    offset = (int) (payload >>> 32);
+                    length = (int) payload;
+                }
+                view.position(offset);
+                view.get(data, 0, length);
+                decodeMessage(data, length, statistics, json);
+            }
+            return new Result(statistics, json);
+        }
+    }
+
+    /**
+     * Decodes a single DNS message and adds it to the statistics or the JSON output.
+     */
+    private static void decodeMessage(byte[] data, int length, DNSCaptureStatistics statistics, StringBuilder json) {
+        if (length < 12) {
+            statistics.addMalformed();
+            return;
+        }
+        try {
+            DNSMessage message = new DNSMessage(data, length);
+            if (message.getQDCount() < 1) {
+                statistics.addSkipped();
+                return;
+            }
+            String name = message.getName();
+            // Type and class are read directly, as codes not known by RecordType would be decoded as OTHER
+            int position = message.getBufferPosition();
+            if (position + 4 > length) {
+                statistics.addMalformed();
+                return;
+            }
+            int type = (data[position] & 0xff) << 8 | (data[position + 1] & 0xff);
+            int recordClass = (data[position + 2] & 0xff) << 8 | (data[position + 3] & 0xff);
+
+            statistics.addMessage(!message.getQR(), message.getRcode(), name, type);
+            if (json != null) {
+                json.append("{\"id\":").append(message.getID())
+                        .append(",\"qr\":").append(message.getQR())
+                        .append(",\"opcode\":").append(message.getOpcode())
+                        .append(",\"aa\":").append(message.getAA())
+                        .append(",\"tc\":").append(message.getTC())
+                        .append(",\"rd\":").append(message.getRD())
+                        .append(",\"ra\":").append(message.getRA())
+                        .append(",\"rcode\":").append(message.getRcode())
+                        .append(",\"qdcount\":").append(message.getQDCount())
+                        .append(",\"ancount\":").append(message.getANCount())
+                        .append(",\"nscount\":").append(message.getNSCount())
+                        .append(",\"arcount\":").append(message.getARCount())
+                        .append(",\"qname\":");
+                appendJSONString(json, name);
+                json.append(",\"qtype\":\"").append(DNSCaptureStatistics.typeName(type))
+                        .append("\",\"qclass\":").append(recordClass)
+                        .append("}\n");
+            }
+        } catch (RuntimeException e) {
+            statistics.addMalformed();
+        }
+    }
+
+    private static void appendJSONString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Finds the DNS message in a captured packet, by skipping the link layer, IP and UDP headers.
+     *
+     * @return The offset of the DNS message in the upper 32 bits and its length in the lower 32 bits, or -1 if the
+     * packet is not a UDP packet to or from the DNS port.
+     */
+    private static long findDNSPayload(ByteBuffer view, int offset, int length, int linkType) {
+        int end = offset + length;
+        int ipVersion;
+        switch (linkType) {
+            case LINKTYPE_ETHERNET:
+                if (length < 14) return -1;
+                int etherType = view.getShort(offset + 12) & 0xffff;
+                offset += 14;
+                while ((etherType == 0x8100 || etherType == 0x88a8) && offset + 4 <= end) { // VLAN tags
+                    etherType = view.getShort(offset + 2) & 0xffff;
+                    offset += 4;
+                }
+                if (etherType == 0x0800) ipVersion = 4;
+                else if (etherType == 0x86dd) ipVersion = 6;
+                else return -1;
+                break;
+            case LINKTYPE_NULL:
+                if (length < 4) return -1;
+                // Address family in the byte order of the capturing host, which is not necessarily the file's
+                int family = view.get(offset) == 0 ? view.get(offset + 3) : view.get(offset);
+                offset += 4;
+                if (family == 2) ipVersion = 4;
+                else if (family == 24 || family == 28 || family == 30) ipVersion = 6;
+                else return -1;
+                break;
+            case LINKTYPE_LINUX_SLL:
+            case LINKTYPE_LINUX_SLL2:
+                int headerLength = linkType == LINKTYPE_LINUX_SLL ? 16 : 20;
+                if (length < headerLength) return -1;
+                int protocol = view.getShort(offset + (linkType == LINKTYPE_LINUX_SLL ? 14 : 0)) & 0xffff;
+                offset += headerLength;
+                if (protocol == 0x0800) ipVersion = 4;
+                else if (protocol == 0x86dd) ipVersion = 6;
+                else return -1;
+                break;
+            default: // Raw IP
+                if (length < 1) return -1;
+                ipVersion = (view.get(offset) & 0xf0) >> 4;
+        }
+
+        int nextHeader;
+        if (ipVersion == 4) {
+            if (offset + 20 > end) return -1;
+            int headerLength = (view.get(offset) & 0x0f) * 4;
+            // Only the first fragment of a datagram contains the UDP header
+            if ((view.getShort(offset + 6) & 0x1fff) != 0) return -1;
+            nextHeader = view.get(offset + 9) & 0xff;
+            offset += headerLength;
+        } else if (ipVersion == 6) {
+            if (offset + 40 > end) return -1;
+            nextHeader = view.get(offset + 6) & 0xff;
+            offset += 40;
+            // Skip hop-by-hop, routing and destination options extension headers
+            while ((nextHeader == 0 || nextHeader == 43 || nextHeader == 60) && offset + 8 <= end) {
+                nextHeader = view.get(offset) & 0xff;
+                offset += 8 + (view.get(offset + 1) & 0xff) * 8;
+            }
+        } else {
+            return -1;
+        }
+
+        if (nextHeader != 17 || offset + 8 > end) return -1;
+        int sourcePort = view.getShort(offset) & 0xffff;
+        int destinationPort = view.getShort(offset + 2) & 0xffff;
+        if (sourcePort != DNS_PORT && destinationPort != DNS_PORT) return -1;
+        int udpLength = view.getShort(offset + 4) & 0xffff;
+        offset += 8;
+        int payloadLength = Math.min(udpLength - 8, end - offset);
+        if (payloadLength <= 0) return -1;
+        return ((long) offset << 32) | payloadLength;
+    }
+}
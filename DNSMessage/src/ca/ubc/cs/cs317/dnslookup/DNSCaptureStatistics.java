@@ -0,0 +1,175 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.util.*;
+
+/**
+ * Aggregate statistics about the DNS messages found in a capture file: the number of queries and responses, the mix of
+ * question types, response codes, a histogram of question name lengths and the most frequent question names. Each
+ * decoding task collects its own statistics, which are then combined with merge().
+ * <p>
+ * The most frequent names are found with a fixed number of counters (see DNSTopNames), so that memory use does not
+ * grow with the number of distinct names in the capture; their counts are exact unless more distinct names were seen
+ * than there are counters.
+ */
+public class DNSCaptureStatistics {
+
+    public static final int NAME_LENGTH_BUCKET = 10;
+    public static final int DEFAULT_TRACKED_NAMES = 10000;
+    private static final int MAX_NAME_LENGTH = 255;
+
+    private long messages;
+    private long queries;
+    private long malformed;
+    private long skipped;
+    private final long[] rcodes = new long[16];
+    private final Map<Integer, long[]> types = new HashMap<>();
+    private final long[] nameLengths = new long[MAX_NAME_LENGTH / NAME_LENGTH_BUCKET + 1];
+    private final DNSTopNames names;
+
+    public DNSCaptureStatistics() {
+        this(DEFAULT_TRACKED_NAMES);
+    }
+
+    /**
+     * Creates empty statistics.
+     *
+     * @param trackedNames The number of distinct names counted at the same time to find the most frequent names.
+     */
+    public DNSCaptureStatistics(int trackedNames) {
+        this.names = new DNSTopNames(trackedNames);
+    }
+
+    /**
+     * Records a successfully decoded message with a question.
+     *
+     * @param query  True if the message is a query (QR bit not set).
+     * @param rcode  The response code of the message.
+     * @param name   The name in the question.
+     * @param type   The type code in the question.
+     */
+    public void addMessage(boolean query, int rcode, String name, int type) {
+        messages++;
+        if (query) queries++;
+        rcodes[rcode & 0x0f]++;
+        types.computeIfAbsent(type, t -> new long[1])[0]++;
+        nameLengths[Math.min(name.length(), MAX_NAME_LENGTH) / NAME_LENGTH_BUCKET]++;
+        names.add(name.toLowerCase());
+    }
+
+    /**
+     * Records a DNS message that could not be decoded.
+     */
+    public void addMalformed() {
+        malformed++;
+    }
+
+    /**
+     * Records a captured packet that does not contain a DNS message (e.g., not UDP or not port 53), or a DNS message
+     * with no question.
+     */
+    public void addSkipped() {
+        skipped++;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    public long getQueries() {
+        return queries;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Returns the most frequent question names (in lower case), the most frequent first.
+     *
+     * @param n The maximum number of names to be returned.
+     * @return The names and their estimated counts.
+     */
+    public List<DNSTopNames.Counter> getTopNames(int n) {
+        return names.getTop(n);
+    }
+
+    /**
+     * Adds all the statistics collected by another object to this one.
+     *
+     * @param other The statistics to be added.
+     * @return This object.
+     */
+    public DNSCaptureStatistics merge(DNSCaptureStatistics other) {
+        messages += other.messages;
+        queries += other.queries;
+        malformed += other.malformed;
+        skipped += other.skipped;
+        for (int i = 0; i < rcodes.length; i++)
+            rcodes[i] += other.rcodes[i];
+        for (int i = 0; i < nameLengths.length; i++)
+            nameLengths[i] += other.nameLengths[i];
+        other.types.forEach((type, count) -> types.computeIfAbsent(type, t -> new long[1])[0] += count[0]);
+        names.merge(other.names);
+        return this;
+    }
+
+    /**
+     * Returns a text report of the statistics.
+     *
+     * @param topNames Number of most frequent names to include in the report.
+     * @return The report.
+     */
+    public String report(int topNames) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Messages: ").append(messages)
+                .append(" (queries: ").append(queries)
+                .append(", responses: ").append(messages - queries).append(")\n");
+        sb.append("Malformed: ").append(malformed).append(" Skipped: ").append(skipped).append('\n');
+
+        sb.append("Question types:\n");
+        new TreeMap<>(types).forEach((type, count) -> sb.append(String.format("  %-8s %12d %6.2f%%\n",
+                typeName(type), count[0], percent(count[0]))));
+
+        sb.append("Response codes:\n");
+        for (int i = 0; i < rcodes.length; i++)
+            if (rcodes[i] > 0)
+                sb.append(String.format("  %-2d %-45s %12d %6.2f%%\n",
+                        i, DNSMessage.dnsErrorMessage(i), rcodes[i], percent(rcodes[i])));
+
+        sb.append("Name lengths:\n");
+        for (int i = 0; i < nameLengths.length; i++)
+            if (nameLengths[i] > 0)
+                sb.append(String.format("  %3d-%-3d %12d %6.2f%%\n", i * NAME_LENGTH_BUCKET,
+                        Math.min((i + 1) * NAME_LENGTH_BUCKET - 1, MAX_NAME_LENGTH), nameLengths[i],
+                        percent(nameLengths[i])));
+
+        sb.append("Top names:\n");
+        for (DNSTopNames.Counter counter : names.getTop(topNames)) {
+            sb.append(String.format("  %-50s %12d", counter.getName().isEmpty() ? "<root>" : counter.getName(),
+                    counter.getCount()));
+            if (counter.getError() > 0)
+                sb.append(" (at most ").append(counter.getError()).append(" too high)");
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private double percent(long count) {
+        return messages == 0 ? 0 : 100.0 * count / messages;
+    }
+
+    /**
+     * Returns the name of a record type code, or TYPEnnn (RFC 3597) if the type is not known by the application.
+     *
+     * @param type The type code.
+     * @return The name of the type.
+     */
+    public static String typeName(int type) {
+        RecordType recordType = RecordType.getByCode(type);
+        return recordType == RecordType.OTHER ? "TYPE" + type : recordType.name();
+    }
+}
@@ -0,0 +1,185 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the position of every name suffix already written to a DNS message, so that names can be compressed
+ * (RFC 1035, section 4.1.4). Labels are stored in reverse order (top-level domain first), so the longest suffix of a
+ * name that has already been written is found by walking down the trie one label at a time. Labels are compared in
+ * place inside the names they come from, so no substrings are allocated.
+ * <p>
+ * A name is processed in three steps: split() finds its labels, findLongestSuffix() finds the longest suffix that can
+ * be replaced by a pointer, and record() remembers the positions of the labels written before that suffix.
+ */
+public class DNSCompressionTrie {
+
+    private static final int MAX_POINTER_OFFSET = 0x3fff;
+
+    private final Node root = new Node(null, 0, 0, 0);
+    private String name;
+    private int[] labelStarts = new int[16];
+    private int[] labelEnds = new int[16];
+    private int labelCount;
+    private Node suffixNode;
+
+    /**
+     * Splits a name into its labels. A trailing dot (fully-qualified form) is ignored, and an empty name has no labels.
+     *
+     * @param name The name to be split.
+     * @return The number of labels in the name.
+     */
+    public int split(String name) {
+        this.name = name;
+        this.labelCount = 0;
+        int end = name.endsWith(".") ? name.length() - 1 : name.length();
+        int start = 0;
+        while (start < end) {
+            int dot = name.indexOf('.', start);
+            if (dot < 0 || dot > end) dot = end;
+            if (labelCount == labelStarts.length) {
+                labelStarts = Arrays.copyOf(labelStarts, labelCount * 2);
+                labelEnds = Arrays.copyOf(labelEnds, labelCount * 2);
+            }
+            labelStarts[labelCount] = start;
+            labelEnds[labelCount] = dot;
+            labelCount++;
+            start = dot + 1;
+        }
+        return labelCount;
+    }
+
+    public int getLabelStart(int label) {
+        return labelStarts[label];
+    }
+
+    public int getLabelLength(int label) {
+        return labelEnds[label] - labelStarts[label];
+    }
+
+    /**
+     * Finds the longest suffix of the last split name that has already been written to the message at a position that
+     * can be the target of a pointer.
+     *
+     * @return The index of the first label of the suffix, or the number of labels if no suffix was written before.
+     */
+    public int findLongestSuffix() {
+        int suffix = labelCount;
+        Node node = root;
+        suffixNode = root;
+        for (int i = labelCount - 1; i >= 0; i--) {
+            node = node.findChild(name, labelStarts[i], labelEnds[i], hash(i));
+            if (node == null) break;
+            if (node.offset >= 0) {
+                suffix = i;
+                suffixNode = node;
+            }
+        }
+        return suffix;
+    }
+
+    /**
+     * Returns the position in the message where the suffix found by the last call to findLongestSuffix() was written.
+     *
+     * @return The position of the suffix, to be used as a compression pointer.
+     */
+    public int getSuffixOffset() {
+        return suffixNode.offset;
+    }
+
+    /**
+     * Remembers the positions of the labels of the last split name that come before the suffix found by
+     * findLongestSuffix(). These labels must be written starting at the given position, each one encoded as a length
+     * byte followed by the label itself.
+     *
+     * @param suffix   The index returned by findLongestSuffix().
+     * @param position The position in the message where the first label is written.
+     */
+    public void record(int suffix, int position) {
+        Node node = suffixNode;
+        for (int i = suffix - 1; i >= 0; i--) {
+            Node child = node.findChild(name, labelStarts[i], labelEnds[i], hash(i));
+            if (child == null)
+                child = node.addChild(name, labelStarts[i], labelEnds[i], hash(i));
+            // The encoded label starts where the label starts in the string, since each dot becomes a length byte
+            int offset = position + labelStarts[i];
+            if (child.offset < 0 && offset <= MAX_POINTER_OFFSET)
+                child.offset = offset;
+            node = child;
+        }
+    }
+
+    private int hash(int label) {
+        int h = 0;
+        for (int j = labelStarts[label]; j < labelEnds[label]; j++)
+            h = 31 * h + name.charAt(j);
+        return h;
+    }
+
+    /**
+     * A single label in the trie. The label is kept as a region of the name it was first seen in. The children of a node
+     * are kept in an open-addressed hash table keyed by the hash of their label, so that a child is found in constant
+     * time however many names share the same parent (e.g., the NS and glue names of a large referral).
+     */
+    private static class Node {
+        private static final int INITIAL_CAPACITY = 4;
+
+        private final String source;
+        private final int start;
+        private final int length;
+        private final int hash;
+        private int offset = -1;
+        private Node[] children;
+        private int childCount;
+
+        private Node(String source, int start, int end, int hash) {
+            this.source = source;
+            this.start = start;
+            this.length = end - start;
+            this.hash = hash;
+        }
+
+        private static int slot(int hash, int mask) {
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        private Node findChild(String name, int start, int end, int hash) {
+            if (children == null)
+                return null;
+            int mask = children.length - 1;
+            for (int i = slot(hash, mask); children[i] != null; i = (i + 1) & mask) {
+                Node child = children[i];
+                if (child.hash == hash && child.length == end - start &&
+                        name.regionMatches(start, child.source, child.start, child.length))
+                    return child;
+            }
+            return null;
+        }
+
+        private Node addChild(String name, int start, int end, int hash) {
+            if (children == null)
+                children = new Node[INITIAL_CAPACITY];
+            else if (2 * (childCount + 1) > children.length)
+                resize();
+            Node child = new Node(name, start, end, hash);
+            insert(children, child);
+            childCount++;
+            return child;
+        }
+
+        private void resize() {
+            Node[] table = new Node[children.length * 2];
+            for (Node child : children)
+                if (child != null)
+                    insert(table, child);
+            children = table;
+        }
+
+        private static void insert(Node[] table, Node child) {
+            int mask = table.length - 1;
+            int i = slot(child.hash, mask);
+            while (table[i] != null)
+                i = (i + 1) & mask;
+            table[i] = child;
+        }
+    }
+}
@@ -10,7 +10,7 @@ import java.util.stream.IntStream;
 
 public class DNSMessage {
 	public static final int MAX_DNS_MESSAGE_LENGTH = 512;
-	private final Map<String, Integer> nameToPosition = new HashMap<>();
+	private final DNSCompressionTrie compression = new DNSCompressionTrie();
 	private final Map<Integer, String> positionToName = new HashMap<>();
 	private final ByteBuffer buffer;
 
@@ -20,7 +20,18 @@ public class DNSMessage {
 	 * @param id The id of the message.
 	 */
 	public DNSMessage(short id) {
-		this.buffer = ByteBuffer.allocate(MAX_DNS_MESSAGE_LENGTH);
+		this(id, MAX_DNS_MESSAGE_LENGTH);
+	}
+
+	/**
+	 * Initializes an empty DNSMessage with the given id, able to hold up to
+	 * capacity bytes.
+	 *
+	 * @param id       The id of the message.
+	 * @param capacity The maximum size of the encoded message, in bytes.
+	 */
+	public DNSMessage(short id, int capacity) {
+		this.buffer = ByteBuffer.allocate(capacity);
 		setID(id);
 		buffer.position(12);
 	}
@@ -133,6 +144,10 @@ public class DNSMessage {
 		buffer.putShort(10, (short) count);
 	}
 
+	public int getBufferPosition() {
+		return buffer.position();
+	}
+
 	/**
 	 * Return the name at the current position() of the buffer. This method is
 	 * provided for you, but you should ensure that you understand what it does and
@@ -200,7 +215,7 @@ public class DNSMessage {
 			showRRs("Additional", getARCount(), sb);
 			return sb.toString();
 		} catch (Exception e) {
-			e.printStackTrace();
+			DNSLog.error("toString failed on DNSMessage: %s", e);
 			return "toString failed on DNSMessage";
 		} finally {
 			buffer.position(end);
@@ -258,8 +273,7 @@ public class DNSMessage {
 	 * @return The decoded record type
 	 */
 	public RecordType getRecordType() {
-		buffer.position(buffer.position() + 1);
-		return RecordType.getByCode(buffer.get());
+		return RecordType.getByCode(buffer.getShort() & 0xffff);
 	}
 
 	/**
@@ -268,8 +282,7 @@ public class DNSMessage {
 	 * @return The decoded record class
 	 */
 	public RecordClass getRecordClass() {
-		buffer.position(buffer.position() + 1);
-		return RecordClass.getByCode(buffer.get());
+		return RecordClass.getByCode(buffer.getShort() & 0xffff);
 	}
 
 	/**
@@ -321,17 +334,17 @@ public class DNSMessage {
 				byte[] addressBytes = getAddress(rdLength);
 				return new ResourceRecord(question, ttl, InetAddress.getByAddress(addressBytes));
 			} catch (UnknownHostException e) {
-				System.out.println("getRR error");
-				e.printStackTrace();
+				DNSLog.warn("getRR error: %s", e);
 			}
 		case MX:
 			short preference = buffer.getShort();
 		case CNAME:
 		case NS:
+		case PTR:
 			String address = getName();
 			return new ResourceRecord(question, ttl, address);
 		default:
-			System.out.println("getRR RecordType invalid");
+			DNSLog.warn("getRR RecordType %s invalid", rType);
 			return null;
 		}
 	}
@@ -351,31 +364,28 @@ public class DNSMessage {
 	/**
 	 * Add an encoded name to the message. It is added at the current position and
 	 * uses compression as much as possible. Compression is accomplished by
-	 * remembering the position of every added label.
+	 * remembering the position of every added label in a trie of reversed labels,
+	 * which finds the longest suffix already written in the message in a single
+	 * pass over the labels of the name.
 	 *
 	 * @param name The name to be added
 	 */
 	public void addName(String name) {
-		String label;
-		while (name.length() > 0) {
-			Integer offset = nameToPosition.get(name);
-			if (offset != null) {
-				int pointer = offset;
-				pointer |= 0xc000;
-				buffer.putShort((short) pointer);
-				return;
-			} else {
-				nameToPosition.put(name, buffer.position());
-				int dot = name.indexOf('.');
-				label = (dot > 0) ? name.substring(0, dot) : name;
-				buffer.put((byte) label.length());
-				for (int j = 0; j < label.length(); j++) {
-					buffer.put((byte) label.charAt(j));
-				}
-				name = (dot > 0) ? name.substring(dot + 1) : "";
+		int labels = compression.split(name);
+		int suffix = compression.findLongestSuffix();
+		compression.record(suffix, buffer.position());
+		for (int i = 0; i < suffix; i++) {
+			int start = compression.getLabelStart(i);
+			int length = compression.getLabelLength(i);
+			buffer.put((byte) length);
+			for (int j = start; j < start + length; j++) {
+				buffer.put((byte) name.charAt(j));
 			}
 		}
-		buffer.put((byte) 0);
+		if (suffix < labels)
+			buffer.putShort((short) (compression.getSuffixOffset() | 0xc000));
+		else
+			buffer.put((byte) 0);
 	}
 
 	/**
@@ -428,16 +438,20 @@ public class DNSMessage {
 			buffer.put(rr.getInetResult().getAddress());
 			break;
 		case MX:
-			buffer.putShort((short) 0);
 		case CNAME:
 		case NS:
-			int strLen = rr.getTextResult().length();
-			buffer.put((byte) (strLen >> 8 & 0xff));
-			buffer.put((byte) (strLen & 0xff));
+		case PTR:
+			// The length of a compressed name is only known after it is added, so
+			// RDLENGTH is filled in afterwards
+			int rdLengthPosition = buffer.position();
+			buffer.putShort((short) 0);
+			if (rr.getRecordType() == RecordType.MX)
+				buffer.putShort((short) 0); // preference
 			addName(rr.getTextResult());
+			buffer.putShort(rdLengthPosition, (short) (buffer.position() - rdLengthPosition - 2));
 			break;
 		default:
-			System.out.println("addResourceRecord RecordType invalid");
+			DNSLog.warn("addResourceRecord RecordType %s invalid", rr.getRecordType());
 		}
 		setARCount(getARCount() + 1);
 	}
@@ -10,6 +10,7 @@ import java.util.NoSuchElementException;
 import java.util.Scanner;
 
 public class DNSMessageCUI {
+    private static final int TOP_NAMES = 20;
     private DNSMessage message;
     /**
      * Main function, called when program is first invoked.
@@ -23,6 +24,8 @@ public class DNSMessageCUI {
             System.err.println("\tjava -jar DNSMessage.jar");
             System.exit(1);
         }
+        // Warnings are shown as they happen while the commands are typed in
+        DNSLog.setEcho(true);
         new DNSMessageCUI().interact();
     }
 
@@ -74,6 +77,23 @@ public class DNSMessageCUI {
                     System.out.println("Invalid call. Format:\n" +
                             "\tread <filename>");
                 }
+            } else if (commandArgs[0].equalsIgnoreCase("decode-stream")) {
+                // Decode every message in a capture file
+                if (commandArgs.length == 2 || commandArgs.length == 3) {
+                    DNSCaptureDecoder.Output output;
+                    try {
+                        output = commandArgs.length == 3 ?
+                                DNSCaptureDecoder.Output.valueOf(commandArgs[2].toUpperCase()) :
+                                DNSCaptureDecoder.Output.STATS;
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Invalid output. Must be one of:\n\tstats, json");
+                        continue;
+                    }
+                    decodeStream(commandArgs[1], output);
+                } else {
+                    System.out.println("Invalid call. Format:\n" +
+                            "\tdecode-stream <filename> [stats|json]");
+                }
             } else if (commandArgs[0].equalsIgnoreCase("write")) {
                 // Write a message to a file
                 if (commandArgs.length == 2) {
@@ -117,6 +137,7 @@ public class DNSMessageCUI {
                 System.err.println("Invalid command. Valid commands are:");
                 System.err.println("\tread <filename>");
                 System.err.println("\twrite <filename>");
+                System.err.println("\tdecode-stream <filename> [stats|json]");
                 System.err.println("\tnew [id]");
                 System.err.println("\tadd question name type");
                 System.err.println("\tadd resource name type value");
@@ -137,6 +158,31 @@ public class DNSMessageCUI {
         }
     }
 
+    /**
+     * Decodes all the messages in a capture file (pcap, or messages prefixed by their two-byte length), and prints
+     * either aggregate statistics or one JSON object per message. Log messages are not printed while the file is
+     * decoded.
+     *
+     * @param filename Name of the capture file.
+     * @param output   The kind of output to be printed.
+     */
+    private void decodeStream(String filename, DNSCaptureDecoder.Output output) {
+        long start = System.nanoTime();
+        boolean echo = DNSLog.isEcho();
+        DNSLog.setEcho(false);
+        try {
+            DNSCaptureStatistics statistics = new DNSCaptureDecoder(output, System.out).decode(filename);
+            if (output == DNSCaptureDecoder.Output.STATS) {
+                System.out.print(statistics.report(TOP_NAMES));
+                System.out.printf("Decoded in %.3f s\n", (System.nanoTime() - start) / 1e9);
+            }
+        } catch (IOException e) {
+            System.err.println("Can't decode file \"" + filename + "\" (" + e.getMessage() + ")");
+        } finally {
+            DNSLog.setEcho(echo);
+        }
+    }
+
     private void writeToFile(String filename) throws IOException {
         byte[] buf = message.getUsed();
         try (FileOutputStream f = new FileOutputStream(filename)) {
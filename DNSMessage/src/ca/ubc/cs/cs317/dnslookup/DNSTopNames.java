@@ -0,0 +1,165 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import java.util.*;
+
+/**
+ * Finds the most frequent names in a stream using a fixed amount of memory, with the Space-Saving algorithm (Metwally,
+ * Agrawal and El Abbadi, 2005). At most capacity names are counted; when a new name arrives and all counters are in
+ * use, the name with the lowest count is replaced, and the new name inherits that count as its possible error. Every
+ * name whose frequency is higher than (number of names seen) / capacity is guaranteed to be counted, and the count of a
+ * name is never lower than its real frequency, nor higher than its real frequency plus its error.
+ * <p>
+ * The counters are kept in a min-heap indexed by name, so that each name is added in O(log capacity) time.
+ */
+public class DNSTopNames {
+
+    /**
+     * A counted name.
+     */
+    public static class Counter {
+        private final String name;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        private Counter(String name, long count, long error) {
+            this.name = name;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the estimated number of occurrences of the name, which is at least its real number of occurrences.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the maximum amount by which the count may exceed the real number of occurrences.
+         */
+        public long getError() {
+            return error;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Counter> counters = new HashMap<>();
+    private Counter[] heap;
+    private int size;
+
+    /**
+     * Creates an empty summary.
+     *
+     * @param capacity The maximum number of names counted at the same time.
+     */
+    public DNSTopNames(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive");
+        this.capacity = capacity;
+        this.heap = new Counter[Math.min(capacity, 16)];
+    }
+
+    /**
+     * Counts one occurrence of a name.
+     *
+     * @param name The name.
+     */
+    public void add(String name) {
+        add(name, 1, 0);
+    }
+
+    /**
+     * Counts several occurrences of a name at once, e.g., when merging summaries.
+     */
+    private void add(String name, long count, long error) {
+        Counter counter = counters.get(name);
+        if (counter != null) {
+            counter.count += count;
+            counter.error += error;
+            siftDown(counter.heapIndex);
+        } else if (size < capacity) {
+            counter = new Counter(name, count, error);
+            counters.put(name, counter);
+            if (size == heap.length)
+                heap = Arrays.copyOf(heap, Math.min(capacity, size * 2));
+            heap[size] = counter;
+            counter.heapIndex = size;
+            siftUp(size++);
+        } else {
+            // The least frequent name is replaced; the new name may have occurred up to that many times before
+            Counter evicted = heap[0];
+            counters.remove(evicted.name);
+            counter = new Counter(name, evicted.count + count, evicted.count + error);
+            counters.put(name, counter);
+            heap[0] = counter;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Adds the counts of another summary to this one.
+     *
+     * @param other The summary to be added.
+     */
+    public void merge(DNSTopNames other) {
+        for (int i = 0; i < other.size; i++)
+            add(other.heap[i].name, other.heap[i].count, other.heap[i].error);
+    }
+
+    /**
+     * Returns the number of names currently counted.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the most frequent names, the most frequent first.
+     *
+     * @param n The maximum number of names to be returned.
+     * @return The names with the highest counts.
+     */
+    public List<Counter> getTop(int n) {
+        List<Counter> top = new ArrayList<>(Arrays.asList(heap).subList(0, size));
+        top.sort((a, b) -> Long.compare(b.count, a.count));
+        return top.subList(0, Math.min(n, top.size()));
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count)
+                break;
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count)
+                child++;
+            if (counter.count <= heap[child].count)
+                break;
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+}
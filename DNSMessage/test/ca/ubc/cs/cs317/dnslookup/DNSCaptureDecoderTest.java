@@ -0,0 +1,169 @@
+package ca.ubc.cs.cs317.dnslookup;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DNSCaptureDecoderTest {
+
+    private Path file;
+
+    @AfterEach
+    public void deleteFile() throws IOException {
+        if (file != null)
+            Files.deleteIfExists(file);
+    }
+
+    private static byte[] query(int id, String name, RecordType type) {
+        DNSMessage message = new DNSMessage((short) id);
+        message.addQuestion(new DNSQuestion(name, type, RecordClass.IN));
+        return message.getUsed();
+    }
+
+    private static byte[] response(int id, String name, int rcode) {
+        DNSMessage message = new DNSMessage((short) id);
+        message.setQR(true);
+        message.setRcode(rcode);
+        message.addQuestion(new DNSQuestion(name, RecordType.A, RecordClass.IN));
+        return message.getUsed();
+    }
+
+    private Path write(byte[] content) throws IOException {
+        file = Files.createTempFile("capture", ".bin");
+        Files.write(file, content);
+        return file;
+    }
+
+    /**
+     * Builds an Ethernet frame with an IPv4 header, a UDP or TCP header and a payload.
+     */
+    private static byte[] frame(int protocol, int sourcePort, int destinationPort, byte[] payload) {
+        ByteBuffer packet = ByteBuffer.allocate(14 + 20 + 8 + payload.length);
+        packet.position(12);
+        packet.putShort((short) 0x0800);
+        packet.put((byte) 0x45).put((byte) 0).putShort((short) (20 + 8 + payload.length));
+        packet.putShort((short) 1).putShort((short) 0);
+        packet.put((byte) 64).put((byte) protocol).putShort((short) 0);
+        packet.put(new byte[]{10, 0, 0, 1}).put(new byte[]{10, 0, 0, 2});
+        packet.putShort((short) sourcePort).putShort((short) destinationPort);
+        packet.putShort((short) (8 + payload.length)).putShort((short) 0);
+        packet.put(payload);
+        return packet.array();
+    }
+
+    /**
+     * Builds a little-endian pcap file with Ethernet frames.
+     */
+    private static byte[] pcap(byte[]... frames) {
+        int length = 24;
+        for (byte[] frame : frames)
+            length += 16 + frame.length;
+        ByteBuffer file = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        file.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        for (byte[] frame : frames) {
+            file.putInt(0).putInt(0).putInt(frame.length).putInt(frame.length);
+            file.put(frame);
+        }
+        return file.array();
+    }
+
+    private static byte[] lengthPrefixed(byte[]... messages) {
+        int length = 0;
+        for (byte[] message : messages)
+            length += 2 + message.length;
+        ByteBuffer stream = ByteBuffer.allocate(length);
+        for (byte[] message : messages)
+            stream.putShort((short) message.length).put(message);
+        return stream.array();
+    }
+
+    @Test
+    public void testPcap() throws IOException {
+        byte[] content = pcap(
+                frame(17, 40000, 53, query(1, "www.example.com", RecordType.A)),
+                frame(17, 53, 40000, response(1, "WWW.example.com", 0)),
+                frame(17, 40001, 53, query(2, "mail.example.com", RecordType.MX)),
+                frame(17, 53, 40001, response(2, "nx.example.com", 3)),
+                frame(17, 40002, 80, query(3, "not.dns.example.com", RecordType.A)),
+                frame(6, 40003, 53, query(4, "tcp.example.com", RecordType.A)),
+                frame(17, 40004, 53, new byte[]{1, 2, 3}));
+        DNSCaptureStatistics statistics = new DNSCaptureDecoder(DNSCaptureDecoder.Output.STATS, System.out)
+                .decode(write(content).toString());
+
+        assertEquals(4, statistics.getMessages());
+        assertEquals(2, statistics.getQueries());
+        assertEquals(2, statistics.getSkipped());
+        assertEquals(1, statistics.getMalformed());
+        List<DNSTopNames.Counter> top = statistics.getTopNames(1);
+        assertEquals("www.example.com", top.get(0).getName());
+        assertEquals(2, top.get(0).getCount());
+        String report = statistics.report(10);
+        assertTrue(report.contains("MX"), report);
+        assertTrue(report.contains("nx.example.com"), report);
+    }
+
+    @Test
+    public void testLengthPrefixed() throws IOException {
+        byte[] content = lengthPrefixed(
+                query(1, "a.example.com", RecordType.A),
+                query(2, "a.example.com", RecordType.AAAA),
+                response(3, "b.example.com", 0),
+                new byte[5]);
+        // A record cut off at the end of the file is ignored
+        byte[] truncated = new byte[content.length + 3];
+        System.arraycopy(content, 0, truncated, 0, content.length);
+        truncated[content.length] = 0;
+        truncated[content.length + 1] = 40;
+
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        DNSCaptureStatistics statistics = new DNSCaptureDecoder(DNSCaptureDecoder.Output.JSON,
+                new PrintStream(json, true, "UTF-8")).decode(write(truncated).toString());
+
+        assertEquals(3, statistics.getMessages());
+        assertEquals(2, statistics.getQueries());
+        assertEquals(1, statistics.getMalformed());
+        String[] lines = new String(json.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":1,\"qr\":false"), lines[0]);
+        assertTrue(lines[1].contains("\"qtype\":\"AAAA\""), lines[1]);
+        assertTrue(lines[2].contains("\"qname\":\"b.example.com\""), lines[2]);
+    }
+
+    @Test
+    public void testTopNamesBounded() {
+        // Each half sees about 6250 names, so any name seen more than 62 times in it is guaranteed to be counted
+        DNSTopNames left = new DNSTopNames(100);
+        DNSTopNames right = new DNSTopNames(100);
+        for (int i = 0; i < 10000; i++) {
+            DNSTopNames names = i % 2 == 0 ? left : right;
+            names.add("unique" + i + ".example.com");
+            if (i % 5 == 0)
+                names.add("frequent.example.com");
+            if (i % 40 < 2)
+                names.add("common.example.com");
+        }
+        assertEquals(100, left.size());
+        left.merge(right);
+        assertEquals(100, left.size());
+
+        List<DNSTopNames.Counter> top = left.getTop(2);
+        assertEquals("frequent.example.com", top.get(0).getName());
+        assertEquals("common.example.com", top.get(1).getName());
+        // Counts are never lower than the real ones, and at most their error higher
+        assertTrue(top.get(0).getCount() >= 2000);
+        assertTrue(top.get(0).getCount() - top.get(0).getError() <= 2000);
+        assertTrue(top.get(1).getCount() >= 500);
+        assertTrue(top.get(1).getCount() - top.get(1).getError() <= 500);
+    }
+}
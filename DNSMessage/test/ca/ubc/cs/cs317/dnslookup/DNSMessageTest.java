@@ -73,4 +73,55 @@ public class DNSMessageTest {
         ResourceRecord replyRR = reply.getRR();
         assertEquals(rr, replyRR);
     }
+    @Test
+    public void testNameCompression() {
+        DNSMessage request = new DNSMessage((short)23);
+        DNSQuestion question = new DNSQuestion("cs.ubc.ca", RecordType.NS, RecordClass.IN);
+        request.addQuestion(question);
+        int uncompressed = request.getUsed().length;
+        ResourceRecord[] rrs = new ResourceRecord[] {
+                new ResourceRecord(question, 3600, "ns1.cs.ubc.ca"),
+                new ResourceRecord(question, 3600, "ns2.cs.ubc.ca"),
+                new ResourceRecord(question, 3600, "ns1.cs.ubc.ca"),
+                new ResourceRecord(question, 3600, "ns.ubc.ca"),
+                new ResourceRecord(question, 3600, "dns.cs.ubc.com"),
+        };
+        for (ResourceRecord rr : rrs)
+            request.addResourceRecord(rr);
+        byte[] content = request.getUsed();
+        // Owner names of the records are always a single pointer to the question
+        assertEquals(uncompressed + 5 * (2 + 10) + (6 + 6 + 2 + 5 + 16), content.length);
+
+        DNSMessage reply = new DNSMessage(content, content.length);
+        assertEquals(5, reply.getARCount());
+        assertEquals(question, reply.getQuestion());
+        for (ResourceRecord rr : rrs)
+            assertEquals(rr, reply.getRR());
+    }
+
+    @Test
+    public void testNameCompressionManySiblings() {
+        DNSMessage request = new DNSMessage((short)23, 65535);
+        DNSQuestion question = new DNSQuestion("example.com", RecordType.NS, RecordClass.IN);
+        request.addQuestion(question);
+        int start = request.getUsed().length;
+        // Many names under the same parent, then the same names again
+        int count = 300;
+        int expected = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < count; i++) {
+                String host = "ns" + i;
+                request.addResourceRecord(new ResourceRecord(question, 3600, host + ".example.com"));
+                expected += 2 + 10 + (pass == 0 ? 1 + host.length() + 2 : 2);
+            }
+        }
+        byte[] content = request.getUsed();
+        assertEquals(start + expected, content.length);
+
+        DNSMessage reply = new DNSMessage(content, content.length);
+        reply.getQuestion();
+        for (int pass = 0; pass < 2; pass++)
+            for (int i = 0; i < count; i++)
+                assertEquals(new ResourceRecord(question, 3600, "ns" + i + ".example.com"), reply.getRR());
+    }
 }
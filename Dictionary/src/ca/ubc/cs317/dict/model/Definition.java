@@ -1,5 +1,9 @@
 package ca.ubc.cs317.dict.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -9,6 +13,11 @@ public class Definition {
 
     private String word;
     private String databaseName;
+    /**
+     * The lines of the definition, as they are received. The text is only built from them (once) when it is needed,
+     * since appending each line to a String would copy the whole text again for every line.
+     */
+    private final List<String> lines = new ArrayList<>();
     private String definition;
 
     public Definition(String word, String database) {
@@ -24,38 +33,60 @@ public class Definition {
         return databaseName;
     }
 
+    /**
+     * Returns the text of the definition, with its lines separated by the system line separator.
+     *
+     * @return The text, or null if the definition has no lines.
+     */
     public String getDefinition() {
+        if (definition == null && !lines.isEmpty())
+            definition = String.join(System.lineSeparator(), lines);
         return definition;
     }
 
+    /**
+     * Returns the lines of the definition, e.g., to display a long definition without building its whole text.
+     *
+     * @return The lines, which can't be modified.
+     */
+    public List<String> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
     public void setDefinition(String definition) {
         this.definition = definition.trim();
+        lines.clear();
+        lines.addAll(Arrays.asList(this.definition.split("\\R", -1)));
     }
 
     public void appendDefinition(String definition) {
-        if (this.definition == null)
-            this.definition = definition;
-        else if (definition != null)
-            this.definition += System.lineSeparator() + definition;
+        if (definition != null) {
+            lines.add(definition);
+            this.definition = null;
+        }
     }
 
     @Override
     public String toString() {
         return "('" + word + '\'' +
                 "@'" + databaseName + '\'' +
-                ": '" + definition + '\'';
+                ": '" + getDefinition() + '\'';
     }
 
+    /**
+     * Compares the word, database and lines of the definitions, so that comparing (or hashing) a definition does not
+     * build its text.
+     */
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Definition that = (Definition) o;
-        return word.equals(that.word) && databaseName.equals(that.databaseName) && Objects.equals(definition, that.definition);
+        return word.equals(that.word) && databaseName.equals(that.databaseName) && lines.equals(that.lines);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(word, databaseName, definition);
+        return Objects.hash(word, databaseName, lines);
     }
 }
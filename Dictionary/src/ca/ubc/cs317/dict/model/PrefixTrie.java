@@ -0,0 +1,112 @@
+package ca.ubc.cs317.dict.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * An immutable set of words that can be searched by prefix, ignoring case. Words are stored in a trie whose nodes
+ * keep their children in sorted arrays (rather than maps), so that a few thousand suggestions take little memory and
+ * a prefix is found in time proportional to its length. Words found by a prefix are returned in the order in which
+ * they were added.
+ */
+public class PrefixTrie {
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final int[] NO_WORDS = new int[0];
+
+    private static class Node {
+        private char[] labels = NO_LABELS;
+        private Node[] children = NO_CHILDREN;
+        private int[] words = NO_WORDS;
+
+        private Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node addChild(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index >= 0)
+                return children[index];
+            index = -index - 1;
+            Node child = new Node();
+            labels = insert(labels, index, label);
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, index);
+            grown[index] = child;
+            System.arraycopy(children, index, grown, index + 1, children.length - index);
+            children = grown;
+            return child;
+        }
+
+        private static char[] insert(char[] array, int index, char value) {
+            char[] grown = new char[array.length + 1];
+            System.arraycopy(array, 0, grown, 0, index);
+            grown[index] = value;
+            System.arraycopy(array, index, grown, index + 1, array.length - index);
+            return grown;
+        }
+    }
+
+    private final Node root = new Node();
+    private final String[] words;
+
+    /**
+     * Creates a trie with the given words.
+     *
+     * @param words The words, in the order in which they are to be returned.
+     */
+    public PrefixTrie(Collection<String> words) {
+        this.words = words.toArray(new String[0]);
+        for (int id = 0; id < this.words.length; id++) {
+            Node node = root;
+            for (char c : normalize(this.words[id]).toCharArray())
+                node = node.addChild(c);
+            node.words = Arrays.copyOf(node.words, node.words.length + 1);
+            node.words[node.words.length - 1] = id;
+        }
+    }
+
+    private static String normalize(String word) {
+        return word.toLowerCase(Locale.ROOT);
+    }
+
+    public int size() {
+        return words.length;
+    }
+
+    /**
+     * Returns the words that start with a prefix, ignoring case.
+     *
+     * @param prefix The prefix.
+     * @return The words that start with the prefix, in the order in which they were added.
+     */
+    public Set<String> withPrefix(String prefix) {
+        Node node = root;
+        for (char c : normalize(prefix).toCharArray()) {
+            node = node.child(c);
+            if (node == null)
+                return new LinkedHashSet<>();
+        }
+        List<Node> pending = new ArrayList<>();
+        pending.add(node);
+        boolean[] found = new boolean[words.length];
+        while (!pending.isEmpty()) {
+            Node next = pending.remove(pending.size() - 1);
+            for (int id : next.words)
+                found[id] = true;
+            pending.addAll(Arrays.asList(next.children));
+        }
+        Set<String> result = new LinkedHashSet<>();
+        for (int id = 0; id < found.length; id++)
+            if (found[id])
+                result.add(words[id]);
+        return result;
+    }
+}
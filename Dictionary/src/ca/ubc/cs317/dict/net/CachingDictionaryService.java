@@ -0,0 +1,203 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A dictionary that keeps the results of recent DEFINE and MATCH requests to another dictionary (e.g., a
+ * DictionaryConnectionPool), so that a word looked up again, or a prefix typed again after a backspace, is answered
+ * from memory. Results are keyed by command, word, database and strategy; at most maxEntries are kept, the least
+ * recently used being evicted first, and each one expires after a time to live. Failed requests are not cached.
+ * <p>
+ * The cache belongs to a single server: a new one must be created (or this one cleared) when switching servers.
+ * Database and strategy lists are not cached, since they are only retrieved once per connection.
+ */
+public class CachingDictionaryService implements DictionaryService {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static class Key {
+        private final String command;
+        private final String word;
+        private final String database;
+        private final String strategy;
+
+        private Key(String command, String word, Database database, MatchingStrategy strategy) {
+            this.command = command;
+            this.word = word;
+            this.database = database.getName();
+            this.strategy = strategy == null ? null : strategy.getName();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return command.equals(key.command) && word.equals(key.word) && database.equals(key.database) &&
+                    Objects.equals(strategy, key.strategy);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(command, word, database, strategy);
+        }
+    }
+
+    private static class CacheEntry {
+        private final Object value;
+        private final long expires;
+
+        private CacheEntry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private final DictionaryService delegate;
+    private final long ttlNanos;
+    private final Map<Key, CacheEntry> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache of the results of another dictionary.
+     *
+     * @param delegate   The dictionary whose results are cached.
+     * @param maxEntries The maximum number of results kept.
+     * @param ttlMillis  The time a result is kept before it is requested again.
+     */
+    public CachingDictionaryService(DictionaryService delegate, int maxEntries, long ttlMillis) {
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        // An access-ordered map evicts the least recently used entry when it grows too large
+        this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public CachingDictionaryService(DictionaryService delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    public DictionaryService getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        Key key = new Key("DEFINE", word, database, null);
+        @SuppressWarnings("unchecked")
+        Collection<Definition> definitions = (Collection<Definition>) lookup(key);
+        if (definitions == null) {
+            definitions = Collections.unmodifiableCollection(delegate.getDefinitions(word, database));
+            store(key, definitions);
+        }
+        return definitions;
+    }
+
+    /**
+     * Passes cached definitions to the consumer at once, or else streams them from the other dictionary, keeping them
+     * once they have all been received.
+     */
+    @Override
+    public void getDefinitions(String word, Database database, Consumer<Definition> consumer)
+            throws DictConnectionException {
+        Key key = new Key("DEFINE", word, database, null);
+        @SuppressWarnings("unchecked")
+        Collection<Definition> definitions = (Collection<Definition>) lookup(key);
+        if (definitions != null) {
+            definitions.forEach(consumer);
+            return;
+        }
+        List<Definition> received = new ArrayList<>();
+        delegate.getDefinitions(word, database, definition -> {
+            received.add(definition);
+            consumer.accept(definition);
+        });
+        store(key, Collections.unmodifiableCollection(received));
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database)
+            throws DictConnectionException {
+        Key key = new Key("MATCH", word, database, strategy);
+        @SuppressWarnings("unchecked")
+        Set<String> matches = (Set<String>) lookup(key);
+        if (matches == null) {
+            matches = Collections.unmodifiableSet(delegate.getMatchList(word, strategy, database));
+            store(key, matches);
+        }
+        return matches;
+    }
+
+    @Override
+    public Map<String, Database> getDatabaseList() throws DictConnectionException {
+        return delegate.getDatabaseList();
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return delegate.getStrategyList();
+    }
+
+    private synchronized Object lookup(Key key) {
+        CacheEntry entry = entries.get(key);
+        if (entry != null && entry.expires - System.nanoTime() > 0) {
+            hits++;
+            return entry.value;
+        }
+        if (entry != null)
+            entries.remove(key);
+        misses++;
+        return null;
+    }
+
+    private synchronized void store(Key key, Object value) {
+        entries.put(key, new CacheEntry(value, System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Clears the cache and closes the dictionary whose results are cached.
+     */
+    @Override
+    public void close() {
+        clear();
+        delegate.close();
+    }
+}
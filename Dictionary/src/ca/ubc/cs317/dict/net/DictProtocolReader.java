@@ -0,0 +1,183 @@
+package ca.ubc.cs317.dict.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the responses of a DICT server (RFC 2229) directly from the bytes received, without a Reader or regular
+ * expressions. Each line is copied once from the input buffer into a line buffer, where it is parsed in place; only
+ * the strings returned (the text of a line, or its atoms) are allocated.
+ * <p>
+ * Text (the body of a definition, or the list of databases, strategies or matches) is sent as lines terminated by a
+ * line with a single "."; a line of text that starts with "." is sent with an extra "." (dot-stuffing), which is
+ * removed when it is read.
+ */
+public class DictProtocolReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+
+    public DictProtocolReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next line into the line buffer, without its terminator (LF or CRLF).
+     *
+     * @return False if the end of the stream was reached before any byte of the line.
+     */
+    private boolean nextLine() throws IOException {
+        lineLength = 0;
+        while (true) {
+            if (position == limit) {
+                position = 0;
+                limit = Math.max(in.read(buffer, 0, buffer.length), 0);
+                if (limit == 0)
+                    return lineLength > 0;
+            }
+            int start = position;
+            while (position < limit && buffer[position] != '\n')
+                position++;
+            appendToLine(start, position - start);
+            if (position < limit) {
+                position++;
+                if (lineLength > 0 && line[lineLength - 1] == '\r')
+                    lineLength--;
+                return true;
+            }
+        }
+    }
+
+    private void appendToLine(int start, int length) {
+        if (lineLength + length > line.length)
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        System.arraycopy(buffer, start, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private String lineString(int start, int end) {
+        return new String(line, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private boolean isEndOfText() {
+        return lineLength == 1 && line[0] == '.';
+    }
+
+    /**
+     * Returns the offset where the text of the current line starts, after the extra "." of a dot-stuffed line.
+     */
+    private int textStart() {
+        return lineLength > 0 && line[0] == '.' ? 1 : 0;
+    }
+
+    /**
+     * Reads a line as it was sent.
+     *
+     * @return The line, without its terminator, or null at the end of the stream.
+     * @throws IOException If the line can't be read.
+     */
+    public String readLine() throws IOException {
+        return nextLine() ? lineString(0, lineLength) : null;
+    }
+
+    /**
+     * Reads a status line: a three-digit status code, followed by a space and details.
+     *
+     * @return The status.
+     * @throws DictConnectionException If the line can't be read, or is not a valid status line.
+     */
+    public Status readStatus() throws DictConnectionException {
+        try {
+            if (!nextLine())
+                throw new DictConnectionException("Status line expected");
+        } catch (IOException e) {
+            throw new DictConnectionException(e);
+        }
+        if (lineLength < 4 || line[3] != ' ')
+            throw new DictConnectionException("Invalid status line");
+        int code = 0;
+        for (int i = 0; i < 3; i++) {
+            if (line[i] < '0' || line[i] > '9')
+                throw new DictConnectionException("Status code number expected (" + lineString(0, lineLength) + ")");
+            code = code * 10 + line[i] - '0';
+        }
+        if (code < 100 || code > 599)
+            throw new DictConnectionException("Invalid status code received: " + code);
+        return new Status(code, lineString(4, lineLength));
+    }
+
+    /**
+     * Reads a line of text, removing the extra "." of a dot-stuffed line.
+     *
+     * @return The line, or null if it is the "." line that terminates the text.
+     * @throws DictConnectionException If the line can't be read, or the text is not terminated.
+     */
+    public String readTextLine() throws DictConnectionException {
+        readTextLineIntoBuffer();
+        return isEndOfText() ? null : lineString(textStart(), lineLength);
+    }
+
+    /**
+     * Reads a line of text made of atoms (e.g., a database name and its quoted description), and splits it as
+     * DictStringParser.splitAtoms does.
+     *
+     * @return The atoms of the line, or null if it is the "." line that terminates the text.
+     * @throws DictConnectionException If the line can't be read, or the text is not terminated.
+     */
+    public String[] readAtomLine() throws DictConnectionException {
+        readTextLineIntoBuffer();
+        if (isEndOfText())
+            return null;
+        List<String> atoms = new ArrayList<>(2);
+        int i = textStart();
+        while (i < lineLength) {
+            byte b = line[i];
+            if (b == ' ' || b == '\t') {
+                i++;
+            } else if (b == '"' || b == '\'') {
+                // A quoted string, whose escaped characters are unescaped in place
+                int start = ++i;
+                int end = start;
+                while (i < lineLength && line[i] != b) {
+                    if (line[i] == '\\' && i + 1 < lineLength)
+                        i++;
+                    line[end++] = line[i++];
+                }
+                atoms.add(lineString(start, end));
+                i++;
+            } else {
+                int start = i;
+                while (i < lineLength && line[i] != ' ' && line[i] != '\t')
+                    i++;
+                atoms.add(lineString(start, i));
+            }
+        }
+        return atoms.toArray(new String[0]);
+    }
+
+    private void readTextLineIntoBuffer() throws DictConnectionException {
+        try {
+            if (!nextLine())
+                throw new DictConnectionException("Connection closed before the end of the text");
+        } catch (IOException e) {
+            throw new DictConnectionException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -2,28 +2,64 @@ package ca.ubc.cs317.dict.net;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Created by Jonatan on 2017-09-09.
  */
 public class DictStringParser {
 
-    private static Pattern stringUnit = Pattern.compile("\"([^\"]*)\"|(\\S+)");
-
-    /** Splits a String into DICT-supported atoms. This is equivalent to String.split, but if a set of quotes is found,
-     * the spaces within the quotes are not used for splitting.
+    /** Splits a String into DICT-supported atoms. This is equivalent to String.split, but if a set of quotes (double or
+     * single) is found, the spaces within the quotes are not used for splitting, and characters escaped with a
+     * backslash within the quotes are unescaped.
      *
      * @param original Original string to be split.
      * @return An array of strings corresponding to all "atoms" found in the original string.
      */
     public static String[] splitAtoms(String original) {
         List<String> list = new ArrayList<>();
-        Matcher m = stringUnit.matcher(original);
-        while (m.find()) {
-            list.add(m.group(m.group(1) != null ? 1 : 2));
+        int length = original.length();
+        int i = 0;
+        while (i < length) {
+            char c = original.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"' || c == '\'') {
+                StringBuilder atom = new StringBuilder();
+                for (i++; i < length && original.charAt(i) != c; i++) {
+                    if (original.charAt(i) == '\\' && i + 1 < length)
+                        i++;
+                    atom.append(original.charAt(i));
+                }
+                list.add(atom.toString());
+                i++;
+            } else {
+                int start = i;
+                while (i < length && !Character.isWhitespace(original.charAt(i)))
+                    i++;
+                list.add(original.substring(start, i));
+            }
+        }
+        return list.toArray(new String[0]);
+    }
+
+    /**
+     * Parses the number at the start of the details of a status (e.g., the number of definitions in
+     * "150 3 definitions retrieved").
+     *
+     * @param details The details of the status.
+     * @return The number.
+     * @throws DictConnectionException If the details don't start with a number.
+     */
+    public static int parseCount(String details) throws DictConnectionException {
+        int end = 0;
+        while (end < details.length() && details.charAt(end) >= '0' && details.charAt(end) <= '9')
+            end++;
+        if (end == 0)
+            throw new DictConnectionException("Number expected (" + details + ")");
+        try {
+            return Integer.parseInt(details.substring(0, end));
+        } catch (NumberFormatException e) {
+            throw new DictConnectionException("Number expected (" + details + ")", e);
         }
-        return list.toArray(new String[list.size()]);
     }
 }
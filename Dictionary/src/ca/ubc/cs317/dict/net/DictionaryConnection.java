@@ -4,24 +4,25 @@ import ca.ubc.cs317.dict.model.Database;
 import ca.ubc.cs317.dict.model.Definition;
 import ca.ubc.cs317.dict.model.MatchingStrategy;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Created by Jonatan on 2017-09-09.
  */
-public class DictionaryConnection {
+public class DictionaryConnection implements DictionaryService {
 
-	private static final int DEFAULT_PORT = 2628;
+	public static final int DEFAULT_PORT = 2628;
 	private Socket socket;
-	BufferedReader input;
+	DictProtocolReader input;
 	PrintWriter output;
 	Status stat;
 
@@ -39,11 +40,12 @@ public class DictionaryConnection {
 		try {
 			// Initialize connection
 			socket = new Socket(host, port);
-			input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-			output = new PrintWriter(socket.getOutputStream());
+			input = new DictProtocolReader(socket.getInputStream());
+			output = new PrintWriter(new BufferedWriter(
+					new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)));
 			
 			// Read welcome message
-			stat = Status.readStatus(input);
+			stat = input.readStatus();
 			if (stat.getStatusCode() == 220) {
 				System.out.println("Connected! Welcome message: " + stat.getDetails());
 			} else {
@@ -69,6 +71,28 @@ public class DictionaryConnection {
 		this(host, DEFAULT_PORT);
 	}
 
+	/**
+	 * Writes a command, terminated by CRLF as required by RFC 2229. The command
+	 * is only sent when the output is flushed.
+	 */
+	private void send(String command) {
+		output.print(command);
+		output.print("\r\n");
+	}
+
+	/**
+	 * Reads a line of text made of at least two atoms, e.g., a match (database
+	 * and word) or a database (name and description).
+	 *
+	 * @return The atoms, or null at the end of the text.
+	 */
+	private String[] readAtomLine(String method) throws DictConnectionException {
+		String[] atoms = input.readAtomLine();
+		if (atoms != null && atoms.length < 2)
+			throw new DictConnectionException("Invalid line in " + method);
+		return atoms;
+	}
+
 	/**
 	 * Sends the final QUIT message and closes the connection with the server. This
 	 * function ignores any exception that may happen while sending the message,
@@ -77,15 +101,47 @@ public class DictionaryConnection {
 	 */
 	public synchronized void close() {
 		try {
-			output.println("QUIT");
+			send("QUIT");
 			output.flush();
-			stat = Status.readStatus(input); // Expects code 221
+			stat = input.readStatus(); // Expects code 221
 			System.out.println("Sent QUIT. Response: " + stat.getStatusCode());
-
-			socket.close();
-			System.out.println("Connection has been closed!");
-		} catch (IOException | DictConnectionException e) {
+		} catch (DictConnectionException e) {
 			// Error is ignored
+		} finally {
+			try {
+				socket.close();
+				System.out.println("Connection has been closed!");
+			} catch (IOException e) {
+				// Error is ignored
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the connection has not been closed, either by calling
+	 * close() or by the server (as far as can be told without reading from it).
+	 *
+	 * @return True if the connection may still be used.
+	 */
+	public boolean isOpen() {
+		return !socket.isClosed() && !socket.isInputShutdown() && !socket.isOutputShutdown();
+	}
+
+	/**
+	 * Sends a STATUS command to check that the server is still answering on this
+	 * connection (e.g., that it has not closed an idle connection).
+	 *
+	 * @throws DictConnectionException If the connection was interrupted or the
+	 *                                 server's reply is not the expected status.
+	 */
+	public synchronized void checkStatus() throws DictConnectionException {
+		send("STATUS");
+		output.flush();
+		if (output.checkError())
+			throw new DictConnectionException("Connection issue in checkStatus");
+		stat = input.readStatus();
+		if (stat.getStatusCode() != 210) {
+			throw new DictConnectionException("Expected code 210 in checkStatus but received " + stat.getStatusCode());
 		}
 	}
 
@@ -105,36 +161,70 @@ public class DictionaryConnection {
 	 */
 	public synchronized Collection<Definition> getDefinitions(String word, Database database)
 			throws DictConnectionException {
-		Collection<Definition> set = new ArrayList<>();
-		output.println("DEFINE " + database.getName() + " " + word);
+		sendDefine(word, database);
 		output.flush();
-		stat = Status.readStatus(input);
+		return readDefinitions(word);
+	}
 
-		if (stat.getStatusCode() == 150) {
-			int definitionCount = Integer.parseInt(DictStringParser.splitAtoms(stat.getDetails())[0]);
-			try {
-				// Parse each definition until "." input is received
-				for (int i = 0; i < definitionCount; i++) {
-					stat = Status.readStatus(input);
-					Definition definition = new Definition(word, DictStringParser.splitAtoms(stat.getDetails())[1]);
-					String str = input.readLine();
-					while (!(str.contains(".") && str.length() < 2)) {
-						definition.appendDefinition(str);
-						str = input.readLine();
-					}
-					set.add(definition);
-				}
+	/**
+	 * Requests all definitions for a specific word, and passes each one to a
+	 * consumer as soon as its text has been read, before the following ones are
+	 * received.
+	 *
+	 * @param word     The word whose definition is to be retrieved.
+	 * @param database The database to be used to retrieve the definition.
+	 * @param consumer The consumer of the definitions, called in this thread.
+	 * @throws DictConnectionException If the connection was interrupted or the
+	 *                                 messages don't match their expected value.
+	 */
+	@Override
+	public synchronized void getDefinitions(String word, Database database, Consumer<Definition> consumer)
+			throws DictConnectionException {
+		sendDefine(word, database);
+		output.flush();
+		readDefinitions(word, consumer);
+	}
+
+	private void sendDefine(String word, Database database) {
+		send("DEFINE " + database.getName() + " " + word);
+	}
+
+	/**
+	 * Reads the reply to a DEFINE command.
+	 */
+	private Collection<Definition> readDefinitions(String word) throws DictConnectionException {
+		Collection<Definition> set = new ArrayList<>();
+		readDefinitions(word, set::add);
+		return set;
+	}
+
+	private void readDefinitions(String word, Consumer<Definition> consumer) throws DictConnectionException {
+		stat = input.readStatus();
 
-				// Check for correct completion code
-				stat = Status.readStatus(input);
-				if (stat.getStatusCode() != 250) {
+		if (stat.getStatusCode() == 150) {
+			int definitionCount = DictStringParser.parseCount(stat.getDetails());
+			// Parse each definition until "." input is received
+			for (int i = 0; i < definitionCount; i++) {
+				stat = input.readStatus();
+				String[] atoms = DictStringParser.splitAtoms(stat.getDetails());
+				if (stat.getStatusCode() != 151 || atoms.length < 2) {
 					throw new DictConnectionException(
-							"Expected code 250 in getDefinitions but received " + stat.getStatusCode());
+							"Expected code 151 in getDefinitions but received " + stat.getStatusCode());
 				}
-			} catch (IOException e) {
-				throw new DictConnectionException("Connection issue in getDefinitions: ", e);
+				Definition definition = new Definition(word, atoms[1]);
+				String str;
+				while ((str = input.readTextLine()) != null)
+					definition.appendDefinition(str);
+				consumer.accept(definition);
+			}
+
+			// Check for correct completion code
+			stat = input.readStatus();
+			if (stat.getStatusCode() != 250) {
+				throw new DictConnectionException(
+						"Expected code 250 in getDefinitions but received " + stat.getStatusCode());
 			}
-			System.out.println("Finished adding " + set.size() + " definitions!");
+			System.out.println("Finished adding " + definitionCount + " definitions!");
 		} else if (stat.getStatusCode() == 550) {
 			System.out.println("Code 550 Invalid DB in getDefinitions");
 		} else if (stat.getStatusCode() == 552) {
@@ -142,8 +232,6 @@ public class DictionaryConnection {
 		} else {
 			throw new DictConnectionException("Unexpected code " + stat.getStatusCode() + " in getDefinitions");
 		}
-
-		return set;
 	}
 
 	/**
@@ -163,29 +251,33 @@ public class DictionaryConnection {
 	 */
 	public synchronized Set<String> getMatchList(String word, MatchingStrategy strategy, Database database)
 			throws DictConnectionException {
-		Set<String> set = new LinkedHashSet<>();
-		output.println("MATCH " + database.getName() + " " + strategy.getName() + " " + word);
+		sendMatch(word, strategy, database);
 		output.flush();
-		stat = Status.readStatus(input);
+		return readMatchList();
+	}
+
+	private void sendMatch(String word, MatchingStrategy strategy, Database database) {
+		send("MATCH " + database.getName() + " " + strategy.getName() + " " + word);
+	}
+
+	/**
+	 * Reads the reply to a MATCH command.
+	 */
+	private Set<String> readMatchList() throws DictConnectionException {
+		Set<String> set = new LinkedHashSet<>();
+		stat = input.readStatus();
 
 		if (stat.getStatusCode() == 152) {
-			int matchCount = Integer.parseInt(DictStringParser.splitAtoms(stat.getDetails())[0]);
-			try {
-				// Parse matches
-				for (int i = 0; i < matchCount; i++) {
-					String match = input.readLine();
-					set.add(DictStringParser.splitAtoms(match)[1]);
-				}
+			// Parse matches until "." input is received
+			String[] match;
+			while ((match = readAtomLine("getMatchList")) != null)
+				set.add(match[1]);
 
-				// Check for correct completion code
-				input.readLine();
-				stat = Status.readStatus(input);
-				if (stat.getStatusCode() != 250) {
-					throw new DictConnectionException(
-							"Expected code 250 in getMatchList but received " + stat.getStatusCode());
-				}
-			} catch (IOException e) {
-				throw new DictConnectionException("Connection issue in getMatchList: ", e);
+			// Check for correct completion code
+			stat = input.readStatus();
+			if (stat.getStatusCode() != 250) {
+				throw new DictConnectionException(
+						"Expected code 250 in getMatchList but received " + stat.getStatusCode());
 			}
 		} else if (stat.getStatusCode() == 550) {
 			System.out.println("Code 550 Invalid DB in getMatchList");
@@ -210,29 +302,21 @@ public class DictionaryConnection {
 	 */
 	public synchronized Map<String, Database> getDatabaseList() throws DictConnectionException {
 		Map<String, Database> databaseMap = new HashMap<>();
-		output.println("SHOW DB");
+		send("SHOW DB");
 		output.flush();
-		stat = Status.readStatus(input);
+		stat = input.readStatus();
 
 		if (stat.getStatusCode() == 110) {
-			int dbCount = Integer.parseInt(DictStringParser.splitAtoms(stat.getDetails())[0]);
-			try {
-				// Parse databases
-				for (int i = 0; i < dbCount; i++) {
-					String db = input.readLine();
-					databaseMap.put(DictStringParser.splitAtoms(db)[0],
-							new Database(DictStringParser.splitAtoms(db)[0], DictStringParser.splitAtoms(db)[1]));
-				}
+			// Parse databases until "." input is received
+			String[] db;
+			while ((db = readAtomLine("getDatabaseList")) != null)
+				databaseMap.put(db[0], new Database(db[0], db[1]));
 
-				// Check for correct completion code
-				input.readLine();
-				stat = Status.readStatus(input);
-				if (stat.getStatusCode() != 250) {
-					throw new DictConnectionException(
-							"Expected code 250 in getDatabaseList but received " + stat.getStatusCode());
-				}
-			} catch (IOException e) {
-				throw new DictConnectionException("Connection issue in getDatabaseList: ", e);
+			// Check for correct completion code
+			stat = input.readStatus();
+			if (stat.getStatusCode() != 250) {
+				throw new DictConnectionException(
+						"Expected code 250 in getDatabaseList but received " + stat.getStatusCode());
 			}
 			System.out.println("Finished adding " + databaseMap.size() + " databases!");
 		} else if (stat.getStatusCode() == 554) {
@@ -254,29 +338,21 @@ public class DictionaryConnection {
 	 */
 	public synchronized Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
 		Set<MatchingStrategy> set = new LinkedHashSet<>();
-		output.println("SHOW STRAT");
+		send("SHOW STRAT");
 		output.flush();
-		stat = Status.readStatus(input);
+		stat = input.readStatus();
 
 		if (stat.getStatusCode() == 111) {
-			int stratCount = Integer.parseInt(DictStringParser.splitAtoms(stat.getDetails())[0]);
-			try {
-				// Parse strategies
-				for (int i = 0; i < stratCount; i++) {
-					String strat = input.readLine();
-					set.add(new MatchingStrategy(DictStringParser.splitAtoms(strat)[0],
-							DictStringParser.splitAtoms(strat)[1]));
-				}
+			// Parse strategies until "." input is received
+			String[] strat;
+			while ((strat = readAtomLine("getStrategyList")) != null)
+				set.add(new MatchingStrategy(strat[0], strat[1]));
 
-				// Check for correct completion code
-				input.readLine();
-				stat = Status.readStatus(input);
-				if (stat.getStatusCode() != 250) {
-					throw new DictConnectionException(
-							"Expected code 250 in getStrategyList but received " + stat.getStatusCode());
-				}
-			} catch (IOException e) {
-				throw new DictConnectionException("Connection issue in getStrategyList: ", e);
+			// Check for correct completion code
+			stat = input.readStatus();
+			if (stat.getStatusCode() != 250) {
+				throw new DictConnectionException(
+						"Expected code 250 in getStrategyList but received " + stat.getStatusCode());
 			}
 			System.out.println("Finished adding " + set.size() + " strategies!");
 		} else if (stat.getStatusCode() == 555) {
@@ -287,4 +363,150 @@ public class DictionaryConnection {
 
 		return set;
 	}
+
+	/**
+	 * Starts a batch of pipelined commands on this connection (RFC 2229, section
+	 * 2.1). Commands added to the batch are only sent when the batch is executed:
+	 * they are written together, and their replies are then read in order, so
+	 * the whole batch costs a single round trip to the server.
+	 *
+	 * @return A new, empty batch.
+	 */
+	public Pipeline pipeline() {
+		return new Pipeline();
+	}
+
+	/**
+	 * Requests and retrieves the definitions of several words, using pipelined
+	 * DEFINE commands.
+	 *
+	 * @param words    The words whose definitions are to be retrieved.
+	 * @param database The database to be used to retrieve the definitions.
+	 * @return A map of each word to the definitions returned by the server, in
+	 *         the order of the words.
+	 * @throws DictConnectionException If the connection was interrupted or the
+	 *                                 messages don't match their expected value.
+	 */
+	public Map<String, Collection<Definition>> getDefinitions(Collection<String> words, Database database)
+			throws DictConnectionException {
+		Pipeline pipeline = pipeline();
+		Map<String, CompletableFuture<Collection<Definition>>> futures = new LinkedHashMap<>();
+		for (String word : words)
+			futures.computeIfAbsent(word, w -> pipeline.define(w, database));
+		pipeline.execute();
+
+		Map<String, Collection<Definition>> definitions = new LinkedHashMap<>();
+		for (Map.Entry<String, CompletableFuture<Collection<Definition>>> entry : futures.entrySet())
+			definitions.put(entry.getKey(), entry.getValue().join());
+		return definitions;
+	}
+
+	/**
+	 * A batch of pipelined DEFINE and MATCH commands. Each command returns a
+	 * future, which is completed with its result when the batch is executed. A
+	 * batch can only be executed once.
+	 */
+	public class Pipeline {
+
+		/**
+		 * The maximum number of commands written before their replies are read.
+		 * Replies to large batches are read in windows of this size, so that
+		 * neither side blocks writing while the other is not reading.
+		 */
+		public static final int WINDOW = 64;
+
+		private final List<Command<?>> commands = new ArrayList<>();
+		private boolean executed;
+
+		private Pipeline() {
+		}
+
+		/**
+		 * Adds a DEFINE command to the batch.
+		 *
+		 * @param word     The word whose definition is to be retrieved.
+		 * @param database The database to be used to retrieve the definition.
+		 * @return A future completed with the definitions returned by the server.
+		 */
+		public CompletableFuture<Collection<Definition>> define(String word, Database database) {
+			return add(() -> sendDefine(word, database), () -> readDefinitions(word));
+		}
+
+		/**
+		 * Adds a MATCH command to the batch.
+		 *
+		 * @param word     The word pattern.
+		 * @param strategy The strategy to be used to retrieve the list of matches.
+		 * @param database The database to be used to retrieve the matches.
+		 * @return A future completed with the matches returned by the server.
+		 */
+		public CompletableFuture<Set<String>> match(String word, MatchingStrategy strategy, Database database) {
+			return add(() -> sendMatch(word, strategy, database), DictionaryConnection.this::readMatchList);
+		}
+
+		public int size() {
+			return commands.size();
+		}
+
+		private <T> CompletableFuture<T> add(Runnable send, Reply<T> reply) {
+			if (executed)
+				throw new IllegalStateException("Pipeline has already been executed");
+			Command<T> command = new Command<>(send, reply);
+			commands.add(command);
+			return command.future;
+		}
+
+		/**
+		 * Sends the commands in the batch and reads their replies, completing
+		 * their futures in order. If the connection fails, the remaining futures
+		 * are completed exceptionally with the same exception.
+		 *
+		 * @throws DictConnectionException If the connection was interrupted or the
+		 *                                 messages don't match their expected
+		 *                                 value.
+		 */
+		public void execute() throws DictConnectionException {
+			if (executed)
+				throw new IllegalStateException("Pipeline has already been executed");
+			executed = true;
+			synchronized (DictionaryConnection.this) {
+				int next = 0;
+				try {
+					for (int start = 0; start < commands.size(); start += WINDOW) {
+						int end = Math.min(start + WINDOW, commands.size());
+						for (int i = start; i < end; i++)
+							commands.get(i).send.run();
+						output.flush();
+						if (output.checkError())
+							throw new DictConnectionException("Connection issue in pipeline");
+						for (; next < end; next++)
+							commands.get(next).complete();
+					}
+				} catch (DictConnectionException | RuntimeException e) {
+					for (; next < commands.size(); next++)
+						commands.get(next).future.completeExceptionally(e);
+					throw e;
+				}
+			}
+		}
+	}
+
+	private interface Reply<T> {
+		T read() throws DictConnectionException;
+	}
+
+	private static class Command<T> {
+		private final Runnable send;
+		private final Reply<T> reply;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		private Command(Runnable send, Reply<T> reply) {
+			this.send = send;
+			this.reply = reply;
+		}
+
+		private void complete() throws DictConnectionException {
+			future.complete(reply.read());
+		}
+	}
 }
@@ -0,0 +1,245 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A pool of connections (sessions) to the same DICT server, so that requests from different threads (e.g., a MATCH
+ * for the type-ahead suggestions and a DEFINE for the search button) are sent on different sessions instead of waiting
+ * for each other. Each request checks out a session, runs on it and returns it to the pool.
+ * <p>
+ * At most maxSessions sessions are open at the same time; they are opened lazily, when a request finds no idle
+ * session. A session that has been idle for longer than the health check interval is checked (with a STATUS command)
+ * before it is used, since servers close idle connections; a session that fails the check, or a request, is closed and
+ * replaced by a new one.
+ */
+public class DictionaryConnectionPool implements DictionaryService {
+
+    public static final int DEFAULT_SESSIONS = 4;
+    public static final long DEFAULT_HEALTH_CHECK_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * A request run on a session checked out from the pool.
+     *
+     * @param <T> The type of the result of the request.
+     */
+    public interface Request<T> {
+        T run(DictionaryConnection connection) throws DictConnectionException;
+    }
+
+    private static class Session {
+        private final DictionaryConnection connection;
+        private long lastUsed = System.nanoTime();
+
+        private Session(DictionaryConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final int maxSessions;
+    private final long healthCheckNanos;
+    private final Semaphore available;
+    private final Deque<Session> idle = new ArrayDeque<>();
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool of connections to a DICT server. One session is opened immediately, so that an unreachable server
+     * is reported here rather than by the first request.
+     *
+     * @param host              Name of the host where the DICT server is running
+     * @param port              Port number used by the DICT server
+     * @param maxSessions       The maximum number of sessions open at the same time
+     * @param healthCheckMillis The time a session may be idle before it is checked again before being used
+     * @throws DictConnectionException If the host does not exist, the connection can't be established, or the messages
+     *                                 don't match their expected value.
+     */
+    public DictionaryConnectionPool(String host, int port, int maxSessions, long healthCheckMillis)
+            throws DictConnectionException {
+        if (maxSessions < 1)
+            throw new IllegalArgumentException("At least one session is required");
+        this.host = host;
+        this.port = port;
+        this.maxSessions = maxSessions;
+        this.healthCheckNanos = TimeUnit.MILLISECONDS.toNanos(healthCheckMillis);
+        this.available = new Semaphore(maxSessions, true);
+        idle.push(new Session(new DictionaryConnection(host, port)));
+    }
+
+    public DictionaryConnectionPool(String host, int port, int maxSessions) throws DictConnectionException {
+        this(host, port, maxSessions, DEFAULT_HEALTH_CHECK_MILLIS);
+    }
+
+    public DictionaryConnectionPool(String host, int port) throws DictConnectionException {
+        this(host, port, DEFAULT_SESSIONS);
+    }
+
+    public DictionaryConnectionPool(String host) throws DictConnectionException {
+        this(host, DictionaryConnection.DEFAULT_PORT);
+    }
+
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Returns the number of sessions that are open and not in use.
+     *
+     * @return The number of idle sessions.
+     */
+    public synchronized int getIdleSessions() {
+        return idle.size();
+    }
+
+    /**
+     * Runs a request on a session checked out from the pool, waiting until one is available if all sessions are in
+     * use. The session is returned to the pool afterwards, unless the request failed, in which case it may be out of
+     * step with the server and is closed instead.
+     *
+     * @param request The request.
+     * @param <T>     The type of the result of the request.
+     * @return The result of the request.
+     * @throws DictConnectionException If the pool is closed, no session could be opened or the request failed.
+     */
+    public <T> T execute(Request<T> request) throws DictConnectionException {
+        Session session = checkout();
+        boolean healthy = false;
+        try {
+            T result = request.run(session.connection);
+            healthy = true;
+            return result;
+        } finally {
+            checkin(session, healthy);
+        }
+    }
+
+    private Session checkout() throws DictConnectionException {
+        if (closed)
+            throw new DictConnectionException("Connection pool is closed");
+        try {
+            available.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DictConnectionException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            Session session;
+            while ((session = pollIdle()) != null) {
+                if (isHealthy(session))
+                    return session;
+                session.connection.close();
+            }
+            // Sessions are only (re)connected when they are needed
+            return new Session(new DictionaryConnection(host, port));
+        } catch (DictConnectionException | RuntimeException e) {
+            available.release();
+            throw e;
+        }
+    }
+
+    private synchronized Session pollIdle() {
+        return idle.poll();
+    }
+
+    private boolean isHealthy(Session session) {
+        if (!session.connection.isOpen())
+            return false;
+        if (System.nanoTime() - session.lastUsed < healthCheckNanos)
+            return true;
+        try {
+            session.connection.checkStatus();
+            return true;
+        } catch (DictConnectionException e) {
+            // The session is replaced with a new connection; a new connection that also fails reports its own error
+            return false;
+        }
+    }
+
+    private void checkin(Session session, boolean healthy) {
+        boolean keep = false;
+        if (healthy && !closed) {
+            synchronized (this) {
+                // Checked again while holding the lock, so that close() can't miss a returned session
+                if (!closed) {
+                    session.lastUsed = System.nanoTime();
+                    idle.push(session);
+                    keep = true;
+                }
+            }
+        }
+        if (!keep)
+            session.connection.close();
+        available.release();
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        return execute(connection -> connection.getDefinitions(word, database));
+    }
+
+    @Override
+    public void getDefinitions(String word, Database database, Consumer<Definition> consumer)
+            throws DictConnectionException {
+        execute(connection -> {
+            connection.getDefinitions(word, database, consumer);
+            return null;
+        });
+    }
+
+    /**
+     * Retrieves the definitions of several words on a single session, using pipelined DEFINE commands (see
+     * DictionaryConnection.getDefinitions(Collection, Database)).
+     *
+     * @param words    The words whose definitions are to be retrieved.
+     * @param database The database to be used to retrieve the definitions.
+     * @return A map of each word to its definitions, in the order of the words.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected
+     *                                 value.
+     */
+    public Map<String, Collection<Definition>> getDefinitions(Collection<String> words, Database database)
+            throws DictConnectionException {
+        return execute(connection -> connection.getDefinitions(words, database));
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database)
+            throws DictConnectionException {
+        return execute(connection -> connection.getMatchList(word, strategy, database));
+    }
+
+    @Override
+    public Map<String, Database> getDatabaseList() throws DictConnectionException {
+        return execute(DictionaryConnection::getDatabaseList);
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return execute(DictionaryConnection::getStrategyList);
+    }
+
+    /**
+     * Closes all idle sessions. Sessions in use are closed when their request completes, and further requests fail.
+     */
+    @Override
+    public void close() {
+        Session[] sessions;
+        synchronized (this) {
+            closed = true;
+            sessions = idle.toArray(new Session[0]);
+            idle.clear();
+        }
+        for (Session session : sessions)
+            session.connection.close();
+    }
+}
@@ -0,0 +1,79 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The operations of a dictionary, as provided by a DICT server (RFC 2229). Implemented by a single connection to a
+ * server (DictionaryConnection) and by a pool of connections (DictionaryConnectionPool).
+ */
+public interface DictionaryService {
+
+    /**
+     * Retrieves all definitions for a specific word.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param database The database to be used ('*' for all databases, '!' for the first database with a definition).
+     * @return A collection of Definition objects containing all definitions found.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected
+     *                                 value.
+     */
+    Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException;
+
+    /**
+     * Retrieves all definitions for a specific word, passing each one to a consumer as soon as it is available, so
+     * that the first definitions can be shown before the slower databases have answered. By default, the definitions
+     * are all retrieved first.
+     *
+     * @param word     The word whose definition is to be retrieved.
+     * @param database The database to be used ('*' for all databases, '!' for the first database with a definition).
+     * @param consumer The consumer of the definitions, called in the calling thread.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected
+     *                                 value.
+     */
+    default void getDefinitions(String word, Database database, Consumer<Definition> consumer)
+            throws DictConnectionException {
+        getDefinitions(word, database).forEach(consumer);
+    }
+
+    /**
+     * Retrieves a list of matches for a specific word pattern.
+     *
+     * @param word     The word pattern.
+     * @param strategy The strategy to be used to find the matches (e.g., prefix, exact).
+     * @param database The database to be used ('*' for all databases, '!' for the first database with a match).
+     * @return A set of word matches.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected
+     *                                 value.
+     */
+    Set<String> getMatchList(String word, MatchingStrategy strategy, Database database) throws DictConnectionException;
+
+    /**
+     * Retrieves a map of database name to an equivalent database object for all valid databases.
+     *
+     * @return A map of Database objects.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected
+     *                                 value.
+     */
+    Map<String, Database> getDatabaseList() throws DictConnectionException;
+
+    /**
+     * Retrieves a list of all valid matching strategies.
+     *
+     * @return A set of MatchingStrategy objects.
+     * @throws DictConnectionException If the connection was interrupted or the messages don't match their expected
+     *                                 value.
+     */
+    Set<MatchingStrategy> getStrategyList() throws DictConnectionException;
+
+    /**
+     * Releases all resources (e.g., connections) used by the dictionary. Any exception is ignored.
+     */
+    void close();
+}
@@ -0,0 +1,147 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.model.PrefixTrie;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A dictionary that answers MATCH requests for type-ahead suggestions locally when it can. With a prefix-closed
+ * strategy (such as "prefix"), the matches for "progr" are the matches for "prog" that start with "progr", so once
+ * the matches for a prefix have been retrieved from another dictionary, they are kept in a PrefixTrie and the matches
+ * for any longer prefix are found in the trie, without a round trip to the server.
+ * <p>
+ * The server is asked again when the word does not extend the last prefix, when the strategy is not prefix-closed,
+ * when the database is "!" (the first database with a match may differ for a longer prefix), or when the last result
+ * was too large to be kept (more than maxWords matches) and so is truncated locally.
+ */
+public class PrefixNarrowingDictionaryService implements DictionaryService {
+
+    public static final int DEFAULT_MAX_WORDS = 10000;
+    public static final Set<String> DEFAULT_PREFIX_CLOSED_STRATEGIES = Collections.singleton("prefix");
+
+    /**
+     * The matches retrieved for the last prefix.
+     */
+    private static class LastMatches {
+        private final String prefix;
+        private final String database;
+        private final String strategy;
+        private final PrefixTrie trie;
+
+        private LastMatches(String prefix, Database database, MatchingStrategy strategy, PrefixTrie trie) {
+            this.prefix = normalize(prefix);
+            this.database = database.getName();
+            this.strategy = strategy.getName();
+            this.trie = trie;
+        }
+
+        private boolean covers(String word, Database database, MatchingStrategy strategy) {
+            return this.database.equals(database.getName()) && this.strategy.equals(strategy.getName()) &&
+                    normalize(word).startsWith(prefix);
+        }
+    }
+
+    private final DictionaryService delegate;
+    private final int maxWords;
+    private final Set<String> prefixClosedStrategies;
+    private LastMatches last;
+    private long localMatches;
+
+    /**
+     * Creates a dictionary that narrows the matches of another dictionary locally.
+     *
+     * @param delegate               The dictionary that is asked for matches that can't be found locally.
+     * @param maxWords               The maximum number of matches kept locally.
+     * @param prefixClosedStrategies The names of the strategies whose matches for a word include all the matches for
+     *                               a longer word starting with it.
+     */
+    public PrefixNarrowingDictionaryService(DictionaryService delegate, int maxWords,
+                                            Set<String> prefixClosedStrategies) {
+        this.delegate = delegate;
+        this.maxWords = maxWords;
+        this.prefixClosedStrategies = new HashSet<>(prefixClosedStrategies);
+    }
+
+    public PrefixNarrowingDictionaryService(DictionaryService delegate, String... prefixClosedStrategies) {
+        this(delegate, DEFAULT_MAX_WORDS, prefixClosedStrategies.length == 0 ? DEFAULT_PREFIX_CLOSED_STRATEGIES :
+                new HashSet<>(Arrays.asList(prefixClosedStrategies)));
+    }
+
+    private static String normalize(String word) {
+        return word.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database)
+            throws DictConnectionException {
+        boolean narrowable = prefixClosedStrategies.contains(strategy.getName()) && !database.getName().equals("!");
+        if (!narrowable)
+            return delegate.getMatchList(word, strategy, database);
+
+        synchronized (this) {
+            if (last != null && last.covers(word, database, strategy)) {
+                localMatches++;
+                return last.trie.withPrefix(word);
+            }
+        }
+        Set<String> matches = delegate.getMatchList(word, strategy, database);
+        synchronized (this) {
+            last = matches.size() <= maxWords ?
+                    new LastMatches(word, database, strategy, new PrefixTrie(matches)) : null;
+        }
+        return matches;
+    }
+
+    /**
+     * Returns the number of MATCH requests answered locally.
+     *
+     * @return The number of requests.
+     */
+    public synchronized long getLocalMatches() {
+        return localMatches;
+    }
+
+    /**
+     * Discards the matches kept locally.
+     */
+    public synchronized void clear() {
+        last = null;
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        return delegate.getDefinitions(word, database);
+    }
+
+    @Override
+    public void getDefinitions(String word, Database database, Consumer<Definition> consumer)
+            throws DictConnectionException {
+        delegate.getDefinitions(word, database, consumer);
+    }
+
+    @Override
+    public Map<String, Database> getDatabaseList() throws DictConnectionException {
+        return delegate.getDatabaseList();
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() throws DictConnectionException {
+        return delegate.getStrategyList();
+    }
+
+    @Override
+    public void close() {
+        clear();
+        delegate.close();
+    }
+}
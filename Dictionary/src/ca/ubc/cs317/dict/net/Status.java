@@ -33,6 +33,11 @@ public class Status {
         this.details = components[1];
     }
 
+    Status(int statusCode, String details) {
+        this.statusCode = statusCode;
+        this.details = details;
+    }
+
     public static Status readStatus(BufferedReader input) throws DictConnectionException {
         try {
             return new Status(input.readLine());
@@ -0,0 +1,391 @@
+package ca.ubc.cs317.dict.offline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A dictionary database in the format of dictd: a .index file with one line per headword ("headword TAB offset TAB
+ * length", the offset and length of its definition being encoded in base 64), sorted by headword, and a .dict file
+ * with the text of the definitions, which may be compressed with dictzip (.dict.dz).
+ * <p>
+ * Both files are mapped in memory, and are only read when needed: opening a database scans the index once for the
+ * start of each line, and a word is then found by binary search. Like dictd, headwords are compared ignoring case and
+ * any character other than letters, digits and spaces (unless the database was built with --allchars), since that is
+ * the order in which dictfmt sorts the index.
+ */
+public class DictdDatabase {
+
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final int[] BASE64_VALUES = new int[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64.length(); i++)
+            BASE64_VALUES[BASE64.charAt(i)] = i;
+    }
+
+    /**
+     * An entry of the index: a headword and the location of its definition.
+     */
+    public static class Entry {
+        private final String headword;
+        private final long offset;
+        private final int length;
+
+        private Entry(String headword, long offset, int length) {
+            this.headword = headword;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getHeadword() {
+            return headword;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    private final String name;
+    private final String description;
+    private final MappedByteBuffer index;
+    private final int[] lineStarts;
+    private final boolean allChars;
+    private final MappedByteBuffer plainData;
+    private final DictzipFile compressedData;
+
+    /**
+     * Opens a database from its index and data files.
+     *
+     * @param name  The name of the database (e.g., "wn").
+     * @param index The .index file.
+     * @param data  The .dict or .dict.dz file.
+     * @throws IOException If the files can't be read, or are not in the dictd format.
+     */
+    public DictdDatabase(String name, Path index, Path data) throws IOException {
+        this.name = name;
+        this.index = map(index);
+        this.lineStarts = findLineStarts(this.index);
+        if (data.getFileName().toString().endsWith(".dz")) {
+            this.plainData = null;
+            this.compressedData = new DictzipFile(data);
+        } else {
+            this.plainData = map(data);
+            this.compressedData = null;
+        }
+        this.allChars = scanForAllChars();
+        String shortName = readHeader("00-database-short");
+        this.description = shortName != null ? shortName : name;
+    }
+
+    /**
+     * Opens a database from its index file. The data file is the file with the same name and the extension .dict or
+     * .dict.dz, and the name of the database is the name of the index file without its extension.
+     *
+     * @param index The .index file.
+     * @return The database.
+     * @throws IOException If the files can't be read, or are not in the dictd format.
+     */
+    public static DictdDatabase open(Path index) throws IOException {
+        String fileName = index.getFileName().toString();
+        if (!fileName.endsWith(".index"))
+            throw new IOException(index + " is not a dictd index file");
+        String baseName = fileName.substring(0, fileName.length() - ".index".length());
+        Path data = index.resolveSibling(baseName + ".dict");
+        if (!Files.exists(data))
+            data = index.resolveSibling(baseName + ".dict.dz");
+        if (!Files.exists(data))
+            throw new IOException("No data file for " + index);
+        return new DictdDatabase(baseName, index, data);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(path + " is too large to be mapped");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static int[] findLineStarts(MappedByteBuffer index) {
+        int[] starts = new int[1024];
+        int count = 0;
+        int limit = index.limit();
+        for (int position = 0; position < limit; ) {
+            if (count == starts.length)
+                starts = Arrays.copyOf(starts, count * 2);
+            starts[count++] = position;
+            while (position < limit && index.get(position) != '\n')
+                position++;
+            position++;
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the description of the database, from its 00-database-short entry.
+     *
+     * @return The description, or the name of the database if it has none.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Returns the number of entries in the index, including the 00-database-* entries.
+     *
+     * @return The number of entries.
+     */
+    public int size() {
+        return lineStarts.length;
+    }
+
+    /**
+     * Returns true for the entries with information about the database itself, which are not matched.
+     */
+    private static boolean isHeader(String headword) {
+        return headword.startsWith("00-database-") || headword.startsWith("00database");
+    }
+
+    /**
+     * Returns true if the index was built with --allchars, and so is sorted by all the characters of the headwords.
+     * The headers are at the start of the index, but other headwords may be before them in that order, so they are
+     * looked for in the first lines rather than by binary search.
+     */
+    private boolean scanForAllChars() {
+        for (int line = 0; line < Math.min(lineStarts.length, 256); line++) {
+            Entry entry = entry(line);
+            if (entry != null && (entry.headword.equals("00-database-allchars") ||
+                    entry.headword.equals("00databaseallchars")))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the text of a header entry, without the headword line that starts it.
+     */
+    private String readHeader(String header) throws IOException {
+        List<Entry> entries = findExact(header, true);
+        if (entries.isEmpty())
+            return null;
+        String text = readDefinition(entries.get(0)).trim();
+        if (text.startsWith(header))
+            text = text.substring(header.length()).trim();
+        return text.isEmpty() ? null : text;
+    }
+
+    /**
+     * Finds the entries whose headword is a word, ignoring case (and, like the index, the characters that are not
+     * letters, digits or spaces).
+     *
+     * @param word The word.
+     * @return The entries, in the order of the index.
+     */
+    public List<Entry> findExact(String word) {
+        return findExact(word, false);
+    }
+
+    private List<Entry> findExact(String word, boolean headers) {
+        byte[] key = normalize(word);
+        List<Entry> entries = new ArrayList<>();
+        for (int line = lowerBound(key); line < lineStarts.length && compare(line, key, false) == 0; line++) {
+            Entry entry = entry(line);
+            if (entry != null && headers == isHeader(entry.headword))
+                entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Finds the entries whose headword starts with a prefix, ignoring case (and, like the index, the characters that
+     * are not letters, digits or spaces).
+     *
+     * @param prefix The prefix.
+     * @return The entries, in the order of the index.
+     */
+    public List<Entry> findPrefix(String prefix) {
+        byte[] key = normalize(prefix);
+        List<Entry> entries = new ArrayList<>();
+        for (int line = lowerBound(key); line < lineStarts.length && compare(line, key, true) == 0; line++) {
+            Entry entry = entry(line);
+            if (entry != null && !isHeader(entry.headword))
+                entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Finds the entries whose headword contains a word, ignoring case. Unlike the other searches, this reads the
+     * whole index.
+     *
+     * @param word The word.
+     * @return The entries, in the order of the index.
+     */
+    public List<Entry> findSubstring(String word) {
+        byte[] key = word.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+        List<Entry> entries = new ArrayList<>();
+        for (int line = 0; line < lineStarts.length; line++) {
+            int start = lineStarts[line];
+            int end = headwordEnd(start);
+            if (contains(start, end, key)) {
+                Entry entry = entry(line);
+                if (entry != null && !isHeader(entry.headword))
+                    entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the text of the definition of an entry.
+     *
+     * @param entry The entry.
+     * @return The text of its definition.
+     * @throws IOException If the definition is outside of the data file, or can't be uncompressed.
+     */
+    public String readDefinition(Entry entry) throws IOException {
+        byte[] bytes;
+        if (compressedData != null) {
+            bytes = compressedData.read(entry.offset, entry.length);
+        } else {
+            if (entry.offset + entry.length > plainData.limit())
+                throw new IOException("Definition of " + entry.headword + " is outside of the dictionary data");
+            bytes = new byte[entry.length];
+            ByteBuffer view = plainData.duplicate();
+            view.position((int) entry.offset);
+            view.get(bytes);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the first line whose headword is not lower than a key.
+     */
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = lineStarts.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, key, false) < 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Compares the headword of a line with a normalized key, in the order of the index, without decoding it.
+     *
+     * @param prefix If true, a headword that starts with the key is equal to it.
+     */
+    private int compare(int line, byte[] key, boolean prefix) {
+        int position = lineStarts[line];
+        int end = headwordEnd(position);
+        int k = 0;
+        while (true) {
+            while (position < end && isIgnored(index.get(position)))
+                position++;
+            if (k == key.length)
+                return position == end || prefix ? 0 : 1;
+            if (position == end)
+                return -1;
+            // Bytes are compared unsigned, as dictfmt sorts them
+            int difference = (fold(index.get(position)) & 0xff) - (key[k] & 0xff);
+            if (difference != 0)
+                return difference;
+            position++;
+            k++;
+        }
+    }
+
+    private byte[] normalize(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int length = 0;
+        for (byte b : bytes)
+            if (!isIgnored(b))
+                bytes[length++] = fold(b);
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Returns true for the ASCII characters ignored when sorting the index: all but letters, digits and spaces (bytes
+     * of non-ASCII characters are never ignored).
+     */
+    private boolean isIgnored(byte b) {
+        return !allChars && b >= 0 && b != ' ' && !Character.isLetterOrDigit(b);
+    }
+
+    private static byte fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 'a' - 'A') : b;
+    }
+
+    private int headwordEnd(int position) {
+        int limit = index.limit();
+        while (position < limit && index.get(position) != '\t' && index.get(position) != '\n')
+            position++;
+        return position;
+    }
+
+    private boolean contains(int start, int end, byte[] key) {
+        for (int i = start; i + key.length <= end; i++) {
+            int k = 0;
+            while (k < key.length && fold(index.get(i + k)) == key[k])
+                k++;
+            if (k == key.length)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Decodes the entry on a line of the index.
+     *
+     * @return The entry, or null if the line is not valid.
+     */
+    private Entry entry(int line) {
+        int start = lineStarts[line];
+        int end = headwordEnd(start);
+        byte[] headword = new byte[end - start];
+        ByteBuffer view = index.duplicate();
+        view.position(start);
+        view.get(headword);
+        if (end >= index.limit() || index.get(end) != '\t')
+            return null;
+        int position = end + 1;
+        long offset = 0;
+        for (int value; position < index.limit() && (value = base64(index.get(position))) >= 0; position++)
+            offset = offset * 64 + value;
+        if (position >= index.limit() || index.get(position) != '\t')
+            return null;
+        position++;
+        long length = 0;
+        for (int value; position < index.limit() && (value = base64(index.get(position))) >= 0; position++)
+            length = length * 64 + value;
+        return new Entry(new String(headword, StandardCharsets.UTF_8), offset, (int) length);
+    }
+
+    private static int base64(byte b) {
+        return b >= 0 ? BASE64_VALUES[b] : -1;
+    }
+}
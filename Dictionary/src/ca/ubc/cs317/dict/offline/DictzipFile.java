@@ -0,0 +1,155 @@
+package ca.ubc.cs317.dict.offline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A dictzip file (.dict.dz), mapped in memory. A dictzip file is a gzip file whose data was compressed in chunks of a
+ * fixed size, each one ending with a full flush; the "RA" (random access) field of its gzip header lists the
+ * compressed size of each chunk, so that any range of the uncompressed data can be read by inflating only the chunks
+ * that contain it.
+ */
+class DictzipFile {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final MappedByteBuffer data;
+    private final int chunkLength;
+    private final long[] chunkOffsets;
+
+    DictzipFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(path + " is too large to be mapped");
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int position = 0;
+        if (get(position) != 0x1f || get(position + 1) != 0x8b || get(position + 2) != 8)
+            throw new IOException(path + " is not a gzip file");
+        int flags = get(position + 3);
+        position = 10;
+        if ((flags & FEXTRA) == 0)
+            throw new IOException(path + " is not a dictzip file (no random access field)");
+
+        int extraLength = getShort(position);
+        position += 2;
+        int extraEnd = position + extraLength;
+        int uncompressedChunkLength = 0;
+        int[] chunkSizes = null;
+        while (position + 4 <= extraEnd) {
+            int id1 = get(position);
+            int id2 = get(position + 1);
+            int fieldLength = getShort(position + 2);
+            if (id1 == 'R' && id2 == 'A') {
+                // Version, chunk length, chunk count, and the compressed size of each chunk
+                uncompressedChunkLength = getShort(position + 6);
+                int chunkCount = getShort(position + 8);
+                chunkSizes = new int[chunkCount];
+                for (int i = 0; i < chunkCount; i++)
+                    chunkSizes[i] = getShort(position + 10 + 2 * i);
+            }
+            position += 4 + fieldLength;
+        }
+        if (chunkSizes == null || uncompressedChunkLength == 0)
+            throw new IOException(path + " is not a dictzip file (no random access field)");
+        position = extraEnd;
+        if ((flags & FNAME) != 0)
+            position = skipString(position);
+        if ((flags & FCOMMENT) != 0)
+            position = skipString(position);
+        if ((flags & FHCRC) != 0)
+            position += 2;
+
+        this.chunkLength = uncompressedChunkLength;
+        this.chunkOffsets = new long[chunkSizes.length + 1];
+        chunkOffsets[0] = position;
+        for (int i = 0; i < chunkSizes.length; i++)
+            chunkOffsets[i + 1] = chunkOffsets[i] + chunkSizes[i];
+    }
+
+    private int get(int position) {
+        return data.get(position) & 0xff;
+    }
+
+    private int getShort(int position) {
+        return get(position) | get(position + 1) << 8;
+    }
+
+    private int skipString(int position) {
+        while (data.get(position) != 0)
+            position++;
+        return position + 1;
+    }
+
+    /**
+     * Reads a range of the uncompressed data.
+     *
+     * @param offset The offset of the range in the uncompressed data.
+     * @param length The length of the range.
+     * @return The uncompressed bytes.
+     * @throws IOException If the range is outside of the data, or the data is corrupted.
+     */
+    byte[] read(long offset, int length) throws IOException {
+        byte[] result = new byte[length];
+        if (length == 0)
+            return result;
+        int firstChunk = (int) (offset / chunkLength);
+        int lastChunk = (int) ((offset + length - 1) / chunkLength);
+        if (lastChunk >= chunkOffsets.length - 1)
+            throw new IOException("Offset " + offset + " is outside of the dictionary data");
+
+        Inflater inflater = new Inflater(true);
+        byte[] chunk = new byte[chunkLength];
+        int copied = 0;
+        try {
+            for (int i = firstChunk; i <= lastChunk; i++) {
+                int inflated = inflate(inflater, i, chunk);
+                int start = i == firstChunk ? (int) (offset - (long) i * chunkLength) : 0;
+                int count = Math.min(inflated - start, length - copied);
+                if (count < 0)
+                    throw new IOException("Offset " + offset + " is outside of the dictionary data");
+                System.arraycopy(chunk, start, result, copied, count);
+                copied += count;
+            }
+        } finally {
+            inflater.end();
+        }
+        if (copied < length)
+            throw new IOException("Range " + offset + "+" + length + " is outside of the dictionary data");
+        return result;
+    }
+
+    /**
+     * Inflates a chunk. Chunks end with a full flush, so each one can be inflated on its own.
+     */
+    private int inflate(Inflater inflater, int index, byte[] chunk) throws IOException {
+        int compressedLength = (int) (chunkOffsets[index + 1] - chunkOffsets[index]);
+        byte[] compressed = new byte[compressedLength];
+        ByteBuffer view = data.duplicate();
+        view.position((int) chunkOffsets[index]);
+        view.get(compressed);
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int length = 0;
+            while (length < chunk.length && !inflater.finished()) {
+                int inflated = inflater.inflate(chunk, length, chunk.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                length += inflated;
+            }
+            return length;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted dictzip chunk " + index, e);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ca.ubc.cs317.dict.offline;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictConnectionException;
+import ca.ubc.cs317.dict.net.DictionaryService;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * A dictionary that answers from local dictd databases (see DictdDatabase) instead of a DICT server, with the same
+ * results a server with the same databases would return: it can be used wherever a DictionaryConnection is, e.g., by
+ * offline jobs or as a stand-in server in tests. Like a server, it supports the databases "*" (all databases) and "!"
+ * (the first database with a result), and the exact, prefix and substring strategies ("." being the default, prefix).
+ * <p>
+ * Databases are opened once and only read afterwards, so a dictionary can be used by several threads at a time.
+ */
+public class OfflineDictionary implements DictionaryService {
+
+    public static final MatchingStrategy EXACT = new MatchingStrategy("exact", "Match headwords exactly");
+    public static final MatchingStrategy PREFIX = new MatchingStrategy("prefix", "Match prefixes");
+    public static final MatchingStrategy SUBSTRING = new MatchingStrategy("substring", "Match substring occurring anywhere in a headword");
+
+    private final Map<String, DictdDatabase> databases = new LinkedHashMap<>();
+
+    public OfflineDictionary(Collection<DictdDatabase> databases) {
+        for (DictdDatabase database : databases)
+            this.databases.put(database.getName(), database);
+    }
+
+    /**
+     * Opens the databases in a directory (each .index file with its .dict or .dict.dz file), in the order of their
+     * names, or a single database given its .index file.
+     *
+     * @param path A directory, or a .index file.
+     * @return The dictionary.
+     * @throws IOException If a database can't be opened, or the directory has none.
+     */
+    public static OfflineDictionary open(Path path) throws IOException {
+        List<Path> indexes = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*.index")) {
+                stream.forEach(indexes::add);
+            }
+            indexes.sort(null);
+        } else {
+            indexes.add(path);
+        }
+        if (indexes.isEmpty())
+            throw new IOException("No dictd databases in " + path);
+        List<DictdDatabase> databases = new ArrayList<>();
+        for (Path index : indexes)
+            databases.add(DictdDatabase.open(index));
+        return new OfflineDictionary(databases);
+    }
+
+    /**
+     * Returns the databases to be searched for a database name: all of them for "*" and "!", none if there is no
+     * database with that name.
+     */
+    private Collection<DictdDatabase> select(Database database) {
+        String name = database.getName();
+        if (name.equals("*") || name.equals("!"))
+            return databases.values();
+        DictdDatabase selected = databases.get(name);
+        return selected == null ? new ArrayList<>() : Collections.singletonList(selected);
+    }
+
+    @Override
+    public Collection<Definition> getDefinitions(String word, Database database) throws DictConnectionException {
+        List<Definition> definitions = new ArrayList<>();
+        getDefinitions(word, database, definitions::add);
+        return definitions;
+    }
+
+    @Override
+    public void getDefinitions(String word, Database database, Consumer<Definition> consumer)
+            throws DictConnectionException {
+        for (DictdDatabase db : select(database)) {
+            List<DictdDatabase.Entry> entries = db.findExact(word);
+            for (DictdDatabase.Entry entry : entries) {
+                Definition definition = new Definition(word, db.getName());
+                try {
+                    for (String line : db.readDefinition(entry).split("\r?\n"))
+                        definition.appendDefinition(line);
+                } catch (IOException e) {
+                    throw new DictConnectionException("Can't read the definition of " + word + " in " + db.getName(), e);
+                }
+                consumer.accept(definition);
+            }
+            if (!entries.isEmpty() && database.getName().equals("!"))
+                return;
+        }
+    }
+
+    @Override
+    public Set<String> getMatchList(String word, MatchingStrategy strategy, Database database)
+            throws DictConnectionException {
+        Set<String> matches = new LinkedHashSet<>();
+        for (DictdDatabase db : select(database)) {
+            List<DictdDatabase.Entry> entries;
+            switch (strategy.getName()) {
+                case "exact":
+                    entries = db.findExact(word);
+                    break;
+                case "prefix":
+                case ".":
+                    entries = db.findPrefix(word);
+                    break;
+                case "substring":
+                    entries = db.findSubstring(word);
+                    break;
+                default:
+                    // Like a server's reply 551 (invalid strategy)
+                    return matches;
+            }
+            for (DictdDatabase.Entry entry : entries)
+                matches.add(entry.getHeadword());
+            if (!entries.isEmpty() && database.getName().equals("!"))
+                break;
+        }
+        return matches;
+    }
+
+    @Override
+    public Map<String, Database> getDatabaseList() {
+        Map<String, Database> list = new LinkedHashMap<>();
+        for (DictdDatabase db : databases.values())
+            list.put(db.getName(), new Database(db.getName(), db.getDescription()));
+        return list;
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() {
+        Set<MatchingStrategy> strategies = new LinkedHashSet<>();
+        strategies.add(EXACT);
+        strategies.add(PREFIX);
+        strategies.add(SUBSTRING);
+        return strategies;
+    }
+
+    /**
+     * Releases the databases. Their files are unmapped once they are no longer referenced.
+     */
+    @Override
+    public void close() {
+        databases.clear();
+    }
+}
@@ -0,0 +1,207 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictConnectionException;
+import ca.ubc.cs317.dict.net.DictStringParser;
+import ca.ubc.cs317.dict.net.DictionaryService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers the commands of a DICT client (RFC 2229) from a dictionary, e.g., an OfflineDictionary. The commands
+ * supported are SHOW DB, SHOW STRAT, MATCH, DEFINE, STATUS, CLIENT, HELP and QUIT. The database and strategy lists are
+ * read once, when the handler is created; the dictionary must support being used by several threads at a time.
+ */
+class DictCommandHandler {
+
+    private static final String CRLF = "\r\n";
+    private static final String OK = "250 ok" + CRLF;
+
+    private final DictionaryService dictionary;
+    private final Map<String, Database> databases;
+    private final Set<MatchingStrategy> strategies;
+
+    DictCommandHandler(DictionaryService dictionary) throws DictConnectionException {
+        this.dictionary = dictionary;
+        this.databases = dictionary.getDatabaseList();
+        this.strategies = dictionary.getStrategyList();
+    }
+
+    /**
+     * Returns the reply to a command.
+     *
+     * @param line The command, without its terminator.
+     * @return The reply, with each line terminated by CRLF.
+     */
+    String handle(String line) {
+        String[] atoms = DictStringParser.splitAtoms(line);
+        if (atoms.length == 0)
+            return "500 Syntax error, command not recognized" + CRLF;
+        try {
+            switch (atoms[0].toUpperCase(Locale.ROOT)) {
+                case "DEFINE":
+                    return atoms.length < 3 ? syntaxError() : define(atoms[1], word(atoms, 2));
+                case "MATCH":
+                    return atoms.length < 4 ? syntaxError() : match(atoms[1], atoms[2], word(atoms, 3));
+                case "SHOW":
+                    return atoms.length < 2 ? syntaxError() : show(atoms[1].toUpperCase(Locale.ROOT));
+                case "STATUS":
+                    return "210 status [d/m/c = " + databases.size() + "/" + strategies.size() + "/0]" + CRLF;
+                case "CLIENT":
+                    return OK;
+                case "HELP":
+                    return "113 help text follows" + CRLF +
+                            "DEFINE database word" + CRLF +
+                            "MATCH database strategy word" + CRLF +
+                            "SHOW DB" + CRLF +
+                            "SHOW STRAT" + CRLF +
+                            "STATUS" + CRLF +
+                            "QUIT" + CRLF +
+                            "." + CRLF + OK;
+                case "QUIT":
+                    return "221 bye" + CRLF;
+                default:
+                    return "500 Syntax error, command not recognized" + CRLF;
+            }
+        } catch (DictConnectionException | RuntimeException e) {
+            return "420 Server temporarily unavailable" + CRLF;
+        }
+    }
+
+    static boolean isQuit(String line) {
+        String command = line.trim();
+        return command.length() >= 4 && command.substring(0, 4).equalsIgnoreCase("QUIT") &&
+                (command.length() == 4 || Character.isWhitespace(command.charAt(4)));
+    }
+
+    private static String syntaxError() {
+        return "501 Syntax error, illegal parameters" + CRLF;
+    }
+
+    /**
+     * Returns the word of a command. The word should be a single atom (quoted if it has spaces), but the atoms after
+     * it are also accepted as part of it, since some clients don't quote words.
+     */
+    private static String word(String[] atoms, int start) {
+        return String.join(" ", Arrays.asList(atoms).subList(start, atoms.length));
+    }
+
+    private String show(String what) {
+        switch (what) {
+            case "DB":
+            case "DATABASES": {
+                if (databases.isEmpty())
+                    return "554 No databases present" + CRLF;
+                StringBuilder reply = new StringBuilder();
+                reply.append("110 ").append(databases.size()).append(" databases present").append(CRLF);
+                for (Database database : databases.values())
+                    appendText(reply, database.getName() + " " + quote(database.getDescription()));
+                return reply.append(".").append(CRLF).append(OK).toString();
+            }
+            case "STRAT":
+            case "STRATEGIES": {
+                if (strategies.isEmpty())
+                    return "555 No strategies available" + CRLF;
+                StringBuilder reply = new StringBuilder();
+                reply.append("111 ").append(strategies.size()).append(" strategies available").append(CRLF);
+                for (MatchingStrategy strategy : strategies)
+                    appendText(reply, strategy.getName() + " " + quote(strategy.getDescription()));
+                return reply.append(".").append(CRLF).append(OK).toString();
+            }
+            default:
+                return syntaxError();
+        }
+    }
+
+    /**
+     * Returns the databases searched for a database name, one at a time, so that each result can be attributed to its
+     * database; or null if there is no database with that name.
+     */
+    private Collection<Database> select(String name) {
+        if (name.equals("*") || name.equals("!"))
+            return databases.values();
+        Database database = databases.get(name);
+        return database == null ? null : Collections.singletonList(database);
+    }
+
+    private String define(String databaseName, String word) throws DictConnectionException {
+        Collection<Database> selected = select(databaseName);
+        if (selected == null)
+            return "550 Invalid database, use \"SHOW DB\" for list of databases" + CRLF;
+        List<Definition> definitions = new ArrayList<>();
+        for (Database database : selected) {
+            Collection<Definition> found = dictionary.getDefinitions(word, database);
+            definitions.addAll(found);
+            if (!found.isEmpty() && databaseName.equals("!"))
+                break;
+        }
+        if (definitions.isEmpty())
+            return "552 No match" + CRLF;
+
+        StringBuilder reply = new StringBuilder();
+        reply.append("150 ").append(definitions.size()).append(" definitions retrieved").append(CRLF);
+        for (Definition definition : definitions) {
+            Database database = databases.get(definition.getDatabaseName());
+            reply.append("151 ").append(quote(word)).append(" ").append(definition.getDatabaseName()).append(" ")
+                    .append(quote(database == null ? definition.getDatabaseName() : database.getDescription()))
+                    .append(CRLF);
+            for (String text : definition.getLines())
+                appendText(reply, text);
+            reply.append(".").append(CRLF);
+        }
+        return reply.append(OK).toString();
+    }
+
+    private String match(String databaseName, String strategyName, String word) throws DictConnectionException {
+        Collection<Database> selected = select(databaseName);
+        if (selected == null)
+            return "550 Invalid database, use \"SHOW DB\" for list of databases" + CRLF;
+        MatchingStrategy strategy = new MatchingStrategy(strategyName, strategyName);
+        if (!strategyName.equals(".") && !strategies.contains(strategy))
+            return "551 Invalid strategy, use \"SHOW STRAT\" for a list of strategies" + CRLF;
+
+        StringBuilder lines = new StringBuilder();
+        int count = 0;
+        for (Database database : selected) {
+            Set<String> matches = dictionary.getMatchList(word, strategy, database);
+            for (String match : matches)
+                appendText(lines, database.getName() + " " + quote(match));
+            count += matches.size();
+            if (!matches.isEmpty() && databaseName.equals("!"))
+                break;
+        }
+        if (count == 0)
+            return "552 No match" + CRLF;
+        return "152 " + count + " matches found" + CRLF + lines + "." + CRLF + OK;
+    }
+
+    /**
+     * Appends a line of text, with an extra "." if it starts with one (dot-stuffing).
+     */
+    private static void appendText(StringBuilder reply, String text) {
+        if (text.startsWith("."))
+            reply.append('.');
+        reply.append(text).append(CRLF);
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\')
+                quoted.append('\\');
+            // A reply line can't span several lines
+            quoted.append(c == '\r' || c == '\n' ? ' ' : c);
+        }
+        return quoted.append('"').toString();
+    }
+}
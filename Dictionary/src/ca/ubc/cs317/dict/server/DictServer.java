@@ -0,0 +1,309 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.net.DictConnectionException;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryService;
+import ca.ubc.cs317.dict.offline.OfflineDictionary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A DICT server (RFC 2229) that answers from a dictionary, usually an OfflineDictionary over local dictd databases,
+ * so that several clients can share the same databases without each of them mapping them. It is compatible with
+ * DictionaryConnection, including its pipelined requests, and with the health checks of DictionaryConnectionPool.
+ * <p>
+ * A single selector thread accepts connections and reads commands from all of them; the commands are run by a fixed
+ * pool of worker threads, one session at a time per worker, so that a slow command (e.g., a substring MATCH) only
+ * delays the commands of its own session. A worker writes a reply itself when the socket accepts it, and leaves the
+ * rest to the selector thread otherwise. A session whose client does not read its replies is not read from until they
+ * have been written.
+ * <p>
+ * If the selector thread fails (e.g., selecting throws an IOException), the server closes itself and all of its
+ * connections; the failure is thrown by awaitClose() and close().
+ */
+public class DictServer implements Closeable {
+
+    public static final int DEFAULT_WORKERS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The size of the replies a session may have waiting to be written before it stops being read from.
+     */
+    private static final long MAX_PENDING_BYTES = 1 << 20;
+
+    private final DictCommandHandler handler;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService workers;
+    private final Queue<DictSession> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(16 * 1024);
+    private final AtomicLong connectionCount = new AtomicLong();
+    private final String host;
+    private final Thread selectorThread;
+    private volatile boolean closed;
+    private volatile IOException failure;
+
+    /**
+     * Creates a server and starts listening on a port. Connections are only accepted once the server is started.
+     *
+     * @param dictionary The dictionary the commands are answered from. It must support being used by several threads
+     *                   at a time.
+     * @param port       The port, or 0 for any free port.
+     * @param workers    The number of threads that run commands.
+     * @throws DictConnectionException If the database or strategy lists can't be read from the dictionary.
+     * @throws IOException             If the server can't listen on the port.
+     */
+    public DictServer(DictionaryService dictionary, int port, int workers) throws DictConnectionException, IOException {
+        this.handler = new DictCommandHandler(dictionary);
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        this.workers = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "dict-server-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.host = serverChannel.socket().getInetAddress().isAnyLocalAddress() ? "localhost" :
+                serverChannel.socket().getInetAddress().getHostName();
+        this.selectorThread = new Thread(this::run, "dict-server-selector");
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * Returns whether the server is closed, either by close() or because its selector thread failed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Waits until the server is closed.
+     *
+     * @throws IOException          If the selector thread failed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void awaitClose() throws IOException, InterruptedException {
+        selectorThread.join();
+        if (failure != null)
+            throw failure;
+    }
+
+    private void run() {
+        try {
+            while (!closed)
+                handleEvents();
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = new IOException("Selector thread failed", e);
+        } finally {
+            closed = true;
+            workers.shutdown();
+            for (SelectionKey key : selector.keys())
+                closeQuietly(key);
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Waits for the next events, and handles them along with the replies written by workers in the meantime.
+     */
+    private void handleEvents() throws IOException {
+        selector.select();
+        DictSession pending;
+        while ((pending = pendingWrites.poll()) != null)
+            flush(pending);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid())
+                continue;
+            if (key.isAcceptable()) {
+                accept();
+                continue;
+            }
+            DictSession session = (DictSession) key.attachment();
+            if (key.isWritable())
+                flush(session);
+            if (key.isValid() && key.isReadable())
+                read(session);
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null)
+                return;
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            DictSession session = new DictSession(channel, key);
+            key.attach(session);
+            session.addReply("220 " + host + " dict-server <> <" + connectionCount.incrementAndGet() + "@" + host +
+                    ">\r\n", false);
+            flush(session);
+        } catch (IOException e) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void read(DictSession session) {
+        readBuffer.clear();
+        int read;
+        try {
+            read = session.channel.read(readBuffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            closeQuietly(session.key);
+            return;
+        }
+        readBuffer.flip();
+        if (session.receive(readBuffer) && session.startRunning())
+            workers.execute(() -> runCommands(session));
+    }
+
+    /**
+     * Runs the commands of a session until it has none left. Only one worker runs the commands of a session at a
+     * time, so that they are answered in order.
+     */
+    private void runCommands(DictSession session) {
+        String command;
+        while ((command = session.nextCommand()) != null) {
+            session.addReply(handler.handle(command), DictCommandHandler.isQuit(command));
+            try {
+                if (session.write() && !session.isFinished())
+                    continue;
+            } catch (IOException e) {
+                // Left to the selector thread, which closes the session
+            }
+            pendingWrites.add(session);
+            selector.wakeup();
+        }
+        // Reading resumes when the replies are written, which the selector thread may not have seen
+        SelectionKey key = session.key;
+        if (key.isValid() && (key.interestOps() & SelectionKey.OP_READ) == 0) {
+            pendingWrites.add(session);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Writes the replies of a session, and updates the events it is selected for: writing while some replies are left,
+     * and reading unless too many are.
+     */
+    private void flush(DictSession session) {
+        SelectionKey key = session.key;
+        if (!key.isValid())
+            return;
+        boolean written;
+        try {
+            written = session.write();
+        } catch (IOException e) {
+            closeQuietly(key);
+            return;
+        }
+        if (written && session.isFinished()) {
+            closeQuietly(key);
+            return;
+        }
+        int ops = written ? 0 : SelectionKey.OP_WRITE;
+        if (session.getPendingBytes() < MAX_PENDING_BYTES)
+            ops |= SelectionKey.OP_READ;
+        key.interestOps(ops);
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Stops the server, closing all of its connections, and waits for the selector thread to close them. The selector
+     * thread never blocks other than selecting, so it stops as soon as it is woken up. The dictionary is not closed.
+     *
+     * @throws IOException If the server can't be closed, or if the selector thread failed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        workers.shutdown();
+        try {
+            if (selectorThread.getState() != Thread.State.NEW)
+                selectorThread.join();
+            else
+                selector.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            serverChannel.close();
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Serves local dictd databases.
+     *
+     * @param args The directory of the databases (or the .index file of a single database), and optionally the port
+     *             and the number of worker threads.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: DictServer <databases directory or .index file> [port] [workers]");
+            System.exit(2);
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DictionaryConnection.DEFAULT_PORT;
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_WORKERS;
+        DictServer server = new DictServer(OfflineDictionary.open(Paths.get(args[0])), port, workers);
+        server.start();
+        System.out.println("Serving " + args[0] + " on port " + server.getPort());
+        server.awaitClose();
+    }
+}
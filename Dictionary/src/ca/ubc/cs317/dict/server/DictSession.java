@@ -0,0 +1,135 @@
+package ca.ubc.cs317.dict.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The state of a client connection to a DictServer. Bytes received are split into command lines by the selector
+ * thread; the commands are then run in order, one at a time, by a worker thread, and their replies are queued until
+ * the channel accepts them. A client may send several commands without waiting for their replies
+ * (pipelining); they are answered in the order in which they were received.
+ */
+class DictSession {
+
+    /**
+     * The maximum length of a command line; RFC 2229 limits it to 1024 bytes, including its terminator.
+     */
+    static final int MAX_LINE_LENGTH = 1024;
+
+    final SocketChannel channel;
+    final SelectionKey key;
+
+    private byte[] line = new byte[128];
+    private int lineLength;
+    private boolean discardingLine;
+
+    // Guarded by this
+    private final Deque<String> commands = new ArrayDeque<>();
+    private final Deque<ByteBuffer> replies = new ArrayDeque<>();
+    private long pendingBytes;
+    private boolean running;
+    private boolean quitting;
+
+    DictSession(SocketChannel channel, SelectionKey key) {
+        this.channel = channel;
+        this.key = key;
+    }
+
+    /**
+     * Splits the bytes received into command lines, which are queued. A line that is too long is queued as an empty
+     * command, so that it is answered with an error in order with the other commands.
+     *
+     * @param received The bytes received, ready to be read.
+     * @return True if a command was queued.
+     */
+    boolean receive(ByteBuffer received) {
+        List<String> lines = new ArrayList<>();
+        while (received.hasRemaining()) {
+            byte b = received.get();
+            if (b == '\n') {
+                int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                lines.add(discardingLine ? "" : new String(line, 0, length, StandardCharsets.UTF_8));
+                lineLength = 0;
+                discardingLine = false;
+            } else if (lineLength == MAX_LINE_LENGTH) {
+                discardingLine = true;
+            } else if (!discardingLine) {
+                if (lineLength == line.length)
+                    line = Arrays.copyOf(line, line.length * 2);
+                line[lineLength++] = b;
+            }
+        }
+        if (lines.isEmpty())
+            return false;
+        synchronized (this) {
+            commands.addAll(lines);
+        }
+        return true;
+    }
+
+    /**
+     * Marks the session as running, if it has commands and is not running already.
+     *
+     * @return True if the caller must run the commands of the session.
+     */
+    synchronized boolean startRunning() {
+        if (running || commands.isEmpty() || quitting)
+            return false;
+        running = true;
+        return true;
+    }
+
+    /**
+     * Returns the next command to be run, or marks the session as no longer running if there is none.
+     */
+    synchronized String nextCommand() {
+        String command = quitting ? null : commands.poll();
+        if (command == null)
+            running = false;
+        return command;
+    }
+
+    synchronized void addReply(String reply, boolean quit) {
+        ByteBuffer buffer = ByteBuffer.wrap(reply.getBytes(StandardCharsets.UTF_8));
+        replies.add(buffer);
+        pendingBytes += buffer.remaining();
+        if (quit)
+            quitting = true;
+    }
+
+    synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Writes as much of the queued replies as the channel accepts.
+     *
+     * @return True if all replies were written.
+     * @throws IOException If the channel can't be written.
+     */
+    synchronized boolean write() throws IOException {
+        while (!replies.isEmpty()) {
+            ByteBuffer buffer = replies.peek();
+            pendingBytes -= channel.write(buffer);
+            if (buffer.hasRemaining())
+                return false;
+            replies.poll();
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the client sent QUIT, and its reply has been written.
+     */
+    synchronized boolean isFinished() {
+        return quitting && replies.isEmpty();
+    }
+}
@@ -58,7 +58,8 @@ public class DefinitionTableModel extends AbstractTableModel {
             case 1:
                 return definition.getDatabaseName();
             case 2:
-                return definition.getDefinition();
+                // Rendered from its lines (see DictionaryMain)
+                return definition;
         }
         return null;
     }
@@ -78,4 +79,17 @@ public class DefinitionTableModel extends AbstractTableModel {
         definitionList.addAll(definitions);
         fireTableDataChanged();
     }
+
+    /**
+     * Appends definitions after the ones already in the model, e.g., as they are received from the server.
+     *
+     * @param definitions The definitions to append.
+     */
+    public void addDefinitions(Collection<Definition> definitions) {
+        if (definitions.isEmpty())
+            return;
+        int firstRow = definitionList.size();
+        definitionList.addAll(definitions);
+        fireTableRowsInserted(firstRow, definitionList.size() - 1);
+    }
 }
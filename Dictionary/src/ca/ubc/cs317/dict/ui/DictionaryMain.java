@@ -1,16 +1,26 @@
 package ca.ubc.cs317.dict.ui;
 
+import ca.ubc.cs317.dict.net.CachingDictionaryService;
 import ca.ubc.cs317.dict.net.DictConnectionException;
 import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
 import ca.ubc.cs317.dict.model.MatchingStrategy;
 import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.net.DictionaryConnectionPool;
+import ca.ubc.cs317.dict.net.DictionaryService;
+import ca.ubc.cs317.dict.net.PrefixNarrowingDictionaryService;
+import ca.ubc.cs317.dict.offline.OfflineDictionary;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 
@@ -19,7 +29,18 @@ import java.util.concurrent.ExecutionException;
  */
 public class DictionaryMain extends JFrame {
 
-    private DictionaryConnection connection;
+    /**
+     * The number of sessions opened to the server, so that suggestions and definitions are retrieved in parallel.
+     */
+    private static final int SESSIONS = Integer.getInteger("dict.sessions", DictionaryConnectionPool.DEFAULT_SESSIONS);
+
+    /**
+     * A server name starting with this prefix is a directory (or .index file) of local dictd databases.
+     */
+    private static final String OFFLINE_PREFIX = "file:";
+
+    private DictionaryService connection;
+    private SwingWorker<Void, Definition> definitionWorker;
     private String serverName = "dict.org";
 
     private final DefaultComboBoxModel<Database> databaseModel;
@@ -87,7 +108,17 @@ public class DictionaryMain extends JFrame {
         definitionModel = new DefinitionTableModel();
         definitionTable = new JTable(definitionModel);
         definitionTable.getColumnModel().getColumn(2).setCellRenderer((table, value, isSelected, hasFocus, row, column) -> {
-            JTextArea area = new JTextArea(value.toString());
+            JTextArea area = new JTextArea();
+            if (value instanceof Definition) {
+                // Appended line by line, so that a long definition is never copied into a single String
+                List<String> lines = ((Definition) value).getLines();
+                for (int i = 0; i < lines.size(); i++) {
+                    if (i > 0)
+                        area.append("\n");
+                    area.append(lines.get(i));
+                }
+            } else if (value != null)
+                area.setText(value.toString());
             area.setBackground(UIManager.getColor(isSelected ? "Table.selectionBackground" : "Table.background"));
             return area;
         });
@@ -102,38 +133,58 @@ public class DictionaryMain extends JFrame {
         establishConnection();
     }
 
+    /**
+     * Retrieves the definitions of the entered word, adding each one to the table as soon as it is received. A search
+     * started while the previous one is still receiving definitions supersedes it: the previous definitions are no
+     * longer added to the table.
+     */
     public void showDefinitions() {
+        if (definitionWorker != null)
+            definitionWorker.cancel(false);
+        definitionModel.populateDefinitions(Collections.emptyList());
 
-        new SwingWorker<Void, Void>() {
+        definitionWorker = new SwingWorker<Void, Definition>() {
             private final Object enteredWord = wordSearchField.getSelectedItem();
             private final String word = enteredWord == null ? "" : enteredWord.toString();
+            private final Database database = (Database) databaseModel.getSelectedItem();
 
             @Override
             protected Void doInBackground() throws Exception {
-                definitionModel.populateDefinitions(connection.getDefinitions(word,
-                        (Database) databaseModel.getSelectedItem()));
+                // The reply is read to the end even if cancelled, so that the session remains usable
+                connection.getDefinitions(word, database, this::publish);
                 return null;
             }
 
+            @Override
+            protected void process(List<Definition> definitions) {
+                if (isCancelled())
+                    return;
+                int firstRow = definitionModel.getRowCount();
+                definitionModel.addDefinitions(definitions);
+                for (int i = firstRow; i < definitionModel.getRowCount(); i++) {
+                    Component c = definitionTable.prepareRenderer(definitionTable.getCellRenderer(i, 2), i, 2);
+                    definitionTable.setRowHeight(i, Math.max((int) c.getPreferredSize().getHeight(), definitionTable.getRowHeight()));
+                }
+            }
+
             @Override
             protected void done() {
+                if (isCancelled())
+                    return;
                 try {
                     get(); // Just to trigger a possible exception caused by doInBackground
-                    for (int i = 0; i<definitionModel.getRowCount() ; i++) {
-                        Component c = definitionTable.prepareRenderer(definitionTable.getCellRenderer(i, 2), i, 2);
-                        definitionTable.setRowHeight(i, Math.max((int) c.getPreferredSize().getHeight(), definitionTable.getRowHeight()));
-                    }
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 } catch (ExecutionException e) {
                     handleException(e.getCause());
                 }
             }
-        }.execute();
-
+        };
+        definitionWorker.execute();
     }
 
     public void establishConnection() {
+        // Closing the connection also discards the results cached from the previous server
         if (connection != null)
             connection.close();
 
@@ -150,11 +201,13 @@ public class DictionaryMain extends JFrame {
                     serverName);
             if (serverName == null) System.exit(0);
 
-            if (serverName.contains(":")) {
+            if (serverName.startsWith(OFFLINE_PREFIX)) {
+                connection = openOffline(serverName.substring(OFFLINE_PREFIX.length()));
+            } else if (serverName.contains(":")) {
                 String[] serverData = serverName.split(":", 2);
-                connection = new DictionaryConnection(serverData[0], Integer.parseInt(serverData[1]));
+                connection = connect(serverData[0], Integer.parseInt(serverData[1]));
             } else
-                connection = new DictionaryConnection(serverName);
+                connection = connect(serverName, DictionaryConnection.DEFAULT_PORT);
 
             for (Database db : connection.getDatabaseList().values()) {
                 databaseModel.addElement(db);
@@ -172,6 +225,27 @@ public class DictionaryMain extends JFrame {
         wordSearchField.grabFocus();
     }
 
+    /**
+     * Connects to a server. Suggestions for a longer prefix are narrowed locally, other results are cached, and
+     * requests that reach the server are sent on a pool of sessions.
+     */
+    private static DictionaryService connect(String host, int port) throws DictConnectionException {
+        return new PrefixNarrowingDictionaryService(
+                new CachingDictionaryService(new DictionaryConnectionPool(host, port, SESSIONS)));
+    }
+
+    /**
+     * Opens local dictd databases instead of connecting to a server. Lookups are local, so only suggestions are
+     * narrowed, and nothing is cached.
+     */
+    private static DictionaryService openOffline(String path) throws DictConnectionException {
+        try {
+            return new PrefixNarrowingDictionaryService(OfflineDictionary.open(Paths.get(path)));
+        } catch (IOException | InvalidPathException e) {
+            throw new DictConnectionException("Can't open the databases in " + path, e);
+        }
+    }
+
     public Collection<String> getMatchList(String word) throws DictConnectionException {
         return connection.getMatchList(word,
                 (MatchingStrategy) strategyModel.getSelectedItem(),
@@ -13,11 +13,21 @@ import java.util.concurrent.ExecutionException;
  */
 public class WordSearchField extends JComboBox<String> implements DocumentListener {
 
+    /**
+     * Suggestions are requested once the text has not changed for this long, rather than on every keystroke.
+     */
+    private static final int DEBOUNCE_MILLIS = 150;
+
     private DictionaryMain main;
     private JTextField textField;
 
     private DefaultComboBoxModel<String> model;
 
+    private final Timer debounceTimer;
+    // Only accessed in the event dispatch thread
+    private boolean requestInFlight;
+    private boolean requestPending;
+
     public WordSearchField(DictionaryMain main) {
 
         this.setModel(model = new DefaultComboBoxModel<>());
@@ -37,34 +47,50 @@ public class WordSearchField extends JComboBox<String> implements DocumentListen
         });
         textField = (JTextField) getEditor().getEditorComponent();
         textField.getDocument().addDocumentListener(this);
+
+        debounceTimer = new Timer(DEBOUNCE_MILLIS, e -> showSuggestions());
+        debounceTimer.setRepeats(false);
     }
 
     public void reset() {
+        requestPending = false;
         model.removeAllElements();
         textField.setText("");
+        // The text change restarts the timer
+        debounceTimer.stop();
     }
 
     @Override
     public void insertUpdate(DocumentEvent e) {
-        showSuggestions();
+        debounceTimer.restart();
     }
 
     @Override
     public void removeUpdate(DocumentEvent e) {
-        showSuggestions();
+        debounceTimer.restart();
     }
 
     @Override
     public void changedUpdate(DocumentEvent e) {
-        showSuggestions();
+        debounceTimer.restart();
     }
 
-
+    /**
+     * Requests the suggestions for the current text. At most one request is sent at a time: if one is in flight, the
+     * new one waits until it completes, and is replaced by any later one, so intermediate texts are never sent to the
+     * server. A request in flight can't be cancelled without closing its session, so its result is discarded instead
+     * if the text has changed.
+     */
     public void showSuggestions() {
         final String typed = textField.getText();
         model.removeAllElements();
         if (typed.isEmpty())
             return;
+        if (requestInFlight) {
+            requestPending = true;
+            return;
+        }
+        requestInFlight = true;
 
         new SwingWorker<Set<String>, String>() {
             String word = typed;
@@ -79,6 +105,15 @@ public class WordSearchField extends JComboBox<String> implements DocumentListen
 
             @Override
             protected void done() {
+                requestInFlight = false;
+                if (requestPending) {
+                    requestPending = false;
+                    // Only the latest text is requested, unless the user went back to this one
+                    if (!textField.getText().equals(word)) {
+                        showSuggestions();
+                        return;
+                    }
+                }
                 // If user typed another character since this worker started, stop
                 if (!textField.getText().equals(word)) return;
                 try {
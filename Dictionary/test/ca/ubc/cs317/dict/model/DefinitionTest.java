@@ -0,0 +1,66 @@
+package ca.ubc.cs317.dict.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DefinitionTest {
+
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    public void testNoLines() {
+        Definition definition = new Definition("apple", "alpha");
+        assertNull(definition.getDefinition());
+        assertEquals(Collections.emptyList(), definition.getLines());
+        definition.appendDefinition(null);
+        assertNull(definition.getDefinition());
+    }
+
+    @Test
+    public void testAppend() {
+        Definition definition = new Definition("apple", "alpha");
+        definition.appendDefinition("apple");
+        assertEquals("apple", definition.getDefinition());
+        definition.appendDefinition("A fruit.");
+        assertEquals("apple" + NL + "A fruit.", definition.getDefinition());
+        assertEquals(Arrays.asList("apple", "A fruit."), definition.getLines());
+    }
+
+    @Test
+    public void testSetThenAppend() {
+        Definition definition = new Definition("apple", "alpha");
+        definition.setDefinition("  apple\nA fruit.\n");
+        assertEquals("apple\nA fruit.", definition.getDefinition());
+        assertEquals(Arrays.asList("apple", "A fruit."), definition.getLines());
+        definition.appendDefinition("A tree.");
+        assertEquals(Arrays.asList("apple", "A fruit.", "A tree."), definition.getLines());
+        assertEquals("apple" + NL + "A fruit." + NL + "A tree.", definition.getDefinition());
+    }
+
+    @Test
+    public void testEqualsAfterAppend() {
+        Definition first = new Definition("apple", "alpha");
+        Definition second = new Definition("apple", "alpha");
+        first.appendDefinition("A fruit.");
+        second.appendDefinition("A fruit.");
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+
+        first.appendDefinition("A tree.");
+        assertNotEquals(first, second);
+        second.appendDefinition("A tree.");
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+
+        // Set and appended lines are equal, whatever their line separators
+        Definition set = new Definition("apple", "alpha");
+        set.setDefinition("A fruit.\r\nA tree.");
+        assertEquals(first, set);
+        assertEquals(first.hashCode(), set.hashCode());
+        assertNotEquals(first, new Definition("apple", "beta"));
+    }
+}
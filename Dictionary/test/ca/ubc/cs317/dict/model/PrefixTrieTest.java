@@ -0,0 +1,50 @@
+package ca.ubc.cs317.dict.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrefixTrieTest {
+
+    @Test
+    public void testWithPrefix() {
+        PrefixTrie trie = new PrefixTrie(Arrays.asList("program", "progress", "Prologue", "pro", "apple"));
+        assertEquals(5, trie.size());
+        assertEquals(new ArrayList<>(Arrays.asList("program", "progress")), new ArrayList<>(trie.withPrefix("prog")));
+        assertEquals(Collections.singleton("progress"), trie.withPrefix("progre"));
+        assertTrue(trie.withPrefix("progz").isEmpty());
+        assertTrue(trie.withPrefix("programs").isEmpty());
+    }
+
+    @Test
+    public void testOrderAndCase() {
+        PrefixTrie trie = new PrefixTrie(Arrays.asList("program", "progress", "Prologue", "pro", "apple"));
+        // Words are returned in the order in which they were added, whatever the case of the prefix
+        assertEquals(new ArrayList<>(Arrays.asList("program", "progress", "Prologue", "pro")),
+                new ArrayList<>(trie.withPrefix("PRO")));
+        assertEquals(5, trie.withPrefix("").size());
+    }
+
+    @Test
+    public void testWordsDifferingInCase() {
+        PrefixTrie trie = new PrefixTrie(Arrays.asList("Polish", "polish"));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("Polish", "polish")), trie.withPrefix("polish"));
+    }
+
+    @Test
+    public void testManyWords() {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+            words.add("word" + i);
+        PrefixTrie trie = new PrefixTrie(words);
+        // word1, word10..word19, word100..word199 and word1000..word1999
+        assertEquals(1111, trie.withPrefix("word1").size());
+        assertEquals(Collections.singleton("word4999"), trie.withPrefix("word4999"));
+    }
+}
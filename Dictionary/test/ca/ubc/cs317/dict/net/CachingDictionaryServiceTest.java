@@ -0,0 +1,102 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Definition;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingDictionaryServiceTest {
+
+    private final FakeDictionaryService dictionary = new FakeDictionaryService("cat", "catalog", "dog");
+
+    @Test
+    public void testDefinitionsCached() throws DictConnectionException {
+        CachingDictionaryService cache = new CachingDictionaryService(dictionary);
+        Collection<Definition> first = cache.getDefinitions("cat", FakeDictionaryService.DATABASE);
+        Collection<Definition> second = cache.getDefinitions("cat", FakeDictionaryService.DATABASE);
+        assertEquals(1, first.size());
+        assertSame(first, second);
+        assertEquals(1, dictionary.getDefineRequests());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testStreamedDefinitionsCached() throws DictConnectionException {
+        CachingDictionaryService cache = new CachingDictionaryService(dictionary);
+        List<Definition> streamed = new ArrayList<>();
+        cache.getDefinitions("dog", FakeDictionaryService.DATABASE, streamed::add);
+        cache.getDefinitions("dog", FakeDictionaryService.DATABASE, streamed::add);
+        assertEquals(2, streamed.size());
+        assertEquals(streamed.get(0), streamed.get(1));
+        assertEquals(1, dictionary.getDefineRequests());
+        // Streamed and collected definitions are the same entry
+        assertEquals(1, cache.getDefinitions("dog", FakeDictionaryService.DATABASE).size());
+        assertEquals(1, dictionary.getDefineRequests());
+    }
+
+    @Test
+    public void testMatchesKeyedByStrategy() throws DictConnectionException {
+        CachingDictionaryService cache = new CachingDictionaryService(dictionary);
+        assertEquals(2, cache.getMatchList("cat", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE).size());
+        assertEquals(1, cache.getMatchList("cat", FakeDictionaryService.EXACT, FakeDictionaryService.DATABASE).size());
+        assertEquals(2, cache.getMatchList("cat", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE).size());
+        assertEquals(2, dictionary.getMatchRequests());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws DictConnectionException {
+        CachingDictionaryService cache = new CachingDictionaryService(dictionary, 2,
+                CachingDictionaryService.DEFAULT_TTL_MILLIS);
+        cache.getDefinitions("cat", FakeDictionaryService.DATABASE);
+        cache.getDefinitions("dog", FakeDictionaryService.DATABASE);
+        // cat is used again, so dog is now the least recently used
+        cache.getDefinitions("cat", FakeDictionaryService.DATABASE);
+        cache.getDefinitions("catalog", FakeDictionaryService.DATABASE);
+        assertEquals(2, cache.size());
+        assertEquals(3, dictionary.getDefineRequests());
+
+        cache.getDefinitions("cat", FakeDictionaryService.DATABASE);
+        assertEquals(3, dictionary.getDefineRequests());
+        cache.getDefinitions("dog", FakeDictionaryService.DATABASE);
+        assertEquals(4, dictionary.getDefineRequests());
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        CachingDictionaryService cache = new CachingDictionaryService(dictionary, 16, 20);
+        cache.getDefinitions("cat", FakeDictionaryService.DATABASE);
+        cache.getDefinitions("cat", FakeDictionaryService.DATABASE);
+        assertEquals(1, dictionary.getDefineRequests());
+        Thread.sleep(40);
+        cache.getDefinitions("cat", FakeDictionaryService.DATABASE);
+        assertEquals(2, dictionary.getDefineRequests());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testFailureNotCached() throws DictConnectionException {
+        CachingDictionaryService cache = new CachingDictionaryService(dictionary);
+        dictionary.fail(1);
+        assertThrows(DictConnectionException.class,
+                () -> cache.getMatchList("do", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE));
+        assertEquals(0, cache.size());
+        assertEquals(Collections.singleton("dog"),
+                cache.getMatchList("do", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE));
+        assertEquals(2, dictionary.getMatchRequests());
+    }
+
+    @Test
+    public void testClose() {
+        CachingDictionaryService cache = new CachingDictionaryService(dictionary);
+        cache.close();
+        assertTrue(dictionary.isClosed());
+        assertEquals(0, cache.size());
+    }
+}
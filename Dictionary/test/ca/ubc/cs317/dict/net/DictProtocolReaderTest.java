@@ -0,0 +1,126 @@
+package ca.ubc.cs317.dict.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DictProtocolReaderTest {
+
+    private static DictProtocolReader reader(String text) {
+        return new DictProtocolReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * A stream that returns at most a few bytes per read, so that lines are split across reads.
+     */
+    private static InputStream trickle(String text, int bytesPerRead) {
+        return new FilterInputStream(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, bytesPerRead));
+            }
+        };
+    }
+
+    @Test
+    public void testStatus() throws DictConnectionException {
+        DictProtocolReader reader = reader("220 dict.example.org <auth.mime> <1@dict>\r\n150 2 definitions retrieved\n");
+        Status status = reader.readStatus();
+        assertEquals(220, status.getStatusCode());
+        assertEquals(Status.COMPLETION_REPLY, status.getStatusType());
+        assertEquals("dict.example.org <auth.mime> <1@dict>", status.getDetails());
+        assertEquals(150, reader.readStatus().getStatusCode());
+        assertThrows(DictConnectionException.class, reader::readStatus);
+    }
+
+    @Test
+    public void testInvalidStatus() {
+        assertThrows(DictConnectionException.class, () -> reader("22 short\r\n").readStatus());
+        assertThrows(DictConnectionException.class, () -> reader("2x0 not a number\r\n").readStatus());
+        assertThrows(DictConnectionException.class, () -> reader("999 out of range\r\n").readStatus());
+    }
+
+    @Test
+    public void testDotUnstuffing() throws DictConnectionException {
+        DictProtocolReader reader = reader("first line\r\n..leading dot\r\n...\r\n\r\n.\r\n250 ok\r\n");
+        assertEquals("first line", reader.readTextLine());
+        assertEquals(".leading dot", reader.readTextLine());
+        assertEquals("..", reader.readTextLine());
+        assertEquals("", reader.readTextLine());
+        assertNull(reader.readTextLine());
+        assertEquals(250, reader.readStatus().getStatusCode());
+    }
+
+    @Test
+    public void testUnterminatedText() throws DictConnectionException {
+        DictProtocolReader reader = reader("only line\r\n");
+        assertEquals("only line", reader.readTextLine());
+        assertThrows(DictConnectionException.class, reader::readTextLine);
+    }
+
+    @Test
+    public void testAtoms() throws DictConnectionException {
+        String[] lines = {
+                "wn \"WordNet (r) 3.0 (2006)\"",
+                "gcide\t\"The Collaborative International Dictionary of English v.0.48\"",
+                "prefix 'Match prefixes'",
+                "foldoc \"say \\\"hi\\\" to \\\\ me\"",
+                "  spaced   atoms  ",
+                "..dotted \"\"",
+        };
+        DictProtocolReader reader = reader(String.join("\r\n", lines) + "\r\n.\r\n");
+        assertEquals(Arrays.asList("wn", "WordNet (r) 3.0 (2006)"), Arrays.asList(reader.readAtomLine()));
+        assertEquals(Arrays.asList("gcide", "The Collaborative International Dictionary of English v.0.48"),
+                Arrays.asList(reader.readAtomLine()));
+        assertEquals(Arrays.asList("prefix", "Match prefixes"), Arrays.asList(reader.readAtomLine()));
+        assertEquals(Arrays.asList("foldoc", "say \"hi\" to \\ me"), Arrays.asList(reader.readAtomLine()));
+        assertEquals(Arrays.asList("spaced", "atoms"), Arrays.asList(reader.readAtomLine()));
+        assertEquals(Arrays.asList(".dotted", ""), Arrays.asList(reader.readAtomLine()));
+        assertNull(reader.readAtomLine());
+    }
+
+    @Test
+    public void testAtomsAsStringParser() throws DictConnectionException {
+        String[] lines = {
+                "wn \"WordNet (r) 3.0 (2006)\"",
+                "exact \"Match headwords exactly\"",
+                "foldoc \"say \\\"hi\\\" to \\\\ me\"",
+                "gcide\t\"tabbed\"",
+        };
+        DictProtocolReader reader = reader(String.join("\r\n", lines) + "\r\n.\r\n");
+        for (String line : lines)
+            assertEquals(Arrays.asList(DictStringParser.splitAtoms(line)), Arrays.asList(reader.readAtomLine()), line);
+    }
+
+    @Test
+    public void testLinesAcrossReads() throws IOException, DictConnectionException {
+        StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            longLine.append((char) ('a' + i % 26));
+        String text = "151 \"word\" db \"Database\"\r\n" + longLine + "\r\nna\u00efve caf\u00e9\r\n..\r\n.\r\n";
+        for (int bytesPerRead : new int[]{1, 3, 8192}) {
+            DictProtocolReader reader = new DictProtocolReader(trickle(text, bytesPerRead));
+            assertEquals(151, reader.readStatus().getStatusCode());
+            assertEquals(longLine.toString(), reader.readTextLine());
+            assertEquals("na\u00efve caf\u00e9", reader.readTextLine());
+            assertEquals(".", reader.readTextLine());
+            assertNull(reader.readTextLine());
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    public void testLastLineWithoutTerminator() throws IOException {
+        DictProtocolReader reader = reader("first\nlast");
+        assertEquals("first", reader.readLine());
+        assertEquals("last", reader.readLine());
+        assertNull(reader.readLine());
+    }
+}
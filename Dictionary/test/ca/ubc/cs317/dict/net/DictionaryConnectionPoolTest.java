@@ -0,0 +1,178 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.server.DictServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checkout, health checks and closing of pooled sessions, against a DictServer answering from an in-memory dictionary.
+ */
+public class DictionaryConnectionPoolTest {
+
+    private final FakeDictionaryService dictionary = new FakeDictionaryService("cat", "catalog", "dog");
+    private DictServer server;
+    private int port;
+    private DictionaryConnectionPool pool;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        server = new DictServer(dictionary, 0, 2);
+        server.start();
+        port = server.getPort();
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        if (pool != null)
+            pool.close();
+        server.close();
+    }
+
+    private void restartServer() throws Exception {
+        server.close();
+        server = new DictServer(dictionary, port, 2);
+        server.start();
+    }
+
+    private DictionaryConnection checkedOut() throws DictConnectionException {
+        return pool.execute(connection -> connection);
+    }
+
+    @Test
+    public void testCheckoutAndReturn() throws Exception {
+        pool = new DictionaryConnectionPool("localhost", port, 2, DictionaryConnectionPool.DEFAULT_HEALTH_CHECK_MILLIS);
+        assertEquals(1, pool.getIdleSessions());
+        DictionaryConnection first = pool.execute(connection -> {
+            assertEquals(0, pool.getIdleSessions());
+            return connection;
+        });
+        assertEquals(1, pool.getIdleSessions());
+        assertSame(first, checkedOut());
+        assertEquals(1, pool.getDefinitions("cat", FakeDictionaryService.DATABASE).size());
+        assertEquals(1, pool.getIdleSessions());
+        assertTrue(first.isOpen());
+    }
+
+    @Test
+    public void testSessionLimit() throws Exception {
+        pool = new DictionaryConnectionPool("localhost", port, 2, DictionaryConnectionPool.DEFAULT_HEALTH_CHECK_MILLIS);
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CompletableFuture<?>[] requests = new CompletableFuture<?>[3];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    pool.execute(connection -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        started.countDown();
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        connection.checkStatus();
+                        running.decrementAndGet();
+                        return null;
+                    });
+                } catch (DictConnectionException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // The third request waits for a session to be returned
+        Thread.sleep(200);
+        assertEquals(2, running.get());
+        release.countDown();
+        CompletableFuture.allOf(requests).get(5, TimeUnit.SECONDS);
+        assertEquals(2, maxRunning.get());
+        assertEquals(2, pool.getIdleSessions());
+    }
+
+    @Test
+    public void testHealthCheckReconnects() throws Exception {
+        pool = new DictionaryConnectionPool("localhost", port, 1, 0);
+        DictionaryConnection first = checkedOut();
+        // A session that passes its STATUS check is reused
+        assertSame(first, checkedOut());
+
+        restartServer();
+        // The closed session fails its STATUS check and is replaced before the request is sent
+        assertEquals(1, pool.getDefinitions("dog", FakeDictionaryService.DATABASE).size());
+        assertFalse(first.isOpen());
+        assertNotSame(first, checkedOut());
+        assertEquals(1, pool.getIdleSessions());
+    }
+
+    @Test
+    public void testNoHealthCheckBeforeInterval() throws Exception {
+        pool = new DictionaryConnectionPool("localhost", port, 1, DictionaryConnectionPool.DEFAULT_HEALTH_CHECK_MILLIS);
+        DictionaryConnection first = checkedOut();
+
+        restartServer();
+        // The session was used recently, so it is not checked and the request on it fails
+        assertThrows(DictConnectionException.class,
+                () -> pool.getDefinitions("dog", FakeDictionaryService.DATABASE));
+        assertFalse(first.isOpen());
+        assertEquals(0, pool.getIdleSessions());
+        assertEquals(1, pool.getDefinitions("dog", FakeDictionaryService.DATABASE).size());
+    }
+
+    @Test
+    public void testFailedRequestClosesSession() throws Exception {
+        pool = new DictionaryConnectionPool("localhost", port, 1, 0);
+        DictionaryConnection first = checkedOut();
+        dictionary.fail(1);
+        assertThrows(DictConnectionException.class,
+                () -> pool.getMatchList("ca", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE));
+        assertFalse(first.isOpen());
+        assertEquals(0, pool.getIdleSessions());
+        assertEquals(2, pool.getMatchList("ca", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE).size());
+        assertNotSame(first, checkedOut());
+    }
+
+    @Test
+    public void testCloseWhileCheckedOut() throws Exception {
+        pool = new DictionaryConnectionPool("localhost", port, 2, 0);
+        DictionaryConnection idle = checkedOut();
+        DictionaryConnection[] inUse = new DictionaryConnection[1];
+        CountDownLatch checkedOut = new CountDownLatch(1);
+        CountDownLatch closed = new CountDownLatch(1);
+        CompletableFuture<Integer> request = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.execute(connection -> {
+                    inUse[0] = connection;
+                    checkedOut.countDown();
+                    try {
+                        closed.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    // The session still works until the request completes
+                    return connection.getDefinitions("cat", FakeDictionaryService.DATABASE).size();
+                });
+            } catch (DictConnectionException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(checkedOut.await(5, TimeUnit.SECONDS));
+        assertSame(idle, inUse[0]);
+        pool.close();
+        closed.countDown();
+        assertEquals(1, (int) request.get(5, TimeUnit.SECONDS));
+        assertFalse(inUse[0].isOpen());
+        assertEquals(0, pool.getIdleSessions());
+        assertThrows(DictConnectionException.class, this::checkedOut);
+    }
+}
@@ -0,0 +1,118 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Streaming of DEFINE replies, against a scripted server that holds back the rest of the reply until the client has
+ * handled the first definition.
+ */
+public class DictionaryConnectionTest {
+
+    private static final Database ALL = new Database("*", "All databases");
+
+    private ServerSocket serverSocket;
+    private final CountDownLatch firstReceived = new CountDownLatch(1);
+
+    @BeforeEach
+    public void openServerSocket() throws IOException {
+        serverSocket = new ServerSocket(0);
+    }
+
+    @AfterEach
+    public void closeServerSocket() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * Accepts one connection and answers a DEFINE with two definitions. The second definition and the 250 status are
+     * only sent once the first definition has been received, so a client that waits for the whole reply times out.
+     */
+    private CompletableFuture<String> serveDefine() {
+        return CompletableFuture.supplyAsync(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setSoTimeout(5000);
+                BufferedReader in = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = socket.getOutputStream();
+                write(out, "220 scripted <> <1@scripted>");
+                String command = in.readLine();
+                write(out, "150 2 definitions retrieved",
+                        "151 \"apple\" alpha \"Alpha dictionary\"", "A fruit.", ".");
+                if (!firstReceived.await(5, TimeUnit.SECONDS))
+                    return command;
+                write(out, "151 \"apple\" beta \"Beta dictionary\"", "A company.", ".", "250 ok");
+                in.readLine();
+                write(out, "221 bye");
+                return command;
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static void write(OutputStream out, String... lines) throws IOException {
+        StringBuilder reply = new StringBuilder();
+        for (String line : lines)
+            reply.append(line).append("\r\n");
+        out.write(reply.toString().getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void receive(List<Definition> received, Definition definition) {
+        received.add(definition);
+        firstReceived.countDown();
+    }
+
+    @Test
+    public void testDefinitionsStreamedBeforeCompletion() throws Exception {
+        CompletableFuture<String> server = serveDefine();
+        List<Definition> received = new ArrayList<>();
+        DictionaryConnection connection = new DictionaryConnection("localhost", serverSocket.getLocalPort());
+        try {
+            connection.getDefinitions("apple", ALL, definition -> receive(received, definition));
+        } finally {
+            connection.close();
+        }
+        assertEquals("DEFINE * apple", server.get(5, TimeUnit.SECONDS));
+        assertEquals(2, received.size());
+        assertEquals("alpha", received.get(0).getDatabaseName());
+        assertEquals("A fruit.", received.get(0).getDefinition());
+        assertEquals("beta", received.get(1).getDatabaseName());
+        assertEquals("A company.", received.get(1).getDefinition());
+    }
+
+    @Test
+    public void testPoolDefinitionsStreamedBeforeCompletion() throws Exception {
+        CompletableFuture<String> server = serveDefine();
+        List<Definition> received = new ArrayList<>();
+        DictionaryConnectionPool pool = new DictionaryConnectionPool("localhost", serverSocket.getLocalPort(), 1);
+        try {
+            pool.getDefinitions("apple", ALL, definition -> receive(received, definition));
+        } finally {
+            pool.close();
+        }
+        assertEquals("DEFINE * apple", server.get(5, TimeUnit.SECONDS));
+        assertEquals(2, received.size());
+        assertEquals("alpha", received.get(0).getDatabaseName());
+        assertEquals("beta", received.get(1).getDatabaseName());
+    }
+}
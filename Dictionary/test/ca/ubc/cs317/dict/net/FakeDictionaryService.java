@@ -0,0 +1,111 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A dictionary with a single database of words defined in memory, counting the requests it receives. Supports the
+ * "exact" and "prefix" strategies, ignoring case.
+ */
+public class FakeDictionaryService implements DictionaryService {
+
+    public static final Database DATABASE = new Database("fake", "Fake dictionary");
+    public static final MatchingStrategy EXACT = new MatchingStrategy("exact", "Match words exactly");
+    public static final MatchingStrategy PREFIX = new MatchingStrategy("prefix", "Match prefixes");
+
+    private final Map<String, String> definitions = new LinkedHashMap<>();
+    private int defineRequests;
+    private int matchRequests;
+    private int failures;
+    private boolean closed;
+
+    public FakeDictionaryService(String... words) {
+        for (String word : words)
+            definitions.put(word, "The meaning of " + word + ".");
+    }
+
+    /**
+     * Makes the next requests fail.
+     *
+     * @param failures The number of requests that fail.
+     */
+    public synchronized void fail(int failures) {
+        this.failures = failures;
+    }
+
+    private void checkFailure() throws DictConnectionException {
+        if (failures > 0) {
+            failures--;
+            throw new DictConnectionException("Simulated failure");
+        }
+    }
+
+    @Override
+    public synchronized Collection<Definition> getDefinitions(String word, Database database)
+            throws DictConnectionException {
+        defineRequests++;
+        checkFailure();
+        List<Definition> found = new ArrayList<>();
+        for (Map.Entry<String, String> entry : definitions.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(word)) {
+                Definition definition = new Definition(entry.getKey(), DATABASE.getName());
+                definition.appendDefinition(entry.getValue());
+                found.add(definition);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public synchronized Set<String> getMatchList(String word, MatchingStrategy strategy, Database database)
+            throws DictConnectionException {
+        matchRequests++;
+        checkFailure();
+        Set<String> matches = new LinkedHashSet<>();
+        for (String candidate : definitions.keySet()) {
+            boolean match = strategy.getName().equals(PREFIX.getName()) ?
+                    candidate.toLowerCase().startsWith(word.toLowerCase()) : candidate.equalsIgnoreCase(word);
+            if (match)
+                matches.add(candidate);
+        }
+        return matches;
+    }
+
+    @Override
+    public Map<String, Database> getDatabaseList() {
+        return Collections.singletonMap(DATABASE.getName(), DATABASE);
+    }
+
+    @Override
+    public Set<MatchingStrategy> getStrategyList() {
+        return new LinkedHashSet<>(Arrays.asList(EXACT, PREFIX));
+    }
+
+    public synchronized int getDefineRequests() {
+        return defineRequests;
+    }
+
+    public synchronized int getMatchRequests() {
+        return matchRequests;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,73 @@
+package ca.ubc.cs317.dict.net;
+
+import ca.ubc.cs317.dict.model.Database;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrefixNarrowingDictionaryServiceTest {
+
+    private final FakeDictionaryService dictionary = new FakeDictionaryService(
+            "program", "programme", "progress", "project", "prologue");
+
+    @Test
+    public void testLongerPrefixNarrowedLocally() throws DictConnectionException {
+        PrefixNarrowingDictionaryService service = new PrefixNarrowingDictionaryService(dictionary);
+        assertEquals(5, service.getMatchList("pro", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE)
+                .size());
+        assertEquals(new LinkedHashSet<>(Arrays.asList("program", "programme", "progress")),
+                service.getMatchList("prog", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("program", "programme")),
+                service.getMatchList("PROGRAM", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE));
+        assertTrue(service.getMatchList("progz", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE)
+                .isEmpty());
+        assertEquals(1, dictionary.getMatchRequests());
+        assertEquals(3, service.getLocalMatches());
+    }
+
+    @Test
+    public void testShorterPrefixAskedAgain() throws DictConnectionException {
+        PrefixNarrowingDictionaryService service = new PrefixNarrowingDictionaryService(dictionary);
+        service.getMatchList("prog", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE);
+        // A backspace: the matches for "pro" are not all in the matches for "prog"
+        assertEquals(5, service.getMatchList("pro", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE)
+                .size());
+        assertEquals(2, dictionary.getMatchRequests());
+        assertEquals(0, service.getLocalMatches());
+    }
+
+    @Test
+    public void testOtherStrategiesAndDatabasesAskedAgain() throws DictConnectionException {
+        PrefixNarrowingDictionaryService service = new PrefixNarrowingDictionaryService(dictionary);
+        service.getMatchList("pro", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE);
+        assertEquals(Collections.singleton("project"),
+                service.getMatchList("project", FakeDictionaryService.EXACT, FakeDictionaryService.DATABASE));
+        service.getMatchList("prog", FakeDictionaryService.PREFIX, new Database("other", "Other"));
+        // The first database with a match may differ for a longer prefix
+        Database first = new Database("!", "First match");
+        service.getMatchList("pro", FakeDictionaryService.PREFIX, first);
+        service.getMatchList("prog", FakeDictionaryService.PREFIX, first);
+        assertEquals(5, dictionary.getMatchRequests());
+        assertEquals(0, service.getLocalMatches());
+    }
+
+    @Test
+    public void testTooManyMatchesNotKept() throws DictConnectionException {
+        PrefixNarrowingDictionaryService service = new PrefixNarrowingDictionaryService(dictionary, 3,
+                PrefixNarrowingDictionaryService.DEFAULT_PREFIX_CLOSED_STRATEGIES);
+        service.getMatchList("pro", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE);
+        service.getMatchList("prog", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE);
+        // The matches for "prog" are few enough to be kept
+        service.getMatchList("progr", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE);
+        assertEquals(2, dictionary.getMatchRequests());
+        assertEquals(1, service.getLocalMatches());
+
+        service.clear();
+        service.getMatchList("progra", FakeDictionaryService.PREFIX, FakeDictionaryService.DATABASE);
+        assertEquals(3, dictionary.getMatchRequests());
+    }
+}
@@ -0,0 +1,152 @@
+package ca.ubc.cs317.dict.offline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DictdDatabaseTest {
+
+    private Path directory;
+    private DictdFixture fixture;
+
+    @BeforeEach
+    public void createFixture() throws IOException {
+        directory = Files.createTempDirectory("dictd");
+        fixture = new DictdFixture()
+                .add("00-database-short", "Test dictionary")
+                .add("00-database-info", "Built for tests.")
+                .add("apple", "A fruit.")
+                .add("Apple pie", "A dessert.")
+                .add("apply", "To put to use.\n.A line starting with a dot.")
+                .add("application", "A request.")
+                .add("banana", "Another fruit.")
+                .add("band", "A group of musicians.")
+                .add("bandana", "A scarf.")
+                .add("new-age", "A style of music.")
+                .add("New York", "A city.")
+                .add("caf\u00e9", "A coffee house.")
+                .add("zebra", "An animal.");
+        for (int i = 0; i < 3000; i++)
+            fixture.add(String.format("w%05d", i), "Filler word number " + i + ".");
+    }
+
+    @AfterEach
+    public void deleteFixture() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                Files.delete(file);
+        }
+    }
+
+    private static List<String> headwords(List<DictdDatabase.Entry> entries) {
+        return entries.stream().map(DictdDatabase.Entry::getHeadword).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testHeaders() throws IOException {
+        DictdDatabase database = DictdDatabase.open(fixture.write(directory, "test"));
+        assertEquals("test", database.getName());
+        assertEquals("Test dictionary", database.getDescription());
+        assertEquals(3013, database.size());
+        // Headers are not matched
+        assertTrue(database.findExact("00-database-short").isEmpty());
+        assertTrue(database.findPrefix("00").isEmpty());
+    }
+
+    @Test
+    public void testFindExact() throws IOException {
+        DictdDatabase database = DictdDatabase.open(fixture.write(directory, "test"));
+        assertEquals(Collections.singletonList("apple"), headwords(database.findExact("APPLE")));
+        // Like the index, punctuation is ignored
+        assertEquals(Collections.singletonList("new-age"), headwords(database.findExact("NewAge")));
+        assertEquals(Collections.singletonList("New York"), headwords(database.findExact("new york")));
+        assertEquals(Collections.singletonList("caf\u00e9"), headwords(database.findExact("caf\u00e9")));
+        assertEquals(Collections.singletonList("w02999"), headwords(database.findExact("w02999")));
+        assertEquals(Collections.singletonList("w00000"), headwords(database.findExact("w00000")));
+        assertTrue(database.findExact("appl").isEmpty());
+        assertTrue(database.findExact("zzz").isEmpty());
+        assertTrue(database.findExact("").isEmpty());
+    }
+
+    @Test
+    public void testFindPrefix() throws IOException {
+        DictdDatabase database = DictdDatabase.open(fixture.write(directory, "test"));
+        assertEquals(Arrays.asList("apple", "Apple pie", "application", "apply"),
+                headwords(database.findPrefix("Appl")));
+        assertEquals(Arrays.asList("band", "bandana"), headwords(database.findPrefix("band")));
+        assertEquals(1000, database.findPrefix("w01").size());
+        assertEquals(3000, database.findPrefix("w").size());
+        assertTrue(database.findPrefix("x").isEmpty());
+    }
+
+    @Test
+    public void testFindSubstring() throws IOException {
+        DictdDatabase database = DictdDatabase.open(fixture.write(directory, "test"));
+        assertEquals(Arrays.asList("banana", "bandana"), headwords(database.findSubstring("ANA")));
+        assertEquals(Collections.singletonList("Apple pie"), headwords(database.findSubstring("e p")));
+        assertTrue(database.findSubstring("database").isEmpty());
+    }
+
+    @Test
+    public void testReadDefinition() throws IOException {
+        DictdDatabase database = DictdDatabase.open(fixture.write(directory, "test"));
+        for (String word : new String[]{"apply", "caf\u00e9", "w01234", "zebra"})
+            assertEquals(fixture.definition(word), database.readDefinition(database.findExact(word).get(0)));
+    }
+
+    @Test
+    public void testDictzip() throws IOException {
+        DictdDatabase plain = DictdDatabase.open(fixture.write(directory, "plain"));
+        // Chunks much smaller than the data, so that definitions span several of them
+        Path index = fixture.writeDictzip(directory, "compressed", 100);
+        DictdDatabase compressed = DictdDatabase.open(index);
+        assertEquals("Test dictionary", compressed.getDescription());
+
+        List<DictdDatabase.Entry> entries = new ArrayList<>(compressed.findPrefix(""));
+        assertEquals(3011, entries.size());
+        for (DictdDatabase.Entry entry : entries)
+            assertEquals(fixture.definition(entry.getHeadword()), compressed.readDefinition(entry));
+        assertEquals(fixture.definition("apply"), plain.readDefinition(plain.findExact("apply").get(0)));
+    }
+
+    @Test
+    public void testDefinitionOutsideOfData() throws IOException {
+        Files.write(directory.resolve("broken.index"),
+                ("word\t" + DictdFixture.base64(1000000) + "\tK\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(directory.resolve("broken.dict"), "word\nshort\n".getBytes(StandardCharsets.UTF_8));
+        DictdDatabase database = DictdDatabase.open(directory.resolve("broken.index"));
+        DictdDatabase.Entry entry = database.findExact("word").get(0);
+        assertEquals(1000000, entry.getOffset());
+        assertThrows(IOException.class, () -> database.readDefinition(entry));
+
+        Files.write(directory.resolve("broken.dict.dz"),
+                DictdFixture.dictzip("word\nshort\n".getBytes(StandardCharsets.UTF_8), 100));
+        Files.delete(directory.resolve("broken.dict"));
+        DictdDatabase compressed = DictdDatabase.open(directory.resolve("broken.index"));
+        assertThrows(IOException.class, () -> compressed.readDefinition(compressed.findExact("word").get(0)));
+    }
+
+    @Test
+    public void testNotDictd() throws IOException {
+        Path index = directory.resolve("missing.index");
+        Files.write(index, "word\tA\tB\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> DictdDatabase.open(index));
+        Files.write(directory.resolve("missing.dict.dz"), "not gzip".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> DictdDatabase.open(index));
+        assertThrows(IOException.class, () -> DictdDatabase.open(directory.resolve("missing.dict.dz")));
+    }
+}
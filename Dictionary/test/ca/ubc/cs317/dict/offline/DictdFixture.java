@@ -0,0 +1,173 @@
+package ca.ubc.cs317.dict.offline;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Builds dictd databases for tests, as dictfmt and dictzip would: a .index file sorted by headword, ignoring case and
+ * the characters other than letters, digits and spaces, and a .dict file, or a .dict.dz file compressed in chunks.
+ */
+public class DictdFixture {
+
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private final Map<String, String> definitions = new LinkedHashMap<>();
+
+    /**
+     * Adds a headword. Its definition is the headword on a line, followed by the text.
+     */
+    public DictdFixture add(String headword, String text) {
+        definitions.put(headword, text);
+        return this;
+    }
+
+    /**
+     * Returns the text of the definition of a headword, as read from the database.
+     */
+    public String definition(String headword) {
+        return headword + "\n" + definitions.get(headword) + "\n";
+    }
+
+    /**
+     * Writes a database with an uncompressed .dict file.
+     *
+     * @return The .index file.
+     */
+    public Path write(Path directory, String name) throws IOException {
+        byte[] data = writeIndex(directory, name);
+        Files.write(directory.resolve(name + ".dict"), data);
+        return directory.resolve(name + ".index");
+    }
+
+    /**
+     * Writes a database with a .dict.dz file, compressed in chunks of the given uncompressed length.
+     *
+     * @return The .index file.
+     */
+    public Path writeDictzip(Path directory, String name, int chunkLength) throws IOException {
+        byte[] data = writeIndex(directory, name);
+        try (OutputStream out = Files.newOutputStream(directory.resolve(name + ".dict.dz"))) {
+            out.write(dictzip(data, chunkLength));
+        }
+        return directory.resolve(name + ".index");
+    }
+
+    private byte[] writeIndex(Path directory, String name) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        List<String[]> index = new ArrayList<>();
+        for (String headword : definitions.keySet()) {
+            byte[] bytes = definition(headword).getBytes(StandardCharsets.UTF_8);
+            index.add(new String[]{headword, base64(data.size()), base64(bytes.length)});
+            data.write(bytes);
+        }
+        index.sort((a, b) -> {
+            int difference = compareUnsigned(sortKey(a[0]), sortKey(b[0]));
+            return difference != 0 ? difference : a[0].compareTo(b[0]);
+        });
+        StringBuilder lines = new StringBuilder();
+        for (String[] entry : index)
+            lines.append(String.join("\t", entry)).append('\n');
+        Files.write(directory.resolve(name + ".index"), lines.toString().getBytes(StandardCharsets.UTF_8));
+        return data.toByteArray();
+    }
+
+    private static byte[] sortKey(String headword) {
+        byte[] bytes = headword.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+        int length = 0;
+        for (byte b : bytes)
+            if (b < 0 || b == ' ' || Character.isLetterOrDigit(b))
+                bytes[length++] = b;
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++)
+            if (a[i] != b[i])
+                return (a[i] & 0xff) - (b[i] & 0xff);
+        return a.length - b.length;
+    }
+
+    static String base64(long value) {
+        if (value == 0)
+            return "A";
+        StringBuilder sb = new StringBuilder();
+        for (; value > 0; value /= 64)
+            sb.insert(0, BASE64.charAt((int) (value % 64)));
+        return sb.toString();
+    }
+
+    /**
+     * Compresses data in the dictzip format: each chunk is deflated on its own and ends with a full flush, and the
+     * compressed size of each chunk is listed in the "RA" field of the gzip header.
+     */
+    static byte[] dictzip(byte[] data, int chunkLength) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int start = 0; start < data.length; start += chunkLength) {
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+            deflater.setInput(data, start, Math.min(chunkLength, data.length - start));
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = deflater.deflate(buffer, 0, buffer.length, Deflater.FULL_FLUSH)) > 0)
+                chunk.write(buffer, 0, length);
+            deflater.end();
+            chunks.add(chunk.toByteArray());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int raLength = 6 + 2 * chunks.size();
+        out.write(0x1f);
+        out.write(0x8b);
+        out.write(8);
+        out.write(4 | 8);
+        out.write(new byte[6], 0, 6);
+        writeShort(out, 4 + raLength);
+        out.write('R');
+        out.write('A');
+        writeShort(out, raLength);
+        writeShort(out, 1);
+        writeShort(out, chunkLength);
+        writeShort(out, chunks.size());
+        for (byte[] chunk : chunks)
+            writeShort(out, chunk.length);
+        byte[] fileName = "test.dict\0".getBytes(StandardCharsets.US_ASCII);
+        out.write(fileName, 0, fileName.length);
+        for (byte[] chunk : chunks)
+            out.write(chunk, 0, chunk.length);
+
+        // An empty final block, and the gzip trailer
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.finish();
+        byte[] buffer = new byte[16];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        out.write(buffer, 0, length);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeInt(out, crc.getValue());
+        writeInt(out, data.length);
+        return out.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        writeShort(out, (int) (value & 0xffff));
+        writeShort(out, (int) ((value >> 16) & 0xffff));
+    }
+}
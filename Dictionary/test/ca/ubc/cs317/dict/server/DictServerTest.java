@@ -0,0 +1,183 @@
+package ca.ubc.cs317.dict.server;
+
+import ca.ubc.cs317.dict.model.Database;
+import ca.ubc.cs317.dict.model.Definition;
+import ca.ubc.cs317.dict.model.MatchingStrategy;
+import ca.ubc.cs317.dict.net.DictConnectionException;
+import ca.ubc.cs317.dict.net.DictionaryConnection;
+import ca.ubc.cs317.dict.offline.DictdFixture;
+import ca.ubc.cs317.dict.offline.OfflineDictionary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trips between DictionaryConnection and a DictServer answering from an OfflineDictionary, over loopback.
+ */
+public class DictServerTest {
+
+    private static final Database ALL = new Database("*", "All databases");
+    private static final Database FIRST = new Database("!", "First database with a match");
+
+    private Path directory;
+    private DictServer server;
+    private DictionaryConnection connection;
+
+    @BeforeEach
+    public void startServer() throws Exception {
+        directory = Files.createTempDirectory("dictd");
+        DictdFixture alpha = new DictdFixture()
+                .add("00-database-short", "Alpha dictionary")
+                .add("apple", "A fruit.\n.A line starting with a dot.")
+                .add("application", "A request.")
+                .add("banana", "Another fruit.");
+        for (int i = 0; i < 200; i++)
+            alpha.add("word" + i, "Word number " + i + ".");
+        alpha.write(directory, "alpha");
+        new DictdFixture()
+                .add("00-database-short", "Beta dictionary")
+                .add("apple", "A company.")
+                .add("bandana", "A scarf.")
+                .writeDictzip(directory, "beta", 64);
+
+        server = new DictServer(OfflineDictionary.open(directory), 0, 2);
+        server.start();
+        connection = new DictionaryConnection("localhost", server.getPort());
+    }
+
+    @AfterEach
+    public void stopServer() throws IOException {
+        if (connection != null)
+            connection.close();
+        server.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                Files.delete(file);
+        }
+    }
+
+    private static MatchingStrategy strategy(String name) {
+        return new MatchingStrategy(name, "");
+    }
+
+    @Test
+    public void testShow() throws DictConnectionException {
+        assertEquals(Arrays.asList("alpha", "beta"), new ArrayList<>(connection.getDatabaseList().keySet()));
+        assertEquals("Beta dictionary", connection.getDatabaseList().get("beta").getDescription());
+        assertEquals(Arrays.asList("exact", "prefix", "substring"), connection.getStrategyList().stream()
+                .map(MatchingStrategy::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testDefine() throws DictConnectionException {
+        List<Definition> definitions = new ArrayList<>(connection.getDefinitions("APPLE", ALL));
+        assertEquals(2, definitions.size());
+        assertEquals("alpha", definitions.get(0).getDatabaseName());
+        // The line starting with a dot is dot-stuffed by the server and unstuffed by the client
+        assertEquals(Arrays.asList("apple", "A fruit.", ".A line starting with a dot."),
+                definitions.get(0).getLines());
+        assertEquals("beta", definitions.get(1).getDatabaseName());
+        assertEquals(Arrays.asList("apple", "A company."), definitions.get(1).getLines());
+
+        assertEquals(1, connection.getDefinitions("apple", FIRST).size());
+        assertEquals(1, connection.getDefinitions("bandana", FIRST).size());
+        assertTrue(connection.getDefinitions("cherry", ALL).isEmpty());
+        assertTrue(connection.getDefinitions("apple", new Database("gamma", "")).isEmpty());
+    }
+
+    @Test
+    public void testDefineStreamed() throws DictConnectionException {
+        List<Definition> streamed = new ArrayList<>();
+        connection.getDefinitions("apple", ALL, streamed::add);
+        assertEquals(2, streamed.size());
+        assertEquals("alpha", streamed.get(0).getDatabaseName());
+        assertEquals("beta", streamed.get(1).getDatabaseName());
+        // The connection is ready for the next command once the 250 status has been read
+        connection.checkStatus();
+    }
+
+    @Test
+    public void testMatch() throws DictConnectionException {
+        assertEquals(new LinkedHashSet<>(Arrays.asList("apple", "application")),
+                connection.getMatchList("app", strategy("prefix"), ALL));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("banana", "bandana")),
+                connection.getMatchList("ana", strategy("substring"), ALL));
+        // The first database with a match for "ban" is alpha
+        assertEquals(new LinkedHashSet<>(Arrays.asList("banana")),
+                connection.getMatchList("ban", strategy("prefix"), FIRST));
+        assertEquals(new LinkedHashSet<>(Arrays.asList("bandana")),
+                connection.getMatchList("band", strategy("prefix"), FIRST));
+        assertTrue(connection.getMatchList("zzz", strategy("prefix"), ALL).isEmpty());
+    }
+
+    @Test
+    public void testPipeline() throws DictConnectionException {
+        DictionaryConnection.Pipeline pipeline = connection.pipeline();
+        List<CompletableFuture<Collection<Definition>>> definitions = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            definitions.add(pipeline.define("word" + i, ALL));
+        CompletableFuture<Set<String>> matches = pipeline.match("word1", strategy("prefix"), ALL);
+        pipeline.execute();
+
+        for (int i = 0; i < 200; i++) {
+            List<Definition> found = new ArrayList<>(definitions.get(i).join());
+            assertEquals(1, found.size());
+            assertEquals(Arrays.asList("word" + i, "Word number " + i + "."), found.get(0).getLines());
+        }
+        // word1, word10..word19 and word100..word199
+        assertEquals(111, matches.join().size());
+        connection.checkStatus();
+    }
+
+    @Test
+    public void testConcurrentClients() throws Exception {
+        List<CompletableFuture<Integer>> clients = new ArrayList<>();
+        for (int c = 0; c < 4; c++) {
+            clients.add(CompletableFuture.supplyAsync(() -> {
+                DictionaryConnection client = null;
+                try {
+                    client = new DictionaryConnection("localhost", server.getPort());
+                    int found = 0;
+                    for (int i = 0; i < 50; i++)
+                        found += client.getDefinitions("word" + i, ALL).size();
+                    return found;
+                } catch (DictConnectionException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    if (client != null)
+                        client.close();
+                }
+            }));
+        }
+        for (CompletableFuture<Integer> client : clients)
+            assertEquals(50, (int) client.get());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        long start = System.nanoTime();
+        server.close();
+        assertTrue(System.nanoTime() - start < 1000000000L, "Closing waits for the selector thread only");
+        assertTrue(server.isClosed());
+        server.awaitClose();
+        assertThrows(DictConnectionException.class, connection::checkStatus);
+        assertThrows(DictConnectionException.class, () -> new DictionaryConnection("localhost", server.getPort()));
+        connection = null;
+    }
+}